@@ -34,6 +34,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -77,21 +79,31 @@ public class IDESolver<N,D,M,V,I extends InterproceduralCFG<N, M>> {
 	@DontSynchronize("only used by single thread")
 	protected int numThreads;
 	
-	@SynchronizedBy("thread safe data structure, consistent locking when used")
+	@SynchronizedBy("thread safe data structure")
 	protected final JumpFunctions<N,D,V> jumpFn;
 	
 	@SynchronizedBy("thread safe data structure, only modified internally")
 	protected final I icfg;
 	
-	//stores summaries that were queried before they were computed
+	//end summaries and incoming call edges of each callee start point and value
 	//see CC 2010 paper by Naeem, Lhotak and Rodriguez
-	@SynchronizedBy("consistent lock on 'incoming'")
-	protected final Table<N,D,Table<N,D,EdgeFunction<V>>> endSummary = HashBasedTable.create();
-
-	//edges going along calls
-	//see CC 2010 paper by Naeem, Lhotak and Rodriguez
-	@SynchronizedBy("consistent lock on field")
-	protected final Table<N,D,Map<N,Set<D>>> incoming = HashBasedTable.create();
+	@SynchronizedBy("thread safe data structure, consistent lock on each CalleeContext")
+	protected final ConcurrentMap<Pair<N,D>,CalleeContext> calleeContexts = new ConcurrentHashMap<Pair<N,D>,CalleeContext>();
+	
+	/**
+	 * The summaries and incoming call edges of a callee start point and value. An end summary
+	 * and the incoming edges must be recorded and read under the lock of their context, so that
+	 * of a call and an exit racing for the same context, one sees the other.
+	 */
+	protected class CalleeContext {
+		//stores summaries that were queried before they were computed
+		@SynchronizedBy("consistent lock on this")
+		protected final Table<N,D,EdgeFunction<V>> endSummary = HashBasedTable.create();
+		
+		//edges going along calls
+		@SynchronizedBy("consistent lock on this")
+		protected final Map<N,Set<D>> incoming = new HashMap<N,Set<D>>();
+	}
 	
 	@DontSynchronize("stateless")
 	protected final FlowFunctions<N, D, M> flowFunctions;
@@ -329,11 +341,12 @@ public class IDESolver<N,D,M,V,I extends InterproceduralCFG<N, M>> {
 	
 					//register the fact that <sp,d3> has an incoming edge from <n,d2>
 					Set<Cell<N, D, EdgeFunction<V>>> endSumm;
-					synchronized (incoming) {
+					CalleeContext context = calleeContext(sP, d3);
+					synchronized (context) {
 						//line 15.1 of Naeem/Lhotak/Rodriguez
 						addIncoming(sP,d3,n,d2);
 						//line 15.2, copy to avoid concurrent modification exceptions by other threads
-						endSumm = new HashSet<Table.Cell<N,D,EdgeFunction<V>>>(endSummary(sP, d3));
+						endSumm = new HashSet<Table.Cell<N,D,EdgeFunction<V>>>(context.endSummary.cellSet());
 					}
 					
 					//still line 15.2 of Naeem/Lhotak/Rodriguez
@@ -424,10 +437,11 @@ public class IDESolver<N,D,M,V,I extends InterproceduralCFG<N, M>> {
 			//line 21.1 of Naeem/Lhotak/Rodriguez
 			
 			//register end-summary
-			synchronized (incoming) {
+			CalleeContext context = calleeContext(sP, d1);
+			synchronized (context) {
 				addEndSummary(sP, d1, n, d2, f);
 				//copy to avoid concurrent modification exceptions by other threads
-				for (Entry<N, Set<D>> entry : incoming(d1, sP).entrySet())
+				for (Entry<N, Set<D>> entry : context.incoming.entrySet())
 					inc.put(entry.getKey(), new HashSet<D>(entry.getValue()));
 			}
 		}
@@ -452,14 +466,14 @@ public class IDESolver<N,D,M,V,I extends InterproceduralCFG<N, M>> {
 						EdgeFunction<V> f4 = edgeFunctions.getCallEdgeFunction(c, d4, icfg.getMethodOf(n), d1);
 						EdgeFunction<V> f5 = edgeFunctions.getReturnEdgeFunction(c, icfg.getMethodOf(n), n, d2, retSiteC, d5);
 						EdgeFunction<V> fPrime = f4.composeWith(f).composeWith(f5);
-						//for each jump function coming into the call, propagate to return site using the composed function
-						synchronized (jumpFn) { // some other thread might change jumpFn on the way
-							for(Map.Entry<D,EdgeFunction<V>> valAndFunc: jumpFn.reverseLookup(c,d4).entrySet()) {
-								EdgeFunction<V> f3 = valAndFunc.getValue();
-								if(!f3.equalTo(allTop)) {
-									D d3 = valAndFunc.getKey();
-									propagate(d3, retSiteC, d5, f3.composeWith(fPrime), c, false);
-								}
+						//for each jump function coming into the call, propagate to return site using the composed function;
+						//a function added concurrently is seen here or by the call processing of its edge,
+						//which reads the end summary registered above
+						for(Map.Entry<D,EdgeFunction<V>> valAndFunc: jumpFn.reverseLookup(c,d4).entrySet()) {
+							EdgeFunction<V> f3 = valAndFunc.getValue();
+							if(!f3.equalTo(allTop)) {
+								D d3 = valAndFunc.getKey();
+								propagate(d3, retSiteC, d5, f3.composeWith(fPrime), c, false);
 							}
 						}
 					}
@@ -559,20 +573,10 @@ public class IDESolver<N,D,M,V,I extends InterproceduralCFG<N, M>> {
 	protected void propagate(D sourceVal, N target, D targetVal, EdgeFunction<V> f,
 		/* deliberately exposed to clients */ N relatedCallSite,
 		/* deliberately exposed to clients */ boolean isUnbalancedReturn) {
-		EdgeFunction<V> jumpFnE;
-		EdgeFunction<V> fPrime;
-		boolean newFunction;
-		synchronized (jumpFn) {
-			jumpFnE = jumpFn.reverseLookup(target, targetVal).get(sourceVal);
-			if(jumpFnE==null) jumpFnE = allTop; //JumpFn is initialized to all-top (see line [2] in SRH96 paper)
-			fPrime = jumpFnE.joinWith(f);
-			newFunction = !fPrime.equalTo(jumpFnE);
-			if(newFunction) {
-				jumpFn.addFunction(sourceVal, target, targetVal, fPrime);
-			}
-		}
+		//JumpFn is initialized to all-top (see line [2] in SRH96 paper)
+		EdgeFunction<V> fPrime = jumpFn.joinFunction(sourceVal, target, targetVal, f);
 
-		if(newFunction) {
+		if(fPrime!=null) {
 			PathEdge<N,D> edge = new PathEdge<N,D>(sourceVal, target, targetVal);
 			scheduleEdgeProcessing(edge);
 
@@ -631,16 +635,12 @@ public class IDESolver<N,D,M,V,I extends InterproceduralCFG<N, M>> {
 		D d = nAndD.getO2();		
 		M p = icfg.getMethodOf(n);
 		for(N c: icfg.getCallsFromWithin(p)) {					
-			Set<Entry<D, EdgeFunction<V>>> entries; 
-			synchronized (jumpFn) {
-				entries = jumpFn.forwardLookup(d,c).entrySet();
-				for(Map.Entry<D,EdgeFunction<V>> dPAndFP: entries) {
-					D dPrime = dPAndFP.getKey();
-					EdgeFunction<V> fPrime = dPAndFP.getValue();
-					N sP = n;
-					propagateValue(c,dPrime,fPrime.computeTarget(val(sP,d)));
-					flowFunctionApplicationCount++;
-				}
+			for(Map.Entry<D,EdgeFunction<V>> dPAndFP: jumpFn.forwardLookup(d,c).entrySet()) {
+				D dPrime = dPAndFP.getKey();
+				EdgeFunction<V> fPrime = dPAndFP.getValue();
+				N sP = n;
+				propagateValue(c,dPrime,fPrime.computeTarget(val(sP,d)));
+				flowFunctionApplicationCount++;
 			}
 		}
 	}
@@ -692,50 +692,39 @@ public class IDESolver<N,D,M,V,I extends InterproceduralCFG<N, M>> {
 	}
 
 	private EdgeFunction<V> jumpFunction(PathEdge<N,D> edge) {
-		synchronized (jumpFn) {
-			EdgeFunction<V> function = jumpFn.forwardLookup(edge.factAtSource(), edge.getTarget()).get(edge.factAtTarget());
-			if(function==null) return allTop; //JumpFn initialized to all-top, see line [2] in SRH96 paper
-			return function;
-		}
+		EdgeFunction<V> function = jumpFn.forwardLookup(edge.factAtSource(), edge.getTarget()).get(edge.factAtTarget());
+		if(function==null) return allTop; //JumpFn initialized to all-top, see line [2] in SRH96 paper
+		return function;
 	}
 
-	private Set<Cell<N, D, EdgeFunction<V>>> endSummary(N sP, D d3) {
-		Table<N, D, EdgeFunction<V>> map = endSummary.get(sP, d3);
-		if(map==null) return Collections.emptySet();
-		return map.cellSet();
+	private CalleeContext calleeContext(N sP, D d) {
+		Pair<N,D> key = new Pair<N,D>(sP, d);
+		CalleeContext context = calleeContexts.get(key);
+		if(context==null) {
+			context = new CalleeContext();
+			CalleeContext old = calleeContexts.putIfAbsent(key, context);
+			if(old!=null) context = old;
+		}
+		return context;
 	}
 
 	private void addEndSummary(N sP, D d1, N eP, D d2, EdgeFunction<V> f) {
-		Table<N, D, EdgeFunction<V>> summaries = endSummary.get(sP, d1);
-		if(summaries==null) {
-			summaries = HashBasedTable.create();
-			endSummary.put(sP, d1, summaries);
-		}
-		//note: at this point we don't need to join with a potential previous f
-		//because f is a jump function, which is already properly joined
-		//within propagate(..)
-		summaries.put(eP,d2,f);
-	}	
-	
-	private Map<N, Set<D>> incoming(D d1, N sP) {
-		synchronized (incoming) {
-			Map<N, Set<D>> map = incoming.get(sP, d1);
-			if(map==null) return Collections.emptyMap();
-			return map;
+		CalleeContext context = calleeContext(sP, d1);
+		synchronized (context) {
+			//note: at this point we don't need to join with a potential previous f
+			//because f is a jump function, which is already properly joined
+			//within propagate(..)
+			context.endSummary.put(eP,d2,f);
 		}
-	}
+	}	
 	
 	protected void addIncoming(N sP, D d3, N n, D d2) {
-		synchronized (incoming) {
-			Map<N, Set<D>> summaries = incoming.get(sP, d3);
-			if(summaries==null) {
-				summaries = new HashMap<N, Set<D>>();
-				incoming.put(sP, d3, summaries);
-			}
-			Set<D> set = summaries.get(n);
+		CalleeContext context = calleeContext(sP, d3);
+		synchronized (context) {
+			Set<D> set = context.incoming.get(n);
 			if(set==null) {
 				set = new HashSet<D>();
-				summaries.put(n,set);
+				context.incoming.put(n,set);
 			}
 			set.add(d2);
 		}
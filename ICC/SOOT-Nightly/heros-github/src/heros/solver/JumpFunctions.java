@@ -16,55 +16,96 @@ import heros.SynchronizedBy;
 import heros.ThreadSafe;
 
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import com.google.common.collect.Table.Cell;
+import com.google.common.collect.Tables;
 
 
 /**
- * The IDE algorithm uses a list of jump functions. Instead of a list, we use a set of three
- * maps that are kept in sync. This allows for efficient indexing: the algorithm accesses
- * elements from the list through three different indices.
+ * The IDE algorithm uses a list of jump functions. Instead of a list, we use maps that are
+ * kept in sync. This allows for efficient indexing: the algorithm accesses elements from the
+ * list through three different indices.
+ * 
+ * The maps are sharded by target node: all jump functions into a node are held by one
+ * {@link TargetNodeFunctions}, which is locked only while an update to that node is recorded.
+ * Lookups do not lock; they see the maps as they are at the time and never fail with a
+ * concurrent modification.
  */
 @ThreadSafe
 public class JumpFunctions<N,D,L> {
 	
-	//mapping from target node and value to a list of all source values and associated functions
-	//where the list is implemented as a mapping from the source value to the function
-	//we exclude empty default functions
-	@SynchronizedBy("consistent lock on this")
-	protected Table<N,D,Map<D,EdgeFunction<L>>> nonEmptyReverseLookup = HashBasedTable.create();
-	
-	//mapping from source value and target node to a list of all target values and associated functions
-	//where the list is implemented as a mapping from the source value to the function
-	//we exclude empty default functions 
-	@SynchronizedBy("consistent lock on this")
-	protected Table<D,N,Map<D,EdgeFunction<L>>> nonEmptyForwardLookup = HashBasedTable.create();
-
-	//a mapping from target node to a list of triples consisting of source value,
-	//target value and associated function; the triple is implemented by a table
-	//we exclude empty default functions 
-	@SynchronizedBy("consistent lock on this")
-	protected Map<N,Table<D,D,EdgeFunction<L>>> nonEmptyLookupByTargetNode = new HashMap<N,Table<D,D,EdgeFunction<L>>>();
+	//mapping from target node to the jump functions into that node
+	@SynchronizedBy("thread safe data structure")
+	protected final ConcurrentMap<N,TargetNodeFunctions<D,L>> byTargetNode = new ConcurrentHashMap<N,TargetNodeFunctions<D,L>>();
 
 	@DontSynchronize("immutable")	
 	private final EdgeFunction<L> allTop;
 	
+	/**
+	 * The jump functions into one target node. We exclude empty default functions.
+	 */
+	protected static class TargetNodeFunctions<D,L> {
+		
+		//mapping from target value to all source values and associated functions
+		@SynchronizedBy("thread safe data structure, updates lock the instance")
+		protected final ConcurrentMap<D,ConcurrentMap<D,EdgeFunction<L>>> reverseLookup = new ConcurrentHashMap<D,ConcurrentMap<D,EdgeFunction<L>>>(4);
+		
+		//mapping from source value to all target values and associated functions
+		@SynchronizedBy("thread safe data structure, updates lock the instance")
+		protected final ConcurrentMap<D,ConcurrentMap<D,EdgeFunction<L>>> forwardLookup = new ConcurrentHashMap<D,ConcurrentMap<D,EdgeFunction<L>>>(4);
+		
+		private void put(D sourceVal, D targetVal, EdgeFunction<L> function) {
+			get(reverseLookup, targetVal).put(sourceVal, function);
+			get(forwardLookup, sourceVal).put(targetVal, function);
+		}
+		
+		private boolean remove(D sourceVal, D targetVal) {
+			Map<D,EdgeFunction<L>> sourceValToFunc = reverseLookup.get(targetVal);
+			if (sourceValToFunc == null || sourceValToFunc.remove(sourceVal) == null)
+				return false;
+			if (sourceValToFunc.isEmpty())
+				reverseLookup.remove(targetVal);
+			Map<D,EdgeFunction<L>> targetValToFunc = forwardLookup.get(sourceVal);
+			targetValToFunc.remove(targetVal);
+			if (targetValToFunc.isEmpty())
+				forwardLookup.remove(sourceVal);
+			return true;
+		}
+		
+		private static <D,L> ConcurrentMap<D,EdgeFunction<L>> get(ConcurrentMap<D,ConcurrentMap<D,EdgeFunction<L>>> lookup, D key) {
+			ConcurrentMap<D,EdgeFunction<L>> map = lookup.get(key);
+			if(map==null) {
+				map = new ConcurrentHashMap<D,EdgeFunction<L>>(4);
+				lookup.put(key, map);
+			}
+			return map;
+		}
+	}
+	
 	public JumpFunctions(EdgeFunction<L> allTop) {
 		this.allTop = allTop;
 	}
+	
+	private TargetNodeFunctions<D,L> targetNodeFunctions(N target) {
+		TargetNodeFunctions<D,L> functions = byTargetNode.get(target);
+		if(functions==null) {
+			functions = new TargetNodeFunctions<D,L>();
+			TargetNodeFunctions<D,L> old = byTargetNode.putIfAbsent(target, functions);
+			if(old!=null) functions = old;
+		}
+		return functions;
+	}
 
 	/**
 	 * Records a jump function. The source statement is implicit.
 	 * @see PathEdge
 	 */
-	public synchronized void addFunction(D sourceVal, N target, D targetVal, EdgeFunction<L> function) {
+	public void addFunction(D sourceVal, N target, D targetVal, EdgeFunction<L> function) {
 		assert sourceVal!=null;
 		assert target!=null;
 		assert targetVal!=null;
@@ -73,26 +114,46 @@ public class JumpFunctions<N,D,L> {
 		//we do not store the default function (all-top)
 		if(function.equalTo(allTop)) return;
 		
-		Map<D,EdgeFunction<L>> sourceValToFunc = nonEmptyReverseLookup.get(target, targetVal);
-		if(sourceValToFunc==null) {
-			sourceValToFunc = new LinkedHashMap<D,EdgeFunction<L>>();
-			nonEmptyReverseLookup.put(target,targetVal,sourceValToFunc);
+		TargetNodeFunctions<D,L> functions = targetNodeFunctions(target);
+		synchronized (functions) {
+			functions.put(sourceVal, targetVal, function);
 		}
-		sourceValToFunc.put(sourceVal, function);
+	}
+	
+	/**
+	 * Joins the given function with the jump function recorded for the same source value,
+	 * target statement and target value (all-top if there is none), and records the result.
+	 * This is atomic: concurrent joins into the same jump function are all reflected in it.
+	 * @return the joined function if it differs from the one recorded before, or
+	 * <code>null</code> if the jump function did not change
+	 */
+	public EdgeFunction<L> joinFunction(D sourceVal, N target, D targetVal, EdgeFunction<L> function) {
+		assert sourceVal!=null;
+		assert target!=null;
+		assert targetVal!=null;
+		assert function!=null;
 		
-		Map<D, EdgeFunction<L>> targetValToFunc = nonEmptyForwardLookup.get(sourceVal, target);
-		if(targetValToFunc==null) {
-			targetValToFunc = new LinkedHashMap<D,EdgeFunction<L>>();
-			nonEmptyForwardLookup.put(sourceVal,target,targetValToFunc);
+		TargetNodeFunctions<D,L> functions = targetNodeFunctions(target);
+		while(true) {
+			//the join is computed without holding the lock and retried if another thread
+			//has changed the function in the meantime
+			EdgeFunction<L> current = lookup(functions, sourceVal, targetVal);
+			EdgeFunction<L> joined = current.joinWith(function);
+			if(joined.equalTo(current)) return null;
+			synchronized (functions) {
+				if(lookup(functions, sourceVal, targetVal)!=current) continue;
+				//we do not store the default function (all-top)
+				if(!joined.equalTo(allTop))
+					functions.put(sourceVal, targetVal, joined);
+			}
+			return joined;
 		}
-		targetValToFunc.put(targetVal, function);
-
-		Table<D,D,EdgeFunction<L>> table = nonEmptyLookupByTargetNode.get(target);
-		if(table==null) {
-			table = HashBasedTable.create();
-			nonEmptyLookupByTargetNode.put(target,table);
-		}
-		table.put(sourceVal, targetVal, function);
+	}
+	
+	private EdgeFunction<L> lookup(TargetNodeFunctions<D,L> functions, D sourceVal, D targetVal) {
+		Map<D,EdgeFunction<L>> sourceValToFunc = functions.reverseLookup.get(targetVal);
+		EdgeFunction<L> function = sourceValToFunc==null ? null : sourceValToFunc.get(sourceVal);
+		return function==null ? allTop : function;
 	}
 	
 	/**
@@ -100,12 +161,14 @@ public class JumpFunctions<N,D,L> {
      * source values, and for each the associated edge function.
      * The return value is a mapping from source value to function.
 	 */
-	public synchronized Map<D,EdgeFunction<L>> reverseLookup(N target, D targetVal) {
+	public Map<D,EdgeFunction<L>> reverseLookup(N target, D targetVal) {
 		assert target!=null;
 		assert targetVal!=null;
-		Map<D,EdgeFunction<L>> res = nonEmptyReverseLookup.get(target,targetVal);
+		TargetNodeFunctions<D,L> functions = byTargetNode.get(target);
+		if(functions==null) return Collections.emptyMap();
+		Map<D,EdgeFunction<L>> res = functions.reverseLookup.get(targetVal);
 		if(res==null) return Collections.emptyMap();
-		return res;
+		return Collections.unmodifiableMap(res);
 	}
 	
 	/**
@@ -113,24 +176,30 @@ public class JumpFunctions<N,D,L> {
 	 * associated target values, and for each the associated edge function. 
      * The return value is a mapping from target value to function.
 	 */
-	public synchronized Map<D,EdgeFunction<L>> forwardLookup(D sourceVal, N target) {
+	public Map<D,EdgeFunction<L>> forwardLookup(D sourceVal, N target) {
 		assert sourceVal!=null;
 		assert target!=null;
-		Map<D, EdgeFunction<L>> res = nonEmptyForwardLookup.get(sourceVal, target);
+		TargetNodeFunctions<D,L> functions = byTargetNode.get(target);
+		if(functions==null) return Collections.emptyMap();
+		Map<D,EdgeFunction<L>> res = functions.forwardLookup.get(sourceVal);
 		if(res==null) return Collections.emptyMap();
-		return res;
+		return Collections.unmodifiableMap(res);
 	}
 	
 	/**
 	 * Returns for a given target statement all jump function records with this target.
 	 * The return value is a set of records of the form (sourceVal,targetVal,edgeFunction).
 	 */
-	public synchronized Set<Cell<D,D,EdgeFunction<L>>> lookupByTarget(N target) {
+	public Set<Cell<D,D,EdgeFunction<L>>> lookupByTarget(N target) {
 		assert target!=null;
-		Table<D, D, EdgeFunction<L>> table = nonEmptyLookupByTargetNode.get(target);
-		if(table==null) return Collections.emptySet();
-		Set<Cell<D, D, EdgeFunction<L>>> res = table.cellSet();
-		if(res==null) return Collections.emptySet();
+		TargetNodeFunctions<D,L> functions = byTargetNode.get(target);
+		if(functions==null) return Collections.emptySet();
+		Set<Cell<D,D,EdgeFunction<L>>> res = new LinkedHashSet<Cell<D,D,EdgeFunction<L>>>();
+		for(Map.Entry<D,ConcurrentMap<D,EdgeFunction<L>>> sourceValAndFuncs: functions.forwardLookup.entrySet()) {
+			for(Map.Entry<D,EdgeFunction<L>> targetValAndFunc: sourceValAndFuncs.getValue().entrySet()) {
+				res.add(Tables.immutableCell(sourceValAndFuncs.getKey(), targetValAndFunc.getKey(), targetValAndFunc.getValue()));
+			}
+		}
 		return res;
 	}
 	
@@ -140,45 +209,24 @@ public class JumpFunctions<N,D,L> {
 	 * @return True if the function has actually been removed. False if it was not
 	 * there anyway.
 	 */
-	public synchronized boolean removeFunction(D sourceVal, N target, D targetVal) {
+	public boolean removeFunction(D sourceVal, N target, D targetVal) {
 		assert sourceVal!=null;
 		assert target!=null;
 		assert targetVal!=null;
 		
-		Map<D,EdgeFunction<L>> sourceValToFunc = nonEmptyReverseLookup.get(target, targetVal);
-		if (sourceValToFunc == null)
-			return false;
-		if (sourceValToFunc.remove(sourceVal) == null)
-			return false;
-		if (sourceValToFunc.isEmpty())
-			nonEmptyReverseLookup.remove(targetVal, targetVal);
-		
-		Map<D, EdgeFunction<L>> targetValToFunc = nonEmptyForwardLookup.get(sourceVal, target);
-		if (targetValToFunc == null)
-			return false;
-		if (targetValToFunc.remove(targetVal) == null)
+		TargetNodeFunctions<D,L> functions = byTargetNode.get(target);
+		if (functions == null)
 			return false;
-		if (targetValToFunc.isEmpty())
-			nonEmptyForwardLookup.remove(sourceVal, target);
-
-		Table<D,D,EdgeFunction<L>> table = nonEmptyLookupByTargetNode.get(target);
-		if (table == null)
-			return false;
-		if (table.remove(sourceVal, targetVal) == null)
-			return false;
-		if (table.isEmpty())
-			nonEmptyLookupByTargetNode.remove(target);
-		
-		return true;
+		synchronized (functions) {
+			return functions.remove(sourceVal, targetVal);
+		}
 	}
 
 	/**
 	 * Removes all jump functions
 	 */
-	public synchronized void clear() {
-		this.nonEmptyForwardLookup.clear();
-		this.nonEmptyLookupByTargetNode.clear();
-		this.nonEmptyReverseLookup.clear();
+	public void clear() {
+		this.byTargetNode.clear();
 	}
 
 }
@@ -73,7 +73,10 @@ class AbstractSootFieldRef implements SootFieldRef {
     }
 
     public SootField resolve() {
-        return resolve(null);
+        // may add a phantom field to the declaring class
+        synchronized(Scene.v()) {
+            return resolve(null);
+        }
     }
     private SootField checkStatic(SootField ret) {
         if( ret.isStatic() != isStatic() && !ret.isPhantom()) {
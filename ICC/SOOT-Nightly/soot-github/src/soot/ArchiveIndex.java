@@ -0,0 +1,125 @@
+/* Soot - a J*va Optimization Framework
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+
+package soot;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/** An index of the entries of the archives (.jar, .zip, .apk) on the
+ * soot-class-path. Each archive is opened once, its entries are listed once,
+ * and the ZipFile is kept open so that every entry found in it is read
+ * through the same handle.
+ *
+ * Unlike the singletons of G, the index is shared by all runs of Soot in a
+ * JVM and survives G.reset(), so that a tool running Soot several times over
+ * the same class path reads each archive once. An archive is opened again
+ * if its size or modification time has changed since it was indexed. */
+public class ArchiveIndex
+{
+    /* Deliberately not held by G: see above. */
+    private static final ArchiveIndex instance = new ArchiveIndex();
+    public static ArchiveIndex v() { return instance; }
+
+    private ArchiveIndex() {}
+
+    /** An indexed archive. */
+    public static class Archive {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final ZipFile zipFile;
+        private final Map<String, ZipEntry> entries;
+        private final boolean hasClassesDotDex;
+
+        private Archive( String path, File file ) throws IOException {
+            this.path = path;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.zipFile = new ZipFile(file);
+            Map<String, ZipEntry> entries = new LinkedHashMap<String, ZipEntry>();
+            boolean hasClassesDotDex = false;
+            for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements();) {
+                ZipEntry entry = e.nextElement();
+                entries.put(entry.getName(), entry);
+                if (entry.getName().equals("classes.dex"))
+                    hasClassesDotDex = true;
+            }
+            this.entries = Collections.unmodifiableMap(entries);
+            this.hasClassesDotDex = hasClassesDotDex;
+        }
+
+        public String path() { return path; }
+        public ZipFile zipFile() { return zipFile; }
+
+        /** Returns the entry of the given name, or null. */
+        public ZipEntry entry( String name ) { return entries.get(name); }
+
+        /** Returns the entries in the order in which they appear in the archive. */
+        public Collection<ZipEntry> entries() { return entries.values(); }
+
+        /** Whether the archive is an apk, holding its classes in classes.dex. */
+        public boolean hasClassesDotDex() { return hasClassesDotDex; }
+
+        private boolean isCurrent( File file ) {
+            return file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    private final Map<String, Archive> archives = new HashMap<String, Archive>();
+
+    /** Returns the index of the archive at the given path, opening it if it
+     * was not indexed yet or has changed on disk. */
+    public synchronized Archive get( String path ) throws IOException {
+        File file = new File(path);
+        Archive ret = archives.get(path);
+        if( ret != null ) {
+            if( ret.isCurrent(file) ) return ret;
+            archives.remove(path);
+            close(ret);
+        }
+        ret = new Archive(path, file);
+        archives.put(path, ret);
+        return ret;
+    }
+
+    /** Closes all archives and empties the index. Archives that are needed
+     * again are opened on demand. */
+    public synchronized void clear() {
+        for (Iterator<Archive> it = archives.values().iterator(); it.hasNext();) {
+            close(it.next());
+            it.remove();
+        }
+    }
+
+    private static void close( Archive archive ) {
+        try {
+            archive.zipFile.close();
+        } catch( IOException e ) {
+            G.v().out.println("Warning: could not close " + archive.path + ": " + e);
+        }
+    }
+}
@@ -33,6 +33,12 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -578,10 +584,121 @@ public class PackManager {
         }
     }
 
+    /** System property giving the number of threads that apply the jtp pack;
+     * unset or 1 runs all body packs on the calling thread. */
+    public static final String THREADS_PROPERTY = "soot.threads";
+
+    /* InferenceTransformer's option: constraints are only reproducible if
+     * bodies are transformed in a fixed order. */
+    private static final String DETERMINISTIC_PROPERTY = "deterministic";
+
+    private boolean reportTimes() {
+        return System.getProperty(THREADS_PROPERTY) != null;
+    }
+
+    private int bodyPackThreads() {
+        int threads = Integer.getInteger(THREADS_PROPERTY, 1);
+        if( threads <= 1 ) return 1;
+        String reason = null;
+        if( System.getProperty(DETERMINISTIC_PROPERTY) != null ) {
+            reason = "-D" + DETERMINISTIC_PROPERTY;
+        } else if( Options.v().interactive_mode() ) {
+            reason = "interactive mode";
+        } else if( Options.v().via_shimple() || Options.v().whole_shimple() ) {
+            reason = "Shimple";
+        } else {
+            switch( Options.v().output_format() ) {
+                case Options.output_format_shimple :
+                case Options.output_format_shimp :
+                case Options.output_format_dava :
+                    reason = "this output format";
+            }
+        }
+        if( reason != null ) {
+            G.v().out.println( "Warning: running body packs on one thread because of " + reason );
+            return 1;
+        }
+        return threads;
+    }
+
     private void runBodyPacks( Iterator<SootClass> classes ) {
+        int threads = bodyPackThreads();
+        if( threads <= 1 ) {
+            long start = System.currentTimeMillis();
+            while( classes.hasNext() ) {
+                runBodyPacks( classes.next() );
+            }
+            if( reportTimes() )
+                G.v().out.println( "Ran body packs in " + (System.currentTimeMillis() - start) + " ms" );
+            return;
+        }
+
+        List<SootClass> classList = new ArrayList<SootClass>();
         while( classes.hasNext() ) {
-            runBodyPacks( classes.next() );
+            classList.add( classes.next() );
         }
+        long start = System.currentTimeMillis();
+        Set<SootMethod> jtpApplied = applyJtpInParallel( classList, threads );
+        long jtpEnd = System.currentTimeMillis();
+        for( SootClass c : classList ) {
+            runBodyPacks( c, jtpApplied );
+        }
+        G.v().out.println( "Ran jtp on " + jtpApplied.size() + " bodies of " + classList.size() + " classes in "
+                + (jtpEnd - start) + " ms on " + threads + " threads, other body packs in "
+                + (System.currentTimeMillis() - jtpEnd) + " ms" );
+    }
+
+    /**
+     * Applies jtp to the concrete methods of the given classes, a class at a
+     * time on each of the threads, and returns the methods done.
+     *
+     * Only jtp runs in parallel. The front ends keep the state of the method
+     * being read in singletons (soot.coffi.Util) and most of Soot's own body
+     * transformers are singletons with fields, so bodies are retrieved (with
+     * jb) beforehand and the other packs run afterwards on one thread. The
+     * transformers in jtp must be thread safe; Scene changes they make
+     * (phantom classes and members, method and field refs) are serialized on
+     * the Scene.
+     */
+    private Set<SootMethod> applyJtpInParallel( List<SootClass> classes, int threads ) {
+        final Pack jtp = getPack("jtp");
+        final boolean validate = Options.v().validate();
+        final Set<SootMethod> done = Collections.newSetFromMap(new ConcurrentHashMap<SootMethod, Boolean>());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for( SootClass c : classes ) {
+                // a copy, as transformers may add phantom methods to the class
+                final List<SootMethod> methods = new ArrayList<SootMethod>(c.getMethods());
+                results.add(executor.submit(new Runnable() {
+                    public void run() {
+                        for( SootMethod m : methods ) {
+                            if( !m.isConcrete() ) continue;
+                            JimpleBody body = (JimpleBody) m.retrieveActiveBody();
+                            jtp.apply(body);
+                            if( validate ) {
+                                body.validate();
+                            }
+                            done.add(m);
+                        }
+                    }
+                }));
+            }
+            for( Future<?> result : results ) {
+                result.get();
+            }
+        } catch( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while running jtp", e );
+        } catch( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if( cause instanceof RuntimeException ) throw (RuntimeException) cause;
+            if( cause instanceof Error ) throw (Error) cause;
+            throw new RuntimeException( cause );
+        } finally {
+            executor.shutdownNow();
+        }
+        return done;
     }
 
     private void handleInnerClasses(){
@@ -797,6 +914,11 @@ public class PackManager {
     }
 
     private void runBodyPacks(SootClass c) {
+        runBodyPacks(c, null);
+    }
+
+    /* Skips jtp for the methods in jtpApplied, if not null */
+    private void runBodyPacks(SootClass c, Set<SootMethod> jtpApplied) {
         final int format = Options.v().output_format();
         if (format == Options.output_format_dava) {
             G.v().out.print("Decompiling ");
@@ -894,9 +1016,11 @@ public class PackManager {
 
             if (produceJimple) {
                 JimpleBody body =(JimpleBody) m.retrieveActiveBody();
-                PackManager.v().getPack("jtp").apply(body);
-                if( Options.v().validate() ) {
-                    body.validate();
+                if (jtpApplied == null || !jtpApplied.contains(m)) {
+                    PackManager.v().getPack("jtp").apply(body);
+                    if( Options.v().validate() ) {
+                        body.validate();
+                    }
                 }
                 PackManager.v().getPack("jop").apply(body);
                 PackManager.v().getPack("jap").apply(body);
@@ -1092,6 +1216,7 @@ public class PackManager {
     }
 
     private void retrieveAllBodies() {
+        long start = System.currentTimeMillis();
         Iterator<SootClass> clIt = reachableClasses();
         while( clIt.hasNext() ) {
             SootClass cl = (SootClass) clIt.next();
@@ -1114,5 +1239,7 @@ public class PackManager {
                 }
             }
         }
+        if( reportTimes() )
+            G.v().out.println( "Retrieved bodies in " + (System.currentTimeMillis() - start) + " ms" );
     }
 }
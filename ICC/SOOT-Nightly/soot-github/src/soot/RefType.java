@@ -64,7 +64,10 @@ public class RefType extends RefLikeType implements Comparable
     {
         if(Scene.v().containsType(className)) {
         	return Scene.v().getRefType( className );
-        } else {
+        }
+        synchronized(Scene.v()) {
+            if(Scene.v().containsType(className))
+                return Scene.v().getRefType( className );
 	        RefType ret = new RefType(className);
 	        Scene.v().addRefType( ret );
 	        return ret;
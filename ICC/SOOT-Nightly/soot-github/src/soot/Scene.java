@@ -44,6 +44,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -123,7 +124,7 @@ public class Scene  //extends AbstractHost
     Chain<SootClass> libraryClasses = new HashChain<SootClass>();
     Chain<SootClass> phantomClasses = new HashChain<SootClass>();
     
-    private final Map<String,Type> nameToClass = new HashMap<String,Type>();
+    private final Map<String,Type> nameToClass = new ConcurrentHashMap<String,Type>();
 
     ArrayNumberer<Kind> kindNumberer = new ArrayNumberer<Kind>();
     ArrayNumberer<Type> typeNumberer = new ArrayNumberer<Type>();
@@ -493,7 +494,7 @@ public class Scene  //extends AbstractHost
         activePointsToAnalysis = null;
     }
 
-    public void addClass(SootClass c) 
+    public synchronized void addClass(SootClass c) 
     {
         if(c.isInScene())
             throw new RuntimeException("already managed: "+c.getName());
@@ -510,7 +511,7 @@ public class Scene  //extends AbstractHost
         modifyHierarchy();
     }
 
-    public void removeClass(SootClass c)
+    public synchronized void removeClass(SootClass c)
     {
         if(!c.isInScene())
             throw new RuntimeException();
@@ -648,7 +649,7 @@ public class Scene  //extends AbstractHost
         return ret;
     }
 
-    public SootClass loadClass(String className, int desiredLevel) 
+    public synchronized SootClass loadClass(String className, int desiredLevel) 
     {   
         /*
         if(Options.v().time())
@@ -711,7 +712,17 @@ public class Scene  //extends AbstractHost
 
 		if (toReturn != null) {
 			return toReturn;
-		} else if (allowsPhantomRefs() ||
+		} else {
+			return getOrAddPhantomClass(className);
+		}
+	}
+
+	/* Another thread may have added the class since getSootClass looked. */
+	private synchronized SootClass getOrAddPhantomClass(String className) {
+		RefType type = (RefType) nameToClass.get(className);
+		if (type != null && type.hasSootClass())
+			return type.getSootClass();
+		if (allowsPhantomRefs() ||
 				   className.equals(SootClass.INVOKEDYNAMIC_DUMMY_CLASS_NAME)) {
 			SootClass c = new SootClass(className);
 			addClass(c);
@@ -76,7 +76,7 @@ public class SootMethod
     private List<SootClass> exceptions = null;
 
     /** Active body associated with this method. */
-    private Body activeBody;
+    private volatile Body activeBody;
 
     /** Tells this method how to find out where its body lives. */
     protected MethodSource ms;
@@ -317,10 +317,15 @@ public class SootMethod
                     + "; maybe you want to call c.setApplicationClass() on this class!");
 
         if (!hasActiveBody()) {
-            //	    G.v().out.println("Retrieving "+this.getSignature());
+            // the front ends and jb are not thread safe, see PackManager
+            synchronized(Scene.v()) {
+                if (!hasActiveBody()) {
+                    //	    G.v().out.println("Retrieving "+this.getSignature());
 
-            setActiveBody(this.getBodyFromMethodSource("jb"));
-            ms = null;
+                    setActiveBody(this.getBodyFromMethodSource("jb"));
+                    ms = null;
+                }
+            }
         }
         return getActiveBody();
     }
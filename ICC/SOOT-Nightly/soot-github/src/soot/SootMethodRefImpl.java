@@ -102,7 +102,10 @@ class SootMethodRefImpl implements SootMethodRef {
     }
 
     public SootMethod resolve() {
-        return resolve(null);
+        // may add a phantom method to the declaring class
+        synchronized(Scene.v()) {
+            return resolve(null);
+        }
     }
     
     private SootMethod checkStatic(SootMethod ret) {
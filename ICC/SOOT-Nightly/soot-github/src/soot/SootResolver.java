@@ -104,15 +104,17 @@ public class SootResolver
      * */
     public SootClass makeClassRef(String className)
     {
-        if(Scene.v().containsClass(className))
-            return Scene.v().getSootClass(className);
+        synchronized(Scene.v()) {
+            if(Scene.v().containsClass(className))
+                return Scene.v().getSootClass(className);
 
-        SootClass newClass;
-        newClass = new SootClass(className);
-        newClass.setResolvingLevel(SootClass.DANGLING);
-        Scene.v().addClass(newClass);
+            SootClass newClass;
+            newClass = new SootClass(className);
+            newClass.setResolvingLevel(SootClass.DANGLING);
+            Scene.v().addClass(newClass);
 
-        return newClass;
+            return newClass;
+        }
     }
 
 
@@ -122,6 +124,12 @@ public class SootResolver
      * been resolved, just returns the class that was already resolved.
      * */
     public SootClass resolveClass(String className, int desiredLevel) {
+        synchronized(Scene.v()) {
+            return resolveClassLocked(className, desiredLevel);
+        }
+    }
+
+    private SootClass resolveClassLocked(String className, int desiredLevel) {
     	SootClass resolvedClass = null;
     	try{
 			resolvedClass = makeClassRef(className);
@@ -24,7 +24,6 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -149,6 +148,7 @@ public class SourceLocator
     public List<String> classPath() { return classPath; }
     public void invalidateClassPath() {
         classPath = null;
+        archives.clear();
     }
 
     private List<String> sourcePath;
@@ -174,49 +174,63 @@ public class SourceLocator
         return false;
     }
 
+    /** The archives of the class path looked at in this run, mapped to their
+     * index; directories and other paths are mapped to null. Whether a path is
+     * an archive is thus checked once per run rather than at every lookup. */
+    private final Map<String, ArchiveIndex.Archive> archives = new HashMap<String, ArchiveIndex.Archive>();
+
+    private ArchiveIndex.Archive archive(String path) throws IOException {
+        ArchiveIndex.Archive ret = archives.get(path);
+        if( ret == null && !archives.containsKey(path) ) {
+            if( isArchive(path) ) ret = ArchiveIndex.v().get(path);
+            archives.put(path, ret);
+        }
+        return ret;
+    }
+
 	public List<String> getClassesUnder(String aPath) {
 		List<String> classes = new ArrayList<String>();
 
-		if (isArchive(aPath)) {
+		ArchiveIndex.Archive archive;
+		try {
+			archive = archive(aPath);
+		} catch (IOException e) {
+			G.v().out.println("Error reading " + aPath + ": " + e.toString());
+			throw new CompilationDeathException(CompilationDeathException.COMPILATION_ABORTED);
+		}
+
+		if (archive != null) {
 			List<String> inputExtensions = new ArrayList<String>(3);
 			inputExtensions.add(".class");
 			inputExtensions.add(".jimple");
 
-			try {
-				ZipFile archive = new ZipFile(aPath);
-
-				boolean hasClassesDotDex = false;
-				for (Enumeration<? extends ZipEntry> entries = archive.entries(); entries.hasMoreElements();) {
-					ZipEntry entry = entries.nextElement();
-					String entryName = entry.getName();
-					// We are dealing with an apk file
-					if (entryName.equals("classes.dex")) {
-						hasClassesDotDex = true;
-						classes.addAll(DexClassProvider.classesOfDex(new File(aPath)));
-					}
+			boolean hasClassesDotDex = archive.hasClassesDotDex();
+			// We are dealing with an apk file
+			if (hasClassesDotDex) {
+				try {
+					classes.addAll(DexClassProvider.classesOfDex(new File(aPath)));
+				} catch (IOException e) {
+					G.v().out.println("Error reading " + aPath + ": " + e.toString());
+					throw new CompilationDeathException(CompilationDeathException.COMPILATION_ABORTED);
 				}
+			}
 
-				for (Enumeration<? extends ZipEntry> entries = archive.entries(); entries.hasMoreElements();) {
-					ZipEntry entry = entries.nextElement();
-					String entryName = entry.getName();
-					int extensionIndex = entryName.lastIndexOf('.');
-					if (extensionIndex >= 0) {
-						String entryExtension = entryName.substring(extensionIndex);
-						if (inputExtensions.contains(entryExtension)) {
-							entryName = entryName.substring(0, extensionIndex);
-							entryName = entryName.replace('/', '.');
-							if (!hasClassesDotDex) {
-								classes.add(entryName);
-							} else {
-								G.v().out.println("Warning: Since archive contains 'classes.dex', the following entry is not loaded: "
-												+ entry.getName());
-							}
+			for (ZipEntry entry : archive.entries()) {
+				String entryName = entry.getName();
+				int extensionIndex = entryName.lastIndexOf('.');
+				if (extensionIndex >= 0) {
+					String entryExtension = entryName.substring(extensionIndex);
+					if (inputExtensions.contains(entryExtension)) {
+						entryName = entryName.substring(0, extensionIndex);
+						entryName = entryName.replace('/', '.');
+						if (!hasClassesDotDex) {
+							classes.add(entryName);
+						} else {
+							G.v().out.println("Warning: Since archive contains 'classes.dex', the following entry is not loaded: "
+											+ entry.getName());
 						}
 					}
 				}
-			} catch (IOException e) {
-				G.v().out.println("Error reading " + aPath + ": " + e.toString());
-				throw new CompilationDeathException(CompilationDeathException.COMPILATION_ABORTED);
 			}
 		} else {
 			File file = new File(aPath);
@@ -457,7 +471,7 @@ public class SourceLocator
     }
 
     private static InputStream doJDKBugWorkaround(InputStream is, long size) throws IOException {
-	
+	try {
 	int sz = (int) size;
 	byte[] buf = new byte[sz];					
 				
@@ -471,6 +485,10 @@ public class SourceLocator
 	    sz -= ln;
 	}
 	return  new ByteArrayInputStream(buf);		
+	} finally {
+	    // the archive stays open, so its entry streams must not leak
+	    is.close();
+	}
     }
 
 
@@ -478,8 +496,14 @@ public class SourceLocator
     public FoundFile lookupInClassPath( String fileName ) {
         for (String dir : classPath) {
             FoundFile ret;
-            if(isArchive(dir)) {
-                ret = lookupInArchive(dir, fileName);
+            ArchiveIndex.Archive archive;
+            try {
+                archive = archive(dir);
+            } catch( IOException e ) {
+                throw new RuntimeException("Caught IOException " + e + " looking in archive file " + dir + " for file " + fileName);
+            }
+            if(archive != null) {
+                ret = lookupInArchive(archive, fileName);
             } else {
                 ret = lookupInDir(dir, fileName);
             }
@@ -494,15 +518,10 @@ public class SourceLocator
         }
         return null;
     }
-    private FoundFile lookupInArchive(String archivePath, String fileName) {
-        try {
-            ZipFile archive = new ZipFile(archivePath);
-            ZipEntry entry = archive.getEntry(fileName);
-            if( entry == null ) return null;
-            return new FoundFile(archive, entry);
-        } catch( IOException e ) {
-            throw new RuntimeException("Caught IOException " + e + " looking in archive file " + archivePath + " for file " + fileName);
-        }
+    private FoundFile lookupInArchive(ArchiveIndex.Archive archive, String fileName) {
+        ZipEntry entry = archive.entry(fileName);
+        if( entry == null ) return null;
+        return new FoundFile(archive.zipFile(), entry);
     }
     private HashMap<String, String> sourceToClassMap;
 
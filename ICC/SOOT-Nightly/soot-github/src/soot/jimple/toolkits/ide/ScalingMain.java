@@ -0,0 +1,113 @@
+/* Soot - a J*va Optimization Framework
+ * Copyright (C) 1997-2013 Eric Bodden and others
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the
+ * Free Software Foundation, Inc., 59 Temple Place - Suite 330,
+ * Boston, MA 02111-1307, USA.
+ */
+package soot.jimple.toolkits.ide;
+
+import heros.InterproceduralCFG;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import soot.G;
+import soot.MethodOrMethodContext;
+import soot.PackManager;
+import soot.Scene;
+import soot.SceneTransformer;
+import soot.SootMethod;
+import soot.Transform;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.DefinitionStmt;
+import soot.jimple.toolkits.ide.exampleproblems.IFDSReachingDefinitions;
+import soot.jimple.toolkits.ide.icfg.JimpleBasedInterproceduralCFG;
+import soot.toolkits.scalar.Pair;
+
+/**
+ * Measures how the IFDS solver scales with the number of threads: solves
+ * {@link IFDSReachingDefinitions} over the whole program once per thread count
+ * given by -Dthreads (default 1,2,4,8), and checks that every run computes the
+ * same results as the first.
+ * 
+ * Takes the same arguments as {@link Main}, e.g.
+ * <pre>java -Dthreads=1,4 soot.jimple.toolkits.ide.ScalingMain -w -cp ... -main-class Foo Foo</pre>
+ */
+public class ScalingMain {
+
+	public static void main(String[] args) {
+		final List<Integer> threadCounts = new ArrayList<Integer>();
+		for(String t: System.getProperty("threads", "1,2,4,8").split(","))
+			threadCounts.add(Integer.parseInt(t.trim()));
+
+		PackManager.v().getPack("wjtp").add(new Transform("wjtp.ifds", new SceneTransformer() {
+			protected void internalTransform(String phaseName, @SuppressWarnings("rawtypes") Map options) {
+				JimpleBasedInterproceduralCFG icfg = new JimpleBasedInterproceduralCFG();
+				//warm up the JIT and the caches of the icfg
+				solve(icfg, threadCounts.get(0));
+
+				Map<Unit, Set<Pair<Value, Set<DefinitionStmt>>>> expected = null;
+				G.v().out.println("threads\tms\tfacts");
+				for(int threads: threadCounts) {
+					long before = System.nanoTime();
+					JimpleIFDSSolver<Pair<Value, Set<DefinitionStmt>>, InterproceduralCFG<Unit, SootMethod>> solver = solve(icfg, threads);
+					long millis = (System.nanoTime() - before) / 1000000;
+
+					Map<Unit, Set<Pair<Value, Set<DefinitionStmt>>>> results = results(solver);
+					int facts = 0;
+					for(Set<Pair<Value, Set<DefinitionStmt>>> r: results.values())
+						facts += r.size();
+					G.v().out.println(threads + "\t" + millis + "\t" + facts);
+					if(expected == null)
+						expected = results;
+					else if(!expected.equals(results))
+						throw new RuntimeException("results with " + threads + " threads differ from those with " + threadCounts.get(0));
+				}
+			}
+		}));
+
+		soot.Main.main(args);
+	}
+
+	private static JimpleIFDSSolver<Pair<Value, Set<DefinitionStmt>>, InterproceduralCFG<Unit, SootMethod>> solve(InterproceduralCFG<Unit, SootMethod> icfg, final int threads) {
+		IFDSReachingDefinitions problem = new IFDSReachingDefinitions(icfg) {
+			@Override
+			public int numThreads() {
+				return threads;
+			}
+		};
+		JimpleIFDSSolver<Pair<Value, Set<DefinitionStmt>>, InterproceduralCFG<Unit, SootMethod>> solver =
+				new JimpleIFDSSolver<Pair<Value, Set<DefinitionStmt>>, InterproceduralCFG<Unit, SootMethod>>(problem);
+		solver.solve();
+		return solver;
+	}
+
+	private static Map<Unit, Set<Pair<Value, Set<DefinitionStmt>>>> results(JimpleIFDSSolver<Pair<Value, Set<DefinitionStmt>>, InterproceduralCFG<Unit, SootMethod>> solver) {
+		Map<Unit, Set<Pair<Value, Set<DefinitionStmt>>>> results = new HashMap<Unit, Set<Pair<Value, Set<DefinitionStmt>>>>();
+		for(Iterator<MethodOrMethodContext> it = Scene.v().getReachableMethods().listener(); it.hasNext();) {
+			SootMethod m = it.next().method();
+			if(!m.hasActiveBody()) continue;
+			for(Unit u: m.getActiveBody().getUnits())
+				results.put(u, new HashSet<Pair<Value, Set<DefinitionStmt>>>(solver.ifdsResultsAt(u)));
+		}
+		return results;
+	}
+}
@@ -30,7 +30,7 @@ public class ArrayNumberer<E> implements IterableNumberer<E> {
     Numberable[] numberToObj = new Numberable[1024];
     int lastNumber = 0;
 
-    public void add( E oo ) {
+    public synchronized void add( E oo ) {
         Numberable o = (Numberable) oo;
         if( o.getNumber() != 0 ) return;
         
@@ -52,7 +52,7 @@ public class ArrayNumberer<E> implements IterableNumberer<E> {
         return ret;
     }
 
-	public E get( long number ) {
+	public synchronized E get( long number ) {
         if( number == 0 ) return null;
         E ret = (E) numberToObj[(int) number];
         if( ret == null ) throw new RuntimeException( "no object with number "+number );
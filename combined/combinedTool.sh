@@ -32,18 +32,19 @@ for apkfolder in $applist; do
 		uniquesources=`echo "$sources"|tr ' ' '\n'|sort -u`
 		echo $uniquesources
 		if  [ "$uniquesources" != "" ]; then
-			for sourcenode in $uniquesources; do
-				echo "	Source:"$sourcenode>>$outputFile
-				java -cp $cfltoolpath Graph $apkfolder $sourcenode>tempFile.txt
-				pathcount=`cat tempFile.txt|grep -Po '(?<=number\ of\ paths\ found:)[0-9]*'`
+			# one JVM per app: the graph is loaded once and every source is
+			# printed as a "Source:" header followed by its paths
+			java -cp $cfltoolpath Graph $apkfolder -batch $uniquesources>tempFile.txt
+			pathcounts=`cat tempFile.txt|grep -Po '(?<=number\ of\ paths\ found:)[0-9]*'`
+			for pathcount in $pathcounts; do
 				if test $pathcount -gt 0
 				then
 					trueSourceCount=$((trueSourceCount+1))
 					hasTrueLeak=1
 				fi
 				sourceCount=$((sourceCount+1))
-				cat tempFile.txt>>$outputFile
 			done
+			cat tempFile.txt>>$outputFile
 		fi
 		appCount=$((appCount+1))
 		leakyAppCount=$((leakyAppCount+hasTrueLeak))
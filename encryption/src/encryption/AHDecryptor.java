@@ -2,6 +2,7 @@ package encryption;
 
 import java.io.File;
 import java.io.IOException;
+import java.math.BigInteger;
 import java.util.Map;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -11,7 +12,7 @@ import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPrivateKey;
 import com.n1analytics.paillier.cli.SerialisationUtil;
 
-public class AHDecryptor {
+public class AHDecryptor implements DecryptionService.Decryptor {
 
 	private PaillierPrivateKey privateKey;
 	private PaillierContext context;
@@ -33,5 +34,25 @@ public class AHDecryptor {
 		EncryptedNumber cipher = Util.getAHCipher(cipherStr, context);
 		return cipher.decrypt(privateKey);
 	}
+
+	public long decrypt(BigInteger ciphertext, int exponent, byte kind) {
+		EncodedNumber plain = new EncryptedNumber(context, ciphertext, exponent).decrypt(privateKey);
+		if (kind == DecryptionService.DOUBLE)
+			return Double.doubleToLongBits(plain.decodeDouble());
+		return plain.decodeLong();
+	}
+
+	/*
+	 * The key and context are immutable, so every decryption thread of a
+	 * DecryptionService can share this decryptor
+	 */
+	public DecryptionService.DecryptorFactory factory() {
+		final AHDecryptor ah = this;
+		return new DecryptionService.DecryptorFactory() {
+			public DecryptionService.Decryptor newDecryptor() {
+				return ah;
+			}
+		};
+	}
 	
 }
@@ -0,0 +1,156 @@
+package encryption;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Iterator;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.PaillierContext;
+
+/**
+ * A partial aggregate of a group: the sums of a few encrypted columns, in
+ * the binary encoding of Util.getAHBytes, and the plaintext number of rows.
+ * A mapper emits one per row with a count of 1, AHSumCombiner merges them
+ * on the map side, and the reducer merges what is left with an
+ * Accumulator. Values missing from a row are left out of their column's
+ * sum but the row is still counted.
+ */
+public class AHPartialSum implements Writable {
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private byte[][] sums;
+	private long count;
+
+	public AHPartialSum() {
+		this(0);
+	}
+
+	public AHPartialSum(int columns) {
+		sums = new byte[columns][];
+		for (int i = 0; i < columns; i++)
+			sums[i] = EMPTY;
+	}
+
+	public int getColumns() {
+		return sums.length;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public void setCount(long count) {
+		this.count = count;
+	}
+
+	/**
+	 * Sets a column from either text form of a ciphertext; an empty string
+	 * leaves the column empty
+	 */
+	public void set(int column, String cipherStr, PaillierContext context) {
+		if (cipherStr.isEmpty())
+			sums[column] = EMPTY;
+		else if (cipherStr.indexOf('#') < 0)
+			sums[column] = Base64.getDecoder().decode(cipherStr);
+		else
+			set(column, Util.getAHCipher(cipherStr, context));
+	}
+
+	public void set(int column, EncryptedNumber sum) {
+		sums[column] = Util.getAHBytes(sum);
+	}
+
+	public boolean has(int column) {
+		return sums[column].length > 0;
+	}
+
+	public EncryptedNumber get(int column, PaillierContext context) {
+		return Util.getAHCipher(sums[column], context);
+	}
+
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, sums.length);
+		for (byte[] sum : sums) {
+			WritableUtils.writeVInt(out, sum.length);
+			out.write(sum);
+		}
+		WritableUtils.writeVLong(out, count);
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		int columns = WritableUtils.readVInt(in);
+		if (sums.length != columns)
+			sums = new byte[columns][];
+		for (int i = 0; i < columns; i++) {
+			int length = WritableUtils.readVInt(in);
+			sums[i] = length == 0 ? EMPTY : new byte[length];
+			in.readFully(sums[i]);
+		}
+		count = WritableUtils.readVLong(in);
+	}
+
+	/**
+	 * Merges partial sums, decoding each ciphertext once and encoding the
+	 * result once
+	 */
+	public static class Accumulator {
+		private final PaillierContext context;
+		private AHSum[] sums = new AHSum[0];
+		private long count;
+
+		public Accumulator(PaillierContext context) {
+			this.context = context;
+		}
+
+		public void add(AHPartialSum partial) {
+			if (sums.length < partial.getColumns()) {
+				AHSum[] grown = new AHSum[partial.getColumns()];
+				System.arraycopy(sums, 0, grown, 0, sums.length);
+				for (int i = sums.length; i < grown.length; i++)
+					grown[i] = new AHSum(context);
+				sums = grown;
+			}
+			for (int i = 0; i < partial.getColumns(); i++)
+				if (partial.has(i))
+					sums[i].add(partial.get(i, context));
+			count += partial.getCount();
+		}
+
+		public void addAll(Iterator<AHPartialSum> partials) {
+			while (partials.hasNext())
+				add(partials.next());
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the sum of a column, an encryption of 0 if it is empty
+		 */
+		public EncryptedNumber sum(int column) {
+			return column < sums.length ? sums[column].sum() : context.encrypt(0);
+		}
+
+		public AHPartialSum toPartialSum() {
+			AHPartialSum partial = new AHPartialSum(sums.length);
+			for (int i = 0; i < sums.length; i++)
+				if (!sums[i].isEmpty())
+					partial.set(i, sums[i].sum());
+			partial.setCount(count);
+			return partial;
+		}
+
+		public void clear() {
+			for (AHSum sum : sums)
+				sum.clear();
+			count = 0;
+		}
+	}
+}
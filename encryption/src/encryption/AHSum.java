@@ -0,0 +1,82 @@
+package encryption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.PaillierContext;
+
+/**
+ * Sums Paillier ciphertexts with fewer expensive operations than adding
+ * them to a running sum one by one. Values are added into one partial sum
+ * per exponent, so adding does not rescale an operand (a modPow) whenever
+ * the running sum and the next value disagree in exponent. A value added k
+ * times is multiplied by k once, and the partial sums are combined pairwise
+ * in exponent order.
+ */
+public class AHSum {
+
+	private final PaillierContext context;
+	private final TreeMap<Integer, EncryptedNumber> partials = new TreeMap<Integer, EncryptedNumber>();
+
+	public AHSum(PaillierContext context) {
+		this.context = context;
+	}
+
+	public AHSum add(EncryptedNumber value) {
+		Integer exponent = value.getExponent();
+		EncryptedNumber partial = partials.get(exponent);
+		partials.put(exponent, partial == null ? value : context.add(partial, value));
+		return this;
+	}
+
+	public AHSum add(String cipherStr) {
+		return add(Util.getAHCipher(cipherStr, context));
+	}
+
+	/**
+	 * Adds value times times with one scalar multiplication
+	 */
+	public AHSum add(EncryptedNumber value, long times) {
+		if (times == 0)
+			return this;
+		if (times == 1)
+			return add(value);
+		return add(context.multiply(value, context.encode(times)));
+	}
+
+	public boolean isEmpty() {
+		return partials.isEmpty();
+	}
+
+	public void clear() {
+		partials.clear();
+	}
+
+	/**
+	 * Returns the sum, an encryption of 0 if nothing was added
+	 */
+	public EncryptedNumber sum() {
+		if (partials.isEmpty())
+			return context.encrypt(0);
+		List<EncryptedNumber> level = new ArrayList<EncryptedNumber>(partials.values());
+		while (level.size() > 1) {
+			List<EncryptedNumber> next = new ArrayList<EncryptedNumber>((level.size() + 1) / 2);
+			for (int i = 0; i + 1 < level.size(); i += 2)
+				next.add(context.add(level.get(i), level.get(i + 1)));
+			if (level.size() % 2 == 1)
+				next.add(level.get(level.size() - 1));
+			level = next;
+		}
+		return level.get(0);
+	}
+
+	/**
+	 * Returns the sum times times, with one scalar multiplication
+	 */
+	public EncryptedNumber sum(long times) {
+		EncryptedNumber sum = sum();
+		return times == 1 ? sum : context.multiply(sum, context.encode(times));
+	}
+}
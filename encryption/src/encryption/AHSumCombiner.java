@@ -0,0 +1,38 @@
+package encryption;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Iterator;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.MapReduceBase;
+import org.apache.hadoop.mapred.OutputCollector;
+import org.apache.hadoop.mapred.Reducer;
+import org.apache.hadoop.mapred.Reporter;
+
+import com.n1analytics.paillier.PaillierContext;
+import com.n1analytics.paillier.PaillierPublicKey;
+
+/**
+ * Merges the AHPartialSums of a key on the map side, so one partial sum per
+ * key and map task is shuffled instead of every encrypted value. Reads the
+ * public key from the "pubKey" job property.
+ */
+public class AHSumCombiner extends MapReduceBase implements Reducer<Text, AHPartialSum, Text, AHPartialSum> {
+
+	private AHPartialSum.Accumulator accumulator;
+
+	@Override
+	public void configure(JobConf conf) {
+		PaillierContext context = new PaillierPublicKey(new BigInteger(conf.get("pubKey"))).createSignedContext();
+		accumulator = new AHPartialSum.Accumulator(context);
+	}
+
+	public void reduce(Text key, Iterator<AHPartialSum> values, OutputCollector<Text, AHPartialSum> output,
+			Reporter reporter) throws IOException {
+		accumulator.clear();
+		accumulator.addAll(values);
+		output.collect(key, accumulator.toPartialSum());
+	}
+}
@@ -0,0 +1,65 @@
+package encryption;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Base64;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.PaillierContext;
+
+/**
+ * A Paillier ciphertext in the binary encoding of Util.getAHBytes, for
+ * SequenceFiles and map outputs. toString() gives the text form written by
+ * Util.getAHString, so TextOutputFormat output stays readable by
+ * Util.getAHCipher.
+ */
+public class AHWritable implements Writable {
+
+	private byte[] bytes = new byte[0];
+
+	public AHWritable() {
+	}
+
+	public AHWritable(EncryptedNumber cipher) {
+		set(cipher);
+	}
+
+	public void set(EncryptedNumber cipher) {
+		bytes = Util.getAHBytes(cipher);
+	}
+
+	/**
+	 * Sets the ciphertext from either text form
+	 */
+	public void set(String cipherStr, PaillierContext context) {
+		if (cipherStr.indexOf('#') < 0)
+			bytes = Base64.getDecoder().decode(cipherStr);
+		else
+			set(Util.getAHCipher(cipherStr, context));
+	}
+
+	public EncryptedNumber get(PaillierContext context) {
+		return Util.getAHCipher(bytes, context);
+	}
+
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	public void readFields(DataInput in) throws IOException {
+		int length = WritableUtils.readVInt(in);
+		if (bytes.length != length)
+			bytes = new byte[length];
+		in.readFully(bytes);
+	}
+
+	@Override
+	public String toString() {
+		return Base64.getEncoder().withoutPadding().encodeToString(bytes);
+	}
+}
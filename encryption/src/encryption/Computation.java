@@ -3,10 +3,6 @@ package encryption;
 import java.math.BigInteger;
 import java.util.Arrays;
 
-import thep.paillier.EncryptedInteger;
-import thep.paillier.exceptions.BigIntegerClassNotValid;
-import thep.paillier.exceptions.PublicKeysNotEqualException;
-
 public class Computation {
 	
 	public static boolean equals(Object b1, Object b2) {
@@ -95,43 +91,15 @@ public class Computation {
 	}
 
 	public static Object multiply(Object b1, int b2) {
-		EncryptedInteger e1 = Homomorphic.ei;
-		Homomorphic.ei.setCipherVal((BigInteger) b1);
-		try {
-			e1 = e1.multiply(BigInteger.valueOf(b2));
-		} catch (BigIntegerClassNotValid e) {
-			e.printStackTrace();
-		}
-		return e1.getCipherVal();
+		return Homomorphic.multiply((BigInteger) b1, b2);
 	}
 
 	public static Object add(Object b1, Object b2) {
-		EncryptedInteger e1 = Homomorphic.ei;
-		Homomorphic.ei.setCipherVal((BigInteger) b1);
-		EncryptedInteger e2 = new EncryptedInteger(e1);
-		e2.setCipherVal((BigInteger) b2);
-		try {
-			e1 = e1.add(e2);
-		} catch (PublicKeysNotEqualException e) {
-			e.printStackTrace();
-		}
-		return e1.getCipherVal();
+		return Homomorphic.add((BigInteger) b1, (BigInteger) b2);
 	}
 
 	public static Object minus(Object b1, Object b2) {
-		EncryptedInteger e1 = Homomorphic.ei;
-		Homomorphic.ei.setCipherVal((BigInteger) b1);
-		EncryptedInteger e2 = new EncryptedInteger(e1);
-		e2.setCipherVal((BigInteger) b2);
-		try {
-			e2 = e2.multiply(new BigInteger("-1"));
-			e1 = e1.add(e2);
-		} catch (PublicKeysNotEqualException e) {
-			e.printStackTrace();
-		} catch (BigIntegerClassNotValid e) {
-			e.printStackTrace();
-		}
-		return e1.getCipherVal();
+		return Homomorphic.subtract((BigInteger) b1, (BigInteger) b2);
 	}
 
 }
@@ -9,48 +9,74 @@ import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.spec.IvParameterSpec;
 
+/**
+ * Deterministic encryption for the dataset encryptors. An instance may be
+ * used by many threads at once.
+ */
 public class DETEncryptor {
 
 	private Key keyAES, keyBF; // AES and blowfish
-	private Cipher cipherAES, cipherBF;
+	// Ciphers are stateful, so each thread gets its own. The IV is fixed, and
+	// doFinal() returns a cipher to its initialized state, so each is
+	// initialized once.
+	private final ThreadLocal<Cipher> cipherAES, cipherBF;
 	private byte[] ivBF = new byte[8];
 	private byte[] ivAES = new byte[16];
 	private Encoder encoder = Base64.getEncoder();
 
 	public DETEncryptor() {
 		try {
-			cipherAES = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-			cipherBF = Cipher.getInstance("Blowfish/CBC/PKCS5PADDING");
 			KeyGenerator generatorAES = KeyGenerator.getInstance("AES");
 			KeyGenerator generatorBF = KeyGenerator.getInstance("Blowfish");
 			// the keys need to be written to a file;
-			// one RNDEncryptor object uses the same one key
+			// one DETEncryptor object uses the same one key
 			keyAES = generatorAES.generateKey();
 			keyBF = generatorBF.generateKey();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		cipherAES = newCipher("AES/CBC/PKCS5PADDING", keyAES, ivAES);
+		cipherBF = newCipher("Blowfish/CBC/PKCS5PADDING", keyBF, ivBF);
+	}
+
+	private static ThreadLocal<Cipher> newCipher(final String transformation, final Key key, final byte[] iv) {
+		return new ThreadLocal<Cipher>() {
+			@Override
+			protected Cipher initialValue() {
+				try {
+					Cipher cipher = Cipher.getInstance(transformation);
+					cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+					return cipher;
+				} catch (Exception e) {
+					e.printStackTrace();
+					return null;
+				}
+			}
+		};
 	}
 
 	public String encrypt(int ptext) {
-		byte[] cipher = encrypt(ByteBuffer.allocate(4).putInt(ptext).array(), cipherBF, keyBF, ivBF);
+		byte[] cipher = encrypt(ByteBuffer.allocate(4).putInt(ptext).array(), cipherBF.get());
 		return encoder.encodeToString(cipher);
 	}
 
 	public String encrypt(long ptext) {
-		byte[] cipher = encrypt(ByteBuffer.allocate(8).putLong(ptext).array(), cipherBF, keyBF, ivBF);
+		byte[] cipher = encrypt(ByteBuffer.allocate(8).putLong(ptext).array(), cipherBF.get());
 		return encoder.encodeToString(cipher);
 	}
-	
+
+	public String encrypt(double ptext) {
+		return encrypt(Double.doubleToLongBits(ptext));
+	}
+
 	public String encrypt(String ptext) {
-		byte[] cipher = encrypt(ptext.getBytes(), cipherAES, keyAES, ivAES);
+		byte[] cipher = encrypt(ptext.getBytes(), cipherAES.get());
 		return encoder.encodeToString(cipher);
 	}
 
-	private byte[] encrypt(byte[] ptext, Cipher cipher, Key key, byte[] iv) {
+	private byte[] encrypt(byte[] ptext, Cipher cipher) {
 		byte[] ctext = null;
 		try {
-			cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
 			ctext = cipher.doFinal(ptext);
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -58,4 +84,4 @@ public class DETEncryptor {
 		return ctext;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,345 @@
+package encryption;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Encrypts text datasets line by line on a pool of threads.
+ *
+ * <p>An input file is read in chunks that end on a line boundary. Each chunk
+ * is encrypted by a worker thread, and the encrypted lines are written in
+ * input order. A bounded number of chunks is in flight, so memory use does
+ * not depend on the size of the file. Progress and throughput are reported
+ * every ten seconds.</p>
+ *
+ * <pre>
+ * try (DatasetEncryptor pipeline = new DatasetEncryptor()) {
+ *     pipeline.encrypt(input, output, new DatasetEncryptor.LineEncryptor() {
+ *         public String encrypt(String line) {
+ *             return det.encrypt(line);
+ *         }
+ *     });
+ * }
+ * </pre>
+ *
+ * The number of threads is read from -DencryptThreads, by default the
+ * number of cores. Input and output are UTF-8.
+ *
+ * <p>The mains of the benchmark encryptors, which take an input and an
+ * output folder, reduce to:</p>
+ *
+ * <pre>
+ * DatasetEncryptor.prepareOutput(args[1]);
+ * AHEncryptor ah = new AHEncryptor(args[1]);
+ * DatasetEncryptor.run(args, lineEncryptor);
+ * </pre>
+ */
+public class DatasetEncryptor implements Closeable {
+
+	/**
+	 * Encrypts a line, without its line terminator. Called by all worker
+	 * threads at once, so the encryptors it uses must be thread-safe, as
+	 * DETEncryptor, RNDEncryptor and AHEncryptor are.
+	 */
+	public interface LineEncryptor {
+		String encrypt(String line);
+	}
+
+	/**
+	 * Receives the encrypted lines of a file in input order, on the thread
+	 * that called encrypt()
+	 */
+	public interface Sink extends Closeable {
+		void write(String line) throws IOException;
+	}
+
+	/**
+	 * Chooses the LineEncryptor of each input file, for datasets with
+	 * several tables
+	 */
+	public interface FileEncryptor {
+		LineEncryptor forFile(File input);
+	}
+
+	/**
+	 * Opens the sink of an output file
+	 */
+	public interface SinkFactory {
+		Sink open(File output) throws IOException;
+	}
+
+	public static final SinkFactory TEXT_SINKS = new SinkFactory() {
+		public Sink open(File output) throws IOException {
+			return textSink(output);
+		}
+	};
+
+	/** Bytes of input per chunk; ciphertexts are many times larger */
+	public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+	private static final long REPORT_NANOS = 10 * 1000000000L;
+
+	private final ExecutorService workers;
+	private final int chunkSize;
+	private final int maxInFlight;
+
+	public DatasetEncryptor() {
+		this(Integer.getInteger("encryptThreads", Runtime.getRuntime().availableProcessors()), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param threads the number of encryption threads
+	 * @param chunkSize bytes of input per chunk; longer lines make a chunk
+	 *        of their own
+	 */
+	public DatasetEncryptor(int threads, int chunkSize) {
+		this.workers = Executors.newFixedThreadPool(threads);
+		this.chunkSize = chunkSize;
+		this.maxInFlight = 2 * threads;
+	}
+
+	/**
+	 * Writes lines to a text file with '\n' terminators
+	 */
+	public static Sink textSink(File output) throws IOException {
+		final BufferedWriter out = new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8), 1024 * 1024);
+		return new Sink() {
+			public void write(String line) throws IOException {
+				out.write(line);
+				out.write('\n');
+			}
+
+			public void close() throws IOException {
+				out.close();
+			}
+		};
+	}
+
+	/**
+	 * Creates OUTPUT/dir, the folder of the encrypted files, or deletes the
+	 * files already in it. The encryptors write their keys to OUTPUT, so
+	 * this is called before they are created.
+	 *
+	 * @return OUTPUT/dir
+	 */
+	public static File prepareOutput(String output) {
+		File outputFolder = new File(output, "dir");
+		if (outputFolder.exists()) {
+			for (File file : outputFolder.listFiles())
+				file.delete();
+		} else
+			outputFolder.mkdirs();
+		return outputFolder;
+	}
+
+	/**
+	 * Encrypts each file of the folder args[0] into a text file of
+	 * args[1]/dir, see prepareOutput()
+	 */
+	public static void run(String[] args, final LineEncryptor encryptor) {
+		run(args, new FileEncryptor() {
+			public LineEncryptor forFile(File input) {
+				return encryptor;
+			}
+		});
+	}
+
+	/**
+	 * Encrypts each file of the folder args[0] into a text file of
+	 * args[1]/dir with the encryptor chosen for it
+	 */
+	public static void run(String[] args, FileEncryptor encryptor) {
+		run(args, encryptor, TEXT_SINKS);
+	}
+
+	public static void run(String[] args, FileEncryptor encryptor, SinkFactory sinks) {
+		run(new File(args[0]), new File(args[1], "dir"), encryptor, sinks);
+	}
+
+	/**
+	 * Encrypts each file NAME of inputFolder into outputFolder/NAMECipher.
+	 * Errors are printed, and stop the run.
+	 */
+	public static void run(File inputFolder, File outputFolder, FileEncryptor encryptor, SinkFactory sinks) {
+		try (DatasetEncryptor pipeline = new DatasetEncryptor()) {
+			for (File file : inputFolder.listFiles()) {
+				System.out.println("Encrypting file " + file.getName() + "...");
+				pipeline.encrypt(file, sinks.open(new File(outputFolder, file.getName() + "Cipher")),
+						encryptor.forFile(file));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Encrypts input into a text file
+	 */
+	public void encrypt(File input, File output, LineEncryptor encryptor) throws IOException {
+		encrypt(input, textSink(output), encryptor);
+	}
+
+	/**
+	 * Encrypts input into sink and closes the sink
+	 */
+	public void encrypt(File input, Sink sink, LineEncryptor encryptor) throws IOException {
+		Progress progress = new Progress(input.getName(), input.length());
+		Deque<Chunk> inFlight = new ArrayDeque<Chunk>();
+		try (FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ); Sink out = sink) {
+			ByteBuffer buf = ByteBuffer.allocate(chunkSize);
+			while (true) {
+				boolean eof = fill(in, buf);
+				if (buf.position() == 0)
+					break;
+				int end = eof ? buf.position() : lastLineEnd(buf);
+				if (end == 0) {
+					// a line longer than the buffer
+					buf = ByteBuffer.allocate(2 * buf.capacity()).put((ByteBuffer) buf.flip());
+					continue;
+				}
+				Chunk chunk = new Chunk(Arrays.copyOf(buf.array(), end), encryptor);
+				chunk.result = workers.submit(chunk);
+				inFlight.add(chunk);
+				buf.limit(buf.position()).position(end);
+				buf.compact();
+				while (inFlight.size() > maxInFlight)
+					write(inFlight.poll(), out, progress);
+			}
+			while (!inFlight.isEmpty())
+				write(inFlight.poll(), out, progress);
+		} finally {
+			for (Chunk chunk : inFlight)
+				chunk.result.cancel(true);
+		}
+		progress.done();
+	}
+
+	public void close() {
+		workers.shutdownNow();
+	}
+
+	/**
+	 * Reads until buf is full or the input ends, and tells whether it ended
+	 */
+	private static boolean fill(FileChannel in, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			if (in.read(buf) < 0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The length of the complete lines in buf, 0 if there are none
+	 */
+	private static int lastLineEnd(ByteBuffer buf) {
+		byte[] bytes = buf.array();
+		for (int i = buf.position() - 1; i >= 0; i--) {
+			if (bytes[i] == '\n')
+				return i + 1;
+		}
+		return 0;
+	}
+
+	private static void write(Chunk chunk, Sink out, Progress progress) throws IOException {
+		String[] lines;
+		try {
+			lines = chunk.result.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while encrypting " + progress.name);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to encrypt " + progress.name, e.getCause());
+		}
+		for (String line : lines)
+			out.write(line);
+		progress.add(chunk.bytes.length, lines.length);
+	}
+
+	private static class Chunk implements Callable<String[]> {
+		final byte[] bytes;
+		final LineEncryptor encryptor;
+		Future<String[]> result;
+
+		Chunk(byte[] bytes, LineEncryptor encryptor) {
+			this.bytes = bytes;
+			this.encryptor = encryptor;
+		}
+
+		/*
+		 * Splits the chunk into lines as BufferedReader.readLine() does for
+		 * "\n" and "\r\n" terminators, and encrypts them
+		 */
+		public String[] call() {
+			String text = new String(bytes, StandardCharsets.UTF_8);
+			List<String> lines = new ArrayList<String>();
+			int start = 0;
+			while (start < text.length()) {
+				int end = text.indexOf('\n', start);
+				int next = end + 1;
+				if (end < 0)
+					end = next = text.length();
+				if (end > start && text.charAt(end - 1) == '\r')
+					end--;
+				lines.add(encryptor.encrypt(text.substring(start, end)));
+				start = next;
+			}
+			return lines.toArray(new String[lines.size()]);
+		}
+	}
+
+	private static class Progress {
+		final String name;
+		final long length;
+		final long startNanos = System.nanoTime();
+		long lastReport = startNanos;
+		long bytes = 0, lines = 0;
+
+		Progress(String name, long length) {
+			this.name = name;
+			this.length = length;
+		}
+
+		void add(int bytes, int lines) {
+			this.bytes += bytes;
+			this.lines += lines;
+			long now = System.nanoTime();
+			if (now - lastReport >= REPORT_NANOS) {
+				lastReport = now;
+				System.out.println(String.format("INFO: %s: %d of %d MB (%d%%), %s", name, this.bytes >> 20,
+						length >> 20, length == 0 ? 100 : 100 * this.bytes / length, rates(now)));
+			}
+		}
+
+		void done() {
+			long now = System.nanoTime();
+			System.out.println(String.format("INFO: Encrypted %s: %d lines in %.1f s, %s", name, lines,
+					(now - startNanos) / 1e9, rates(now)));
+		}
+
+		private String rates(long now) {
+			double seconds = Math.max(now - startNanos, 1) / 1e9;
+			return String.format("%.2f MB/s, %.0f lines/s", bytes / seconds / (1 << 20), lines / seconds);
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package encryption;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * A connection to a {@link DecryptionService}. Requests are written as they
+ * are submitted, and a reader thread completes their replies as they come
+ * back, so any number of requests can be in flight.
+ *
+ * <pre>
+ * DecryptionClient client = new DecryptionClient(host, DecryptionService.DEFAULT_PORT);
+ * Reply reply = client.submit(new Request(DecryptionService.LONG).add(ciphertext, exponent));
+ * client.flush();
+ * long plaintext = DecryptionClient.toLongs(reply.get())[0];
+ * </pre>
+ */
+public class DecryptionClient implements Closeable {
+
+	/**
+	 * A batch of ciphertexts with the extra bytes for the service's handler
+	 */
+	public static class Request {
+		private final byte kind;
+		private final DataOutputStream ciphertexts;
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private int count = 0;
+		private byte[] extra = new byte[0];
+
+		/**
+		 * @param kind DecryptionService.LONG or DecryptionService.DOUBLE
+		 */
+		public Request(byte kind) {
+			this.kind = kind;
+			this.ciphertexts = new DataOutputStream(bytes);
+		}
+
+		public Request add(BigInteger ciphertext, int exponent) {
+			if (count == DecryptionService.MAX_COUNT)
+				throw new IllegalStateException("More than " + DecryptionService.MAX_COUNT + " ciphertexts");
+			try {
+				byte[] c = ciphertext.toByteArray();
+				if (c.length > DecryptionService.MAX_CIPHERTEXT_LENGTH)
+					throw new IllegalArgumentException("Ciphertext of " + c.length + " bytes");
+				ciphertexts.writeInt(exponent);
+				ciphertexts.writeInt(c.length);
+				ciphertexts.write(c);
+			} catch (IOException e) {
+				// cannot happen on a byte array
+				throw new IllegalStateException(e);
+			}
+			count++;
+			return this;
+		}
+
+		public Request setExtra(byte[] extra) {
+			if (extra.length > DecryptionService.MAX_EXTRA_LENGTH)
+				throw new IllegalArgumentException(extra.length + " extra bytes");
+			this.extra = extra;
+			return this;
+		}
+
+		public int size() {
+			return count;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(count);
+			out.writeByte(kind);
+			bytes.writeTo(out);
+			out.writeInt(extra.length);
+			out.write(extra);
+		}
+	}
+
+	/**
+	 * The reply to a submitted request
+	 */
+	public static class Reply {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private byte[] payload;
+		private String error;
+		private long completedNanos;
+
+		/**
+		 * Waits for the reply and returns its payload
+		 */
+		public byte[] get() throws IOException {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for a decryption");
+			}
+			if (error != null)
+				throw new IOException(error);
+			return payload;
+		}
+
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		/**
+		 * System.nanoTime() when the reply arrived
+		 */
+		public long getCompletedNanos() {
+			return completedNanos;
+		}
+
+		void complete(byte[] payload, String error) {
+			this.payload = payload;
+			this.error = error;
+			this.completedNanos = System.nanoTime();
+			done.countDown();
+		}
+	}
+
+	private final Socket socket;
+	private final DataOutputStream out;
+	private final Queue<Reply> outstanding = new ConcurrentLinkedQueue<Reply>();
+	private final Thread reader;
+
+	/**
+	 * Set by the reader when the connection is gone, guarded by outstanding
+	 * so that no reply is queued after the reader's final drain
+	 */
+	private String failure;
+
+	public DecryptionClient(String host, int port) throws IOException {
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		reader = new Thread(new Runnable() {
+			public void run() {
+				read(in);
+			}
+		}, "decryption-client");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Sends a request. It may stay buffered until flush() or more requests
+	 * are submitted.
+	 */
+	public synchronized Reply submit(Request request) throws IOException {
+		Reply reply = new Reply();
+		synchronized (outstanding) {
+			if (failure != null)
+				throw new IOException(failure);
+			outstanding.add(reply);
+		}
+		request.write(out);
+		return reply;
+	}
+
+	public synchronized void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Sends a request and waits for its reply
+	 */
+	public byte[] call(Request request) throws IOException {
+		Reply reply = submit(request);
+		flush();
+		return reply.get();
+	}
+
+	/**
+	 * Decodes a reply of DecryptionService.PLAINTEXTS
+	 */
+	public static long[] toLongs(byte[] payload) {
+		ByteBuffer buf = ByteBuffer.wrap(payload);
+		long[] values = new long[payload.length / 8];
+		for (int i = 0; i < values.length; i++)
+			values[i] = buf.getLong();
+		return values;
+	}
+
+	/**
+	 * Waits for the replies of all submitted requests and closes the connection
+	 */
+	public void close() throws IOException {
+		try {
+			synchronized (this) {
+				out.flush();
+				socket.shutdownOutput();
+			}
+		} catch (IOException e) {
+			// the service is gone, and the outstanding replies have failed
+			socket.close();
+		}
+		try {
+			reader.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			socket.close();
+		}
+	}
+
+	private void read(DataInputStream in) {
+		String error = "Connection to the decryption service closed";
+		try {
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (IOException e) {
+					break;
+				}
+				if (length < -1)
+					throw new IOException("Bad reply length " + length);
+				Reply reply = outstanding.poll();
+				if (reply == null)
+					throw new IOException("Reply without a request");
+				if (length == -1) {
+					reply.complete(null, in.readUTF());
+				} else {
+					byte[] payload = new byte[length];
+					in.readFully(payload);
+					reply.complete(payload, null);
+				}
+			}
+		} catch (IOException e) {
+			error = e.toString();
+		}
+		synchronized (outstanding) {
+			failure = error;
+			Reply reply;
+			while ((reply = outstanding.poll()) != null)
+				reply.complete(null, error);
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package encryption;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A key server that decrypts batches of ciphertexts for its clients.
+ *
+ * <p>A client sends request frames and receives one reply frame per request,
+ * in the order of the requests. A connection is served by a reader and a
+ * writer thread: the reader hands each batch to a pool of decryption
+ * threads and goes on reading, the writer waits for the batches in turn and
+ * writes their replies, so requests are pipelined. Each decryption thread
+ * has its own {@link Decryptor}.</p>
+ *
+ * <pre>
+ * request: int count, byte kind, count * (int exponent, int length, byte[length] ciphertext),
+ *          int length, byte[length] extra
+ * reply:   int length, byte[length] payload | int -1, UTF message
+ * </pre>
+ *
+ * The ciphertexts are BigInteger.toByteArray(). The payload is what the
+ * {@link Handler} of the service makes of the plaintexts and the extra
+ * bytes; {@link #PLAINTEXTS} returns the plaintexts themselves. See
+ * {@link DecryptionClient} for the client side.
+ *
+ * <p>A request may hold at most {@link #MAX_COUNT} ciphertexts of 1 to
+ * {@link #MAX_CIPHERTEXT_LENGTH} bytes and {@link #MAX_EXTRA_LENGTH} extra
+ * bytes. A frame outside these bounds is taken to be corrupt: it gets an
+ * error reply and the connection is closed.</p>
+ */
+public class DecryptionService implements Closeable {
+
+	public static final int DEFAULT_PORT = 44444;
+
+	/** Kinds of plaintexts: decoded as long, or as double returned by its bits */
+	public static final byte LONG = 0;
+	public static final byte DOUBLE = 1;
+
+	/** Most ciphertexts in one request */
+	public static final int MAX_COUNT = 1 << 20;
+
+	/** Most bytes of one ciphertext; n^2 of a 2048-bit key takes 512 */
+	public static final int MAX_CIPHERTEXT_LENGTH = 1 << 16;
+
+	/** Most extra bytes of one request */
+	public static final int MAX_EXTRA_LENGTH = 1 << 24;
+
+	/** Batches read ahead of the one being replied to, per connection */
+	private static final int MAX_PENDING = 256;
+
+	/**
+	 * Decrypts single ciphertexts. Instances are used by one thread only.
+	 */
+	public interface Decryptor {
+		long decrypt(BigInteger ciphertext, int exponent, byte kind);
+	}
+
+	public interface DecryptorFactory {
+		Decryptor newDecryptor();
+	}
+
+	/**
+	 * Computes the reply to a request from its plaintexts and extra bytes.
+	 * Called by the writer threads of all connections at once.
+	 */
+	public interface Handler {
+		byte[] reply(long[] plaintexts, byte[] extra);
+	}
+
+	/** Replies with the plaintexts as 8-byte values */
+	public static final Handler PLAINTEXTS = new Handler() {
+		public byte[] reply(long[] plaintexts, byte[] extra) {
+			ByteBuffer buf = ByteBuffer.allocate(8 * plaintexts.length);
+			for (long p : plaintexts)
+				buf.putLong(p);
+			return buf.array();
+		}
+	};
+
+	private static class Batch {
+		final BigInteger[] ciphertexts;
+		final int[] exponents;
+		final byte kind;
+		final long[] plaintexts;
+		byte[] extra;
+		CountDownLatch done;
+		volatile Throwable failure;
+
+		Batch(int count, byte kind) {
+			this.ciphertexts = new BigInteger[count];
+			this.exponents = new int[count];
+			this.kind = kind;
+			this.plaintexts = new long[count];
+		}
+	}
+
+	/** Marks the end of a connection's batches */
+	private static final Batch END = new Batch(0, LONG);
+
+	private final ServerSocket serverSocket;
+	private final int threads;
+	private final ExecutorService workers;
+	private final ExecutorService connections = Executors.newCachedThreadPool();
+	private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+	private final ThreadLocal<Decryptor> decryptors;
+	private final Handler handler;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param port the port to listen on, 0 for any free port
+	 * @param threads the number of decryption threads
+	 * @param factory creates the decryptor of each decryption thread
+	 * @param handler computes the replies
+	 */
+	public DecryptionService(int port, int threads, final DecryptorFactory factory, Handler handler) throws IOException {
+		this.serverSocket = new ServerSocket(port);
+		this.threads = threads;
+		this.workers = Executors.newFixedThreadPool(threads);
+		this.decryptors = new ThreadLocal<Decryptor>() {
+			@Override
+			protected Decryptor initialValue() {
+				return factory.newDecryptor();
+			}
+		};
+		this.handler = handler;
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Accepts connections until the service is closed
+	 */
+	public void serve() throws IOException {
+		try {
+			while (!closed) {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				sockets.add(socket);
+				final BlockingQueue<Batch> pending = new ArrayBlockingQueue<Batch>(MAX_PENDING);
+				try {
+					connections.execute(new Runnable() {
+						public void run() {
+							read(socket, pending);
+						}
+					});
+					connections.execute(new Runnable() {
+						public void run() {
+							write(socket, pending);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					// closed while accepting
+					socket.close();
+				}
+			}
+		} catch (SocketException e) {
+			if (!closed)
+				throw e;
+		}
+	}
+
+	/**
+	 * Serves on a background thread
+	 */
+	public void start() {
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				try {
+					serve();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}, "decryption-service");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	public void close() throws IOException {
+		closed = true;
+		serverSocket.close();
+		for (Socket s : sockets)
+			s.close();
+		workers.shutdownNow();
+		connections.shutdownNow();
+	}
+
+	private void read(Socket socket, BlockingQueue<Batch> pending) {
+		Batch error = null;
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			while (true) {
+				int count;
+				try {
+					count = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				if (count < 0 || count > MAX_COUNT)
+					throw new IOException("Bad request count " + count);
+				Batch batch = new Batch(count, in.readByte());
+				for (int i = 0; i < count; i++) {
+					batch.exponents[i] = in.readInt();
+					// toByteArray() is never empty, and new BigInteger() rejects it
+					byte[] bytes = new byte[readLength(in, 1, MAX_CIPHERTEXT_LENGTH)];
+					in.readFully(bytes);
+					batch.ciphertexts[i] = new BigInteger(bytes);
+				}
+				batch.extra = new byte[readLength(in, 0, MAX_EXTRA_LENGTH)];
+				in.readFully(batch.extra);
+				decrypt(batch);
+				pending.put(batch);
+			}
+		} catch (IOException e) {
+			if (!closed && !socket.isClosed()) {
+				System.err.println("WARN: decryption request failed: " + e);
+				// replied to in place of the request that could not be read
+				error = new Batch(0, LONG);
+				error.failure = e;
+				error.done = new CountDownLatch(0);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if (error != null)
+				putLast(pending, error);
+			putLast(pending, END);
+		}
+	}
+
+	private void putLast(BlockingQueue<Batch> pending, Batch batch) {
+		while (true) {
+			try {
+				pending.put(batch);
+				break;
+			} catch (InterruptedException e) {
+				if (closed)
+					break;
+			}
+		}
+	}
+
+	private static int readLength(DataInputStream in, int min, int max) throws IOException {
+		int length = in.readInt();
+		if (length < min || length > max)
+			throw new IOException("Bad length " + length);
+		return length;
+	}
+
+	/**
+	 * Splits the batch into one contiguous chunk per decryption thread
+	 */
+	private void decrypt(final Batch batch) {
+		int count = batch.ciphertexts.length;
+		int chunks = Math.min(threads, count);
+		batch.done = new CountDownLatch(chunks);
+		for (int c = 0; c < chunks; c++) {
+			final int from = (int) ((long) count * c / chunks);
+			final int to = (int) ((long) count * (c + 1) / chunks);
+			workers.execute(new Runnable() {
+				public void run() {
+					try {
+						Decryptor d = decryptors.get();
+						for (int i = from; i < to; i++)
+							batch.plaintexts[i] = d.decrypt(batch.ciphertexts[i], batch.exponents[i], batch.kind);
+					} catch (Throwable e) {
+						batch.failure = e;
+					} finally {
+						batch.done.countDown();
+					}
+				}
+			});
+		}
+	}
+
+	private void write(Socket socket, BlockingQueue<Batch> pending) {
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			while (true) {
+				Batch batch = pending.poll();
+				if (batch == null) {
+					// nothing ready, send what is buffered before blocking
+					out.flush();
+					batch = pending.take();
+				}
+				if (batch == END)
+					break;
+				batch.done.await();
+				byte[] reply = null;
+				Throwable failure = batch.failure;
+				if (failure == null) {
+					try {
+						reply = handler.reply(batch.plaintexts, batch.extra);
+					} catch (RuntimeException e) {
+						failure = e;
+					}
+				}
+				if (failure != null) {
+					out.writeInt(-1);
+					out.writeUTF(String.valueOf(failure));
+				} else {
+					out.writeInt(reply.length);
+					out.write(reply);
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			if (!closed && !socket.isClosed())
+				System.err.println("WARN: decryption reply failed: " + e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			sockets.remove(socket);
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// already gone
+			}
+		}
+	}
+}
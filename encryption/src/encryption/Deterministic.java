@@ -1,8 +1,8 @@
 package encryption;
 
 import java.security.Key;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
@@ -13,9 +13,11 @@ import java.nio.ByteBuffer;
 public class Deterministic implements Encryption {
 
 	private static final Key keyAES, keyBF; // AES and blowfish
-	private Cipher cipherAES, cipherBF;
-	private static Map<byte[], byte[]> initIVsAES = new HashMap<>();
-	private static Map<byte[], byte[]> initIVsBF = new HashMap<>();
+	// Ciphers are stateful, so each thread gets its own
+	private final ThreadLocal<Cipher> cipherAES = newCipher("AES/CBC/PKCS5PADDING");
+	private final ThreadLocal<Cipher> cipherBF = newCipher("Blowfish/CBC/PKCS5PADDING");
+	private static Map<byte[], byte[]> initIVsAES = new ConcurrentHashMap<>();
+	private static Map<byte[], byte[]> initIVsBF = new ConcurrentHashMap<>();
 
 	static {
 		KeyGenerator generatorAES = null, generatorBF = null;
@@ -29,16 +31,22 @@ public class Deterministic implements Encryption {
 		keyBF = generatorBF.generateKey();
 	}
 
-	public Deterministic() {
-		try {
-			cipherAES = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-			cipherBF = Cipher.getInstance("Blowfish/CBC/PKCS5PADDING");
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+	static ThreadLocal<Cipher> newCipher(final String transformation) {
+		return new ThreadLocal<Cipher>() {
+			@Override
+			protected Cipher initialValue() {
+				try {
+					return Cipher.getInstance(transformation);
+				} catch (Exception e) {
+					e.printStackTrace();
+					return null;
+				}
+			}
+		};
 	}
 
 	public byte[] encrypt(String ptext) {
+		Cipher cipherAES = this.cipherAES.get();
 		byte[] ctext = null;
 		try {
 			cipherAES.init(Cipher.ENCRYPT_MODE, keyAES);
@@ -51,6 +59,7 @@ public class Deterministic implements Encryption {
 	}
 
 	public byte[] encrypt(long ptext) {
+		Cipher cipherBF = this.cipherBF.get();
 		byte[] ctext = null;
 		try {
 			cipherBF.init(Cipher.ENCRYPT_MODE, keyBF);
@@ -68,6 +77,7 @@ public class Deterministic implements Encryption {
 		byte[] ciphertext = (byte[]) ctext;
 		if (ciphertext.length == 8) { // blowfish: 64-bit block size
 			try {
+				Cipher cipherBF = this.cipherBF.get();
 				cipherBF.init(Cipher.DECRYPT_MODE, keyBF, new IvParameterSpec(initIVsBF.get(ctext)));
 				plainText = cipherBF.doFinal(ciphertext);
 			} catch (Exception e) {
@@ -77,6 +87,7 @@ public class Deterministic implements Encryption {
 			return wrapped.getLong();
 		} else { // AES: 128-bit block size
 			try {
+				Cipher cipherAES = this.cipherAES.get();
 				cipherAES.init(Cipher.DECRYPT_MODE, keyAES, new IvParameterSpec(initIVsAES.get(ctext)));
 				plainText = cipherAES.doFinal(ciphertext);
 			} catch (Exception e) {
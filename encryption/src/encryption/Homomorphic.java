@@ -2,21 +2,23 @@ package encryption;
 
 import java.math.BigInteger;
 
-import thep.paillier.EncryptedInteger;
 import thep.paillier.PrivateKey;
 import thep.paillier.PublicKey;
-import thep.paillier.exceptions.BigIntegerClassNotValid;
 
+/**
+ * Additively homomorphic encryption of ints with a Paillier key shared by
+ * the whole JVM. Ciphertexts are immutable BigIntegers and the key is never
+ * modified, so all methods may be called from any number of threads.
+ */
 public class Homomorphic implements Encryption {
 
 	private static final PrivateKey priv = new PrivateKey(54);
 	private static final PublicKey pub = priv.getPublicKey();
-	public static EncryptedInteger ei;
 	static {
-		try {
-			ei = new EncryptedInteger(pub);
-		} catch (BigIntegerClassNotValid e) {
-			e.printStackTrace();
+		// -DpaillierPoolSize=N [-DpaillierPoolThreads=T] precomputes blinding factors
+		if (System.getProperty("paillierPoolSize") != null) {
+			pub.startRandomnessPool(Integer.getInteger("paillierPoolSize"),
+					Integer.getInteger("paillierPoolThreads", 1));
 		}
 	}
 	
@@ -34,29 +36,13 @@ public class Homomorphic implements Encryption {
 		
 	@Override
 	public BigInteger encrypt(int ptext) {
-		try {
-			ei.set(BigInteger.valueOf(Math.abs(ptext)));
-			if (ptext < 0) {
-				ei.set(BigInteger.valueOf(-ptext));
-				ei = ei.multiply(new BigInteger("-1"));
-			} else {
-				ei.set(BigInteger.valueOf(ptext));
-			}
-		} catch (BigIntegerClassNotValid e1) {
-			e1.printStackTrace();
-		}
-		return ei.getCipherVal();
+		// negative values encrypt to n - |ptext|
+		return pub.encrypt(BigInteger.valueOf(ptext));
 	}
 	
 	@Override
 	public Object decrypt(Object ctext) {
-		ei.setCipherVal((BigInteger) ctext);
-		BigInteger ptext = null;
-		try {
-			ptext = ei.decrypt(priv);
-		} catch (BigIntegerClassNotValid e) {
-			e.printStackTrace();
-		}
+		BigInteger ptext = priv.decrypt((BigInteger) ctext);
 		if (ptext.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) > 0) {
 			ptext = ptext.subtract(pub.getN());
 		}
@@ -73,5 +59,26 @@ public class Homomorphic implements Encryption {
 		// AH only supports int type
 		return null;
 	}
+	
+	/**
+	 * Returns the encryption of the sum of the plaintexts of c1 and c2
+	 */
+	public static BigInteger add(BigInteger c1, BigInteger c2) {
+		return c1.multiply(c2).mod(pub.getNSquared());
+	}
+	
+	/**
+	 * Returns the encryption of the plaintext of c1 minus that of c2
+	 */
+	public static BigInteger subtract(BigInteger c1, BigInteger c2) {
+		return c1.multiply(c2.modInverse(pub.getNSquared())).mod(pub.getNSquared());
+	}
+	
+	/**
+	 * Returns the encryption of the plaintext of c times k
+	 */
+	public static BigInteger multiply(BigInteger c, int k) {
+		return c.modPow(BigInteger.valueOf(k), pub.getNSquared());
+	}
 
 }
@@ -0,0 +1,431 @@
+package encryption;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Boldyreva et al.'s order-preserving encryption, ported from pyope
+ * (lib/pyope). The plaintexts of the input range are mapped to the output
+ * range by a random order-preserving function, which is sampled lazily by a
+ * binary search over the output range: at each step a hypergeometric sample
+ * says how many plaintexts fall below the middle ciphertext.
+ *
+ * <p>The coins of each step are the AES-CTR stream keyed by HMAC-SHA256 of
+ * the decimal string of the step's value, and the floating point steps are
+ * those of pyope with StrictMath, so the ciphertexts are the ones of the
+ * Python tool run by Python 2. Instances are thread-safe.</p>
+ */
+public class OPECipher {
+
+	/** Bounds of the ranges, so that the sum of two values fits in a long */
+	private static final long LIMIT = 1L << 62;
+
+	private static final byte[] ZEROS = new byte[16];
+	// pycrypto's Counter.new(128) starts at 1
+	private static final byte[] COUNTER = new byte[16];
+
+	static {
+		COUNTER[15] = 1;
+	}
+
+	private final long inStart, inEnd, outStart, outEnd;
+	private final ThreadLocal<Mac> mac;
+	private final ThreadLocal<Tape> tapes = new ThreadLocal<Tape>() {
+		@Override
+		protected Tape initialValue() {
+			return new Tape();
+		}
+	};
+
+	/**
+	 * @param key the HMAC key
+	 * @param inStart, inEnd the plaintexts, both inclusive
+	 * @param outStart, outEnd the ciphertexts, both inclusive; at least as
+	 *        many as the plaintexts
+	 */
+	public OPECipher(final byte[] key, long inStart, long inEnd, long outStart, long outEnd) {
+		if (inStart > inEnd || outStart > outEnd)
+			throw new IllegalArgumentException("Invalid range");
+		if (inStart < -LIMIT || inEnd > LIMIT || outStart < -LIMIT || outEnd > LIMIT)
+			throw new IllegalArgumentException("Ranges must be within +-2^62");
+		if (inEnd - inStart > outEnd - outStart)
+			throw new IllegalArgumentException("The output range is smaller than the input range");
+		this.inStart = inStart;
+		this.inEnd = inEnd;
+		this.outStart = outStart;
+		this.outEnd = outEnd;
+		final byte[] keyCopy = key.clone();
+		this.mac = new ThreadLocal<Mac>() {
+			@Override
+			protected Mac initialValue() {
+				try {
+					Mac mac = Mac.getInstance("HmacSHA256");
+					mac.init(new SecretKeySpec(keyCopy, "HmacSHA256"));
+					return mac;
+				} catch (GeneralSecurityException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+	}
+
+	public long encrypt(long plaintext) {
+		if (plaintext < inStart || plaintext > inEnd)
+			throw new IllegalArgumentException("Plaintext is not within the input range: " + plaintext);
+		long inLo = inStart, inHi = inEnd, outLo = outStart, outHi = outEnd;
+		while (inLo != inHi) {
+			long mid = middle(outLo, outHi);
+			long x = sampleHgd(inLo, inHi, outLo, outHi, mid);
+			if (plaintext <= x) {
+				inHi = x;
+				outHi = mid;
+			} else {
+				inLo = x + 1;
+				outLo = mid + 1;
+			}
+		}
+		return sampleUniform(outLo, outHi, tape(inLo));
+	}
+
+	public long decrypt(long ciphertext) {
+		if (ciphertext < outStart || ciphertext > outEnd)
+			throw new IllegalArgumentException("Ciphertext is not within the output range: " + ciphertext);
+		long inLo = inStart, inHi = inEnd, outLo = outStart, outHi = outEnd;
+		while (inLo < inHi) {
+			long mid = middle(outLo, outHi);
+			long x = sampleHgd(inLo, inHi, outLo, outHi, mid);
+			if (ciphertext <= mid) {
+				inHi = x;
+				outHi = mid;
+			} else {
+				inLo = x + 1;
+				outLo = mid + 1;
+			}
+		}
+		if (inLo > inHi || sampleUniform(outLo, outHi, tape(inLo)) != ciphertext)
+			throw new IllegalArgumentException("Invalid ciphertext: " + ciphertext);
+		return inLo;
+	}
+
+	/**
+	 * Encrypts many plaintexts. They are sorted and searched for together,
+	 * so the steps they share are sampled once.
+	 */
+	public long[] encrypt(long[] plaintexts) {
+		long[] sorted = distinct(plaintexts);
+		for (long p : sorted) {
+			if (p < inStart || p > inEnd)
+				throw new IllegalArgumentException("Plaintext is not within the input range: " + p);
+		}
+		long[] ciphertexts = new long[sorted.length];
+		encrypt(sorted, 0, sorted.length, inStart, inEnd, outStart, outEnd, ciphertexts);
+		long[] result = new long[plaintexts.length];
+		for (int i = 0; i < plaintexts.length; i++)
+			result[i] = ciphertexts[Arrays.binarySearch(sorted, plaintexts[i])];
+		return result;
+	}
+
+	/**
+	 * Decrypts many ciphertexts, sharing steps as encrypt(long[]) does
+	 */
+	public long[] decrypt(long[] ciphertexts) {
+		long[] sorted = distinct(ciphertexts);
+		for (long c : sorted) {
+			if (c < outStart || c > outEnd)
+				throw new IllegalArgumentException("Ciphertext is not within the output range: " + c);
+		}
+		long[] plaintexts = new long[sorted.length];
+		decrypt(sorted, 0, sorted.length, inStart, inEnd, outStart, outEnd, plaintexts);
+		long[] result = new long[ciphertexts.length];
+		for (int i = 0; i < ciphertexts.length; i++)
+			result[i] = plaintexts[Arrays.binarySearch(sorted, ciphertexts[i])];
+		return result;
+	}
+
+	private void encrypt(long[] sorted, int from, int to, long inLo, long inHi, long outLo, long outHi,
+			long[] ciphertexts) {
+		if (inLo == inHi) {
+			// the values are distinct, so this is the only one
+			ciphertexts[from] = sampleUniform(outLo, outHi, tape(inLo));
+			return;
+		}
+		long mid = middle(outLo, outHi);
+		long x = sampleHgd(inLo, inHi, outLo, outHi, mid);
+		int split = upperBound(sorted, from, to, x);
+		if (from < split)
+			encrypt(sorted, from, split, inLo, x, outLo, mid, ciphertexts);
+		if (split < to)
+			encrypt(sorted, split, to, x + 1, inHi, mid + 1, outHi, ciphertexts);
+	}
+
+	private void decrypt(long[] sorted, int from, int to, long inLo, long inHi, long outLo, long outHi,
+			long[] plaintexts) {
+		if (inLo > inHi)
+			throw new IllegalArgumentException("Invalid ciphertext: " + sorted[from]);
+		if (inLo == inHi) {
+			long valid = sampleUniform(outLo, outHi, tape(inLo));
+			for (int i = from; i < to; i++) {
+				if (sorted[i] != valid)
+					throw new IllegalArgumentException("Invalid ciphertext: " + sorted[i]);
+				plaintexts[i] = inLo;
+			}
+			return;
+		}
+		long mid = middle(outLo, outHi);
+		long x = sampleHgd(inLo, inHi, outLo, outHi, mid);
+		int split = upperBound(sorted, from, to, mid);
+		if (from < split)
+			decrypt(sorted, from, split, inLo, x, outLo, mid, plaintexts);
+		if (split < to)
+			decrypt(sorted, split, to, x + 1, inHi, mid + 1, outHi, plaintexts);
+	}
+
+	private static long[] distinct(long[] values) {
+		long[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int n = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (n == 0 || sorted[i] != sorted[n - 1])
+				sorted[n++] = sorted[i];
+		}
+		return Arrays.copyOf(sorted, n);
+	}
+
+	/**
+	 * The first index in [from, to) whose value is greater than x
+	 */
+	private static int upperBound(long[] sorted, int from, int to, long x) {
+		while (from < to) {
+			int m = (from + to) >>> 1;
+			if (sorted[m] <= x)
+				from = m + 1;
+			else
+				to = m;
+		}
+		return from;
+	}
+
+	/**
+	 * The last ciphertext of the lower half, as pyope computes it
+	 */
+	private static long middle(long outLo, long outHi) {
+		long outSize = outHi - outLo + 1;
+		return outLo - 1 + (long) Math.ceil(outSize / 2.0);
+	}
+
+	/**
+	 * The greatest plaintext encrypted to at most mid
+	 */
+	private long sampleHgd(long inLo, long inHi, long outLo, long outHi, long mid) {
+		long inSize = inHi - inLo + 1;
+		long outSize = outHi - outLo + 1;
+		long index = mid - outLo + 1;
+		// pyope's sampling can leave fewer ciphertexts than plaintexts when
+		// the ranges are small; it fails an assertion there
+		if (inSize > outSize)
+			throw new IllegalArgumentException("The output range is too small for pyope's sampling");
+		if (inSize == outSize)
+			return inLo + index - 1;
+		long k = rhyper(index, inSize, outSize - inSize, tape(mid));
+		if (k == 0)
+			return inLo;
+		else if (k == inSize)
+			return inHi;
+		else
+			return inLo + k;
+	}
+
+	private static long sampleUniform(long lo, long hi, Tape coins) {
+		while (lo < hi) {
+			long mid = Math.floorDiv(lo + hi, 2);
+			if (coins.next() == 0)
+				hi = mid;
+			else
+				lo = mid + 1;
+		}
+		return lo;
+	}
+
+	private Tape tape(long data) {
+		Tape tape = tapes.get();
+		tape.reset(mac.get().doFinal(Long.toString(data).getBytes(StandardCharsets.US_ASCII)));
+		return tape;
+	}
+
+	/*
+	 * The pseudo-random bits of one step, most significant bit of each byte
+	 * first. One per thread, reset for every step.
+	 */
+	private static class Tape {
+		private final Cipher aes;
+		private final byte[] block = new byte[16];
+		private int bit;
+
+		Tape() {
+			try {
+				aes = Cipher.getInstance("AES/CTR/NoPadding");
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		void reset(byte[] key) {
+			try {
+				aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(COUNTER));
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+			bit = 128;
+		}
+
+		int next() {
+			if (bit == 128) {
+				try {
+					aes.update(ZEROS, 0, 16, block, 0);
+				} catch (GeneralSecurityException e) {
+					throw new IllegalStateException(e);
+				}
+				bit = 0;
+			}
+			int b = (block[bit >> 3] >> (7 - (bit & 7))) & 1;
+			bit++;
+			return b;
+		}
+
+		/**
+		 * A uniform double in [0, 1] from 32 bits
+		 */
+		double draw() {
+			long out = 0;
+			for (int i = 0; i < 32; i++)
+				out = (out << 1) | next();
+			return out / 4294967295.0;
+		}
+	}
+
+	/*
+	 * The number of white balls drawn when kk balls are drawn from an urn
+	 * of nn1 white and nn2 black balls (pyope's HGD.rhyper)
+	 */
+	private static long rhyper(long kk, long nn1, long nn2, Tape coins) {
+		if (kk > 10)
+			return hypergeometricHrua(coins, nn1, nn2, kk);
+		else
+			return hypergeometricHyp(coins, nn1, nn2, kk);
+	}
+
+	private static long hypergeometricHyp(Tape coins, long good, long bad, long sample) {
+		long d1 = bad + good - sample;
+		double d2 = Math.min(bad, good);
+		double y = d2;
+		long k = sample;
+		while (y > 0.0) {
+			double u = coins.draw();
+			y -= (long) Math.floor(u + y / (d1 + k));
+			k--;
+			if (k == 0)
+				break;
+		}
+		long z = (long) (d2 - y);
+		if (good > bad)
+			z = sample - z;
+		return z;
+	}
+
+	private static final double D1 = 1.7155277699214135;
+	private static final double D2 = 0.8989161620588988;
+
+	/*
+	 * The HRUA* algorithm, with the corrections of rv.py that pyope applies
+	 */
+	private static long hypergeometricHrua(Tape coins, long good, long bad, long sample) {
+		long mingoodbad = Math.min(good, bad);
+		long popsize = good + bad;
+		long maxgoodbad = Math.max(good, bad);
+		long m = Math.min(sample, popsize - sample);
+		double d4 = (double) mingoodbad / popsize;
+		double d5 = 1.0 - d4;
+		double d6 = m * d4 + 0.5;
+		// Python multiplies the first two factors exactly
+		double product = BigInteger.valueOf(popsize - m).multiply(BigInteger.valueOf(sample)).doubleValue();
+		double d7 = Math.sqrt(product * d4 * d5 / (popsize - 1) + 0.5);
+		double d8 = D1 * d7 + D2;
+		long d9 = (long) Math.floor((double) (m + 1) * (mingoodbad + 1) / (popsize + 2));
+		double d10 = loggam(d9 + 1) + loggam(mingoodbad - d9 + 1) + loggam(m - d9 + 1)
+				+ loggam(maxgoodbad - m + d9 + 1);
+		double d11 = Math.min(Math.min(m, mingoodbad) + 1.0, Math.floor(d6 + 16 * d7));
+
+		long z;
+		while (true) {
+			double x = coins.draw();
+			double y = coins.draw();
+			double w = d6 + d8 * (y - 0.5) / x;
+
+			// fast rejection
+			if (w < 0.0 || w >= d11)
+				continue;
+
+			z = (long) Math.floor(w);
+			double t = d10 - (loggam(z + 1) + loggam(mingoodbad - z + 1) + loggam(m - z + 1)
+					+ loggam(maxgoodbad - m + z + 1));
+
+			// fast acceptance
+			if ((x * (4.0 - x) - 3.0) <= t)
+				break;
+
+			// fast rejection
+			if (x * (x - t) >= 1)
+				continue;
+
+			// acceptance
+			if (2.0 * StrictMath.log(x) <= t)
+				break;
+		}
+
+		if (good > bad)
+			z = m - z;
+		if (m < sample)
+			z = good - z;
+		return z;
+	}
+
+	private static final double[] A = { 8.333333333333333e-02, -2.777777777777778e-03, 7.936507936507937e-04,
+			-5.952380952380952e-04, 8.417508417508418e-04, -1.917526917526918e-03, 6.410256410256410e-03,
+			-2.955065359477124e-02, 1.796443723688307e-01, -1.39243221690590e+00 };
+
+	/*
+	 * ln(gamma(x)), from SPECFUN by Shanjie Zhang and Jianming Jin
+	 */
+	private static double loggam(double x) {
+		double x0 = x;
+		long n = 0;
+		if (x == 1.0 || x == 2.0)
+			return 0.0;
+		else if (x <= 7.0) {
+			n = (long) (7 - x);
+			x0 = x + n;
+		}
+		double x2 = 1.0 / (x0 * x0);
+		double xp = 2 * Math.PI;
+		double gl0 = A[9];
+		for (int k = 8; k >= 0; k--) {
+			gl0 *= x2;
+			gl0 += A[k];
+		}
+		double gl = gl0 / x0 + 0.5 * StrictMath.log(xp) + (x0 - 0.5) * StrictMath.log(x0) - x0;
+		if (x <= 7.0) {
+			for (int k = 1; k <= n; k++) {
+				gl -= StrictMath.log(x0 - 1.0);
+				x0 -= 1.0;
+			}
+		}
+		return gl;
+	}
+}
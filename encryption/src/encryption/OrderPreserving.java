@@ -1,74 +1,176 @@
 package encryption;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+/**
+ * Order-preserving encryption of ints, and of strings char by char.
+ *
+ * <p>Values are encrypted in process by {@link OPECipher} with the key and
+ * ranges of lib/ope_encrypt.py, so the ciphertexts are those the Python
+ * tool gave: data encrypted by it stays valid. An int is encrypted to the
+ * decimal string of its ciphertext, a string to the ciphertexts of its chars
+ * each followed by a space.</p>
+ *
+ * <p>Recent plaintext/ciphertext pairs are kept in LRU caches of
+ * -DopeCacheSize entries each (default 65536), shared by all instances.</p>
+ */
 public class OrderPreserving implements Encryption {
 
+	private static final OPECipher cipher = new OPECipher(
+			"key goes herekey goes here".getBytes(StandardCharsets.US_ASCII),
+			Integer.MIN_VALUE, Integer.MAX_VALUE, -(1L << 53), (1L << 53) - 1);
+
+	private static final int cacheSize = Integer.getInteger("opeCacheSize", 65536);
+	private static final Map<Integer, Long> ciphertexts = lruCache(cacheSize);
+	private static final Map<Long, Integer> plaintexts = lruCache(cacheSize);
+
+	private static <K, V> Map<K, V> lruCache(final int size) {
+		return new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				return size() > size;
+			}
+		};
+	}
+
 	@Override
 	public Object decrypt(Object ctext) {
-		ArrayList<String> array = new ArrayList<>();
-		try {
-			ProcessBuilder pb = new ProcessBuilder("python", "lib/ope_decrypt.py", ctext.toString());
-			Process p = pb.start();
-
-			BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			String s;
-			while ((s = in.readLine()) != null) {
-				array.add(s);
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		if (array.size() == 1) {
-			return Integer.parseInt(array.get(0));
-		} else {
-			char[] charArray = new char[array.size()-1];
-			for (int i = 0; i < array.size() - 1; i++) {
-				charArray[i] = (char) Integer.parseInt(array.get(i));
-			}
-			return new String(charArray);
-		}
+		String s = ctext.toString();
+		if (s.isEmpty())
+			return s;
+		if (s.indexOf(' ') < 0)
+			return decryptValue(Long.parseLong(s));
+		String[] values = s.trim().split(" +");
+		long[] c = new long[values.length];
+		for (int i = 0; i < values.length; i++)
+			c[i] = Long.parseLong(values[i]);
+		int[] p = decrypt(c);
+		char[] chars = new char[p.length];
+		for (int i = 0; i < p.length; i++)
+			chars[i] = (char) p[i];
+		return new String(chars);
 	}
 
 	@Override
 	public String encrypt(String ptext) {
-		String res = "";
-		try {
-			ProcessBuilder pb = new ProcessBuilder("python", "lib/ope_encrypt_String.py", ptext);
-			Process p = pb.start();
-
-			BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			String s;
-			while ((s = in.readLine()) != null) {
-				res += s + " ";
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		return res;
+		int[] p = new int[ptext.length()];
+		for (int i = 0; i < p.length; i++)
+			p[i] = ptext.charAt(i);
+		StringBuilder res = new StringBuilder();
+		for (long c : encrypt(p))
+			res.append(c).append(' ');
+		return res.toString();
 	}
 
 	@Override
 	public String encrypt(int ptext) {
-		String s = null;
-		try {
-			ProcessBuilder pb = new ProcessBuilder("python", "lib/ope_encrypt.py", "" + ptext);
-			Process p = pb.start();
-
-			BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			s = in.readLine();
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
-		return s;
+		return Long.toString(encryptValue(ptext));
 	}
 
 	@Override
-	public Object encrypt(long ptext) {
-		// TODO Auto-generated method stub
-		return null;
+	public String encrypt(long ptext) {
+		if (ptext < Integer.MIN_VALUE || ptext > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("OPE plaintexts are ints: " + ptext);
+		return encrypt((int) ptext);
+	}
+
+	public long encryptValue(int ptext) {
+		Long c;
+		synchronized (ciphertexts) {
+			c = ciphertexts.get(ptext);
+		}
+		if (c == null) {
+			c = cipher.encrypt(ptext);
+			remember(ptext, c);
+		}
+		return c;
+	}
+
+	public int decryptValue(long ctext) {
+		Integer p;
+		synchronized (plaintexts) {
+			p = plaintexts.get(ctext);
+		}
+		if (p == null) {
+			p = (int) cipher.decrypt(ctext);
+			remember(p, ctext);
+		}
+		return p;
+	}
+
+	/**
+	 * Encrypts many values. Those not in the cache are encrypted together by
+	 * OPECipher.encrypt(long[]).
+	 */
+	public long[] encrypt(int[] ptexts) {
+		long[] result = new long[ptexts.length];
+		int[] missing = new int[ptexts.length];
+		int n = 0;
+		synchronized (ciphertexts) {
+			for (int i = 0; i < ptexts.length; i++) {
+				Long c = ciphertexts.get(ptexts[i]);
+				if (c == null)
+					missing[n++] = i;
+				else
+					result[i] = c;
+			}
+		}
+		if (n > 0) {
+			long[] p = new long[n];
+			for (int i = 0; i < n; i++)
+				p[i] = ptexts[missing[i]];
+			long[] c = cipher.encrypt(p);
+			for (int i = 0; i < n; i++) {
+				result[missing[i]] = c[i];
+				remember((int) p[i], c[i]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Decrypts many values, as encrypt(int[]) does
+	 */
+	public int[] decrypt(long[] ctexts) {
+		int[] result = new int[ctexts.length];
+		int[] missing = new int[ctexts.length];
+		int n = 0;
+		synchronized (plaintexts) {
+			for (int i = 0; i < ctexts.length; i++) {
+				Integer p = plaintexts.get(ctexts[i]);
+				if (p == null)
+					missing[n++] = i;
+				else
+					result[i] = p;
+			}
+		}
+		if (n > 0) {
+			long[] c = new long[n];
+			for (int i = 0; i < n; i++)
+				c[i] = ctexts[missing[i]];
+			long[] p = cipher.decrypt(c);
+			for (int i = 0; i < n; i++) {
+				result[missing[i]] = (int) p[i];
+				remember((int) p[i], c[i]);
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * The scheme is deterministic, so a pair serves both directions
+	 */
+	private static void remember(int ptext, long ctext) {
+		synchronized (ciphertexts) {
+			ciphertexts.put(ptext, ctext);
+		}
+		synchronized (plaintexts) {
+			plaintexts.put(ctext, ptext);
+		}
 	}
 
 }
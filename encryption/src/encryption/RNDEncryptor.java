@@ -8,16 +8,20 @@ import java.util.Base64.Encoder;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 
+/**
+ * Randomized encryption for the dataset encryptors. An instance may be used
+ * by many threads at once.
+ */
 public class RNDEncryptor {
 
 	private Key keyAES, keyBF; // AES and blowfish
-	private Cipher cipherAES, cipherBF;
+	// Ciphers are stateful, so each thread gets its own
+	private final ThreadLocal<Cipher> cipherAES = newCipher("AES/CBC/PKCS5PADDING");
+	private final ThreadLocal<Cipher> cipherBF = newCipher("Blowfish/CBC/PKCS5PADDING");
 	private Encoder encoder = Base64.getEncoder();
 
 	public RNDEncryptor() {
 		try {
-			cipherAES = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-			cipherBF = Cipher.getInstance("Blowfish/CBC/PKCS5PADDING");
 			KeyGenerator generatorAES = KeyGenerator.getInstance("AES");
 			KeyGenerator generatorBF = KeyGenerator.getInstance("Blowfish");
 			// the keys need to be written to a file;
@@ -28,27 +32,47 @@ public class RNDEncryptor {
 			e.printStackTrace();
 		}
 	}
+
+	// Left uninitialized: encrypt() initializes the cipher for every value
+	private static ThreadLocal<Cipher> newCipher(final String transformation) {
+		return new ThreadLocal<Cipher>() {
+			@Override
+			protected Cipher initialValue() {
+				try {
+					return Cipher.getInstance(transformation);
+				} catch (Exception e) {
+					e.printStackTrace();
+					return null;
+				}
+			}
+		};
+	}
 	
 	public String encrypt(String ptext) {
-		byte[] cipher = encrypt(ptext.getBytes(), cipherAES, keyAES);
+		byte[] cipher = encrypt(ptext.getBytes(), cipherAES.get(), keyAES);
 		return encoder.encodeToString(cipher);
 	}
 
 	public String encrypt(int ptext) {
-		byte[] cipher = encrypt(ByteBuffer.allocate(4).putInt(ptext).array(), cipherBF, keyBF);
+		byte[] cipher = encrypt(ByteBuffer.allocate(4).putInt(ptext).array(), cipherBF.get(), keyBF);
 		return encoder.encodeToString(cipher);
 	}
 
 	public String encrypt(long ptext) {
-		byte[] cipher = encrypt(ByteBuffer.allocate(8).putLong(ptext).array(), cipherAES, keyAES);
+		byte[] cipher = encrypt(ByteBuffer.allocate(8).putLong(ptext).array(), cipherAES.get(), keyAES);
 		return encoder.encodeToString(cipher);
 	}
 
+	public String encrypt(double ptext) {
+		return encrypt(Double.doubleToLongBits(ptext));
+	}
+
 	public byte[] encrypt(byte[] ptext, Cipher cipher, Key key) {
 		byte[] ctext = null;
 		try {
 			// the IV needs to be written to a file, cipherBF.getIV().
-			// each int uses its own unique IV.
+			// each int uses its own unique IV, so the cipher is
+			// initialized for every value.
 			cipher.init(Cipher.ENCRYPT_MODE, key);
 			ctext = cipher.doFinal(ptext);
 		} catch (Exception e) {
@@ -57,4 +81,4 @@ public class RNDEncryptor {
 		return ctext;
 	}
 
-}
\ No newline at end of file
+}
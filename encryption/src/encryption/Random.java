@@ -8,12 +8,12 @@ import javax.crypto.spec.IvParameterSpec;
 public class Random {
 
 	private static Key keyAES, keyBF; // AES and blowfish
-	private static Cipher cipherAES, cipherBF;
+	// Ciphers are stateful, so each thread gets its own
+	private static final ThreadLocal<Cipher> cipherAES = Deterministic.newCipher("AES/CBC/PKCS5PADDING");
+	private static final ThreadLocal<Cipher> cipherBF = Deterministic.newCipher("Blowfish/CBC/PKCS5PADDING");
 
 	static {
 		try {
-			cipherAES = Cipher.getInstance("AES/CBC/PKCS5PADDING");
-			cipherBF = Cipher.getInstance("Blowfish/CBC/PKCS5PADDING");
 			KeyGenerator generatorAES = KeyGenerator.getInstance("AES");
 			KeyGenerator generatorBF = KeyGenerator.getInstance("Blowfish");
 			keyAES = generatorAES.generateKey();
@@ -25,6 +25,7 @@ public class Random {
 	}
 
 	public byte[] encrypt(byte[] ptext) {
+		Cipher cipherAES = Random.cipherAES.get(), cipherBF = Random.cipherBF.get();
 		byte[] ctext = null;
 		try {
 			if (ptext.length == 4) {
@@ -41,6 +42,7 @@ public class Random {
 	}
 
 	public byte[] decrypt(byte[] ctext) {
+		Cipher cipherAES = Random.cipherAES.get(), cipherBF = Random.cipherBF.get();
 		byte[] plainText = null;
 		try {
 			if (ctext.length == 8) { // blowfish: 64-bit block size
@@ -0,0 +1,228 @@
+package encryption;
+
+import java.io.File;
+
+/**
+ * Encrypts the fields of delimited lines with one scheme per column. A schema
+ * is written as a comma-separated list of SCHEME[:type] entries, e.g.
+ *
+ * <pre>
+ * DET,RND:int,AH:double,PLAIN,RND:long
+ * </pre>
+ *
+ * The schemes are PLAIN, DET, RND, AH and OPE, and the types string (the
+ * default), int, long and double. Empty fields stay empty, and the fields of
+ * a line past the last column are copied as they are.
+ */
+public class Schema implements DatasetEncryptor.LineEncryptor {
+
+	public enum Scheme {
+		PLAIN, DET, RND, AH, OPE
+	}
+
+	public enum Type {
+		STRING, INT, LONG, DOUBLE
+	}
+
+	/**
+	 * Encrypts the non-empty fields of a column
+	 */
+	public interface Column {
+		String encrypt(String field);
+	}
+
+	private final char delimiter;
+	private final Column[] columns;
+
+	public Schema(char delimiter, Column... columns) {
+		this.delimiter = delimiter;
+		this.columns = columns;
+	}
+
+	/**
+	 * Parses a schema. The AH key files are written to keyDir if a column
+	 * is AH.
+	 */
+	public static Schema parse(String spec, char delimiter, String keyDir) {
+		String[] entries = spec.split(",");
+		Column[] columns = new Column[entries.length];
+		DETEncryptor det = null;
+		RNDEncryptor rnd = null;
+		AHEncryptor ah = null;
+		OrderPreserving ope = null;
+		for (int i = 0; i < entries.length; i++) {
+			String[] parts = entries[i].trim().split(":");
+			Scheme scheme;
+			Type type;
+			try {
+				scheme = Scheme.valueOf(parts[0].toUpperCase());
+				type = parts.length > 1 ? Type.valueOf(parts[1].toUpperCase()) : Type.STRING;
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Unknown column " + entries[i] + " in schema " + spec);
+			}
+			switch (scheme) {
+			case DET:
+				if (det == null)
+					det = new DETEncryptor();
+				columns[i] = det(det, type);
+				break;
+			case RND:
+				if (rnd == null)
+					rnd = new RNDEncryptor();
+				columns[i] = rnd(rnd, type);
+				break;
+			case AH:
+				if (ah == null)
+					ah = new AHEncryptor(keyDir);
+				columns[i] = ah(ah, type);
+				break;
+			case OPE:
+				if (ope == null)
+					ope = new OrderPreserving();
+				columns[i] = ope(ope, type);
+				break;
+			default:
+				columns[i] = null;
+			}
+			if (columns[i] == null && scheme != Scheme.PLAIN)
+				throw new IllegalArgumentException(scheme + " does not support " + type + " in schema " + spec);
+		}
+		return new Schema(delimiter, columns);
+	}
+
+	public static Column det(final DETEncryptor det, Type type) {
+		switch (type) {
+		case STRING:
+			return new Column() {
+				public String encrypt(String field) {
+					return det.encrypt(field);
+				}
+			};
+		case INT:
+			return new Column() {
+				public String encrypt(String field) {
+					return det.encrypt(Integer.parseInt(field));
+				}
+			};
+		case LONG:
+			return new Column() {
+				public String encrypt(String field) {
+					return det.encrypt(Long.parseLong(field));
+				}
+			};
+		default:
+			return null;
+		}
+	}
+
+	public static Column rnd(final RNDEncryptor rnd, Type type) {
+		switch (type) {
+		case STRING:
+			return new Column() {
+				public String encrypt(String field) {
+					return rnd.encrypt(field);
+				}
+			};
+		case INT:
+			return new Column() {
+				public String encrypt(String field) {
+					return rnd.encrypt(Integer.parseInt(field));
+				}
+			};
+		case LONG:
+			return new Column() {
+				public String encrypt(String field) {
+					return rnd.encrypt(Long.parseLong(field));
+				}
+			};
+		default:
+			return null;
+		}
+	}
+
+	public static Column ah(final AHEncryptor ah, Type type) {
+		switch (type) {
+		case INT:
+			return new Column() {
+				public String encrypt(String field) {
+					return ah.encrypt(Integer.parseInt(field));
+				}
+			};
+		case DOUBLE:
+			return new Column() {
+				public String encrypt(String field) {
+					return ah.encrypt(Double.parseDouble(field));
+				}
+			};
+		default:
+			return null;
+		}
+	}
+
+	public static Column ope(final OrderPreserving ope, Type type) {
+		switch (type) {
+		case STRING:
+			return new Column() {
+				public String encrypt(String field) {
+					return ope.encrypt(field);
+				}
+			};
+		case INT:
+			return new Column() {
+				public String encrypt(String field) {
+					return ope.encrypt(Integer.parseInt(field));
+				}
+			};
+		default:
+			return null;
+		}
+	}
+
+	public String encrypt(String line) {
+		StringBuilder out = new StringBuilder(line.length() * 8);
+		int start = 0;
+		for (int i = 0; start <= line.length(); i++) {
+			int end = line.indexOf(delimiter, start);
+			if (end < 0)
+				end = line.length();
+			if (i > 0)
+				out.append(delimiter);
+			String field = line.substring(start, end);
+			if (i < columns.length && columns[i] != null && !field.isEmpty())
+				out.append(columns[i].encrypt(field));
+			else
+				out.append(field);
+			start = end + 1;
+		}
+		return out.toString();
+	}
+
+	static void printUsage() {
+		System.out.println("Usage: java [-DencryptThreads=<n>] [-Ddelimiter=<char or code>] encryption.Schema "
+				+ "<schema> <input folder> <output folder>");
+		System.exit(1);
+	}
+
+	/**
+	 * Encrypts every file of a folder with a schema, into files named
+	 * &lt;name&gt;Cipher in &lt;output folder&gt;/dir, as the benchmark
+	 * encryptors do. The delimiter is ^A unless set by -Ddelimiter.
+	 */
+	public static void main(String[] args) {
+		if (args.length != 3) {
+			System.out.println("ERROR: Wrong number of parameters.");
+			printUsage();
+		}
+		String d = System.getProperty("delimiter", "\u0001");
+		char delimiter = d.length() == 1 ? d.charAt(0) : (char) Integer.parseInt(d);
+		// before parse(), which writes the AH keys to the output folder
+		File outputFolder = DatasetEncryptor.prepareOutput(args[2]);
+		Schema schema = parse(args[0], delimiter, args[2]);
+
+		DatasetEncryptor.run(new File(args[1]), outputFolder, new DatasetEncryptor.FileEncryptor() {
+			public DatasetEncryptor.LineEncryptor forFile(File file) {
+				return schema;
+			}
+		}, DatasetEncryptor.TEXT_SINKS);
+	}
+}
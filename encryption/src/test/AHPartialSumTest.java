@@ -0,0 +1,159 @@
+package test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.PaillierContext;
+import com.n1analytics.paillier.PaillierPrivateKey;
+
+import encryption.AHPartialSum;
+import encryption.AHSumCombiner;
+import encryption.Util;
+import junit.framework.TestCase;
+
+/*
+ * Partial sums of the AH columns of a group, as the mappers emit them and
+ * AHSumCombiner and the reducers merge them
+ */
+public class AHPartialSumTest extends TestCase {
+
+	private static final PaillierPrivateKey priv = PaillierPrivateKey.create(512);
+	private static final PaillierContext context = priv.getPublicKey().createSignedContext();
+
+	/*
+	 * The partial sum of one row, null for a missing value
+	 */
+	private static AHPartialSum row(Long... values) {
+		AHPartialSum partial = new AHPartialSum(values.length);
+		for (int i = 0; i < values.length; i++)
+			if (values[i] != null)
+				partial.set(i, context.encrypt(values[i]));
+		partial.setCount(1);
+		return partial;
+	}
+
+	private static long decrypt(EncryptedNumber n) {
+		return n.decrypt(priv).decodeLong();
+	}
+
+	private static AHPartialSum copy(AHPartialSum partial, AHPartialSum into) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		partial.write(new DataOutputStream(bytes));
+		into.readFields(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		return into;
+	}
+
+	public void testWriteReadFields() throws IOException {
+		AHPartialSum partial = row(5L, null, -7L);
+		partial.setCount(3);
+		AHPartialSum read = copy(partial, new AHPartialSum());
+		assertEquals(3, read.getColumns());
+		assertEquals(3, read.getCount());
+		assertTrue(read.has(0));
+		assertFalse(read.has(1));
+		assertEquals(5, decrypt(read.get(0, context)));
+		assertEquals(-7, decrypt(read.get(2, context)));
+
+		// Hadoop reuses instances, also for records of another width
+		copy(row(1L), read);
+		assertEquals(1, read.getColumns());
+		assertEquals(1, read.getCount());
+		assertEquals(1, decrypt(read.get(0, context)));
+	}
+
+	public void testSetFromText() {
+		EncryptedNumber value = context.encrypt(42);
+		AHPartialSum partial = new AHPartialSum(3);
+		partial.set(0, Util.getAHString(value), context);
+		partial.set(1, value.calculateCiphertext() + "#" + value.getExponent(), context);
+		partial.set(2, "", context);
+		assertEquals(42, decrypt(partial.get(0, context)));
+		assertEquals(42, decrypt(partial.get(1, context)));
+		assertFalse(partial.has(2));
+	}
+
+	/*
+	 * Merging in two stages, as a combiner and then the reducer do, gives
+	 * the plaintext sums of the rows and their number
+	 */
+	public void testMerge() throws IOException {
+		Random rng = new Random(1);
+		long[] expected = new long[2];
+		List<AHPartialSum> rows = new ArrayList<AHPartialSum>();
+		for (int i = 0; i < 50; i++) {
+			Long a = (long) rng.nextInt(2000) - 1000;
+			Long b = i % 3 == 0 ? null : (long) rng.nextInt(1000);
+			expected[0] += a;
+			expected[1] += b == null ? 0 : b;
+			rows.add(row(a, b));
+		}
+		AHPartialSum.Accumulator reducer = new AHPartialSum.Accumulator(context);
+		AHPartialSum.Accumulator combiner = new AHPartialSum.Accumulator(context);
+		for (List<AHPartialSum> split : Arrays.asList(rows.subList(0, 20), rows.subList(20, 50))) {
+			combiner.clear();
+			combiner.addAll(split.iterator());
+			reducer.add(copy(combiner.toPartialSum(), new AHPartialSum()));
+		}
+		assertEquals(50, reducer.getCount());
+		assertEquals(expected[0], decrypt(reducer.sum(0)));
+		assertEquals(expected[1], decrypt(reducer.sum(1)));
+		// a column no row had
+		assertEquals(0, decrypt(reducer.sum(2)));
+	}
+
+	public void testEmptyAccumulator() {
+		AHPartialSum.Accumulator acc = new AHPartialSum.Accumulator(context);
+		assertEquals(0, acc.getCount());
+		assertEquals(0, decrypt(acc.sum(0)));
+		AHPartialSum partial = acc.toPartialSum();
+		assertEquals(0, partial.getColumns());
+		assertEquals(0, partial.getCount());
+
+		// columns without values stay empty, and clear() empties the sums
+		acc.add(row(null, 4L));
+		acc.clear();
+		acc.add(new AHPartialSum(2));
+		assertEquals(0, acc.getCount());
+		assertEquals(0, decrypt(acc.sum(1)));
+		partial = acc.toPartialSum();
+		assertEquals(2, partial.getColumns());
+		assertFalse(partial.has(0));
+		assertFalse(partial.has(1));
+	}
+
+	public void testCombiner() throws IOException {
+		JobConf conf = new JobConf();
+		conf.set("pubKey", priv.getPublicKey().getModulus().toString());
+		AHSumCombiner combiner = new AHSumCombiner();
+		combiner.configure(conf);
+		final List<AHPartialSum> out = new ArrayList<AHPartialSum>();
+		OutputCollector<Text, AHPartialSum> collector = new OutputCollector<Text, AHPartialSum>() {
+			public void collect(Text key, AHPartialSum value) throws IOException {
+				// the combiner's output is serialized before it is shuffled
+				out.add(copy(value, new AHPartialSum()));
+			}
+		};
+		combiner.reduce(new Text("a"), Arrays.asList(row(1L, 2L), row(3L, null)).iterator(), collector, null);
+		// the state of one key does not leak into the next
+		combiner.reduce(new Text("b"), Arrays.asList(row(10L, 20L)).iterator(), collector, null);
+		assertEquals(2, out.size());
+		assertEquals(2, out.get(0).getCount());
+		assertEquals(4, decrypt(out.get(0).get(0, context)));
+		assertEquals(2, decrypt(out.get(0).get(1, context)));
+		assertEquals(1, out.get(1).getCount());
+		assertEquals(10, decrypt(out.get(1).get(0, context)));
+		assertEquals(20, decrypt(out.get(1).get(1, context)));
+	}
+}
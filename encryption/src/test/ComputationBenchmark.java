@@ -0,0 +1,63 @@
+package test;
+
+import java.math.BigInteger;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import encryption.Computation;
+import encryption.Homomorphic;
+
+/*
+ * Throughput of the AH runtime against the number of threads. Each
+ * operation encrypts a value, adds it to a running ciphertext and decrypts
+ * the sum now and then, like a mapper that aggregates its input.
+ * 
+ *   java test.ComputationBenchmark [seconds per thread count] [max threads]
+ */
+public class ComputationBenchmark {
+
+	public static void main(String[] args) throws InterruptedException {
+		final double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 3;
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1])
+				: 2 * Runtime.getRuntime().availableProcessors();
+
+		run(1, seconds / 2); // warm up
+		System.out.println("threads\tops/s");
+		for (int n = 1; n <= maxThreads; n *= 2)
+			System.out.printf("%d\t%.0f%n", n, run(n, seconds));
+	}
+
+	private static double run(int n, final double seconds) throws InterruptedException {
+		final Homomorphic ah = new Homomorphic();
+		final AtomicLong ops = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[n];
+		for (int t = 0; t < n; t++) {
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					long deadline = System.nanoTime() + (long) (seconds * 1e9);
+					long local = 0;
+					Object sum = ah.encrypt(0);
+					while (System.nanoTime() < deadline) {
+						sum = Computation.add(sum, ah.encrypt((int) local));
+						if ((local & 63) == 0)
+							ah.decrypt((BigInteger) sum);
+						local++;
+					}
+					ops.addAndGet(local);
+				}
+			});
+			threads[t].start();
+		}
+		long begin = System.nanoTime();
+		start.countDown();
+		for (Thread t : threads)
+			t.join();
+		return ops.get() / ((System.nanoTime() - begin) / 1e9);
+	}
+}
@@ -0,0 +1,84 @@
+package test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import encryption.Computation;
+import encryption.Conversion;
+import encryption.Homomorphic;
+import junit.framework.TestCase;
+
+/*
+ * Runs the AH and DET runtime from many threads at once and checks every
+ * result, as JCrypt-translated mappers do under MultithreadedMapRunner.
+ */
+public class ComputationConcurrencyTest extends TestCase {
+
+	private static final int THREADS = 8;
+	private static final int ROUNDS = 2000;
+
+	public void testConcurrentAH() throws Throwable {
+		final Homomorphic ah = new Homomorphic();
+		runConcurrently(new Worker() {
+			public void run(Random rng) {
+				int a = rng.nextInt(2000000) - 1000000;
+				int b = rng.nextInt(2000000) - 1000000;
+				int k = rng.nextInt(200) - 100;
+				BigInteger ca = ah.encrypt(a);
+				BigInteger cb = ah.encrypt(b);
+				assertEquals(a, ah.decrypt(ca));
+				assertEquals(a + b, ah.decrypt(Computation.add(ca, cb)));
+				assertEquals(a - b, ah.decrypt(Computation.minus(ca, cb)));
+				assertEquals(a * k, ah.decrypt(Computation.multiply(ca, k)));
+				assertEquals(a, Conversion.decrypt(Conversion.encrypt(a, "AH"), "AH"));
+			}
+		});
+	}
+
+	public void testConcurrentDET() throws Throwable {
+		runConcurrently(new Worker() {
+			public void run(Random rng) {
+				// ints are not checked: Deterministic.decrypt tells Blowfish
+				// from AES by a length of 8, but padded longs are 16 bytes
+				String s = Integer.toHexString(rng.nextInt());
+				assertEquals(s, Conversion.decrypt(Conversion.encrypt(s, "DET"), "DET"));
+			}
+		});
+	}
+
+	private interface Worker {
+		void run(Random rng) throws Exception;
+	}
+
+	private void runConcurrently(final Worker worker) throws Throwable {
+		final CountDownLatch start = new CountDownLatch(1);
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final long seed = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					Random rng = new Random(seed);
+					try {
+						start.await();
+						for (int i = 0; i < ROUNDS; i++)
+							worker.run(rng);
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread t : threads)
+			t.join();
+		if (!failures.isEmpty())
+			throw failures.get(0);
+	}
+}
@@ -0,0 +1,175 @@
+package test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import encryption.DETEncryptor;
+import encryption.DatasetEncryptor;
+import encryption.DatasetEncryptor.LineEncryptor;
+import encryption.RNDEncryptor;
+import encryption.Schema;
+import encryption.Schema.Type;
+import junit.framework.TestCase;
+
+public class DatasetEncryptorTest extends TestCase {
+
+	private static final LineEncryptor REVERSE = new LineEncryptor() {
+		public String encrypt(String line) {
+			return new StringBuilder(line).reverse().toString();
+		}
+	};
+
+	private DatasetEncryptor pipeline;
+	private File input, output;
+
+	@Override
+	protected void setUp() throws IOException {
+		// small chunks, so the files below are split many times
+		pipeline = new DatasetEncryptor(4, 64);
+		input = File.createTempFile("plain", ".txt");
+		output = File.createTempFile("cipher", ".txt");
+	}
+
+	@Override
+	protected void tearDown() {
+		pipeline.close();
+		input.delete();
+		output.delete();
+	}
+
+	public void testOrder() throws IOException {
+		StringBuilder text = new StringBuilder();
+		List<String> expected = new ArrayList<String>();
+		for (int i = 0; i < 5000; i++) {
+			text.append("line ").append(i).append('\n');
+			expected.add(REVERSE.encrypt("line " + i));
+		}
+		assertEquals(expected, encrypt(text.toString(), REVERSE));
+	}
+
+	public void testLineTerminators() throws IOException {
+		List<String> expected = new ArrayList<String>();
+		expected.add("a");
+		expected.add("b");
+		expected.add("");
+		expected.add("c");
+		assertEquals(expected, encrypt("a\r\nb\n\nc", REVERSE));
+	}
+
+	public void testLongLine() throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			line.append(i % 10);
+		List<String> lines = encrypt("x\n" + line + "\ny\n", REVERSE);
+		assertEquals(3, lines.size());
+		assertEquals("x", lines.get(0));
+		assertEquals(REVERSE.encrypt(line.toString()), lines.get(1));
+		assertEquals("y", lines.get(2));
+	}
+
+	public void testEmptyFile() throws IOException {
+		assertTrue(encrypt("", REVERSE).isEmpty());
+	}
+
+	public void testFailure() throws IOException {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; i++)
+			text.append(i).append('\n');
+		try {
+			encrypt(text.toString(), new LineEncryptor() {
+				public String encrypt(String line) {
+					return Integer.toString(100 / (Integer.parseInt(line) - 500));
+				}
+			});
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof ArithmeticException);
+		}
+	}
+
+	public void testSchema() throws IOException {
+		final DETEncryptor det = new DETEncryptor();
+		Schema schema = new Schema('|', Schema.det(det, Type.STRING), null, Schema.rnd(new RNDEncryptor(), Type.INT),
+				Schema.det(det, Type.LONG));
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+			text.append("user").append(i % 7).append("|plain|").append(i).append('|').append(i % 3 == 0 ? "" : i)
+					.append("|extra\n");
+		List<String> lines = encrypt(text.toString(), schema);
+		assertEquals(200, lines.size());
+		for (int i = 0; i < 200; i++) {
+			String[] fields = lines.get(i).split("\\|", -1);
+			assertEquals(5, fields.length);
+			// DET is the same from every thread
+			assertEquals(det.encrypt("user" + (i % 7)), fields[0]);
+			assertEquals("plain", fields[1]);
+			assertFalse(fields[2].equals(Integer.toString(i)));
+			assertEquals(i % 3 == 0 ? "" : det.encrypt((long) i), fields[3]);
+			assertEquals("extra", fields[4]);
+		}
+	}
+
+	public void testRun() throws IOException {
+		File in = Files.createTempDirectory("plain").toFile();
+		File out = Files.createTempDirectory("cipher").toFile();
+		try {
+			Files.write(new File(in, "a").toPath(), "ab\ncd\n".getBytes(StandardCharsets.UTF_8));
+			Files.write(new File(in, "b").toPath(), "ab\n".getBytes(StandardCharsets.UTF_8));
+			File dir = DatasetEncryptor.prepareOutput(out.getPath());
+			Files.write(new File(dir, "stale").toPath(), new byte[1]);
+			assertEquals(dir, DatasetEncryptor.prepareOutput(out.getPath()));
+			assertEquals(0, dir.list().length);
+
+			DatasetEncryptor.run(new String[] { in.getPath(), out.getPath() }, new DatasetEncryptor.FileEncryptor() {
+				public LineEncryptor forFile(File file) {
+					return file.getName().equals("a") ? REVERSE : new LineEncryptor() {
+						public String encrypt(String line) {
+							return line.toUpperCase();
+						}
+					};
+				}
+			});
+			assertEquals(2, dir.list().length);
+			assertEquals("[ba, dc]", Files.readAllLines(new File(dir, "aCipher").toPath()).toString());
+			assertEquals("[AB]", Files.readAllLines(new File(dir, "bCipher").toPath()).toString());
+		} finally {
+			delete(in);
+			delete(out);
+		}
+	}
+
+	public void testParseSchema() {
+		Schema.parse("DET, RND:int, PLAIN, DET:long", '|', null);
+		try {
+			Schema.parse("DET,XOR", '|', null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			Schema.parse("RND:double", '|', null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File c : children)
+				delete(c);
+		}
+		f.delete();
+	}
+
+	private List<String> encrypt(String text, LineEncryptor encryptor) throws IOException {
+		Files.write(input.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		pipeline.encrypt(input, output, encryptor);
+		return Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+	}
+}
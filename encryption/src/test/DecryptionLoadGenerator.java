@@ -0,0 +1,121 @@
+package test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import encryption.DecryptionClient;
+import encryption.DecryptionService;
+import thep.paillier.PrivateKey;
+
+/*
+ * Load on a DecryptionService on the loopback interface: every connection
+ * keeps a window of batches in flight. Reports decryptions per second and
+ * the latency of a batch, from submit to reply.
+ * 
+ *   java test.DecryptionLoadGenerator [connections] [batch size] [window] [seconds] [server threads] [key bits]
+ */
+public class DecryptionLoadGenerator {
+
+	public static void main(String[] args) throws Exception {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+		final int batch = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		final int window = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		final double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 5;
+		int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+		int bits = args.length > 5 ? Integer.parseInt(args[5]) : 1024;
+
+		PrivateKey priv = new PrivateKey(bits);
+		final BigInteger[] ciphertexts = new BigInteger[batch];
+		for (int i = 0; i < batch; i++)
+			ciphertexts[i] = DecryptionServiceTest.encrypt(priv.getPublicKey(), i - batch / 2);
+
+		DecryptionService service = new DecryptionService(0, threads, DecryptionServiceTest.decryptors(priv),
+				DecryptionService.PLAINTEXTS);
+		service.start();
+		final int port = service.getPort();
+		final AtomicLong batches = new AtomicLong();
+		final long[][] latencies = new long[connections][];
+		final CountDownLatch done = new CountDownLatch(connections);
+		final long end = System.nanoTime() + (long) (seconds * 1e9);
+		long begin = System.nanoTime();
+		for (int c = 0; c < connections; c++) {
+			final int id = c;
+			new Thread(new Runnable() {
+				public void run() {
+					try {
+						latencies[id] = load(port, ciphertexts, window, end, batches);
+					} catch (IOException e) {
+						e.printStackTrace();
+						latencies[id] = new long[0];
+					} finally {
+						done.countDown();
+					}
+				}
+			}).start();
+		}
+		done.await();
+		double elapsed = (System.nanoTime() - begin) / 1e9;
+		service.close();
+
+		long[] all = new long[0];
+		for (long[] l : latencies) {
+			int from = all.length;
+			all = Arrays.copyOf(all, from + l.length);
+			System.arraycopy(l, 0, all, from, l.length);
+		}
+		Arrays.sort(all);
+		System.out.printf("connections=%d batch=%d window=%d server threads=%d bits=%d%n", connections, batch,
+				window, threads, bits);
+		System.out.printf("decryptions/s\t%.0f%n", batches.get() * batch / elapsed);
+		if (all.length > 0) {
+			System.out.printf("p50 latency ms\t%.2f%n", all[all.length / 2] / 1e6);
+			System.out.printf("p99 latency ms\t%.2f%n", all[Math.min(all.length - 1, all.length * 99 / 100)] / 1e6);
+		}
+	}
+
+	/*
+	 * Returns the latency of each batch in nanoseconds
+	 */
+	private static long[] load(int port, BigInteger[] ciphertexts, int window, long end, AtomicLong batches)
+			throws IOException {
+		DecryptionClient client = new DecryptionClient("localhost", port);
+		DecryptionClient.Request request = new DecryptionClient.Request(DecryptionService.LONG);
+		for (BigInteger c : ciphertexts)
+			request.add(c, 0);
+		DecryptionClient.Reply[] inFlight = new DecryptionClient.Reply[window];
+		long[] submitted = new long[window];
+		long[] latencies = new long[1024];
+		int n = 0;
+		for (long i = 0;; i++) {
+			int slot = (int) (i % window);
+			if (inFlight[slot] != null) {
+				inFlight[slot].get();
+				if (n == latencies.length)
+					latencies = Arrays.copyOf(latencies, 2 * n);
+				latencies[n++] = inFlight[slot].getCompletedNanos() - submitted[slot];
+				batches.incrementAndGet();
+				inFlight[slot] = null;
+			}
+			if (System.nanoTime() >= end) {
+				if (i >= window && allDone(inFlight))
+					break;
+				continue;
+			}
+			submitted[slot] = System.nanoTime();
+			inFlight[slot] = client.submit(request);
+			client.flush();
+		}
+		client.close();
+		return Arrays.copyOf(latencies, n);
+	}
+
+	private static boolean allDone(DecryptionClient.Reply[] inFlight) {
+		for (DecryptionClient.Reply r : inFlight)
+			if (r != null)
+				return false;
+		return true;
+	}
+}
@@ -0,0 +1,266 @@
+package test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import encryption.DecryptionClient;
+import encryption.DecryptionService;
+import junit.framework.TestCase;
+import thep.paillier.PrivateKey;
+import thep.paillier.PublicKey;
+
+/*
+ * Runs a DecryptionService on the loopback interface. The ciphertexts are
+ * thep Paillier ciphertexts of signed longs, so no key files are needed.
+ */
+public class DecryptionServiceTest extends TestCase {
+
+	private static final PrivateKey priv = new PrivateKey(512);
+	private static final PublicKey pub = priv.getPublicKey();
+
+	private DecryptionService service;
+
+	/*
+	 * Decrypts to signed longs, the upper half of Z_n being negative
+	 */
+	static DecryptionService.DecryptorFactory decryptors(final PrivateKey priv) {
+		return new DecryptionService.DecryptorFactory() {
+			public DecryptionService.Decryptor newDecryptor() {
+				final BigInteger n = priv.getPublicKey().getN();
+				final BigInteger half = n.shiftRight(1);
+				return new DecryptionService.Decryptor() {
+					public long decrypt(BigInteger ciphertext, int exponent, byte kind) {
+						BigInteger m = priv.decrypt(ciphertext);
+						if (m.compareTo(half) > 0)
+							m = m.subtract(n);
+						if (kind == DecryptionService.DOUBLE)
+							return Double.doubleToLongBits(m.doubleValue());
+						return m.longValue();
+					}
+				};
+			}
+		};
+	}
+
+	static BigInteger encrypt(PublicKey pub, long m) {
+		return pub.encrypt(BigInteger.valueOf(m).mod(pub.getN()));
+	}
+
+	private DecryptionClient start(DecryptionService.Handler handler) throws IOException {
+		service = new DecryptionService(0, 4, decryptors(priv), handler);
+		service.start();
+		return new DecryptionClient("localhost", service.getPort());
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		if (service != null)
+			service.close();
+	}
+
+	public void testPlaintexts() throws IOException {
+		DecryptionClient client = start(DecryptionService.PLAINTEXTS);
+		long[] values = { 0, 1, -1, 42, Integer.MAX_VALUE, -1234567890123L };
+		DecryptionClient.Request request = new DecryptionClient.Request(DecryptionService.LONG);
+		for (long v : values)
+			request.add(encrypt(pub, v), 0);
+		long[] plain = DecryptionClient.toLongs(client.call(request));
+		assertEquals(values.length, plain.length);
+		for (int i = 0; i < values.length; i++)
+			assertEquals(values[i], plain[i]);
+
+		request = new DecryptionClient.Request(DecryptionService.DOUBLE).add(encrypt(pub, -7), 0);
+		assertEquals(-7.0, Double.longBitsToDouble(DecryptionClient.toLongs(client.call(request))[0]));
+		client.close();
+	}
+
+	public void testEmptyRequest() throws IOException {
+		DecryptionClient client = start(DecryptionService.PLAINTEXTS);
+		assertEquals(0, client.call(new DecryptionClient.Request(DecryptionService.LONG)).length);
+		client.close();
+	}
+
+	/*
+	 * Many requests in flight on one connection come back in order, and the
+	 * handler only sends back what it derives from the plaintexts
+	 */
+	public void testPipelinedHandler() throws IOException {
+		DecryptionClient client = start(new DecryptionService.Handler() {
+			public byte[] reply(long[] plaintexts, byte[] extra) {
+				long sum = ByteBuffer.wrap(extra).getLong();
+				for (long p : plaintexts)
+					sum += p;
+				return ByteBuffer.allocate(8).putLong(sum).array();
+			}
+		});
+		Random rng = new Random(1);
+		List<DecryptionClient.Reply> replies = new ArrayList<DecryptionClient.Reply>();
+		List<Long> expected = new ArrayList<Long>();
+		for (int r = 0; r < 300; r++) {
+			long offset = rng.nextInt();
+			long sum = offset;
+			DecryptionClient.Request request = new DecryptionClient.Request(DecryptionService.LONG);
+			for (int i = rng.nextInt(10); i >= 0; i--) {
+				long v = rng.nextInt(2000000) - 1000000;
+				request.add(encrypt(pub, v), 0);
+				sum += v;
+			}
+			request.setExtra(ByteBuffer.allocate(8).putLong(offset).array());
+			replies.add(client.submit(request));
+			expected.add(sum);
+		}
+		client.flush();
+		for (int r = 0; r < replies.size(); r++)
+			assertEquals((long) expected.get(r), ByteBuffer.wrap(replies.get(r).get()).getLong());
+		client.close();
+	}
+
+	public void testConcurrentClients() throws Throwable {
+		start(DecryptionService.PLAINTEXTS).close();
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[6];
+		for (int t = 0; t < threads.length; t++) {
+			final int seed = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						Random rng = new Random(seed);
+						DecryptionClient client = new DecryptionClient("localhost", service.getPort());
+						for (int r = 0; r < 50; r++) {
+							long v = rng.nextLong() >> 8;
+							DecryptionClient.Request request = new DecryptionClient.Request(DecryptionService.LONG);
+							request.add(encrypt(pub, v), 0);
+							assertEquals(v, DecryptionClient.toLongs(client.call(request))[0]);
+						}
+						client.close();
+					} catch (Throwable e) {
+						synchronized (failures) {
+							failures.add(e);
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		if (!failures.isEmpty())
+			throw failures.get(0);
+	}
+
+	/*
+	 * A failed request gets an error reply, and later requests still work
+	 */
+	public void testFailure() throws IOException {
+		DecryptionClient client = start(new DecryptionService.Handler() {
+			public byte[] reply(long[] plaintexts, byte[] extra) {
+				if (plaintexts[0] < 0)
+					throw new IllegalArgumentException("negative");
+				return DecryptionService.PLAINTEXTS.reply(plaintexts, extra);
+			}
+		});
+		DecryptionClient.Reply bad = client.submit(new DecryptionClient.Request(DecryptionService.LONG).add(encrypt(pub, -1), 0));
+		DecryptionClient.Reply good = client.submit(new DecryptionClient.Request(DecryptionService.LONG).add(encrypt(pub, 5), 0));
+		client.flush();
+		try {
+			bad.get();
+			fail("expected an error reply");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("negative"));
+		}
+		assertEquals(5, DecryptionClient.toLongs(good.get())[0]);
+		client.close();
+	}
+
+	public void testClosedService() throws IOException {
+		DecryptionClient client = start(DecryptionService.PLAINTEXTS);
+		service.close();
+		try {
+			client.call(new DecryptionClient.Request(DecryptionService.LONG).add(encrypt(pub, 1), 0));
+			fail("expected the connection to be closed");
+		} catch (IOException e) {
+			// expected
+		}
+		// the reader has given up by now, so this must not wait for a reply
+		try {
+			client.call(new DecryptionClient.Request(DecryptionService.LONG).add(encrypt(pub, 2), 0));
+			fail("expected the connection to be closed");
+		} catch (IOException e) {
+			// expected
+		}
+		client.close();
+	}
+
+	/*
+	 * Corrupt frames get an error reply instead of allocating what they
+	 * claim or killing the reader, and the service keeps serving
+	 */
+	public void testMalformedRequests() throws IOException {
+		DecryptionClient client = start(DecryptionService.PLAINTEXTS);
+		int[][] frames = {
+				{ DecryptionService.MAX_COUNT + 1 },
+				{ Integer.MAX_VALUE },
+				{ 1, 0 /* exponent */, 0 /* length */ },
+				{ 1, 0, DecryptionService.MAX_CIPHERTEXT_LENGTH + 1 },
+				{ 0, DecryptionService.MAX_EXTRA_LENGTH + 1 },
+		};
+		for (int[] frame : frames) {
+			Socket socket = new Socket("localhost", service.getPort());
+			socket.setSoTimeout(10000);
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			out.writeInt(frame[0]);
+			out.writeByte(DecryptionService.LONG);
+			for (int i = 1; i < frame.length; i++)
+				out.writeInt(frame[i]);
+			out.flush();
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			assertEquals(-1, in.readInt());
+			String message = in.readUTF();
+			assertTrue(message, message.contains("Bad"));
+			assertEquals(-1, in.read());
+			socket.close();
+		}
+		assertEquals(3, DecryptionClient.toLongs(client.call(
+				new DecryptionClient.Request(DecryptionService.LONG).add(encrypt(pub, 3), 0)))[0]);
+		client.close();
+	}
+
+	public void testBadReplyLength() throws Exception {
+		final ServerSocket server = new ServerSocket(0);
+		Thread t = new Thread() {
+			public void run() {
+				try {
+					Socket s = server.accept();
+					// reply once the request has arrived
+					s.getInputStream().read();
+					DataOutputStream out = new DataOutputStream(s.getOutputStream());
+					out.writeInt(-5);
+					out.flush();
+					s.getInputStream().read();
+					s.close();
+				} catch (IOException e) {
+					// the client has gone
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+		DecryptionClient client = new DecryptionClient("localhost", server.getLocalPort());
+		try {
+			client.call(new DecryptionClient.Request(DecryptionService.LONG).add(encrypt(pub, 1), 0));
+			fail("expected a bad reply");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Bad reply length"));
+		}
+		client.close();
+		server.close();
+	}
+}
@@ -0,0 +1,76 @@
+package test;
+
+import java.util.Random;
+
+import encryption.OPECipher;
+import encryption.OrderPreserving;
+
+/*
+ * Values per second of order-preserving encryption with the ranges of
+ * OrderPreserving: single values, batches, and the cached runtime on
+ * values that repeat, as the columns of a dataset do.
+ *
+ *   java test.OPEBenchmark [seconds per case] [batch size]
+ */
+public class OPEBenchmark {
+
+	private static final OPECipher cipher = new OPECipher("benchmark".getBytes(), Integer.MIN_VALUE,
+			Integer.MAX_VALUE, -(1L << 53), (1L << 53) - 1);
+
+	private interface Case {
+		/* returns the number of values done */
+		int run(Random rng);
+	}
+
+	public static void main(String[] args) {
+		final double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 3;
+		final int batch = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		final long c = cipher.encrypt(42);
+		final OrderPreserving ope = new OrderPreserving();
+
+		measure("warm up", seconds / 2, new Case() {
+			public int run(Random rng) {
+				cipher.encrypt(rng.nextInt());
+				return 1;
+			}
+		});
+		System.out.println("case\tvalues/s");
+		measure("encrypt", seconds, new Case() {
+			public int run(Random rng) {
+				cipher.encrypt(rng.nextInt());
+				return 1;
+			}
+		});
+		measure("decrypt", seconds, new Case() {
+			public int run(Random rng) {
+				cipher.decrypt(c);
+				return 1;
+			}
+		});
+		measure("batch of " + batch, seconds, new Case() {
+			public int run(Random rng) {
+				long[] p = new long[batch];
+				for (int i = 0; i < batch; i++)
+					p[i] = rng.nextInt();
+				cipher.encrypt(p);
+				return batch;
+			}
+		});
+		measure("cached, 1000 distinct", seconds, new Case() {
+			public int run(Random rng) {
+				ope.encryptValue(rng.nextInt(1000));
+				return 1;
+			}
+		});
+	}
+
+	private static void measure(String name, double seconds, Case c) {
+		Random rng = new Random(1);
+		long deadline = System.nanoTime() + (long) (seconds * 1e9);
+		long begin = System.nanoTime();
+		long values = 0;
+		while (System.nanoTime() < deadline)
+			values += c.run(rng);
+		System.out.printf("%s\t%.0f%n", name, values / ((System.nanoTime() - begin) / 1e9));
+	}
+}
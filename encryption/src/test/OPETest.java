@@ -0,0 +1,137 @@
+package test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import encryption.Computation;
+import encryption.Conversion;
+import encryption.OPECipher;
+import encryption.OrderPreserving;
+import junit.framework.TestCase;
+
+public class OPETest extends TestCase {
+
+	/*
+	 * Plaintexts and their ciphertexts from lib/ope_encrypt.py
+	 */
+	private static final long[][] PYTHON = {
+			{ 0L, 123514150744L },
+			{ 1L, 123525071205L },
+			{ -1L, 123514136863L },
+			{ 2L, 123530965962L },
+			{ 1000L, 127779989047L },
+			{ -2147483648L, -9007199254006628L },
+			{ 2147483647L, 9007199238151771L },
+			{ 72L, 123820048400L },
+			{ 101L, 123967673655L },
+			{ 104L, 123979612781L },
+			{ 108L, 124019607875L },
+			{ 111L, 124021384771L },
+			{ 2147483646L, 9007199238000569L },
+			{ -2147483647L, -9007199253682161L },
+			{ 20050101L, 84228547019487L },
+			{ 20051231L, 84233400455255L },
+			{ -1499591369L, -6289886945008188L },
+			{ 648258640L, 2719182385751441L },
+			{ 154112043L, 646482520979141L },
+			{ 31936245L, 134069421463824L },
+			{ -1986441000L, -8331757194618325L },
+			{ -284989606L, -1195322235762736L },
+			{ -1847456881L, -7748838659475901L },
+			{ -324187610L, -1359730656148345L },
+			{ 1922895273L, 8065308195561446L },
+			{ -443753964L, -1861348295181480L },
+			{ 2045500108L, 8579508609398781L },
+			{ 1539610315L, 6457724407220097L },
+			{ -903621226L, -3790323939453020L },
+			{ -1371269749L, -5751680599059341L }
+	};
+
+	private final OrderPreserving ope = new OrderPreserving();
+
+	public void testPythonCiphertexts() {
+		for (long[] pair : PYTHON) {
+			assertEquals(Long.toString(pair[1]), ope.encrypt((int) pair[0]));
+			assertEquals((int) pair[0], ope.decrypt(Long.toString(pair[1])));
+		}
+	}
+
+	public void testString() {
+		// lib/ope_encrypt_String.py prints a line per char, which were joined by spaces
+		String hello = "123820048400 123967673655 124019607875 124019607875 124021384771 ";
+		assertEquals(hello, ope.encrypt("Hello"));
+		assertEquals("Hello", ope.decrypt(hello));
+		assertEquals("H", ope.decrypt(ope.encrypt("H")));
+		assertTrue(Computation.compareTo(ope.encrypt("Hello"), ope.encrypt("Jello")) < 0);
+		assertTrue(Computation.compareTo(ope.encrypt("h"), ope.encrypt("he")) < 0);
+	}
+
+	public void testOrder() {
+		Random rng = new Random(3);
+		int[] p = new int[500];
+		for (int i = 0; i < p.length; i++)
+			p[i] = rng.nextInt();
+		Arrays.sort(p);
+		long previous = Long.MIN_VALUE;
+		for (int i = 0; i < p.length; i++) {
+			long c = ope.encryptValue(p[i]);
+			if (i > 0 && p[i] == p[i - 1])
+				assertEquals(previous, c);
+			else
+				assertTrue(previous < c);
+			assertEquals(p[i], ope.decryptValue(c));
+			previous = c;
+		}
+		assertTrue(Computation.lessThan(Conversion.encrypt(-5, "OPE"), Conversion.encrypt(3, "OPE")));
+		assertEquals(-5, Conversion.decrypt(Conversion.encrypt(-5, "OPE"), "OPE"));
+	}
+
+	public void testBatch() {
+		OPECipher cipher = new OPECipher("batch".getBytes(), -1000000, 1000000, -(1L << 40), 1L << 40);
+		Random rng = new Random(5);
+		long[] p = new long[1000];
+		for (int i = 0; i < p.length; i++)
+			p[i] = rng.nextInt(2000001) - 1000000;
+		p[10] = p[20] = p[30];
+		p[0] = -1000000;
+		p[1] = 1000000;
+		long[] c = cipher.encrypt(p);
+		for (int i = 0; i < p.length; i++)
+			assertEquals(cipher.encrypt(p[i]), c[i]);
+		assertTrue(Arrays.equals(p, cipher.decrypt(c)));
+
+		int[] ints = { 72, 0, 72, -1, 1000 };
+		long[] expected = { 123820048400L, 123514150744L, 123820048400L, 123514136863L, 127779989047L };
+		assertTrue(Arrays.equals(expected, new OrderPreserving().encrypt(ints)));
+		assertTrue(Arrays.equals(ints, new OrderPreserving().decrypt(expected)));
+	}
+
+	public void testInvalid() {
+		OPECipher cipher = new OPECipher("invalid".getBytes(), 0, 1000, 0, 1L << 20);
+		long c = cipher.encrypt(500);
+		try {
+			cipher.decrypt(c + 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			cipher.decrypt(new long[] { c, c + 1 });
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			cipher.encrypt(1001);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new OPECipher("small".getBytes(), 0, 10, 0, 5);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
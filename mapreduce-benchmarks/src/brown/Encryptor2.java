@@ -1,19 +1,27 @@
 package brown;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+
 import encryption.AHEncryptor;
+import encryption.DatasetEncryptor;
+import encryption.DatasetEncryptor.FileEncryptor;
+import encryption.DatasetEncryptor.LineEncryptor;
+import encryption.DatasetEncryptor.Sink;
+import encryption.DatasetEncryptor.SinkFactory;
 import encryption.DETEncryptor;
 import encryption.RNDEncryptor;
 
 public class Encryptor2 {
 
 	static void printUsage() {
-		System.out.println("Usage: java Encryptor2 <input folder> <output folder>");
+		System.out.println("Usage: java [-DsequenceFile] Encryptor2 <input folder> <output folder>");
 		System.exit(1);
 	}
 
@@ -24,51 +32,64 @@ public class Encryptor2 {
 			printUsage();
 		}
 
-		File inputFolder = new File(args[0]);
-		File outputFolder = new File(args[1] + "/dir");
-		if (outputFolder.exists()) {
-			for (File file : outputFolder.listFiles())
-				file.delete();
-		} else
-			outputFolder.mkdirs();
+		DatasetEncryptor.prepareOutput(args[1]);
 
 		AHEncryptor ah = new AHEncryptor(args[1]);
 		RNDEncryptor rnd = new RNDEncryptor();
 		DETEncryptor det = new DETEncryptor();
-		int bufferedSize = 1024 * 1024;
-		for (File file : inputFolder.listFiles()) {
-			System.out.println("Encrypting file " + file.getName() + "...");
-			encryptUservisits(file, bufferedSize, outputFolder, det, ah, rnd);
-		}
+		LineEncryptor uservisits = new LineEncryptor() {
+			public String encrypt(String line) {
+				return encryptUservisits(line, det, ah, rnd);
+			}
+		};
+		DatasetEncryptor.run(args, new FileEncryptor() {
+			public LineEncryptor forFile(File file) {
+				return uservisits;
+			}
+		}, sequenceFile ? SEQUENCE_FILE_SINKS : DatasetEncryptor.TEXT_SINKS);
 	}
 	
-	private static void encryptUservisits(File file, int bufferedSize, File outputFolder, DETEncryptor det,
-			AHEncryptor ah, RNDEncryptor rnd) {
-		try {
-			BufferedReader in = new BufferedReader(new FileReader(file), bufferedSize);
-			File outFile = new File(outputFolder.getAbsolutePath() + File.separator + file.getName() + "Cipher");
-			outFile.createNewFile();
-			BufferedWriter out = new BufferedWriter(new FileWriter(outFile), bufferedSize);
-			String line = null;
-			while ((line = in.readLine()) != null) {
-				StringBuffer outline = new StringBuffer();
-				int indexTab = line.indexOf(9);
-				String ip = line.substring(0, indexTab);
-				outline.append(det.encrypt(ip) + '&' + det.encrypt(ip.substring(0, 7)) + "\t");
-				String[] fields = line.substring(indexTab + 1).split("\\|");
-				outline.append(rnd.encrypt(fields[0]) + "|" + rnd.encrypt(fields[1]) + "|");
-				outline.append(ah.encrypt(Double.parseDouble(fields[2])) + "|");
-				for (int i = 3; i < 7; i++)
-					outline.append(rnd.encrypt(fields[i]) + "|");
-				outline.append(rnd.encrypt(Integer.parseInt(fields[7])));
-				outline.append("\n");
-				out.write(outline.toString());
-			}
-			in.close();
-			out.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+	/*
+	 * With -DsequenceFile the records are written to a SequenceFile of Text
+	 * keys and values, for benchmarks run with their SequenceFile input
+	 * instead of KeyValueTextInputFormat
+	 */
+	private static final boolean sequenceFile = System.getProperty("sequenceFile") != null;
+
+	static final SinkFactory SEQUENCE_FILE_SINKS = new SinkFactory() {
+		public Sink open(File outFile) throws IOException {
+			Configuration conf = new Configuration();
+			final SequenceFile.Writer writer = SequenceFile.createWriter(FileSystem.getLocal(conf), conf,
+					new Path(outFile.getAbsolutePath()), Text.class, Text.class);
+			return new Sink() {
+				private final Text key = new Text(), value = new Text();
+
+				public void write(String line) throws IOException {
+					int indexTab = line.indexOf('\t');
+					key.set(line.substring(0, indexTab));
+					value.set(line.substring(indexTab + 1));
+					writer.append(key, value);
+				}
+
+				public void close() throws IOException {
+					writer.close();
+				}
+			};
 		}
+	};
+
+	private static String encryptUservisits(String line, DETEncryptor det, AHEncryptor ah, RNDEncryptor rnd) {
+		StringBuffer outline = new StringBuffer();
+		int indexTab = line.indexOf(9);
+		String ip = line.substring(0, indexTab);
+		outline.append(det.encrypt(ip) + '&' + det.encrypt(ip.substring(0, 7)) + "\t");
+		String[] fields = line.substring(indexTab + 1).split("\\|");
+		outline.append(rnd.encrypt(fields[0]) + "|" + rnd.encrypt(fields[1]) + "|");
+		outline.append(ah.encrypt(Double.parseDouble(fields[2])) + "|");
+		for (int i = 3; i < 7; i++)
+			outline.append(rnd.encrypt(fields[i]) + "|");
+		outline.append(rnd.encrypt(Integer.parseInt(fields[7])));
+		return outline.toString();
 	}
 
 }
@@ -1,10 +1,8 @@
 package brown;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import encryption.AHDecryptor;
+import encryption.DecryptionService;
 
 public class Server {
 	
@@ -12,19 +10,18 @@ public class Server {
 		
 		if (args.length != 1) {
 			System.out.println("ERROR: Wrong number of parameters.");
-			System.out.println("Usage: java Server <private key file>");
+			System.out.println("Usage: java [-DdecryptThreads=<n>] Server <private key file>");
+			System.exit(-1);
 		}
 		
-	    int portNumber = 44444;
-		ExecutorService executor = Executors.newFixedThreadPool(50);
+	    int portNumber = DecryptionService.DEFAULT_PORT;
+	    int threads = Integer.getInteger("decryptThreads", Runtime.getRuntime().availableProcessors());
 		try {
-			@SuppressWarnings("resource")
-			ServerSocket serverSocket = new ServerSocket(portNumber);
 		    AHDecryptor ah = new AHDecryptor(args[0]);
-			while (true) {
-				Runnable worker = new ServerThread(serverSocket.accept(), ah);
-	            executor.execute(worker);
-			}
+			// the reducers read back total_adRevenue as DOUBLE plaintexts
+			@SuppressWarnings("resource")
+			DecryptionService service = new DecryptionService(portNumber, threads, ah.factory(), DecryptionService.PLAINTEXTS);
+			service.serve();
 		} catch (IOException e) {
 			System.err.println("Could not listen on port " + portNumber);
 			System.exit(-1);
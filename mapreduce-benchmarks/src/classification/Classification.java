@@ -1,11 +1,9 @@
 package classification;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.math.BigInteger;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Base64.Decoder;
 
@@ -22,6 +20,8 @@ import com.n1analytics.paillier.EncryptedNumber;
 import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
+import encryption.DecryptionClient;
+import encryption.DecryptionService;
 import encryption.Util;
 
 public class Classification {
@@ -52,9 +52,9 @@ public class Classification {
 
 	public static class MapClass extends MapReduceBase implements Mapper<LongWritable, Text, IntWritable, Text> {
 
-		private int totalClusters, totalNumOfLines, count, portNumber = 44444;
-		private String[][] sq_aArray, numerArray;
-		private int[][] sq_bArray;
+		private int totalClusters, totalNumOfLines, count, portNumber = DecryptionService.DEFAULT_PORT;
+		private DecryptionClient client;
+		private DecryptionClient.Reply[] replies;
 		private PaillierContext context;
 		private String hostName;
 		private PaillierPublicKey pub;
@@ -72,9 +72,7 @@ public class Classification {
 			context = pub.createSignedContext();
 			hostName = conf.get("hostname");
 			totalNumOfLines = Integer.parseInt(conf.get("totalNumOfLines"));
-			sq_aArray = new String[totalNumOfLines][totalClusters];
-			numerArray = new String[totalNumOfLines][totalClusters];
-			sq_bArray = new int[totalNumOfLines][totalClusters];
+			replies = new DecryptionClient.Reply[totalNumOfLines];
 			movieIdStrArray = new String[totalNumOfLines];
 			zero = context.encrypt(0);
 		}
@@ -139,38 +137,35 @@ public class Classification {
 						}
 					}
 				}
+				// the key server decrypts this line while the next ones are read
+				DecryptionClient.Request request = new DecryptionClient.Request(DecryptionService.LONG);
+				ByteBuffer sq_bs = ByteBuffer.allocate(4 * totalClusters);
 				for (p = 0; p < totalClusters; p++) {
-					sq_aArray[count][p] = Util.getAHString(sq_a[p]);
-					sq_bArray[count][p] = sq_b[p];
-					numerArray[count][p] = Util.getAHString(numer[p]);
+					request.add(sq_a[p].calculateCiphertext(), sq_a[p].getExponent());
+					request.add(numer[p].calculateCiphertext(), numer[p].getExponent());
+					sq_bs.putInt(sq_b[p]);
 				}
-				count++;
-				if (count == totalNumOfLines) {
-					try {
-						Socket socket = new Socket(hostName, portNumber);
-						ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-						out.writeInt(totalClusters);
+				request.setExtra(sq_bs.array());
+				try {
+					if (client == null)
+						client = new DecryptionClient(hostName, portNumber);
+					replies[count] = client.submit(request);
+					count++;
+					if (count == totalNumOfLines) {
+						client.flush();
 						for (int i = 0; i < count; i++) {
-							for (p = 0; p < totalClusters; p++) {
-								out.writeObject(sq_aArray[i][p]);
-								out.writeInt(sq_bArray[i][p]);
-								out.writeObject(numerArray[i][p]);
-							}
-						}
-						ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-						for (int i = 0; i < count; i++) {
-							int clusterId = in.readInt();
+							int clusterId = ByteBuffer.wrap(replies[i].get()).getInt();
 							output.collect(new IntWritable(clusterId), new Text(movieIdStrArray[i]));
 							reporter.incrCounter(Counter.WORDS, 1);
 						}
-						socket.close();
-					} catch (UnknownHostException e) {
-						System.err.println("Don't know about host " + hostName);
-						System.exit(1);
-					} catch (IOException e) {
-						System.err.println("Couldn't get I/O for the connection to " + hostName);
-						System.exit(1);
+						client.close();
 					}
+				} catch (UnknownHostException e) {
+					System.err.println("Don't know about host " + hostName);
+					System.exit(1);
+				} catch (IOException e) {
+					System.err.println("Couldn't get I/O for the connection to " + hostName);
+					System.exit(1);
 				}
 			}
 		}
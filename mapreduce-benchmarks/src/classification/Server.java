@@ -1,35 +1,59 @@
 package classification;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
 
 import encryption.AHDecryptor;
+import encryption.DecryptionService;
 
 public class Server {
 	
 	public static void main(String[] args) {
 		
-		if (args.length != 2) {
+		if (args.length < 1) {
 			System.out.println("ERROR: Wrong number of parameters.");
-			System.out.println("Usage: java Server <private key file> <totalNumOfLines>");
+			System.out.println("Usage: java [-DdecryptThreads=<n>] Server <private key file>");
+			System.exit(-1);
 		}
 		
-	    int portNumber = 44444;
-	    int totalNumOfLines = Integer.parseInt(args[1]);
-		ExecutorService executor = Executors.newFixedThreadPool(50);
+	    int portNumber = DecryptionService.DEFAULT_PORT;
+	    int threads = Integer.getInteger("decryptThreads", Runtime.getRuntime().availableProcessors());
 		try {
-			@SuppressWarnings("resource")
-			ServerSocket serverSocket = new ServerSocket(portNumber);
 		    AHDecryptor ah = new AHDecryptor(args[0]);
-			while (true) {
-				Runnable worker = new ServerThread(serverSocket.accept(), ah, totalNumOfLines);
-	            executor.execute(worker);
-			}
+			@SuppressWarnings("resource")
+			DecryptionService service = new DecryptionService(portNumber, threads, ah.factory(), new SimilarityHandler());
+			service.serve();
 		} catch (IOException e) {
 			System.err.println("Could not listen on port " + portNumber);
 			System.exit(-1);
 		}
 	}
 
+	/*
+	 * One request per line: the (sq_a, numer) ciphers of every cluster, with
+	 * the sq_b of every cluster as extra ints. Replies the id of the most
+	 * similar cluster.
+	 */
+	static class SimilarityHandler implements DecryptionService.Handler {
+		public byte[] reply(long[] plaintexts, byte[] extra) {
+			ByteBuffer sq_bs = ByteBuffer.wrap(extra);
+			int totalClusters = plaintexts.length / 2;
+			int clusterId = 0;
+			float max_similarity = 0.0f;
+			for (int p = 0; p < totalClusters; p++) {
+				int sq_a = (int) plaintexts[2 * p];
+				int sq_b = sq_bs.getInt();
+				float denom = (float) ((Math.sqrt((double) sq_a)) * (Math.sqrt((double) sq_b)));
+				int numer = (int) plaintexts[2 * p + 1];
+				if (denom > 0) {
+					float similarity = numer / denom;
+					if (similarity > max_similarity) {
+						max_similarity = similarity;
+						clusterId = p;
+					}
+				}
+			}
+			return ByteBuffer.allocate(4).putInt(clusterId).array();
+		}
+	}
+
 }
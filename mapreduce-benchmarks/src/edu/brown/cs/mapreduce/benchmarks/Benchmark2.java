@@ -39,6 +39,8 @@ import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
 import edu.brown.cs.mapreduce.BenchmarkBase;
+import encryption.AHSum;
+import encryption.AHWritable;
 import encryption.Util;
 
 public class Benchmark2 extends Configured implements Tool {
@@ -75,10 +77,18 @@ public class Benchmark2 extends Configured implements Tool {
 		}
 	}
 
-	public static class TextMap extends BaseMap implements Mapper<Text, Text, Text, Text> {
+	public static class TextMap extends BaseMap implements Mapper<Text, Text, Text, AHWritable> {
 		private final Pattern pattern = Pattern.compile("\\" + BenchmarkBase.VALUE_DELIMITER);
+		private final AHWritable adRevenue = new AHWritable();
+		private PaillierContext context;
 
-		public void map(Text key, Text value, OutputCollector<Text, Text> output, Reporter reporter)
+		@Override
+		public void configure(JobConf job) {
+			super.configure(job);
+			context = new PaillierPublicKey(new BigInteger(job.get("pubKey"))).createSignedContext();
+		}
+
+		public void map(Text key, Text value, OutputCollector<Text, AHWritable> output, Reporter reporter)
 				throws IOException {
 			//
 			// Split the value using VALUE_DELIMITER into separate fields
@@ -95,7 +105,9 @@ public class Benchmark2 extends Configured implements Tool {
 						// key = new Text(key.toString().substring(0, 7));
 						key = new Text(keys.substring(index + 1));
 					}
-					output.collect(key, new Text(fields[2]));
+					// shuffled as bytes rather than text
+					adRevenue.set(fields[2], context);
+					output.collect(key, adRevenue);
 				} catch (ArrayIndexOutOfBoundsException ex) {
 					System.err.println("ERROR: Invalid record for key '" + key + "'");
 					if (!this.SHOWN_ERROR) {
@@ -120,28 +132,39 @@ public class Benchmark2 extends Configured implements Tool {
 		}
 	} // END CLASS
 
-	public static class Reduce extends MapReduceBase implements Reducer<Text, Text, Text, Text> {
-		private PaillierContext context;
-		private PaillierPublicKey pub;
-		private EncryptedNumber zero;
+	public static class BaseReduce extends MapReduceBase {
+		protected PaillierContext context;
+		protected PaillierPublicKey pub;
 
 		@Override
 		public void configure(JobConf conf) {
 			String pubKey = conf.get("pubKey");
 			pub = new PaillierPublicKey(new BigInteger(pubKey));
 			context = pub.createSignedContext();
-			zero = context.encrypt(0);
 		}
 
-		public void reduce(Text key, Iterator<Text> values, OutputCollector<Text, Text> output, Reporter reporter)
-				throws IOException {
+		protected EncryptedNumber sum(Iterator<AHWritable> values) {
 			//long sum = 0;
-			EncryptedNumber sum = zero;
+			AHSum sum = new AHSum(context);
 			while (values.hasNext()) {
 				//sum += values.next().get();
-				sum = context.add(sum, Util.getAHCipher(values.next().toString(), context));
+				sum.add(values.next().get(context));
 			} // WHILE
-			output.collect(key, new Text(Util.getAHString(sum)));
+			return sum.sum();
+		}
+	}
+
+	public static class Combine extends BaseReduce implements Reducer<Text, AHWritable, Text, AHWritable> {
+		public void reduce(Text key, Iterator<AHWritable> values, OutputCollector<Text, AHWritable> output,
+				Reporter reporter) throws IOException {
+			output.collect(key, new AHWritable(sum(values)));
+		}
+	} // END CLASS
+
+	public static class Reduce extends BaseReduce implements Reducer<Text, AHWritable, Text, Text> {
+		public void reduce(Text key, Iterator<AHWritable> values, OutputCollector<Text, Text> output,
+				Reporter reporter) throws IOException {
+			output.collect(key, new Text(Util.getAHString(sum(values))));
 		}
 	} // END CLASS
 
@@ -158,12 +181,13 @@ public class Benchmark2 extends Configured implements Tool {
 		// job.setInputFormat(KeyValueSetInputFormat.class);
 		job.setOutputKeyClass(Text.class);
 		job.setOutputValueClass(Text.class);
+		job.setMapOutputValueClass(AHWritable.class);
 		if (base.getTupleData()) {
 			job.setMapperClass(Benchmark2.TupleWritableMap.class);
 		} else {
 			job.setMapperClass(Benchmark2.TextMap.class);
 		}
-		job.setCombinerClass(Benchmark2.Reduce.class);
+		job.setCombinerClass(Benchmark2.Combine.class);
 		job.setReducerClass(Benchmark2.Reduce.class);
 		// job.setNumReduceTasks(0);
 
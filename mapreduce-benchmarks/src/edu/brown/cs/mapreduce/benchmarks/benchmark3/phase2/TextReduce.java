@@ -4,12 +4,11 @@
 package edu.brown.cs.mapreduce.benchmarks.benchmark3.phase2;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.math.BigInteger;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
 import java.util.Iterator;
+import java.util.Queue;
 
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.JobConf;
@@ -22,6 +21,8 @@ import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
 import edu.brown.cs.mapreduce.BenchmarkBase;
+import encryption.DecryptionClient;
+import encryption.DecryptionService;
 import encryption.Util;
 
 /**
@@ -34,6 +35,25 @@ public class TextReduce extends BaseReduce implements Reducer<Text, Text, Text,
 	private PaillierPublicKey pub;
 	private EncryptedNumber zero;
 	private String hostName;
+	private DecryptionClient client;
+
+	/* Keys whose total_adRevenue is being decrypted, in reduce order */
+	private static final int MAX_IN_FLIGHT = 64;
+	private final Queue<Pending> pending = new ArrayDeque<Pending>();
+
+	private static class Pending {
+		final Text key;
+		final EncryptedNumber total_pageRank;
+		final long counter;
+		final DecryptionClient.Reply reply;
+
+		Pending(Text key, EncryptedNumber total_pageRank, long counter, DecryptionClient.Reply reply) {
+			this.key = key;
+			this.total_pageRank = total_pageRank;
+			this.counter = counter;
+			this.reply = reply;
+		}
+	}
 
 	@Override
 	public void configure(JobConf conf) {
@@ -73,15 +93,14 @@ public class TextReduce extends BaseReduce implements Reducer<Text, Text, Text,
 			}
 		} // WHILE
 		
-		Double total_adRevenue_clear = 0.0;
 		try {
-			Socket socket = new Socket(hostName, 44444);
-			ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-			out.writeObject(Util.getAHString(total_adRevenue));
-			out.flush();
-			ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-			total_adRevenue_clear = in.readDouble();
-			socket.close();
+			if (client == null)
+				client = new DecryptionClient(hostName, DecryptionService.DEFAULT_PORT);
+			DecryptionClient.Request request = new DecryptionClient.Request(DecryptionService.DOUBLE);
+			request.add(total_adRevenue.calculateCiphertext(), total_adRevenue.getExponent());
+			pending.add(new Pending(new Text(key), total_pageRank, counter, client.submit(request)));
+			if (pending.size() > MAX_IN_FLIGHT)
+				settle(pending.remove());
 		} catch (UnknownHostException e) {
 			System.err.println("Don't know about host " + hostName);
 			System.exit(1);
@@ -89,13 +108,36 @@ public class TextReduce extends BaseReduce implements Reducer<Text, Text, Text,
 			System.err.println("Couldn't get I/O for the connection to " + hostName);
 			System.exit(1);
 		}
-		
+	}
+
+	/*
+	 * Keys are settled in reduce order, so the first key with the max
+	 * total_adRevenue wins as before
+	 */
+	private void settle(Pending p) throws IOException {
+		client.flush();
+		Double total_adRevenue_clear = Double.longBitsToDouble(DecryptionClient.toLongs(p.reply.get())[0]);
 		if (this.max_total_adRevenue == null || total_adRevenue_clear > this.max_total_adRevenue) {
 			this.max_total_adRevenue = total_adRevenue_clear;
 			//Long average_pageRank = total_pageRank / (long)counter;
-			EncryptedNumber average_pageRank = total_pageRank.divide(counter);
+			EncryptedNumber average_pageRank = p.total_pageRank.divide(p.counter);
 			this.max_val = new Text(total_adRevenue_clear.toString() + BenchmarkBase.VALUE_DELIMITER + Util.getAHString(average_pageRank));
-			this.max_key = key;
+			this.max_key = p.key;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (client != null) {
+			try {
+				while (!pending.isEmpty())
+					settle(pending.remove());
+				client.close();
+			} catch (IOException e) {
+				System.err.println("Couldn't get I/O for the connection to " + hostName);
+				System.exit(1);
+			}
 		}
+		super.close();
 	}
 }
@@ -1,10 +1,8 @@
 package histogramMovies;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.math.BigInteger;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.apache.hadoop.conf.Configured;
@@ -30,6 +28,8 @@ import com.n1analytics.paillier.EncryptedNumber;
 import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
+import encryption.DecryptionClient;
+import encryption.DecryptionService;
 import encryption.Util;
 
 import org.apache.commons.logging.Log;
@@ -71,9 +71,9 @@ public class HistogramMovies extends Configured implements Tool {
 		private PaillierPublicKey pub;
 		private String hostName;
 		private PaillierContext context;
-		private String[] sumRatingsArray;
-		private int[] totalReviewsArray;
-		private int totalNumOfLines, count, portNumber = 44444;
+		private DecryptionClient client;
+		private DecryptionClient.Reply[] replies;
+		private int totalNumOfLines, count, portNumber = DecryptionService.DEFAULT_PORT;
 		private EncryptedNumber zero;
 		
 		@Override
@@ -83,8 +83,7 @@ public class HistogramMovies extends Configured implements Tool {
 			context = pub.createSignedContext();
 	        hostName = jobConf.get("hostname");
 	        totalNumOfLines = Integer.parseInt(jobConf.get("totalNumOfLines"));
-	        sumRatingsArray = new String[totalNumOfLines];
-	        totalReviewsArray = new int[totalNumOfLines];
+	        replies = new DecryptionClient.Reply[totalNumOfLines];
 	        zero = context.encrypt(0);
 	    }
 		
@@ -112,32 +111,30 @@ public class HistogramMovies extends Configured implements Tool {
 					sumRatings = context.add(rating, sumRatings);
 					totalReviews++;
 				}
-				sumRatingsArray[count] = Util.getAHString(sumRatings);
-				totalReviewsArray[count] = totalReviews;
-				count++;
-				if (count == totalNumOfLines) {
-					try {
-						Socket socket = new Socket(hostName, portNumber);
-						ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+				// the key server decrypts this line while the next ones are read
+				DecryptionClient.Request request = new DecryptionClient.Request(DecryptionService.LONG);
+				request.add(sumRatings.calculateCiphertext(), sumRatings.getExponent());
+				request.setExtra(ByteBuffer.allocate(4).putInt(totalReviews).array());
+				try {
+					if (client == null)
+						client = new DecryptionClient(hostName, portNumber);
+					replies[count] = client.submit(request);
+					count++;
+					if (count == totalNumOfLines) {
+						client.flush();
 						for (int i = 0; i < count; i++) {
-							out.writeObject(sumRatingsArray[i]);
-							out.writeInt(totalReviewsArray[i]);
-						}
-						out.flush();
-						ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
-						for (int i = 0; i < count; i++) {
-							outValue = in.readFloat();
+							outValue = ByteBuffer.wrap(replies[i].get()).getFloat();
 							output.collect(new FloatWritable(outValue), one);
 							reporter.incrCounter(Counter.WORDS, 1);
 						}
-						socket.close();
-					} catch (UnknownHostException e) {
-						System.err.println("Don't know about host " + hostName);
-						System.exit(1);
-					} catch (IOException e) {
-						System.err.println("Couldn't get I/O for the connection to " + hostName);
-						System.exit(1);
+						client.close();
 					}
+				} catch (UnknownHostException e) {
+					System.err.println("Don't know about host " + hostName);
+					System.exit(1);
+				} catch (IOException e) {
+					System.err.println("Couldn't get I/O for the connection to " + hostName);
+					System.exit(1);
 				}
 			}
 		}
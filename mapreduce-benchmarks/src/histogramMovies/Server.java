@@ -1,35 +1,55 @@
 package histogramMovies;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.ByteBuffer;
 
 import encryption.AHDecryptor;
+import encryption.DecryptionService;
 
 public class Server {
 	
 	public static void main(String[] args) {
 		
-		if (args.length != 2) {
+		if (args.length < 1) {
 			System.out.println("ERROR: Wrong number of parameters.");
-			System.out.println("Usage: java Server <private key file> <totalNumOfLines>");
+			System.out.println("Usage: java [-DdecryptThreads=<n>] Server <private key file>");
+			System.exit(-1);
 		}
 		
-	    int portNumber = 44444;
-	    int totalNumOfLines = Integer.parseInt(args[1]);
-		ExecutorService executor = Executors.newFixedThreadPool(50);
+	    int portNumber = DecryptionService.DEFAULT_PORT;
+	    int threads = Integer.getInteger("decryptThreads", Runtime.getRuntime().availableProcessors());
 		try {
-			@SuppressWarnings("resource")
-			ServerSocket serverSocket = new ServerSocket(portNumber);
 		    AHDecryptor ah = new AHDecryptor(args[0]);
-			while (true) {
-				Runnable worker = new ServerThread(serverSocket.accept(), ah, totalNumOfLines);
-	            executor.execute(worker);
-			}
+			@SuppressWarnings("resource")
+			DecryptionService service = new DecryptionService(portNumber, threads, ah.factory(), new HistogramHandler());
+			service.serve();
 		} catch (IOException e) {
 			System.err.println("Could not listen on port " + portNumber);
 			System.exit(-1);
 		}
 	}
 
+	/*
+	 * One request per line: the sumRatings cipher, with totalReviews as an
+	 * extra int. Replies the average rating rounded up to a half star.
+	 */
+	static class HistogramHandler implements DecryptionService.Handler {
+		public byte[] reply(long[] plaintexts, byte[] extra) {
+			int sumRatings = (int) plaintexts[0];
+			int totalReviews = ByteBuffer.wrap(extra).getInt();
+			float avgReview = (float) sumRatings / (float) totalReviews;
+			float absReview = (float) Math.floor((double) avgReview);
+			float fraction = avgReview - absReview;
+			float division = 0.5f;
+			int limitInt = Math.round(1.0f / division);
+			float outValue = 0.0f;
+			for (int i = 1; i <= limitInt; i++) {
+				if (fraction < (division * i)) {
+					outValue = absReview + division * i;
+					break;
+				}
+			}
+			return ByteBuffer.allocate(4).putFloat(outValue).array();
+		}
+	}
+
 }
@@ -1,11 +1,9 @@
 package kmeans;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.math.BigInteger;
-import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Base64.Decoder;
 
@@ -22,6 +20,8 @@ import com.n1analytics.paillier.EncryptedNumber;
 import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
+import encryption.DecryptionClient;
+import encryption.DecryptionService;
 import encryption.Util;
 
 public class Kmeans {
@@ -79,9 +79,9 @@ public class Kmeans {
 	public static class MapClass extends MapReduceBase
 			implements Mapper<LongWritable, Text, IntWritable, ClusterWritable> {
 		
-		private int totalClusters, totalNumOfLines, count, portNumber = 44444;
-		private String[][] sq_aArray, numerArray;
-		private int[][] sq_bArray;
+		private int totalClusters, totalNumOfLines, count, portNumber = DecryptionService.DEFAULT_PORT;
+		private DecryptionClient client;
+		private DecryptionClient.Reply[] replies;
 		private ClusterWritable[] movies_arrlArray;
 		private PaillierContext context;
 		private String hostName;
@@ -100,9 +100,7 @@ public class Kmeans {
 			context = pub.createSignedContext();
 	        hostName = conf.get("hostname");
 	        totalNumOfLines = Integer.parseInt(conf.get("totalNumOfLines"));
-	        sq_aArray = new String[totalNumOfLines][totalClusters];
-	        numerArray = new String[totalNumOfLines][totalClusters];
-	        sq_bArray = new int[totalNumOfLines][totalClusters];
+	        replies = new DecryptionClient.Reply[totalNumOfLines];
 	        movies_arrlArray = new ClusterWritable[totalNumOfLines];
 	        zero = context.encrypt(0);
 		}
@@ -170,42 +168,39 @@ public class Kmeans {
 				}
 				movies_arrl.movies.add(line);
 				movies_arrlArray[count] = movies_arrl;
+				// the key server decrypts this line while the next ones are read
+				DecryptionClient.Request request = new DecryptionClient.Request(DecryptionService.LONG);
+				ByteBuffer sq_bs = ByteBuffer.allocate(4 * totalClusters);
 				for (p = 0; p < totalClusters; p++) {
-					sq_aArray[count][p] = Util.getAHString(sq_a[p]);
-					sq_bArray[count][p] = sq_b[p];
-					numerArray[count][p] = Util.getAHString(numer[p]);
+					request.add(sq_a[p].calculateCiphertext(), sq_a[p].getExponent());
+					request.add(numer[p].calculateCiphertext(), numer[p].getExponent());
+					sq_bs.putInt(sq_b[p]);
 				}
-				count++;
-				if (count == totalNumOfLines) {
-					try {
-						Socket socket = new Socket(hostName, portNumber);
-						ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
-						out.writeInt(totalClusters);
-						for (int i = 0; i < count; i++) {
-							for (p = 0; p < totalClusters; p++) {
-								out.writeObject(sq_aArray[i][p]);
-								out.writeInt(sq_bArray[i][p]);
-								out.writeObject(numerArray[i][p]);
-							}
-						}
-						out.flush();
-						ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+				request.setExtra(sq_bs.array());
+				try {
+					if (client == null)
+						client = new DecryptionClient(hostName, portNumber);
+					replies[count] = client.submit(request);
+					count++;
+					if (count == totalNumOfLines) {
+						client.flush();
 						for (int i = 0; i < count; i++) {
-							int clusterId = in.readInt();
-							max_similarity = in.readFloat();
+							ByteBuffer reply = ByteBuffer.wrap(replies[i].get());
+							int clusterId = reply.getInt();
+							max_similarity = reply.getFloat();
 							movies_arrlArray[i].similarities.add(max_similarity);
 							movies_arrlArray[i].similarity = max_similarity;
 							output.collect(new IntWritable(clusterId), movies_arrlArray[i]);
 							reporter.incrCounter(Counter.WORDS, 1);
 						}
-						socket.close();
-					} catch (UnknownHostException e) {
-						System.err.println("Don't know about host " + hostName);
-						System.exit(1);
-					} catch (IOException e) {
-						System.err.println("Couldn't get I/O for the connection to " + hostName);
-						System.exit(1);
+						client.close();
 					}
+				} catch (UnknownHostException e) {
+					System.err.println("Don't know about host " + hostName);
+					System.exit(1);
+				} catch (IOException e) {
+					System.err.println("Couldn't get I/O for the connection to " + hostName);
+					System.exit(1);
 				}
 			}
 		}
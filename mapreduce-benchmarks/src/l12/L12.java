@@ -40,10 +40,11 @@ import org.apache.hadoop.mapred.TextInputFormat;
 import org.apache.hadoop.mapred.jobcontrol.Job;
 import org.apache.hadoop.mapred.jobcontrol.JobControl;
 
-import com.n1analytics.paillier.EncryptedNumber;
 import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
+import encryption.AHPartialSum;
+import encryption.AHSumCombiner;
 import encryption.Util;
 
 public class L12 {
@@ -95,44 +96,44 @@ public class L12 {
     }
 
     public static class TotalTimespentPerTerm extends MapReduceBase
-        implements Mapper<LongWritable, Text, Text, Text>,
-        Reducer<Text, Text, Text, Text> {
+        implements Mapper<LongWritable, Text, Text, AHPartialSum>,
+        Reducer<Text, AHPartialSum, Text, Text> {
 
     	private PaillierContext context;
 		private PaillierPublicKey pub;
-		private EncryptedNumber zero;
+		private AHPartialSum.Accumulator sum;
 
 		@Override
 		public void configure(JobConf conf) {
 			String pubKey = conf.get("pubKey");
 			pub = new PaillierPublicKey(new BigInteger(pubKey));
 			context = pub.createSignedContext();
-			zero = context.encrypt(0);
+			sum = new AHPartialSum.Accumulator(context);
 		}
 
 		public void map(
                 LongWritable k,
                 Text val,
-                OutputCollector<Text, Text> oc,
+                OutputCollector<Text, AHPartialSum> oc,
                 Reporter reporter) throws IOException {
             List<Text> fields = Library.splitLine(val, '');
 
             // Filter out non-null users
             if (fields.get(0).getLength() != 0) return;
-            oc.collect(fields.get(3), fields.get(2));
+            AHPartialSum timespent = new AHPartialSum(1);
+            timespent.set(0, fields.get(2).toString(), context);
+            timespent.setCount(1);
+            oc.collect(fields.get(3), timespent);
         }
 
         public void reduce(
                 Text key,
-                Iterator<Text> iter, 
+                Iterator<AHPartialSum> iter, 
                 OutputCollector<Text, Text> oc,
                 Reporter reporter) throws IOException {
-        	EncryptedNumber sum = zero;
-            while (iter.hasNext()) {
-            	EncryptedNumber v = Util.getAHCipher(iter.next().toString(), context);
-            	sum = context.add(sum, v);
-            }
-            oc.collect(key, new Text(Util.getAHString(sum)));
+        	sum.clear();
+        	sum.addAll(iter);
+            oc.collect(key, new Text(Util.getAHString(sum.sum(0))));
         }
     }
 
@@ -202,8 +203,9 @@ public class L12 {
         lu.setInputFormat(TextInputFormat.class);
         lu.setOutputKeyClass(Text.class);
         lu.setOutputValueClass(Text.class);
+        lu.setMapOutputValueClass(AHPartialSum.class);
         lu.setMapperClass(TotalTimespentPerTerm.class);
-        lu.setCombinerClass(TotalTimespentPerTerm.class);
+        lu.setCombinerClass(AHSumCombiner.class);
         lu.setReducerClass(TotalTimespentPerTerm.class);
         props = System.getProperties();
         for (Map.Entry<Object,Object> entry : props.entrySet()) {
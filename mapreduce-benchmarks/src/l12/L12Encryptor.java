@@ -1,17 +1,13 @@
 package l12;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.io.PrintWriter;
 import java.math.BigInteger;
 import java.util.List;
 import java.util.StringJoiner;
 import encryption.AHEncryptor;
+import encryption.DatasetEncryptor;
+import encryption.DatasetEncryptor.LineEncryptor;
 import encryption.DETEncryptor;
 import encryption.RNDEncryptor;
 import jope.OPE;
@@ -41,13 +37,7 @@ public class L12Encryptor {
 			printUsage();
 		}
 
-		File inputFolder = new File(args[0]);
-		File outputFolder = new File(args[1] + "/dir");
-		if (outputFolder.exists()) {
-			for (File file : outputFolder.listFiles())
-				file.delete();
-		} else
-			outputFolder.mkdirs();
+		DatasetEncryptor.prepareOutput(args[1]);
 
 		AHEncryptor ah = new AHEncryptor(args[1]);
 		RNDEncryptor rnd = new RNDEncryptor();
@@ -60,58 +50,48 @@ public class L12Encryptor {
 		} catch (FileNotFoundException e) {
 			System.out.println("Couldn't find the location " + opeNumFile);
 		}
-		int bufferedSize = 1024 * 1024;
-		for (File file : inputFolder.listFiles()) {
-			System.out.println("Encrypting file " + file.getName() + "...");
-			encryptPageViews(file, bufferedSize, outputFolder, det, ah, rnd, ope);
-		}
+		LineEncryptor pageViews = new LineEncryptor() {
+			public String encrypt(String line) {
+				return encryptPageViews(line, det, ah, rnd, ope);
+			}
+		};
+		DatasetEncryptor.run(args, pageViews);
 	}
 
-	private static void encryptPageViews(File file, int bufferedSize, File outputFolder, DETEncryptor det,
-			AHEncryptor ah, RNDEncryptor rnd, OPE ope) {
-		try {
-			BufferedReader in = new BufferedReader(new FileReader(file), bufferedSize);
-			File outFile = new File(outputFolder.getAbsolutePath() + File.separator + file.getName() + "Cipher");
-			outFile.createNewFile();
-			BufferedWriter out = new BufferedWriter(new FileWriter(outFile), bufferedSize);
-			String line = null;
-			while ((line = in.readLine()) != null) {
-				StringBuffer outline = new StringBuffer();
-				List<String> fields = Library.splitLine(line, '');
-				String user = fields.get(0);
-				outline.append((user.isEmpty() ? "" : det.encrypt(user)) + '');
-				outline.append(det.encrypt(Integer.parseInt(fields.get(1))) + '');
-				outline.append(ah.encrypt(Integer.parseInt(fields.get(2))) + '');
-				String query = fields.get(3);
-				outline.append((query.isEmpty() ? "" : det.encrypt(query)) + '');
-				for (int i = 4; i < 6; i++) {
-					long field = Long.parseLong(fields.get(i));
-					outline.append(rnd.encrypt(field) + '');
-				}
-				String revStr = fields.get(6);
-				if (!revStr.isEmpty()) {
-					int revenue = (int) Double.parseDouble(revStr);
-					outline.append(ope.encrypt(BigInteger.valueOf(revenue)).toString());
-				}
-				outline.append(''); // ^A
-				outline.append(encryptMap(fields.get(7), rnd));
-				outline.append(''); // ^A
-				String mapBag = fields.get(8);
-				List<String> maps = Library.splitLine(mapBag, ''); // ^B
-				StringJoiner sj = new StringJoiner(""); // ^B
-				for (String map : maps) {
-					StringJoiner enMap = encryptMap(map, rnd);
-					sj.add(enMap.toString());
-				}
-				outline.append(sj);
-				outline.append("\n");
-				out.write(outline.toString());
+	private static String encryptPageViews(String line, DETEncryptor det, AHEncryptor ah, RNDEncryptor rnd,
+			OPE ope) {
+		StringBuffer outline = new StringBuffer();
+		List<String> fields = Library.splitLine(line, '');
+		String user = fields.get(0);
+		outline.append((user.isEmpty() ? "" : det.encrypt(user)) + '');
+		outline.append(det.encrypt(Integer.parseInt(fields.get(1))) + '');
+		outline.append(ah.encrypt(Integer.parseInt(fields.get(2))) + '');
+		String query = fields.get(3);
+		outline.append((query.isEmpty() ? "" : det.encrypt(query)) + '');
+		for (int i = 4; i < 6; i++) {
+			long field = Long.parseLong(fields.get(i));
+			outline.append(rnd.encrypt(field) + '');
+		}
+		String revStr = fields.get(6);
+		if (!revStr.isEmpty()) {
+			int revenue = (int) Double.parseDouble(revStr);
+			// OPE is not known to be thread-safe
+			synchronized (ope) {
+				outline.append(ope.encrypt(BigInteger.valueOf(revenue)).toString());
 			}
-			in.close();
-			out.close();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
+		outline.append(''); // ^A
+		outline.append(encryptMap(fields.get(7), rnd));
+		outline.append(''); // ^A
+		String mapBag = fields.get(8);
+		List<String> maps = Library.splitLine(mapBag, ''); // ^B
+		StringJoiner sj = new StringJoiner(""); // ^B
+		for (String map : maps) {
+			StringJoiner enMap = encryptMap(map, rnd);
+			sj.add(enMap.toString());
+		}
+		outline.append(sj);
+		return outline.toString();
 	}
 
 }
@@ -41,10 +41,10 @@ import org.apache.hadoop.mapred.TextInputFormat;
 import org.apache.hadoop.mapred.jobcontrol.Job;
 import org.apache.hadoop.mapred.jobcontrol.JobControl;
 
-import com.n1analytics.paillier.EncryptedNumber;
 import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
+import encryption.AHSum;
 import encryption.Util;
 
 public class L16 {
@@ -71,14 +71,12 @@ public class L16 {
 
     	private PaillierContext context;
 		private PaillierPublicKey pub;
-		private EncryptedNumber zero;
 
 		@Override
 		public void configure(JobConf conf) {
 			String pubKey = conf.get("pubKey");
 			pub = new PaillierPublicKey(new BigInteger(pubKey));
 			context = pub.createSignedContext();
-			zero = context.encrypt(0);
 		}
 
 		public void reduce(
@@ -96,12 +94,11 @@ public class L16 {
                 	hash2.put(val.substring(0, index), val.substring(index + 1));
                 }
 			}
-			EncryptedNumber rev = zero;
+			AHSum rev = new AHSum(context);
 			for (String s : hash2.values()) {
-				EncryptedNumber d = Util.getAHCipher(s, context);
-				rev = context.add(rev, d);
+				rev.add(s);
 			}
-            oc.collect(key, new Text(Util.getAHString(rev)));
+            oc.collect(key, new Text(Util.getAHString(rev.sum())));
             reporter.setStatus("OK");
         }
     }
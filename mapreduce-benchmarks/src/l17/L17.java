@@ -44,17 +44,26 @@ import com.n1analytics.paillier.EncryptedNumber;
 import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
+import encryption.AHPartialSum;
+import encryption.AHSumCombiner;
 import encryption.Util;
 
 public class L17 {
 
     public static class ReadPageViews extends MapReduceBase
-        implements Mapper<LongWritable, Text, Text, Text> {
+        implements Mapper<LongWritable, Text, Text, AHPartialSum> {
+
+    	private PaillierContext context;
+
+		@Override
+		public void configure(JobConf conf) {
+			context = new PaillierPublicKey(new BigInteger(conf.get("pubKey"))).createSignedContext();
+		}
 
         public void map(
                 LongWritable k,
                 Text val,
-                OutputCollector<Text, Text> oc,
+                OutputCollector<Text, AHPartialSum> oc,
                 Reporter reporter) throws IOException {
             List<Text> vals = Library.splitLine(val, '');
             if (vals.size() != 27) return;
@@ -118,140 +127,48 @@ public class L17 {
             	key.append(f24.substring(0, i24));
             key.append(vals.get(24).toString());
             
-            StringBuffer sb = new StringBuffer();
-            sb.append(f2.substring(i2 + 1));
-            sb.append("");
-            sb.append(f11.substring(i11 + 1));
-            sb.append("");
-            sb.append(f20.substring(i20 + 1));
-            sb.append("");
+            // three timespent and three estimated_revenue columns
+            AHPartialSum sums = new AHPartialSum(6);
+            sums.set(0, f2.substring(i2 + 1), context);
+            sums.set(1, f11.substring(i11 + 1), context);
+            sums.set(2, f20.substring(i20 + 1), context);
             if (i6 > -1)
-            	sb.append(f6.substring(i6 + 1));
-            sb.append("");
+            	sums.set(3, f6.substring(i6 + 1), context);
             if (i15 > -1)
-            	sb.append(f15.substring(i15 + 1));
-            sb.append("");
+            	sums.set(4, f15.substring(i15 + 1), context);
             if (i24 > -1)
-            	sb.append(f24.substring(i24 + 1));
-            oc.collect(new Text(key.toString()), new Text(sb.toString()));
+            	sums.set(5, f24.substring(i24 + 1), context);
+            sums.setCount(1);
+            oc.collect(new Text(key.toString()), sums);
         }
     }
 
-    public static class Combiner extends MapReduceBase
-        implements Reducer<Text, Text, Text, Text> {
-
-    	private PaillierContext context;
-		private PaillierPublicKey pub;
-		private EncryptedNumber zero;
-
-		@Override
-		public void configure(JobConf conf) {
-			String pubKey = conf.get("pubKey");
-			pub = new PaillierPublicKey(new BigInteger(pubKey));
-			context = pub.createSignedContext();
-			zero = context.encrypt(0);
-		}
-		
-		public void reduce(
-                Text key,
-                Iterator<Text> iter, 
-                OutputCollector<Text, Text> oc,
-                Reporter reporter) throws IOException {
-			int erCnt = 0;
-            EncryptedNumber tsSum = zero, tsSum1 = zero, tsSum2 = zero,
-            		erSum = zero, erSum1 = zero, erSum2 = zero;
-            while (iter.hasNext()) {
-                List<Text> vals = Library.splitLine(iter.next(), '');
-                EncryptedNumber v = Util.getAHCipher(vals.get(0).toString(), context);
-                tsSum = context.add(tsSum, v);
-                v = Util.getAHCipher(vals.get(1).toString(), context);
-                tsSum1 = context.add(tsSum1, v);
-                v = Util.getAHCipher(vals.get(2).toString(), context);
-                tsSum2 = context.add(tsSum2, v);
-                String vs = vals.get(3).toString();
-                if (!vs.isEmpty()) {
-                	v = Util.getAHCipher(vs, context);
-                    erSum = context.add(erSum, v);
-                }
-                vs = vals.get(4).toString();
-                if (!vs.isEmpty()) {
-                	v = Util.getAHCipher(vs, context);
-                    erSum1 = context.add(erSum1, v);
-                }
-                vs = vals.get(5).toString();
-                if (!vs.isEmpty()) {
-                	v = Util.getAHCipher(vs, context);
-                    erSum2 = context.add(erSum2, v);
-                }
-                erCnt++;
-            }
-            StringBuffer sb = new StringBuffer();
-            sb.append(Util.getAHString(tsSum));
-            sb.append("");
-            sb.append(Util.getAHString(tsSum1));
-            sb.append("");
-            sb.append(Util.getAHString(tsSum2));
-            sb.append("");
-            sb.append(Util.getAHString(erSum));
-            sb.append("");
-            sb.append(Util.getAHString(erSum1));
-            sb.append("");
-            sb.append(Util.getAHString(erSum2));
-            sb.append("");
-            sb.append((new Integer(erCnt)).toString());
-            oc.collect(key, new Text(sb.toString()));
-            reporter.setStatus("OK");
-        }
-    }
     public static class Group extends MapReduceBase
-        implements Reducer<Text, Text, Text, Text> {
+        implements Reducer<Text, AHPartialSum, Text, Text> {
 
     	private PaillierContext context;
 		private PaillierPublicKey pub;
-		private EncryptedNumber zero;
+		private AHPartialSum.Accumulator sums;
 
 		@Override
 		public void configure(JobConf conf) {
 			String pubKey = conf.get("pubKey");
 			pub = new PaillierPublicKey(new BigInteger(pubKey));
 			context = pub.createSignedContext();
-			zero = context.encrypt(0);
+			sums = new AHPartialSum.Accumulator(context);
 		}
 		
 		public void reduce(
                 Text key,
-                Iterator<Text> iter, 
+                Iterator<AHPartialSum> iter, 
                 OutputCollector<Text, Text> oc,
                 Reporter reporter) throws IOException {
-        	int erCnt = 0;
-            EncryptedNumber tsSum = zero, tsSum1 = zero, tsSum2 = zero,
-            		erSum = zero, erSum1 = zero, erSum2 = zero;
-            while (iter.hasNext()) {
-                List<Text> vals = Library.splitLine(iter.next(), '');
-                EncryptedNumber v = Util.getAHCipher(vals.get(0).toString(), context);
-                tsSum = context.add(tsSum, v);
-                v = Util.getAHCipher(vals.get(1).toString(), context);
-                tsSum1 = context.add(tsSum1, v);
-                v = Util.getAHCipher(vals.get(2).toString(), context);
-                tsSum2 = context.add(tsSum2, v);
-                String vs = vals.get(3).toString();
-                if (!vs.isEmpty()) {
-                	v = Util.getAHCipher(vs, context);
-                    erSum = context.add(erSum, v);
-                }
-                vs = vals.get(4).toString();
-                if (!vs.isEmpty()) {
-                	v = Util.getAHCipher(vs, context);
-                    erSum1 = context.add(erSum1, v);
-                }
-                vs = vals.get(5).toString();
-                if (!vs.isEmpty()) {
-                	v = Util.getAHCipher(vs, context);
-                    erSum2 = context.add(erSum2, v);
-                }
-                erCnt++;
-            }
-            EncryptedNumber erAvg = erSum.divide(erCnt), erAvg1 = erSum1.divide(erCnt), erAvg2 = erSum2.divide(erCnt);
+            sums.clear();
+            sums.addAll(iter);
+            long erCnt = sums.getCount();
+            EncryptedNumber tsSum = sums.sum(0), tsSum1 = sums.sum(1), tsSum2 = sums.sum(2);
+            EncryptedNumber erAvg = sums.sum(3).divide(erCnt), erAvg1 = sums.sum(4).divide(erCnt),
+            		erAvg2 = sums.sum(5).divide(erCnt);
             StringBuffer sb = new StringBuffer();
             sb.append(Util.getAHString(tsSum));
             sb.append("\t");
@@ -285,7 +202,8 @@ public class L17 {
         lp.setOutputKeyClass(Text.class);
         lp.setOutputValueClass(Text.class);
         lp.setMapperClass(ReadPageViews.class);
-        lp.setCombinerClass(Combiner.class);
+        lp.setMapOutputValueClass(AHPartialSum.class);
+        lp.setCombinerClass(AHSumCombiner.class);
         lp.setReducerClass(Group.class);
         Properties props = System.getProperties();
         for (Map.Entry<Object,Object> entry : props.entrySet()) {
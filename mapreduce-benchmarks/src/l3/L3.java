@@ -20,6 +20,7 @@ package l3;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
@@ -42,10 +43,10 @@ import org.apache.hadoop.mapred.jobcontrol.Job;
 import org.apache.hadoop.mapred.jobcontrol.JobControl;
 import org.apache.hadoop.mapred.lib.IdentityMapper;
 
-import com.n1analytics.paillier.EncryptedNumber;
 import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
+import encryption.AHSum;
 import encryption.Util;
 
 public class L3 {
@@ -89,14 +90,12 @@ public class L3 {
 
     	private PaillierContext context;
 		private PaillierPublicKey pub;
-		private EncryptedNumber zero;
 		
 		@Override
 		public void configure(JobConf conf) {
 			String pubKey = conf.get("pubKey");
 			pub = new PaillierPublicKey(new BigInteger(pubKey));
 			context = pub.createSignedContext();
-			zero = context.encrypt(0);
 		}
 		
         public void reduce(
@@ -121,20 +120,21 @@ public class L3 {
 
             if (first.size() == 0 || second.size() == 0) return;
 
-            // Do the cross product, and calculate the sum
-            EncryptedNumber sum = zero;
+            // The sum over the cross product is |second| times the sum over
+            // first, so count the repeated values of first and multiply by
+            // the counts instead of adding once per pair
+            Map<String, Integer> counts = new HashMap<String, Integer>();
             for (String s1 : first) {
             	if (s1.isEmpty()) continue;
-            	EncryptedNumber s1en = Util.getAHCipher(s1, context);
-                for (@SuppressWarnings("unused") String s2 : second) {
-                    try {
-                        //sum += Double.valueOf(s1);
-                    	sum = context.add(sum, s1en);
-                    } catch (NumberFormatException nfe) {
-                    }
-                }
+            	Integer count = counts.get(s1);
+            	counts.put(s1, count == null ? 1 : count + 1);
+            }
+            AHSum sum = new AHSum(context);
+            for (Map.Entry<String, Integer> s1 : counts.entrySet()) {
+                //sum += Double.valueOf(s1) * count;
+            	sum.add(Util.getAHCipher(s1.getKey(), context), s1.getValue());
             }
-            oc.collect(null, new Text(key.toString() + "" +  Util.getAHString(sum)));
+            oc.collect(null, new Text(key.toString() + "" +  Util.getAHString(sum.sum(second.size()))));
         }
     }
 
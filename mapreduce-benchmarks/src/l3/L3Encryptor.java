@@ -1,14 +1,12 @@
 package l3;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.List;
 import java.util.StringJoiner;
 import encryption.AHEncryptor;
+import encryption.DatasetEncryptor;
+import encryption.DatasetEncryptor.FileEncryptor;
+import encryption.DatasetEncryptor.LineEncryptor;
 import encryption.DETEncryptor;
 import encryption.RNDEncryptor;
 
@@ -37,104 +35,75 @@ public class L3Encryptor {
 			printUsage();
 		}
 
-		File inputFolder = new File(args[0]);
-		File outputFolder = new File(args[1] + "/dir");
-		if (outputFolder.exists()) {
-			for (File file : outputFolder.listFiles())
-				file.delete();
-		} else
-			outputFolder.mkdirs();
+		DatasetEncryptor.prepareOutput(args[1]);
 
 		AHEncryptor ah = new AHEncryptor(args[1]);
 		RNDEncryptor rnd = new RNDEncryptor();
 		DETEncryptor det = new DETEncryptor();
-		int bufferedSize = 1024 * 1024;
-		for (File file : inputFolder.listFiles()) {
-			System.out.println("Encrypting file " + file.getName() + "...");
-			if (file.getName().equals("page_views"))
-				encryptPageViews(file, bufferedSize, outputFolder, det, ah, rnd);
-			else
-				encryptUsers(file, bufferedSize, outputFolder, det, rnd);
-		}
+		LineEncryptor pageViews = new LineEncryptor() {
+			public String encrypt(String line) {
+				return encryptPageViews(line, det, ah, rnd);
+			}
+		};
+		LineEncryptor users = new LineEncryptor() {
+			public String encrypt(String line) {
+				return encryptUsers(line, det, rnd);
+			}
+		};
+		DatasetEncryptor.run(args, new FileEncryptor() {
+			public LineEncryptor forFile(File file) {
+				return file.getName().equals("page_views") ? pageViews : users;
+			}
+		});
 	}
 
-	private static void encryptUsers(File file, int bufferedSize, File outputFolder, DETEncryptor det,
-			RNDEncryptor rnd) {
-		try {
-			BufferedReader in = new BufferedReader(new FileReader(file), bufferedSize);
-			File outFile = new File(outputFolder.getAbsolutePath() + File.separator + file.getName() + "Cipher");
-			outFile.createNewFile();
-			BufferedWriter out = new BufferedWriter(new FileWriter(outFile), bufferedSize);
-			String line = null;
-			while ((line = in.readLine()) != null) {
-				StringBuffer outline = new StringBuffer();
-				List<String> fields = Library.splitLine(line, '');
-				String user = fields.get(0);
-				outline.append((user.isEmpty() ? "" : det.encrypt(user)) + '');
-				for (int i = 1; i < 4; i++) {
-					String field = fields.get(i);
-					outline.append((field.isEmpty() ? "" : rnd.encrypt(field)) + '');
-				}
-				if (fields.size() > 4) {
-					int zip = Integer.parseInt(fields.get(4));
-					outline.append(rnd.encrypt(zip));
-				}
-				outline.append("\n");
-				out.write(outline.toString());
-			}
-			in.close();
-			out.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+	private static String encryptUsers(String line, DETEncryptor det, RNDEncryptor rnd) {
+		StringBuffer outline = new StringBuffer();
+		List<String> fields = Library.splitLine(line, '');
+		String user = fields.get(0);
+		outline.append((user.isEmpty() ? "" : det.encrypt(user)) + '');
+		for (int i = 1; i < 4; i++) {
+			String field = fields.get(i);
+			outline.append((field.isEmpty() ? "" : rnd.encrypt(field)) + '');
 		}
+		if (fields.size() > 4) {
+			int zip = Integer.parseInt(fields.get(4));
+			outline.append(rnd.encrypt(zip));
+		}
+		return outline.toString();
 	}
 
-	private static void encryptPageViews(File file, int bufferedSize, File outputFolder, DETEncryptor det,
-			AHEncryptor ah, RNDEncryptor rnd) {
-		try {
-			BufferedReader in = new BufferedReader(new FileReader(file), bufferedSize);
-			File outFile = new File(outputFolder.getAbsolutePath() + File.separator + file.getName() + "Cipher");
-			outFile.createNewFile();
-			BufferedWriter out = new BufferedWriter(new FileWriter(outFile), bufferedSize);
-			String line = null;
-			while ((line = in.readLine()) != null) {
-				StringBuffer outline = new StringBuffer();
-				List<String> fields = Library.splitLine(line, '');
-				String user = fields.get(0);
-				outline.append((user.isEmpty() ? "" : det.encrypt(user)) + '');
-				for (int i = 1; i < 3; i++) {
-					int field = Integer.parseInt(fields.get(i));
-					outline.append(rnd.encrypt(field) + '');
-				}
-				outline.append((user.isEmpty() ? "" : rnd.encrypt(fields.get(3))) + '');
-				for (int i = 4; i < 6; i++) {
-					long field = Long.parseLong(fields.get(i));
-					outline.append(rnd.encrypt(field) + '');
-				}
-				String revStr = fields.get(6);
-				if (!revStr.isEmpty()) {
-					double revenue = Double.parseDouble(revStr);
-					outline.append(ah.encrypt(revenue));
-				}
-				outline.append(''); // ^A
-				outline.append(encryptMap(fields.get(7), rnd));
-				outline.append(''); // ^A
-				String mapBag = fields.get(8);
-				List<String> maps = Library.splitLine(mapBag, ''); // ^B
-				StringJoiner sj = new StringJoiner(""); // ^B
-				for (String map : maps) {
-					StringJoiner enMap = encryptMap(map, rnd);
-					sj.add(enMap.toString());
-				}
-				outline.append(sj);
-				outline.append("\n");
-				out.write(outline.toString());
-			}
-			in.close();
-			out.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+	private static String encryptPageViews(String line, DETEncryptor det, AHEncryptor ah, RNDEncryptor rnd) {
+		StringBuffer outline = new StringBuffer();
+		List<String> fields = Library.splitLine(line, '');
+		String user = fields.get(0);
+		outline.append((user.isEmpty() ? "" : det.encrypt(user)) + '');
+		for (int i = 1; i < 3; i++) {
+			int field = Integer.parseInt(fields.get(i));
+			outline.append(rnd.encrypt(field) + '');
+		}
+		outline.append((user.isEmpty() ? "" : rnd.encrypt(fields.get(3))) + '');
+		for (int i = 4; i < 6; i++) {
+			long field = Long.parseLong(fields.get(i));
+			outline.append(rnd.encrypt(field) + '');
+		}
+		String revStr = fields.get(6);
+		if (!revStr.isEmpty()) {
+			double revenue = Double.parseDouble(revStr);
+			outline.append(ah.encrypt(revenue));
+		}
+		outline.append(''); // ^A
+		outline.append(encryptMap(fields.get(7), rnd));
+		outline.append(''); // ^A
+		String mapBag = fields.get(8);
+		List<String> maps = Library.splitLine(mapBag, ''); // ^B
+		StringJoiner sj = new StringJoiner(""); // ^B
+		for (String map : maps) {
+			StringJoiner enMap = encryptMap(map, rnd);
+			sj.add(enMap.toString());
 		}
+		outline.append(sj);
+		return outline.toString();
 	}
 
 }
@@ -0,0 +1,119 @@
+package l3;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Writes plaintext page_views and users files for L3 whose user names
+ * follow a Zipf distribution, so a few join keys have many page views and
+ * many user rows. Encrypt them with L3Encryptor. Prints the ciphertext
+ * operations of the L3 Join reducer on this data: one addition per pair
+ * before, one per value of first plus one scalar multiplication per key
+ * now.
+ */
+public class SkewedDataGenerator {
+
+	static void printUsage() {
+		System.out.println(
+				"Usage: java SkewedDataGenerator <output folder> <page views> <users> <user rows> [zipf exponent] [seed]");
+		System.exit(1);
+	}
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 4) {
+			System.out.println("ERROR: Wrong number of parameters.");
+			printUsage();
+		}
+
+		File outputFolder = new File(args[0]);
+		outputFolder.mkdirs();
+		int pageViews = Integer.parseInt(args[1]);
+		int users = Integer.parseInt(args[2]);
+		int userRows = Integer.parseInt(args[3]);
+		double exponent = args.length > 4 ? Double.parseDouble(args[4]) : 1.0;
+		Random rng = new Random(args.length > 5 ? Long.parseLong(args[5]) : 0);
+
+		double[] cdf = zipf(users, exponent);
+		long[] first = new long[users], second = new long[users];
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(new File(outputFolder, "page_views")), 1024 * 1024);
+		for (int i = 0; i < pageViews; i++) {
+			int user = sample(cdf, rng);
+			first[user]++;
+			out.write(pageView(user, rng));
+			out.write('\n');
+		}
+		out.close();
+
+		// every user once, the remaining rows skewed like the page views
+		out = new BufferedWriter(new FileWriter(new File(outputFolder, "users")), 1024 * 1024);
+		for (int i = 0; i < Math.max(users, userRows); i++) {
+			int user = i < users ? i : sample(cdf, rng);
+			second[user]++;
+			out.write(user(user, rng));
+			out.write('\n');
+		}
+		out.close();
+
+		long pairs = 0, values = 0, multiplications = 0;
+		for (int u = 0; u < users; u++) {
+			if (first[u] == 0)
+				continue;
+			pairs += first[u] * second[u];
+			values += first[u];
+			if (second[u] > 1)
+				multiplications++;
+		}
+		long hottest = 0;
+		for (long f : first)
+			hottest = Math.max(hottest, f);
+		System.out.println("INFO: hottest key has " + hottest + " page views");
+		System.out.println("INFO: L3 Join additions before: " + pairs);
+		System.out.println("INFO: L3 Join additions now: " + values + ", scalar multiplications: " + multiplications);
+	}
+
+	private static String name(int user) {
+		return "user" + user;
+	}
+
+	private static String pageView(int user, Random rng) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(name(user)).append('\u0001');
+		sb.append(rng.nextInt(3)).append('\u0001'); // action
+		sb.append(rng.nextInt(600)).append('\u0001'); // timespent
+		sb.append("term").append(rng.nextInt(1000)).append('\u0001'); // query_term
+		sb.append(rng.nextInt(Integer.MAX_VALUE)).append('\u0001'); // ip_addr
+		sb.append(1200000000L + rng.nextInt(100000000)).append('\u0001'); // timestamp
+		sb.append(rng.nextInt(10000) / 100.0).append('\u0001'); // estimated_revenue
+		sb.append("a\u0004b").append('\u0003').append("c\u0004d").append('\u0001'); // page_info
+		sb.append("a\u0004b").append('\u0002').append("c\u0004d"); // page_links
+		return sb.toString();
+	}
+
+	private static String user(int user, Random rng) {
+		return name(user) + '\u0001' + (1000000 + rng.nextInt(9000000)) + '\u0001' + "street" + rng.nextInt(100)
+				+ '\u0001' + "city" + rng.nextInt(50) + '\u0001' + (10000 + rng.nextInt(90000));
+	}
+
+	private static double[] zipf(int n, double exponent) {
+		double[] cdf = new double[n];
+		double total = 0;
+		for (int k = 0; k < n; k++) {
+			total += 1 / Math.pow(k + 1, exponent);
+			cdf[k] = total;
+		}
+		for (int k = 0; k < n; k++)
+			cdf[k] /= total;
+		return cdf;
+	}
+
+	private static int sample(double[] cdf, Random rng) {
+		int k = Arrays.binarySearch(cdf, rng.nextDouble());
+		return Math.min(k < 0 ? -k - 1 : k, cdf.length - 1);
+	}
+}
@@ -40,21 +40,29 @@ import org.apache.hadoop.mapred.TextInputFormat;
 import org.apache.hadoop.mapred.jobcontrol.Job;
 import org.apache.hadoop.mapred.jobcontrol.JobControl;
 
-import com.n1analytics.paillier.EncryptedNumber;
 import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
+import encryption.AHPartialSum;
+import encryption.AHSumCombiner;
 import encryption.Util;
 
 public class L6 {
 
     public static class ReadPageViews extends MapReduceBase
-        implements Mapper<LongWritable, Text, Text, Text> {
+        implements Mapper<LongWritable, Text, Text, AHPartialSum> {
+
+    	private PaillierContext context;
+
+		@Override
+		public void configure(JobConf conf) {
+			context = new PaillierPublicKey(new BigInteger(conf.get("pubKey"))).createSignedContext();
+		}
 
         public void map(
                 LongWritable k,
                 Text val,
-                OutputCollector<Text, Text> oc,
+                OutputCollector<Text, AHPartialSum> oc,
                 Reporter reporter) throws IOException {
 
             // Split the line
@@ -70,39 +78,36 @@ public class L6 {
             sb.append("");
             sb.append(fields.get(5).toString());
             Text key = new Text(sb.toString());
-            try {
-                oc.collect(key, fields.get(2));
-            } catch (NumberFormatException nfe) {
-            }
+            AHPartialSum timespent = new AHPartialSum(1);
+            timespent.set(0, fields.get(2).toString(), context);
+            timespent.setCount(1);
+            oc.collect(key, timespent);
         }
     }
 
     public static class Group extends MapReduceBase
-        implements Reducer<Text, Text, Text, Text> {
+        implements Reducer<Text, AHPartialSum, Text, Text> {
 
     	private PaillierContext context;
 		private PaillierPublicKey pub;
-		private EncryptedNumber zero;
+		private AHPartialSum.Accumulator sum;
 		
 		@Override
 		public void configure(JobConf conf) {
 			String pubKey = conf.get("pubKey");
 			pub = new PaillierPublicKey(new BigInteger(pubKey));
 			context = pub.createSignedContext();
-			zero = context.encrypt(0);
+			sum = new AHPartialSum.Accumulator(context);
 		}
 		
 		public void reduce(
                 Text key,
-                Iterator<Text> iter, 
+                Iterator<AHPartialSum> iter, 
                 OutputCollector<Text, Text> oc,
                 Reporter reporter) throws IOException {
-            EncryptedNumber sum = zero;
-            while (iter.hasNext()) {
-            	EncryptedNumber next = Util.getAHCipher(iter.next().toString(), context);
-                sum = context.add(sum, next);
-            }
-            oc.collect(key, new Text(Util.getAHString(sum)));
+            sum.clear();
+            sum.addAll(iter);
+            oc.collect(key, new Text(Util.getAHString(sum.sum(0))));
             reporter.setStatus("OK");
            
         }
@@ -123,8 +128,9 @@ public class L6 {
         lp.setInputFormat(TextInputFormat.class);
         lp.setOutputKeyClass(Text.class);
         lp.setOutputValueClass(Text.class);
+        lp.setMapOutputValueClass(AHPartialSum.class);
         lp.setMapperClass(ReadPageViews.class);
-        lp.setCombinerClass(Group.class);
+        lp.setCombinerClass(AHSumCombiner.class);
         lp.setReducerClass(Group.class);
         Properties props = System.getProperties();
         for (Map.Entry<Object,Object> entry : props.entrySet()) {
@@ -44,100 +44,58 @@ import com.n1analytics.paillier.EncryptedNumber;
 import com.n1analytics.paillier.PaillierContext;
 import com.n1analytics.paillier.PaillierPublicKey;
 
+import encryption.AHPartialSum;
+import encryption.AHSumCombiner;
 import encryption.Util;
 
 public class L8 {
 
-	public static class ReadPageViews extends MapReduceBase implements Mapper<LongWritable, Text, Text, Text> {
-
-		public void map(LongWritable k, Text val, OutputCollector<Text, Text> oc, Reporter reporter)
-				throws IOException {
-
-			// Split the line
-			List<Text> fields = Library.splitLine(val, '');
-			if (fields.size() != 9)
-				return;
-
-			StringBuffer sb = new StringBuffer();
-			sb.append(fields.get(2).toString());
-			sb.append("");
-			sb.append(fields.get(6).toString());
-			oc.collect(new Text("all"), new Text(sb.toString()));
-		}
-	}
-
-	public static class Combiner extends MapReduceBase implements Reducer<Text, Text, Text, Text> {
+	public static class ReadPageViews extends MapReduceBase implements Mapper<LongWritable, Text, Text, AHPartialSum> {
 
 		private PaillierContext context;
-		private PaillierPublicKey pub;
-		private EncryptedNumber zero;
 
 		@Override
 		public void configure(JobConf conf) {
-			String pubKey = conf.get("pubKey");
-			pub = new PaillierPublicKey(new BigInteger(pubKey));
-			context = pub.createSignedContext();
-			zero = context.encrypt(0);
+			context = new PaillierPublicKey(new BigInteger(conf.get("pubKey"))).createSignedContext();
 		}
 
-		public void reduce(Text key, Iterator<Text> iter, OutputCollector<Text, Text> oc, Reporter reporter)
+		public void map(LongWritable k, Text val, OutputCollector<Text, AHPartialSum> oc, Reporter reporter)
 				throws IOException {
-			int erCnt = 0;
-			EncryptedNumber tsSum = zero, erSum = zero;
-			while (iter.hasNext()) {
-				List<Text> vals = Library.splitLine(iter.next(), '');
-				erCnt++;
-				Text ts = vals.get(0);
-				if (ts.getLength() > 0)
-					tsSum = context.add(tsSum, Util.getAHCipher(ts.toString(), context));
-				if (vals.size() > 1) {
-					Text er = vals.get(1);
-					if (er.getLength() > 0)
-					erSum = context.add(erSum, Util.getAHCipher(er.toString(), context));
-				}
-			}
-			StringBuffer sb = new StringBuffer();
-			sb.append(Util.getAHString(tsSum));
-			sb.append("");
-			sb.append(Util.getAHString(erSum));
-			sb.append("");
-			sb.append((new Integer(erCnt)).toString());
-			oc.collect(key, new Text(sb.toString()));
-			reporter.setStatus("OK");
+
+			// Split the line
+			List<Text> fields = Library.splitLine(val, '');
+			if (fields.size() != 9)
+				return;
+
+			// timespent and estimated_revenue
+			AHPartialSum sums = new AHPartialSum(2);
+			sums.set(0, fields.get(2).toString(), context);
+			sums.set(1, fields.get(6).toString(), context);
+			sums.setCount(1);
+			oc.collect(new Text("all"), sums);
 		}
 	}
 
-	public static class Group extends MapReduceBase implements Reducer<Text, Text, Text, Text> {
+	public static class Group extends MapReduceBase implements Reducer<Text, AHPartialSum, Text, Text> {
 
 		private PaillierContext context;
 		private PaillierPublicKey pub;
-		private EncryptedNumber zero;
+		private AHPartialSum.Accumulator sums;
 
 		@Override
 		public void configure(JobConf conf) {
 			String pubKey = conf.get("pubKey");
 			pub = new PaillierPublicKey(new BigInteger(pubKey));
 			context = pub.createSignedContext();
-			zero = context.encrypt(0);
+			sums = new AHPartialSum.Accumulator(context);
 		}
 
-		public void reduce(Text key, Iterator<Text> iter, OutputCollector<Text, Text> oc, Reporter reporter)
+		public void reduce(Text key, Iterator<AHPartialSum> iter, OutputCollector<Text, Text> oc, Reporter reporter)
 				throws IOException {
-			int erCnt = 0;
-			EncryptedNumber tsSum = zero, erSum = zero;
-			while (iter.hasNext()) {
-				List<Text> vals = Library.splitLine(iter.next(), '');
-				Text ts = vals.get(0);
-				if (ts.getLength() > 0)
-					tsSum = context.add(tsSum, Util.getAHCipher(ts.toString(), context));
-				if (vals.size() > 1) {
-					Text er = vals.get(1);
-					if (er.getLength() > 0)
-						erSum = context.add(erSum, Util.getAHCipher(er.toString(), context));
-				}
-				erCnt += Integer.valueOf(vals.get(2).toString());
-			}
-			EncryptedNumber erAvg = erSum.divide(erCnt);
+			sums.clear();
+			sums.addAll(iter);
+			EncryptedNumber tsSum = sums.sum(0);
+			EncryptedNumber erAvg = sums.sum(1).divide(sums.getCount());
 			StringBuffer sb = new StringBuffer();
 			sb.append(Util.getAHString(tsSum));
 			sb.append("");
@@ -162,7 +120,8 @@ public class L8 {
 		lp.setOutputKeyClass(Text.class);
 		lp.setOutputValueClass(Text.class);
 		lp.setMapperClass(ReadPageViews.class);
-		lp.setCombinerClass(Combiner.class);
+		lp.setMapOutputValueClass(AHPartialSum.class);
+		lp.setCombinerClass(AHSumCombiner.class);
 		lp.setReducerClass(Group.class);
 		Properties props = System.getProperties();
 		for (Map.Entry<Object, Object> entry : props.entrySet()) {
@@ -0,0 +1,63 @@
+package test.thep.paillier;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import thep.paillier.EncryptedInteger;
+import thep.paillier.PrivateKey;
+import thep.paillier.PublicKey;
+import thep.paillier.exceptions.BigIntegerClassNotValid;
+
+/*
+ * Compares decryption by lambda and mu with decryption mod p^2 and q^2 for
+ * a few key sizes. Run with "ant bench-decrypt" or
+ * 
+ *   java test.thep.paillier.DecryptBenchmark [seconds per measurement]
+ */
+public class DecryptBenchmark {
+	private static final int[] BITS = { 1024, 2048, 3072 };
+	private static final int CIPHERTEXTS = 64;
+	
+	public static void main(String[] args) throws BigIntegerClassNotValid {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+		Random rng = new Random(42);
+		
+		System.out.println("bits\tlambda us/op\tcrt us/op\tspeedup");
+		for (int bits : BITS) {
+			PrivateKey fast = new PrivateKey(bits);
+			PublicKey pub = fast.getPublicKey();
+			PrivateKey slow = new PrivateKey(fast.getLambda(), fast.getMu(), pub);
+			
+			EncryptedInteger[] cts = new EncryptedInteger[CIPHERTEXTS];
+			for (int i = 0; i < cts.length; i++)
+				cts[i] = new EncryptedInteger(new BigInteger(bits, rng).mod(pub.getN()), pub);
+			
+			// Warm up both paths, then measure
+			measure(cts, slow, seconds / 2);
+			measure(cts, fast, seconds / 2);
+			double slowUs = measure(cts, slow, seconds);
+			double fastUs = measure(cts, fast, seconds);
+			System.out.printf("%d\t%.1f\t%.1f\t%.2fx%n", bits, slowUs, fastUs, slowUs / fastUs);
+		}
+	}
+	
+	/*
+	 * Decrypts the ciphertexts round robin for about the given time and
+	 * returns the microseconds per decryption
+	 */
+	private static double measure(EncryptedInteger[] cts, PrivateKey priv, double seconds)
+			throws BigIntegerClassNotValid {
+		long budget = (long) (seconds * 1e9);
+		long start = System.nanoTime();
+		long ops = 0;
+		int sink = 0;
+		while (System.nanoTime() - start < budget) {
+			sink += cts[(int) (ops % cts.length)].decrypt(priv).bitLength();
+			ops++;
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sink == -1)
+			System.out.println(sink);
+		return elapsed / 1e3 / ops;
+	}
+}
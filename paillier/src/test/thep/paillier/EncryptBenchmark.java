@@ -0,0 +1,104 @@
+package test.thep.paillier;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import thep.paillier.EncryptedInteger;
+import thep.paillier.PrivateKey;
+import thep.paillier.PublicKey;
+import thep.paillier.exceptions.BigIntegerClassNotValid;
+
+/*
+ * Bulk encryption throughput: the textbook g^m * r^n with two
+ * exponentiations, g^m as 1 + m*n, and the same with blinding factors from
+ * a randomness pool. The pool is measured sustained, with its threads
+ * competing for the cores, and as a burst that drains a filled pool, which
+ * is what a client encrypting between idle periods sees. Run with
+ * "ant bench-encrypt" or
+ * 
+ *   java test.thep.paillier.EncryptBenchmark [seconds] [pool threads]
+ */
+public class EncryptBenchmark {
+	private static final int[] BITS = { 1024, 2048 };
+	private static final int POOL_SIZE = 1024;
+	private static BigInteger[] plaintexts;
+	
+	public static void main(String[] args) throws BigIntegerClassNotValid {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+		int threads = args.length > 1 ? Integer.parseInt(args[1])
+				: Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		
+		System.out.println("bits\ttextbook enc/s\tn+1 enc/s\tpool(" + threads + ") enc/s\tburst enc/s");
+		for (int bits : BITS) {
+			PublicKey pub = new PrivateKey(bits).getPublicKey();
+			EncryptedInteger e_int = new EncryptedInteger(pub);
+			Random rng = new Random(1);
+			plaintexts = new BigInteger[POOL_SIZE];
+			for (int i = 0; i < plaintexts.length; i++)
+				plaintexts[i] = new BigInteger(bits, rng).mod(pub.getN());
+			
+			textbook(pub, seconds / 2);
+			double textbook = textbook(pub, seconds);
+			fast(e_int, seconds / 2);
+			double fast = fast(e_int, seconds);
+			pub.startRandomnessPool(POOL_SIZE, threads);
+			fast(e_int, seconds / 2);
+			double pooled = fast(e_int, seconds);
+			double burst = burst(pub, e_int);
+			pub.stopRandomnessPool();
+			System.out.printf("%d\t%.0f\t%.0f\t%.0f\t%.0f%n", bits, textbook, fast, pooled, burst);
+		}
+	}
+	
+	/*
+	 * Encryptions per second as the code did before g^m was computed as
+	 * 1 + m*n
+	 */
+	private static double textbook(PublicKey pub, double seconds) {
+		Random rng = new Random(1);
+		long budget = (long) (seconds * 1e9);
+		long start = System.nanoTime();
+		long ops = 0;
+		int sink = 0;
+		while (System.nanoTime() - start < budget) {
+			BigInteger r;
+			do {
+				r = new BigInteger(pub.getBits(), rng);
+			} while (r.compareTo(pub.getN()) >= 0);
+			BigInteger c = pub.getG().modPow(plaintexts[(int) (ops % plaintexts.length)], pub.getNSquared());
+			c = c.multiply(r.modPow(pub.getN(), pub.getNSquared())).mod(pub.getNSquared());
+			sink += c.bitLength();
+			ops++;
+		}
+		if (sink == -1)
+			System.out.println(sink);
+		return ops / ((System.nanoTime() - start) / 1e9);
+	}
+	
+	private static double fast(EncryptedInteger e_int, double seconds) throws BigIntegerClassNotValid {
+		long budget = (long) (seconds * 1e9);
+		long start = System.nanoTime();
+		long ops = 0;
+		while (System.nanoTime() - start < budget) {
+			e_int.set(plaintexts[(int) (ops % plaintexts.length)]);
+			ops++;
+		}
+		return ops / ((System.nanoTime() - start) / 1e9);
+	}
+	
+	/*
+	 * Encryptions per second while draining a filled pool
+	 */
+	private static double burst(PublicKey pub, EncryptedInteger e_int) throws BigIntegerClassNotValid {
+		try {
+			while (pub.randomnessAvailable() < POOL_SIZE)
+				Thread.sleep(100);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < POOL_SIZE; i++)
+			e_int.set(plaintexts[i]);
+		return POOL_SIZE / ((System.nanoTime() - start) / 1e9);
+	}
+}
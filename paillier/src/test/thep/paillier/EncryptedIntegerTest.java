@@ -10,6 +10,7 @@ import java.util.Random;
 
 import junit.framework.TestCase;
 import thep.paillier.EncryptedInteger;
+import thep.paillier.EncryptedSum;
 import thep.paillier.PrivateKey;
 import thep.paillier.PublicKey;
 import thep.paillier.exceptions.BigIntegerClassNotValid;
@@ -263,4 +264,142 @@ public class EncryptedIntegerTest extends TestCase {
 
 		assertEquals(expected, ans);
     }
+
+	/*
+	 * Tests that decryption mod p^2 and q^2 agrees with decryption by
+	 * lambda and mu
+	 */
+	public void testDecryptCRT() throws BigIntegerClassNotValid {
+		assertTrue(priv.hasFactors());
+		PrivateKey slow = new PrivateKey(priv.getLambda(), priv.getMu(), pub);
+		assertFalse(slow.hasFactors());
+		for (int i = 0; i < 20; i++) {
+			BigInteger tmp = new BigInteger(1024, rng).mod(pub.getN());
+			EncryptedInteger e_int = new EncryptedInteger(tmp, pub);
+			assertEquals(tmp, e_int.decrypt(priv));
+			assertEquals(tmp, e_int.decrypt(slow));
+		}
+	}
+	
+	/*
+	 * Tests that keys serialized without their prime factors still decrypt,
+	 * and that keys with them keep them
+	 */
+	public void testSerializablePrivateKey() throws IOException, ClassNotFoundException, BigIntegerClassNotValid {
+		BigInteger tmp = new BigInteger(1024, rng).mod(pub.getN());
+		EncryptedInteger e_int = new EncryptedInteger(tmp, pub);
+		
+		PrivateKey[] keys = { priv, new PrivateKey(priv.getLambda(), priv.getMu(), pub) };
+		for (PrivateKey key : keys) {
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ObjectOutputStream oos = new ObjectOutputStream(baos);
+			oos.writeObject(key);
+			oos.close();
+			
+			ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+			PrivateKey copy = (PrivateKey)ois.readObject();
+			assertEquals(key.hasFactors(), copy.hasFactors());
+			assertEquals(tmp, e_int.decrypt(copy));
+		}
+	}
+	
+	/*
+	 * Tests that g^m is computed as 1 + m*n, also for negative m
+	 */
+	public void testEncode() {
+		for (int i = 0; i < 20; i++) {
+			BigInteger m = new BigInteger(1100, rng);
+			if (i % 2 == 1)
+				m = m.negate();
+			assertEquals(pub.getG().modPow(m, pub.getNSquared()), pub.encode(m));
+		}
+	}
+	
+	/*
+	 * Tests encryption with precomputed blinding factors
+	 */
+	public void testRandomnessPool() throws BigIntegerClassNotValid {
+		pub.startRandomnessPool(16, 2);
+		try {
+			for (int i = 0; i < 50; i++) {
+				BigInteger tmp = new BigInteger(1024, rng).mod(pub.getN());
+				EncryptedInteger e_int = new EncryptedInteger(tmp, pub);
+				assertEquals(tmp, e_int.decrypt(priv));
+				
+				EncryptedInteger raw = new EncryptedInteger(pub);
+				raw.setCipherVal(pub.encrypt(tmp));
+				assertEquals(tmp, raw.decrypt(priv));
+			}
+		} finally {
+			pub.stopRandomnessPool();
+		}
+	}
+	
+	/*
+	 * Tests that the in-place operations change the receiver and agree with
+	 * the immutable ones
+	 */
+	public void testInPlace() throws BigIntegerClassNotValid, PublicKeysNotEqualException {
+		BigInteger tmp1 = new BigInteger(1024, rng).mod(pub.getN());
+		BigInteger tmp2 = new BigInteger(1024, rng).mod(pub.getN());
+		BigInteger k = new BigInteger(64, rng);
+		EncryptedInteger e_int1 = new EncryptedInteger(tmp1, pub);
+		EncryptedInteger e_int2 = new EncryptedInteger(tmp2, pub);
+		
+		EncryptedInteger sum = e_int1.add(e_int2);
+		EncryptedInteger acc = new EncryptedInteger(e_int1);
+		assertSame(acc, acc.addInPlace(e_int2));
+		assertEquals(sum.getCipherVal(), acc.getCipherVal());
+		assertEquals(tmp1, e_int1.decrypt(priv));
+		
+		acc.addInPlace(k).multiplyInPlace(k);
+		BigInteger expected = tmp1.add(tmp2).add(k).multiply(k).mod(pub.getN());
+		assertEquals(expected, acc.decrypt(priv));
+		assertEquals(expected, sum.add(k).multiply(k).decrypt(priv));
+	}
+	
+	/*
+	 * Tests summing a stream of encrypted integers
+	 */
+	public void testEncryptedSum() throws BigIntegerClassNotValid, PublicKeysNotEqualException {
+		EncryptedSum sum = new EncryptedSum(pub);
+		assertEquals(BigInteger.ZERO, sum.toEncryptedInteger().decrypt(priv));
+		
+		BigInteger expected = BigInteger.ZERO;
+		for (int i = 0; i < 100; i++) {
+			BigInteger tmp = BigInteger.valueOf(rng.nextInt(1000000) - 500000);
+			expected = expected.add(tmp);
+			sum.add(new EncryptedInteger(tmp, pub));
+		}
+		EncryptedSum other = new EncryptedSum(pub);
+		other.add(new EncryptedInteger(BigInteger.TEN, pub).getCipherVal());
+		sum.add(other);
+		expected = expected.add(BigInteger.TEN).mod(pub.getN());
+		
+		assertEquals(101, sum.getCount());
+		assertEquals(expected, sum.toEncryptedInteger().decrypt(priv));
+		
+		PrivateKey otherKey = new PrivateKey(256);
+		try {
+			sum.add(new EncryptedInteger(BigInteger.ONE, otherKey.getPublicKey()));
+			fail();
+		} catch (PublicKeysNotEqualException e) {
+			// expected
+		}
+		try {
+			sum.add(new EncryptedSum(otherKey.getPublicKey()));
+			fail();
+		} catch (PublicKeysNotEqualException e) {
+			// expected
+		}
+		assertEquals(101, sum.getCount());
+		assertEquals(expected, sum.toEncryptedInteger().decrypt(priv));
+		
+		// an empty sum is a random encryption of zero, not the ciphertext 1
+		sum.reset();
+		assertEquals(0, sum.getCount());
+		assertEquals(BigInteger.ZERO, sum.toEncryptedInteger().decrypt(priv));
+		assertFalse(BigInteger.ONE.equals(sum.getCipherVal()));
+		assertFalse(sum.getCipherVal().equals(new EncryptedSum(pub).getCipherVal()));
+	}
 }
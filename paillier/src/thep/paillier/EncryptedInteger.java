@@ -18,13 +18,23 @@ public class EncryptedInteger implements Serializable {
 	private static final long serialVersionUID = 1L;
 	private BigInteger cipherval;
 	private PublicKey	pub;
-	private Random rng;
 	@SuppressWarnings("rawtypes")
 	transient private Constructor rngCons;
 	@SuppressWarnings("rawtypes")
 	transient private Constructor biCons;
 	@SuppressWarnings("rawtypes")
 	private Class bigi;
+	
+	/*
+	 * One generator per thread, shared by all encrypted integers, so copies
+	 * made by the arithmetic methods do not seed a generator each
+	 */
+	private static final ThreadLocal<Random> rng = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new SecureRandom();
+		}
+	};
 
 	/**
 	 * Uses plainval encrypted with pub for the encrypted integer
@@ -67,7 +77,6 @@ public class EncryptedInteger implements Serializable {
 	 * @throws BigIntegerClassNotValid
 	 */
 	public EncryptedInteger(BigInteger plainval, PublicKey pub, Class<? extends BigInteger> c) throws BigIntegerClassNotValid {
-		this.rng = new SecureRandom();
 		this.pub = pub;
 		this.rngCons = this.findRngCons(c);
 		this.biCons = this.findBICons(c);
@@ -75,17 +84,29 @@ public class EncryptedInteger implements Serializable {
 		this.set(plainval);
 	}
 	
+	/*
+	 * Wraps a ciphertext of pub without encrypting anything, used within
+	 * this package
+	 */
+	EncryptedInteger(PublicKey pub, BigInteger cipherval) throws BigIntegerClassNotValid {
+		this.pub = pub;
+		this.rngCons = this.findRngCons(BigInteger.class);
+		this.biCons = this.findBICons(BigInteger.class);
+		this.bigi = BigInteger.class;
+		this.cipherval = cipherval;
+	}
+	
 	/**
 	 * Constructs a copy of the other encrypted integer
 	 * 
 	 * @param other the other encrypted integer
 	 */
 	public EncryptedInteger(EncryptedInteger other) {
-		this.rng = new SecureRandom();
 		this.cipherval = other.getCipherVal();
 		this.pub = other.getPublicKey();
 		this.rngCons = other.rngCons;
 		this.biCons = other.biCons;
+		this.bigi = other.bigi;
 	}
 	
 	/**
@@ -101,26 +122,24 @@ public class EncryptedInteger implements Serializable {
 		BigInteger r = BigInteger.ZERO;
 		BigInteger x;
 		
-		// Generate random blinding factor less than n
-		do {
-			try {
-				r = (BigInteger) this.rngCons.newInstance(this.pub.getBits(), rng);
-			} catch (Exception e) {
-				throw new BigIntegerClassNotValid("Could not construct the given big integer class");
-			}
-		} while(r.compareTo(this.pub.getN()) >= 0);
-		
-		BigInteger g = this.pub.getG();
-		try {
-			if (this.biCons != null)
-				g = (BigInteger) this.biCons.newInstance(this.pub.getG());
-			
-		} catch (Exception e) {
-			throw new BigIntegerClassNotValid("Could not construct");
+		if (this.rngCons.getDeclaringClass() == BigInteger.class) {
+			// Take r and r^n from the public key, possibly precomputed
+			BigInteger[] rn = this.pub.randomness();
+			r = rn[0];
+			x = rn[1];
+		} else {
+			// Generate random blinding factor less than n
+			do {
+				try {
+					r = (BigInteger) this.rngCons.newInstance(this.pub.getBits(), rng.get());
+				} catch (Exception e) {
+					throw new BigIntegerClassNotValid("Could not construct the given big integer class");
+				}
+			} while(r.compareTo(this.pub.getN()) >= 0);
+			x = r.modPow(this.pub.getN(), this.pub.getNSquared());
 		}
-		cipherval = g.modPow(plainval, this.pub.getNSquared());
-		x = r.modPow(this.pub.getN(), this.pub.getNSquared());
 		
+		cipherval = this.pub.encode(plainval);
 		cipherval = cipherval.multiply(x);
 		cipherval = cipherval.mod(this.pub.getNSquared());
 		
@@ -138,16 +157,22 @@ public class EncryptedInteger implements Serializable {
 	 * @throws PublicKeysNotEqualException
 	 */
 	public EncryptedInteger add(EncryptedInteger other) throws PublicKeysNotEqualException {
-		if(!this.pub.equals(other.getPublicKey())) {
+		return new EncryptedInteger(this).addInPlace(other);
+	}
+	
+	/**
+	 * Adds another encrypted integer to this one, changing this one
+	 * 
+	 * @param other the encrypted integer to add
+	 * @return this encrypted integer
+	 * @throws PublicKeysNotEqualException
+	 */
+	public EncryptedInteger addInPlace(EncryptedInteger other) throws PublicKeysNotEqualException {
+		if (!this.pub.equals(other.getPublicKey())) {
 			throw new PublicKeysNotEqualException("Cannot add integers encrypted with different public keys");
 		}
-		EncryptedInteger tmp_int = new EncryptedInteger(this);
-		BigInteger tmp = cipherval.multiply(other.getCipherVal());
-		tmp = tmp.mod(pub.getNSquared());
-		
-		tmp_int.setCipherVal(tmp);
-		
-		return tmp_int;
+		cipherval = cipherval.multiply(other.getCipherVal()).mod(pub.getNSquared());
+		return this;
 	}
 	
 	/**
@@ -158,21 +183,18 @@ public class EncryptedInteger implements Serializable {
 	 * @throws BigIntegerClassNotValid 
 	 */
 	public EncryptedInteger add(BigInteger other) throws BigIntegerClassNotValid {
-		EncryptedInteger tmp_int = new EncryptedInteger(this);
-		BigInteger g = this.pub.getG();
-		try {
-			if (this.biCons != null)
-				g = (BigInteger) this.biCons.newInstance(this.pub.getG());
-
-		} catch (Exception e) {
-			throw new BigIntegerClassNotValid("Could not construct");
-		}
-		BigInteger tmp = cipherval.multiply(g.modPow(other, this.pub.getNSquared()));
-		tmp = tmp.mod(this.pub.getNSquared());
-		
-		tmp_int.setCipherVal(tmp);
-		
-		return tmp_int;
+		return new EncryptedInteger(this).addInPlace(other);
+	}
+	
+	/**
+	 * Adds a constant to the encrypted integer, changing it
+	 * 
+	 * @param other the constant to be added
+	 * @return this encrypted integer
+	 */
+	public EncryptedInteger addInPlace(BigInteger other) {
+		cipherval = cipherval.multiply(this.pub.encode(other)).mod(this.pub.getNSquared());
+		return this;
 	}
 	
 	/**
@@ -183,7 +205,17 @@ public class EncryptedInteger implements Serializable {
 	 * @throws BigIntegerClassNotValid 
 	 */
 	public EncryptedInteger multiply(BigInteger other) throws BigIntegerClassNotValid {
-		EncryptedInteger tmp_int = new EncryptedInteger(this);
+		return new EncryptedInteger(this).multiplyInPlace(other);
+	}
+	
+	/**
+	 * Multiplies the encrypted integer by a constant, changing it
+	 * 
+	 * @param other the constant by which to multiply
+	 * @return this encrypted integer
+	 * @throws BigIntegerClassNotValid 
+	 */
+	public EncryptedInteger multiplyInPlace(BigInteger other) throws BigIntegerClassNotValid {
 		BigInteger c = cipherval;
 		try {
 			if (this.biCons != null)
@@ -192,11 +224,8 @@ public class EncryptedInteger implements Serializable {
 		} catch (Exception e) {
 			throw new BigIntegerClassNotValid("Could not construct");
 		}
-		BigInteger tmp = c.modPow(other, pub.getNSquared());
-		
-		tmp_int.setCipherVal(tmp);
-		
-		return tmp_int;
+		cipherval = c.modPow(other, pub.getNSquared());
+		return this;
 	}
 	
 	/**
@@ -214,9 +243,13 @@ public class EncryptedInteger implements Serializable {
 	 * @throws BigIntegerClassNotValid 
 	 */
 	public void rerandomize() throws BigIntegerClassNotValid {
+		if (this.rngCons.getDeclaringClass() == BigInteger.class) {
+			cipherval = cipherval.multiply(this.pub.randomness()[1]).mod(this.pub.getNSquared());
+			return;
+		}
 		BigInteger r = BigInteger.ZERO;
 		try {
-			r = (BigInteger) this.rngCons.newInstance(this.pub.getBits(), rng);
+			r = (BigInteger) this.rngCons.newInstance(this.pub.getBits(), rng.get());
 		} catch (Exception e) {
 			throw new BigIntegerClassNotValid("Could not construct the given big integer class");
 		}
@@ -234,7 +267,6 @@ public class EncryptedInteger implements Serializable {
 	 */
 	public BigInteger decrypt(PrivateKey priv) throws BigIntegerClassNotValid {
 		// Decrypt the encrypted value
-		BigInteger plainval;
 		BigInteger c = cipherval;
 		try {
 			if (this.biCons != null)
@@ -244,13 +276,7 @@ public class EncryptedInteger implements Serializable {
 			throw new BigIntegerClassNotValid("Could not construct");
 		}
 		
-		plainval = c.modPow(priv.getLambda(), priv.getPublicKey().getNSquared());
-		plainval = plainval.subtract(BigInteger.ONE);
-		plainval = plainval.divide(priv.getPublicKey().getN());
-		plainval = plainval.multiply(priv.getMu());
-		plainval = plainval.mod(priv.getPublicKey().getN());
-		
-		return plainval;
+		return priv.decrypt(c);
 	}
 	
 	/**
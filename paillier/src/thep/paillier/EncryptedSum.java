@@ -0,0 +1,102 @@
+package thep.paillier;
+
+import java.math.BigInteger;
+
+import thep.paillier.exceptions.BigIntegerClassNotValid;
+import thep.paillier.exceptions.PublicKeysNotEqualException;
+
+/**
+ * A running sum of encrypted integers. Adding a ciphertext costs one
+ * multiplication and one reduction mod n^2 and allocates nothing besides
+ * the result, which makes it suitable for summing long streams such as the
+ * values of a reducer.
+ */
+public class EncryptedSum {
+	private final PublicKey pub;
+	private BigInteger cipherval;
+	private long count;
+	
+	/**
+	 * Creates a sum of no values, a fresh encryption of zero
+	 * 
+	 * @param pub the public key of the values to add
+	 */
+	public EncryptedSum(PublicKey pub) {
+		this.pub = pub;
+		reset();
+	}
+	
+	/**
+	 * Adds an encrypted integer to the sum
+	 * 
+	 * @param other the encrypted integer to add
+	 * @throws PublicKeysNotEqualException
+	 */
+	public void add(EncryptedInteger other) throws PublicKeysNotEqualException {
+		if (!this.pub.equals(other.getPublicKey())) {
+			throw new PublicKeysNotEqualException("Cannot add integers encrypted with different public keys");
+		}
+		add(other.getCipherVal());
+	}
+	
+	/**
+	 * Adds a ciphertext encrypted with the public key of the sum
+	 * 
+	 * @param ciphertext the ciphertext to add
+	 */
+	public void add(BigInteger ciphertext) {
+		cipherval = cipherval.multiply(ciphertext).mod(pub.getNSquared());
+		count++;
+	}
+	
+	/**
+	 * Adds all values of another sum with the same public key
+	 * 
+	 * @param other the sum to add
+	 * @throws PublicKeysNotEqualException
+	 */
+	public void add(EncryptedSum other) throws PublicKeysNotEqualException {
+		if (!this.pub.equals(other.pub)) {
+			throw new PublicKeysNotEqualException("Cannot add sums encrypted with different public keys");
+		}
+		cipherval = cipherval.multiply(other.cipherval).mod(pub.getNSquared());
+		count += other.count;
+	}
+	
+	/**
+	 * Empties the sum, starting over from a fresh encryption of zero
+	 */
+	public void reset() {
+		// not 1 = g^0 * 1^n: a sum of no values must not be recognizable
+		cipherval = pub.encrypt(BigInteger.ZERO);
+		count = 0;
+	}
+	
+	/**
+	 * Returns the ciphertext of the sum
+	 * 
+	 * @return the ciphertext of the sum
+	 */
+	public BigInteger getCipherVal() {
+		return cipherval;
+	}
+	
+	/**
+	 * Returns the number of values added
+	 * 
+	 * @return the number of values added
+	 */
+	public long getCount() {
+		return count;
+	}
+	
+	/**
+	 * Returns the sum as an encrypted integer
+	 * 
+	 * @return a new encrypted integer holding the sum
+	 * @throws BigIntegerClassNotValid
+	 */
+	public EncryptedInteger toEncryptedInteger() throws BigIntegerClassNotValid {
+		return new EncryptedInteger(pub, cipherval);
+	}
+}
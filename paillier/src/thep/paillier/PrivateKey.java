@@ -16,6 +16,19 @@ public class PrivateKey implements Serializable {
 	private BigInteger lambda;
 	private BigInteger mu;
 	
+	/*
+	 * The prime factors of n and the constants for decrypting mod p^2 and
+	 * q^2 (Chinese Remainder Theorem). They are null for keys built from
+	 * lambda and mu only, and for keys serialized before they were added.
+	 */
+	private BigInteger p;
+	private BigInteger q;
+	private BigInteger pSquared;
+	private BigInteger qSquared;
+	private BigInteger hp;
+	private BigInteger hq;
+	private BigInteger pInverse; // p^-1 mod q
+	
 	public PrivateKey(BigInteger lambda, BigInteger mu, PublicKey pub) {
 		this.lambda = lambda;
 		this.mu = mu;
@@ -45,6 +58,85 @@ public class PrivateKey implements Serializable {
 		// Set values
 		this.pub = new PublicKey(bits, n);
 		this.mu = this.lambda.modInverse(this.pub.getN());
+		setFactors(p.add(BigInteger.ONE), q.add(BigInteger.ONE));
+	}
+	
+	/**
+	 * Returns a private key built from the prime factors of the public
+	 * modulus. The key decrypts with the Chinese Remainder Theorem.
+	 * 
+	 * @param p the first prime factor
+	 * @param q the second prime factor
+	 * @param pub the public key, whose modulus must be p * q
+	 * @return the private key
+	 */
+	public static PrivateKey fromFactors(BigInteger p, BigInteger q, PublicKey pub) {
+		if (!p.multiply(q).equals(pub.getN()))
+			throw new IllegalArgumentException("p * q is not the public modulus");
+		BigInteger lambda = p.subtract(BigInteger.ONE).multiply(q.subtract(BigInteger.ONE));
+		PrivateKey priv = new PrivateKey(lambda, lambda.modInverse(pub.getN()), pub);
+		priv.setFactors(p, q);
+		return priv;
+	}
+	
+	/*
+	 * Precomputes hp = L_p(g^(p-1) mod p^2)^-1 mod p, the same for q, and
+	 * p^-1 mod q. Keys with p = q are left without them.
+	 */
+	private void setFactors(BigInteger p, BigInteger q) {
+		if (p.equals(q))
+			return;
+		this.p = p;
+		this.q = q;
+		this.pSquared = p.multiply(p);
+		this.qSquared = q.multiply(q);
+		this.hp = h(p, pSquared);
+		this.hq = h(q, qSquared);
+		this.pInverse = p.modInverse(q);
+	}
+	
+	private BigInteger h(BigInteger prime, BigInteger primeSquared) {
+		BigInteger x = pub.getG().modPow(prime.subtract(BigInteger.ONE), primeSquared);
+		return x.subtract(BigInteger.ONE).divide(prime).modInverse(prime);
+	}
+	
+	/**
+	 * Returns whether this key keeps the prime factors of n, so decryption
+	 * can work mod p^2 and q^2
+	 * 
+	 * @return true if the fast decryption path is available
+	 */
+	public boolean hasFactors() {
+		return hp != null;
+	}
+	
+	/**
+	 * Decrypts a ciphertext of the associated public key. Uses the prime
+	 * factors when the key has them, see hasFactors(). The exponentiations
+	 * are done by c, so a BigInteger subclass keeps its own modPow. The key
+	 * is not modified, so this may be called from several threads.
+	 * 
+	 * @param c the ciphertext
+	 * @return the plaintext, between 0 and n-1
+	 */
+	public BigInteger decrypt(BigInteger c) {
+		if (hasFactors())
+			return decryptCRT(c);
+		
+		BigInteger plainval = c.modPow(lambda, pub.getNSquared());
+		plainval = plainval.subtract(BigInteger.ONE);
+		plainval = plainval.divide(pub.getN());
+		plainval = plainval.multiply(mu);
+		return plainval.mod(pub.getN());
+	}
+	
+	private BigInteger decryptCRT(BigInteger c) {
+		BigInteger mp = c.modPow(p.subtract(BigInteger.ONE), pSquared)
+				.subtract(BigInteger.ONE).divide(p).multiply(hp).mod(p);
+		BigInteger mq = c.modPow(q.subtract(BigInteger.ONE), qSquared)
+				.subtract(BigInteger.ONE).divide(q).multiply(hq).mod(q);
+		// m = mp + p * ((mq - mp) * p^-1 mod q)
+		return mq.subtract(mp).multiply(pInverse).mod(q).multiply(p).add(mp);
 	}
 	
 	/**
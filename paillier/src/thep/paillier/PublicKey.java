@@ -12,6 +12,7 @@ public class PublicKey implements Serializable {
 	private BigInteger n;
 	private BigInteger n_squared;
 	private BigInteger g; // = n+1
+	private transient volatile RandomnessPool pool;
 	
 	/**
 	 * Constructs a public key with the given modulus. Precomputes a few values
@@ -67,4 +68,74 @@ public class PublicKey implements Serializable {
 	public BigInteger getNSquared() {
 		return n_squared;
 	}
+	
+	/**
+	 * Returns g^m mod n^2. Since g = n+1 this is 1 + m*n mod n^2, which needs
+	 * no exponentiation.
+	 * 
+	 * @param m the plaintext, may be negative
+	 * @return g^m mod n^2
+	 */
+	public BigInteger encode(BigInteger m) {
+		return m.mod(n).multiply(n).add(BigInteger.ONE);
+	}
+	
+	/**
+	 * Returns a random r with 0 < r < n together with r^n mod n^2, taken from
+	 * the randomness pool if one is running and has a value ready, otherwise
+	 * computed on the calling thread.
+	 * 
+	 * @return {r, r^n mod n^2}
+	 */
+	public BigInteger[] randomness() {
+		RandomnessPool p = pool;
+		if (p != null) {
+			BigInteger[] rn = p.poll();
+			if (rn != null)
+				return rn;
+		}
+		return RandomnessPool.generate(this);
+	}
+	
+	/**
+	 * Encrypts m, returning the ciphertext g^m * r^n mod n^2
+	 * 
+	 * @param m the plaintext
+	 * @return the ciphertext
+	 */
+	public BigInteger encrypt(BigInteger m) {
+		return encode(m).multiply(randomness()[1]).mod(n_squared);
+	}
+	
+	/**
+	 * Starts background threads that precompute blinding factors for this
+	 * key, replacing a running pool
+	 * 
+	 * @param size the number of factors kept ready
+	 * @param threads the number of threads computing them
+	 */
+	public synchronized void startRandomnessPool(int size, int threads) {
+		stopRandomnessPool();
+		pool = new RandomnessPool(this, size, threads);
+	}
+	
+	/**
+	 * Returns the number of precomputed blinding factors ready for use
+	 * 
+	 * @return the factors in the pool, 0 if no pool is running
+	 */
+	public int randomnessAvailable() {
+		RandomnessPool p = pool;
+		return p == null ? 0 : p.size();
+	}
+	
+	/**
+	 * Stops the pool started by startRandomnessPool, if any
+	 */
+	public synchronized void stopRandomnessPool() {
+		if (pool != null) {
+			pool.stop();
+			pool = null;
+		}
+	}
 }
@@ -0,0 +1,88 @@
+package thep.paillier;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * A bounded pool of blinding factors {r, r^n mod n^2} filled by background
+ * threads. The factors do not depend on the plaintext, so computing them
+ * ahead of time takes the expensive exponentiation off the encryption path.
+ */
+class RandomnessPool {
+	private final PublicKey pub;
+	private final BlockingQueue<BigInteger[]> pool;
+	private final Thread[] workers;
+	private volatile boolean stopped = false;
+
+	/*
+	 * Used for factors computed on the calling thread, one per thread so
+	 * encrypting threads do not contend for a generator
+	 */
+	private static final ThreadLocal<Random> rng = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new SecureRandom();
+		}
+	};
+
+	RandomnessPool(final PublicKey pub, int size, int threads) {
+		this.pub = pub;
+		this.pool = new ArrayBlockingQueue<BigInteger[]>(size);
+		this.workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Thread(new Runnable() {
+				public void run() {
+					fill();
+				}
+			}, "paillier-randomness-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	private void fill() {
+		Random workerRng = new SecureRandom();
+		try {
+			while (!stopped)
+				pool.put(generate(pub, workerRng));
+		} catch (InterruptedException e) {
+			// stopped
+		}
+	}
+
+	/*
+	 * Returns a precomputed factor, or null if the workers are behind
+	 */
+	BigInteger[] poll() {
+		return pool.poll();
+	}
+
+	int size() {
+		return pool.size();
+	}
+
+	void stop() {
+		stopped = true;
+		for (Thread t : workers)
+			t.interrupt();
+		pool.clear();
+	}
+
+	/*
+	 * Returns {r, r^n mod n^2} for a random r with 0 < r < n
+	 */
+	static BigInteger[] generate(PublicKey pub, Random rng) {
+		BigInteger r;
+		do {
+			r = new BigInteger(pub.getBits(), rng);
+		} while (r.signum() == 0 || r.compareTo(pub.getN()) >= 0);
+		return new BigInteger[] { r, r.modPow(pub.getN(), pub.getNSquared()) };
+	}
+
+	static BigInteger[] generate(PublicKey pub) {
+		return generate(pub, rng.get());
+	}
+}
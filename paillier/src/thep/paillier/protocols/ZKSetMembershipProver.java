@@ -92,27 +92,28 @@ public class ZKSetMembershipProver {
 		BigInteger N_squared = this.pub.getNSquared();
 		BigInteger c = cipherVal.getCipherVal();
 		BigInteger c_inverse = c.modInverse(N_squared);
-		BigInteger g = this.pub.getG();
 		int bits = this.pub.getBits();
 		
 		if (msgIndex >= setLen || msgIndex < 0) { // check the input data
 			throw new ZKSetMembershipException("Index out of Range");
 		}
 		
-		// if necessary create values with given class
-		if (this.biCons != null) {
-			try {
-				g = (BigInteger) this.biCons.newInstance(g);
-			} catch (Exception e) {
-				throw new BigIntegerClassNotValid("Could not construct");
-			}
-		}
+		// With plain big integers, rho, v and their n-th powers come from
+		// the public key, possibly precomputed
+		boolean plain = this.rngCons.getDeclaringClass() == BigInteger.class;
+		BigInteger[] nthPowers = new BigInteger[setLen];
 		
 		// generate a random rho
-		this.rho = new BigInteger(bits, this.rng);
-		// rho needs to be less than N, but not zero
-		while (rho.compareTo(N) > 0 || rho.compareTo(BigInteger.ZERO) == 0) {
-			rho = new BigInteger(bits, this.rng);
+		if (plain) {
+			BigInteger[] rn = this.pub.randomness();
+			this.rho = rn[0];
+			nthPowers[msgIndex] = rn[1];
+		} else {
+			this.rho = new BigInteger(bits, this.rng);
+			// rho needs to be less than N, but not zero
+			while (rho.compareTo(N) > 0 || rho.compareTo(BigInteger.ZERO) == 0) {
+				rho = new BigInteger(bits, this.rng);
+			}
 		}
 		
 		this.eVals = new BigInteger[setLen];
@@ -127,6 +128,14 @@ public class ZKSetMembershipProver {
 		
 		this.vVals = new BigInteger[setLen];
 		for (int i=0; i<setLen; i++) {
+			if (plain) {
+				if (i != msgIndex) {
+					BigInteger[] rn = this.pub.randomness();
+					this.vVals[i] = rn[0];
+					nthPowers[i] = rn[1];
+				}
+				continue;
+			}
 			// generate random v value
 			try {
 				this.vVals[i] = (BigInteger) this.rngCons.newInstance(bits, this.rng);
@@ -143,6 +152,11 @@ public class ZKSetMembershipProver {
 		// calculate the commitments
 		for (int i=0; i<setLen; i++) {
 			if (i == msgIndex) {
+				if (nthPowers[i] != null) {
+					commitments[i] = nthPowers[i];
+					continue;
+				}
+				
 				BigInteger tmpRho = rho;
 				
 				if (this.biCons != null)
@@ -155,8 +169,8 @@ public class ZKSetMembershipProver {
 				commitments[i] = tmpRho.modPow(N, N_squared);
 			}
 			else {
-				BigInteger tmp1 = vVals[i].modPow(N, N_squared);
-				BigInteger tmp2 = g.modPow(theSet[i], N_squared);
+				BigInteger tmp1 = nthPowers[i] != null ? nthPowers[i] : vVals[i].modPow(N, N_squared);
+				BigInteger tmp2 = this.pub.encode(theSet[i]);
 				
 				tmp2 = tmp2.multiply(c_inverse);
 				
@@ -114,12 +114,10 @@ public class ZKSetMembershipVerifier {
 		
 		for (int i=0; i<eVals.length; i++) {
 			BigInteger tmpV = vVals[i];
-			BigInteger g = this.pub.getG();
 			
 			if (this.biCons != null) {
 				try {
 					tmpV = (BigInteger) this.biCons.newInstance(tmpV);
-					g = (BigInteger) this.biCons.newInstance(g);
 				}
 				catch (Exception e) {
 					throw new BigIntegerClassNotValid("Could not construct");
@@ -127,7 +125,7 @@ public class ZKSetMembershipVerifier {
 			}
 			
 			BigInteger lhs = tmpV.modPow(this.pub.getN(), N_Squared);
-			BigInteger rhs = g.modPow(this.theSet[i], N_Squared);
+			BigInteger rhs = this.pub.encode(this.theSet[i]);
 			rhs = rhs.modInverse(N_Squared);
 			rhs = rhs.multiply(this.cipherVal.getCipherVal()).mod(N_Squared);
 			
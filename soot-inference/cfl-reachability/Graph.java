@@ -110,14 +110,14 @@ class Side {
 public class Graph {
 
     private Hashtable<Long,Node> nodes = new Hashtable<Long,Node>(); // Node id -> Node
-    private Hashtable<Long,Edge> edges = new Hashtable<Long,Edge>(); // Edge id -> Edge
-    private Hashtable<Long,HashSet<Edge>> adjLists = new Hashtable<Long,HashSet<Edge>>(); 
-    // Source node id -> HashSet of Edges with source node id
+    private CompactGraph compact = new CompactGraph(this); // edges and bfs states, in primitive arrays
 
 
     private HashSet<String> reachableMethods = new HashSet<String>(); // the reachable methods
     private boolean callGraph = true; // call graph found?
 
+    private boolean interactive = true; // ask before searching for more paths
+
     void setCallGraph(boolean callGraph) {
 	this.callGraph = callGraph;
     }
@@ -166,6 +166,12 @@ public class Graph {
 
 	    node.sflowType = getSubstring(side, '{', '}');
 	    node.javaType = getJavaType(side); 
+	    // substrings of the constraint lines; most of them repeat across nodes
+	    node.name = pooled(node.name);
+	    node.enclClass = pooled(node.enclClass);
+	    node.enclMethod = pooled(node.enclMethod);
+	    node.sflowType = pooled(node.sflowType);
+	    node.javaType = pooled(node.javaType);
 	    // System.out.print("=========> The new node: ");
 	    // node.printNode();
 
@@ -252,9 +258,7 @@ public class Graph {
 	// we can avoid recording the edge
 
 	// System.out.print("------->Registering Edge: "); edge.printEdge();
-	registerEdgeIntoAdjList(s,edge);
-
-	edges.put(new Long(edgeId),edge);
+	compact.addEdge(edge);
 	lastRegisteredEdge = edge;
     } 
    
@@ -283,9 +287,9 @@ public class Graph {
 	long callConstraint = Long.parseLong(causedBy.substring(1,firstComma));
 	long liblib = Long.parseLong(causedBy.substring(firstComma+1,secondComma));
 	long retConstraint = Long.parseLong(causedBy.substring(secondComma+1,causedBy.length()-1));
-	Edge callEdge = edges.get(new Long(callConstraint));
-	Edge liblibEdge = edges.get(new Long(liblib));
-	Edge retEdge = edges.get(new Long(retConstraint));
+	Edge callEdge = compact.getEdge(callConstraint);
+	Edge liblibEdge = compact.getEdge(liblib);
+	Edge retEdge = compact.getEdge(retConstraint);
 	if ((callEdge == null) || (liblibEdge == null) || (retEdge == null)) return;
 	if (!liblibEdge.info.equals("lib-lib")) return;
 	if ((callEdge.info.equals("call") || callEdge.info.equals("call-super")) && 
@@ -297,11 +301,12 @@ public class Graph {
 	}
     }
 
-    void registerEdgeIntoAdjList(long s, Edge e) {
-	Long source = new Long(s);
-	HashSet<Edge> set = adjLists.get(source);
-	if (set == null) { set = new HashSet<Edge>(); adjLists.put(source,set); }
-	set.add(e);
+    private HashMap<String,String> strings = new HashMap<String,String>(); // one copy of each node string
+
+    String pooled(String str) {
+	String s = strings.get(str);
+	if (s == null) { s = str; strings.put(s,s); }
+	return s;
     }
 
     String getSubstring(String str, char from, char to) {
@@ -322,96 +327,91 @@ public class Graph {
 
     void bfs(Node source) {
 	
-	HashSet<ExtendedVertex> set = new HashSet<ExtendedVertex>();
-	LinkedList<ExtendedVertex> queue = new LinkedList<ExtendedVertex>();
-	ExtendedVertex s = new ExtendedVertex(source.id,new ArrayList<Long>(),false,new ArrayList<Long>(),false);
-	s.depth = 0;
-	s.printVertex(0);
-	s.parent = null;
-	set.add(s); queue.add(s);
-	HashSet<Node> alreadyIn = new HashSet<Node>();
-
-	while (queue.size() > 0) {
-	    ExtendedVertex v = queue.remove();
-	    // System.out.print("\nProcessing dequed node at detph: "+v.depth+" "); nodes.get(new Long(v.id)).printNode();
-	    //v.printVertex(0);
-	    HashSet<Edge> edges = adjLists.get(new Long(v.id));
-	    if (edges == null) continue;
-
-	    if (v.depth > 100) continue;
+	CompactGraph cg = compact;
+	int s = cg.start(source.id);
+	cg.printState(s,0);
+	BitSet alreadyIn = new BitSet();
+	int pathcount = 0;
+
+	// states are numbered in the order they are queued
+	for (int v = 0; v < cg.stateCount; v++) {
+	    int node = cg.stateNode[v];
+	    // System.out.print("\nProcessing dequed node at detph: "+cg.stateDepth[v]+" "); getNode(cg.nodeIds[node]).printNode();
+	    if (cg.outBegin(node) == cg.outEnd(node)) continue;
+
+	    if (cg.stateDepth[v] > 100) continue;
 
 	    //Checks if v is in a reachable method
-	    Node tmp = nodes.get(new Long(v.id));	    
-	    if (callGraph && tmp.kind.equals("local") && !reachableMethods.contains(tmp.enclClass+":"+tmp.enclMethod)) {
+	    if (cg.hasFlag(node,CompactGraph.UNREACHABLE)) {
+		Node tmp = getNode(cg.nodeIds[node]);
 		System.out.println(tmp.enclClass+":"+tmp.enclMethod+" is not reachable!");
 		tmp.printNode();
 		continue;
 	    }
 
 
-	    for (Iterator<Edge> it = edges.iterator(); it.hasNext();) {
-		Edge edge = it.next(); // current edge to examine.
-		// System.out.print("\n Target of edge: "); nodes.get(new Long(edge.target)).printNode();
+	    for (int i = cg.outBegin(node); i < cg.outEnd(node); i++) {
+		int edge = cg.out[i]; // current edge to examine.
+		int target = cg.edgeTarget[edge];
 
 		// ANA: A local edge that returns an android.* result leads almost always to an FP:
-		if (edge.info.contains("local android.") && !edge.info.contains("local android.net.Uri")) continue;
-
-		if (getNode(edge.target).isSink()) {
-		    if (!alreadyIn.contains(getNode(edge.target))) {
-			alreadyIn.add(getNode(edge.target));
-			System.out.print("\n\nFound a good path to sink at depth "+(v.depth+1)+" ");
-			getNode(edge.target).printNode();
+		if (cg.isSkipped(edge)) continue;
+
+		if (cg.hasFlag(target,CompactGraph.SINK)) {
+		    if (!alreadyIn.get(target)) {
+			alreadyIn.set(target);
+			pathcount++;
+			System.out.print("\n\nFound a good path to sink at depth "+(cg.stateDepth[v]+1)+" ");
+			getNode(cg.nodeIds[target]).printNode();
 			retrievePath(v);
 			
+			if (interactive) {
 			try {
 			    BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
 			    String command;
 			    System.out.println("\nPress Enter to search for more paths, or type \"no\" to exit"); command = in.readLine();
 			    if (command.equals("no")) {
-				queue = new LinkedList<ExtendedVertex>(); // empties the queue so outer loop exits
+				cg.stateCount = v+1; // empties the queue so outer loop exits
 				break;
 			    }
 			}
 			catch (IOException e) { }
+			}
 
 
 		    }
                     continue;
 		}
-		else if (getNode(edge.target).kind.equals("lib") ||
-                         getNode(edge.target).javaType.equals("android.content.Context") ||
-			 getNode(edge.target).javaType.equals("android.app.Activity") ||
-			 getNode(edge.target).javaType.equals("android.app.Application")) continue;
+		else if (cg.hasFlag(target,CompactGraph.STOP)) continue;
 			  
-		ExtendedVertex t = v.newExtendedVertex(edge);
-		if (t == null) { /* System.out.print("t is null for edge "); edge.printEdge(); */  continue; }
-
-		if (!set.contains(t)) {
-		    set.add(t);
-		    queue.add(t);
-		    // System.out.print("\n----Added node to set and queue at depth: "+t.depth+" "); nodes.get(new Long(t.id)).printNode();
-		    // t.printVertex(0);
-		}
-		else {
-		    /*System.out.print("target already in for edge "); edge.printEdge(); */
-		}
-
+		cg.step(v,edge); // queues the target state unless it is visited
 	    }
 	}
 	System.out.println("\n BFS is DONE!");
+	if (!interactive) System.out.println("\n number of paths found:"+pathcount+"\n");
     }
 
-    void retrievePath(ExtendedVertex v) {
-	ArrayList<ExtendedVertex> list = new ArrayList<ExtendedVertex>();
-	ExtendedVertex current = v;
+    // Per-node checks of bfs, cached by CompactGraph for all sources of a batch run
+    boolean isUnreachable(Node n) {
+	return callGraph && n.kind.equals("local") && !reachableMethods.contains(n.enclClass+":"+n.enclMethod);
+    }
+
+    boolean isStop(Node n) {
+	return n.kind.equals("lib") ||
+	    n.javaType.equals("android.content.Context") ||
+	    n.javaType.equals("android.app.Activity") ||
+	    n.javaType.equals("android.app.Application");
+    }
+
+    void retrievePath(int v) {
+	int current = v;
 	int currentDepth = 0;
-        while (current != null) {
+        while (current >= 0) {
             for(int i=0; i<currentDepth; i++) System.out.print(" ");
-	    getNode(current.id).printNode();
+	    getNode(compact.nodeIds[compact.stateNode[current]]).printNode();
 	    for(int i=0; i<currentDepth; i++) System.out.print(" ");
-	    //list.add(current);
-	    current.printVertex(currentDepth);
-	    current = current.parent;
+	    compact.printState(current,currentDepth);
+	    current = compact.stateParent[current];
 	    //currentDepth += 2;
         }
     }
@@ -428,16 +428,41 @@ public class Graph {
 
 	System.out.println("Reachable Methods LOADED");
 
+	if ((arg.length > 1) && arg[1].equals("-batch")) {
+	    // Graph file -batch id1 id2 ...: search all paths of each id
+	    // without asking, the graph is loaded only once
+	    g.interactive = false;
+	    for (int i = 2; i < arg.length; i++) {
+		System.out.println("\tSource:"+arg[i]);
+		try {
+		    Node source = g.nodes.get(new Long(Long.parseLong(arg[i])));
+		    if (source == null) System.out.println("\n number of paths found:0\n");
+		    else g.bfs(source);
+		}
+		catch (NumberFormatException e) {
+		    // still one count per source, callers pair them up by position
+		    System.out.println("ERROR: not a node id: "+arg[i]);
+		    System.out.println("\n number of paths found:0\n");
+		}
+	    }
+	    return;
+	}
+
 	BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
 	String s;
 
 	while (true) {
 	    System.out.print("\nEnter the Rhs_id or press ^C to exit: ");
             s = in.readLine();
+	    if (s == null) break; // end of input
 	    try {		
-		g.bfs(g.nodes.get(new Long(Long.parseLong(s))));
+		Node source = g.nodes.get(new Long(Long.parseLong(s)));
+		if (source == null) System.out.println("No node with id "+s);
+		else g.bfs(source);
+	    }
+	    catch (NumberFormatException e) {
+		System.out.println("Not a node id: "+s);
 	    }
-	    catch (NumberFormatException e) { }
 	}
 
 	// System.out.println("# edges: "+g.edges.size());
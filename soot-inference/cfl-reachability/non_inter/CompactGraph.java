@@ -0,0 +1,462 @@
+import java.util.*;
+
+/* CompactGraph keeps the edges of a Graph and the states of its bfs in
+   primitive arrays instead of Edge and HashSet objects.
+
+   Nodes are numbered in the order their first edge is registered. Edges
+   are columns indexed by registration order; freeze() sorts them by source
+   node into CSR form: the out-edges of node n are the edge indices
+   out[outStart[n]] .. out[outStart[n+1]-1]. Like the HashSet adjacency it
+   replaces, the CSR form keeps only the first of several edges with the
+   same source, target, call, field and info; getEdge still finds each of
+   them by id. Edge infos are interned into label ids with their kind
+   precomputed.
+
+   A bfs state is a node, its parent state, its depth, the info of the edge
+   it was reached by, and its call and field stacks. Stacks are cells of a
+   shared linked list, so pushing or popping never copies. States are
+   numbered in the order they are queued, so the bfs queue is just a cursor
+   over the state numbers and path retrieval follows parent numbers.
+*/
+
+class CompactGraph {
+
+    /* Edge info kinds, in the order step tests them */
+    static final byte NONE = 0;
+    static final byte CALL = 1;
+    static final byte CALL_SUPER = 2;
+    static final byte WRITE = 3;
+    static final byte RETURN = 4;
+    static final byte RETURN_SUPER = 5;
+    static final byte READ = 6;
+    static final byte TO_CLASS = 7;
+    static final byte FROM_CLASS = 8;
+    static final byte FROM_STATIC = 9;
+    static final byte LOCAL = 10; // any info containing "local"
+    static final byte TO_STATIC = 11;
+    static final byte SUBTYPE_MINUS = 12;
+    static final byte SUBTYPE_PLUS = 13;
+
+    /* Node flags, computed on first use */
+    static final byte KNOWN = 1;
+    static final byte SINK = 2;
+    static final byte STOP = 4; // bfs does not continue past the node
+    static final byte UNREACHABLE = 8;
+
+    private Graph g;
+
+    // nodes
+    private LongIntMap nodeIndex = new LongIntMap();
+    long[] nodeIds = new long[16];
+    private byte[] nodeFlags = new byte[16];
+    int nodeCount;
+
+    // edges
+    private LongIntMap edgeIndex = new LongIntMap();
+    private long[] edgeIds = new long[16];
+    private int[] edgeSource = new int[16];
+    int[] edgeTarget = new int[16];
+    private long[] edgeCall = new long[16];
+    private long[] edgeField = new long[16];
+    private int[] edgeInfo = new int[16];
+    private int edgeCount;
+
+    // edge infos
+    private HashMap<String,Integer> infoIds = new HashMap<String,Integer>();
+    private ArrayList<String> infos = new ArrayList<String>();
+    private byte[] infoKinds = new byte[16];
+    private boolean[] infoSkipped = new boolean[16];
+
+    // CSR, built by freeze()
+    private int[] outStart;
+    int[] out;
+
+    // bfs states
+    int[] stateNode = new int[16];
+    int[] stateParent = new int[16];
+    int[] stateDepth = new int[16];
+    private int[] stateInfo = new int[16]; // -1 for the source
+    private int[] stateCalls = new int[16]; // top cell, -1 if empty
+    private int[] stateFields = new int[16];
+    int stateCount;
+
+    // stack cells
+    private long[] cellLabel = new long[16];
+    private int[] cellNext = new int[16];
+    private int cellCount;
+
+    // visited states by (node, stack tops), open addressing, -1 if free
+    private int[] visited = new int[64];
+    private int visitedCount;
+
+    CompactGraph(Graph g) {
+	this.g = g;
+    }
+
+    int nodeIndexOf(long id) {
+	int n = nodeIndex.get(id);
+	if (n >= 0) return n;
+	n = nodeCount++;
+	if (n == nodeIds.length) {
+	    nodeIds = Arrays.copyOf(nodeIds,n*2);
+	    nodeFlags = Arrays.copyOf(nodeFlags,n*2);
+	}
+	nodeIds[n] = id;
+	nodeIndex.put(id,n);
+	return n;
+    }
+
+    void addEdge(Edge e) {
+	int i = edgeCount++;
+	if (i == edgeIds.length) {
+	    int size = i*2;
+	    edgeIds = Arrays.copyOf(edgeIds,size);
+	    edgeSource = Arrays.copyOf(edgeSource,size);
+	    edgeTarget = Arrays.copyOf(edgeTarget,size);
+	    edgeCall = Arrays.copyOf(edgeCall,size);
+	    edgeField = Arrays.copyOf(edgeField,size);
+	    edgeInfo = Arrays.copyOf(edgeInfo,size);
+	}
+	edgeIds[i] = e.id;
+	edgeSource[i] = nodeIndexOf(e.source);
+	edgeTarget[i] = nodeIndexOf(e.target);
+	edgeCall[i] = e.call;
+	edgeField[i] = e.field;
+	edgeInfo[i] = infoId(e.info);
+	edgeIndex.put(e.id,i);
+	outStart = null;
+    }
+
+    /* The edge registered with id, null if none */
+    Edge getEdge(long id) {
+	int i = edgeIndex.get(id);
+	if (i < 0) return null;
+	return new Edge(edgeIds[i],nodeIds[edgeSource[i]],nodeIds[edgeTarget[i]],edgeCall[i],edgeField[i],infos.get(edgeInfo[i]));
+    }
+
+    int edgeCount() {
+	return edgeCount;
+    }
+
+    private int infoId(String info) {
+	Integer id = infoIds.get(info);
+	if (id != null) return id.intValue();
+	int i = infos.size();
+	infos.add(info);
+	infoIds.put(info,i);
+	if (i == infoKinds.length) {
+	    infoKinds = Arrays.copyOf(infoKinds,i*2);
+	    infoSkipped = Arrays.copyOf(infoSkipped,i*2);
+	}
+	infoKinds[i] = kindOf(info);
+	// ANA: A local edge that returns an android.* result leads almost always to an FP:
+	infoSkipped[i] = info.contains("local android.") && !info.contains("local android.net.Uri");
+	return i;
+    }
+
+    private static byte kindOf(String info) {
+	if (info.equals("call")) return CALL;
+	if (info.equals("call-super")) return CALL_SUPER;
+	if (info.equals("write")) return WRITE;
+	if (info.equals("return")) return RETURN;
+	if (info.equals("return-super")) return RETURN_SUPER;
+	if (info.equals("read")) return READ;
+	if (info.equals("toClass")) return TO_CLASS;
+	if (info.equals("fromClass")) return FROM_CLASS;
+	if (info.equals("fromStatic")) return FROM_STATIC;
+	if (info.indexOf("local") > -1) return LOCAL;
+	if (info.equals("toStatic")) return TO_STATIC;
+	if (info.equals("subtype-minus")) return SUBTYPE_MINUS;
+	if (info.equals("subtype-plus")) return SUBTYPE_PLUS;
+	return NONE;
+    }
+
+    /* Sort the edges by source node, leaving out duplicates; called before
+       the first bfs */
+    void freeze() {
+	if (outStart != null) return;
+	boolean[] dup = duplicates();
+	outStart = new int[nodeCount+1];
+	int kept = 0;
+	for (int i = 0; i < edgeCount; i++)
+	    if (!dup[i]) { outStart[edgeSource[i]+1]++; kept++; }
+	for (int n = 0; n < nodeCount; n++) outStart[n+1] += outStart[n];
+	out = new int[kept];
+	int[] next = Arrays.copyOf(outStart,nodeCount);
+	for (int i = 0; i < edgeCount; i++)
+	    if (!dup[i]) out[next[edgeSource[i]]++] = i;
+    }
+
+    /* Marks the edges equal to an earlier edge, as Edge.equals compares
+       them; open addressing over edge indices, -1 if free */
+    private boolean[] duplicates() {
+	boolean[] dup = new boolean[edgeCount];
+	int size = 16;
+	while (size < edgeCount*2) size *= 2;
+	int[] table = new int[size];
+	Arrays.fill(table,-1);
+	int mask = size-1;
+	for (int e = 0; e < edgeCount; e++) {
+	    long h = edgeSource[e];
+	    h = h*31 + edgeTarget[e];
+	    h = h*31 + edgeCall[e];
+	    h = h*31 + edgeField[e];
+	    h = h*31 + edgeInfo[e];
+	    int i = (int) (mix(h) & mask);
+	    while ((table[i] >= 0) && !sameEdge(table[i],e)) i = (i+1) & mask;
+	    if (table[i] >= 0) dup[e] = true;
+	    else table[i] = e;
+	}
+	return dup;
+    }
+
+    private boolean sameEdge(int a, int b) {
+	return (edgeSource[a] == edgeSource[b]) && (edgeTarget[a] == edgeTarget[b])
+	    && (edgeCall[a] == edgeCall[b]) && (edgeField[a] == edgeField[b])
+	    && (edgeInfo[a] == edgeInfo[b]);
+    }
+
+    /* Out-edges of node n, in out[] */
+    int outBegin(int n) {
+	return (n < outStart.length-1) ? outStart[n] : 0;
+    }
+    int outEnd(int n) {
+	return (n < outStart.length-1) ? outStart[n+1] : 0;
+    }
+
+    boolean isSkipped(int e) {
+	return infoSkipped[edgeInfo[e]];
+    }
+
+    boolean hasFlag(int n, byte flag) {
+	byte f = nodeFlags[n];
+	if (f == 0) {
+	    Node node = g.getNode(nodeIds[n]);
+	    f = KNOWN;
+	    if (node.isSink()) f |= SINK;
+	    if (g.isStop(node)) f |= STOP;
+	    if (g.isUnreachable(node)) f |= UNREACHABLE;
+	    nodeFlags[n] = f;
+	}
+	return (f & flag) != 0;
+    }
+
+    /* Forget all states and queue the source state of node id */
+    int start(long id) {
+	freeze();
+	stateCount = 0;
+	cellCount = 0;
+	visitedCount = 0;
+	Arrays.fill(visited,-1);
+	int s = newState(nodeIndexOf(id),-1,0,-1,-1,-1);
+	visit(s);
+	return s;
+    }
+
+    private int newState(int node, int parent, int depth, int info, int calls, int fields) {
+	int s = stateCount++;
+	if (s == stateNode.length) {
+	    int size = s*2;
+	    stateNode = Arrays.copyOf(stateNode,size);
+	    stateParent = Arrays.copyOf(stateParent,size);
+	    stateDepth = Arrays.copyOf(stateDepth,size);
+	    stateInfo = Arrays.copyOf(stateInfo,size);
+	    stateCalls = Arrays.copyOf(stateCalls,size);
+	    stateFields = Arrays.copyOf(stateFields,size);
+	}
+	stateNode[s] = node;
+	stateParent[s] = parent;
+	stateDepth[s] = depth;
+	stateInfo[s] = info;
+	stateCalls[s] = calls;
+	stateFields[s] = fields;
+	return s;
+    }
+
+    private int push(int stack, long label) {
+	int c = cellCount++;
+	if (c == cellLabel.length) {
+	    cellLabel = Arrays.copyOf(cellLabel,c*2);
+	    cellNext = Arrays.copyOf(cellNext,c*2);
+	}
+	cellLabel[c] = label;
+	cellNext[c] = stack;
+	return c;
+    }
+
+    private boolean contains(int stack, long label) {
+	for (int c = stack; c >= 0; c = cellNext[c])
+	    if (cellLabel[c] == label) return true;
+	return false;
+    }
+
+    /* The state reached from state v over edge e, queued if it is not
+       visited yet. Calls and writes push their label unless it is on the
+       stack already, returns and reads pop a matching label. Returns false
+       if e cannot be taken from v. */
+    boolean step(int v, int e) {
+	int info = stateInfo[v];
+	byte from = (info < 0) ? NONE : infoKinds[info];
+	int calls = stateCalls[v];
+	int fields = stateFields[v];
+	int cells = cellCount;
+	switch (infoKinds[edgeInfo[e]]) {
+	case CALL:
+	case CALL_SUPER:
+	    if ((from == SUBTYPE_PLUS) || (from == SUBTYPE_MINUS)) return false;
+	    if (contains(calls,Math.abs(edgeCall[e]))) return false;
+	    calls = push(calls,Math.abs(edgeCall[e]));
+	    break;
+	case WRITE:
+	    if (contains(fields,Math.abs(edgeField[e]))) return false;
+	    fields = push(fields,Math.abs(edgeField[e]));
+	    break;
+	case RETURN:
+	case RETURN_SUPER:
+	    if (from == SUBTYPE_MINUS) return false;
+	    if ((infoKinds[edgeInfo[e]] == RETURN_SUPER) && (from == SUBTYPE_PLUS)) return false;
+	    if (calls >= 0) {
+		if (cellLabel[calls] != edgeCall[e]) return false;
+		calls = cellNext[calls];
+	    }
+	    break;
+	case READ:
+	    if (fields >= 0) {
+		if (cellLabel[fields] != edgeField[e]) return false;
+		fields = cellNext[fields];
+	    }
+	    break;
+	case TO_CLASS:
+	case TO_STATIC:
+	    calls = -1;
+	    break;
+	case FROM_CLASS:
+	case FROM_STATIC:
+	case LOCAL:
+	    break;
+	case SUBTYPE_MINUS:
+	    if ((from != SUBTYPE_MINUS) && (from != CALL)) return false;
+	    break;
+	case SUBTYPE_PLUS:
+	    if ((from != SUBTYPE_PLUS) && (from != LOCAL)) return false;
+	    break;
+	default:
+	    return false;
+	}
+	int t = newState(edgeTarget[e],v,stateDepth[v]+1,edgeInfo[e],calls,fields);
+	if (!visit(t)) {
+	    stateCount--;
+	    cellCount = cells;
+	}
+	return true;
+    }
+
+    /* Visited states are compared by node and the top two calls, and, if
+       there are calls, the top two fields */
+    private boolean visit(int s) {
+	if (visitedCount*2 >= visited.length) {
+	    int[] old = visited;
+	    visited = new int[old.length*2];
+	    Arrays.fill(visited,-1);
+	    for (int i = 0; i < old.length; i++)
+		if (old[i] >= 0) visited[slot(old[i])] = old[i];
+	}
+	int i = slot(s);
+	if (visited[i] >= 0) return false;
+	visited[i] = s;
+	visitedCount++;
+	return true;
+    }
+
+    /* The slot of s, or of the visited state equal to s */
+    private int slot(int s) {
+	int mask = visited.length-1;
+	int i = (int) (mix(hash(s)) & mask);
+	while ((visited[i] >= 0) && !same(visited[i],s)) i = (i+1) & mask;
+	return i;
+    }
+
+    private long hash(int s) {
+	long h = stateNode[s];
+	int calls = stateCalls[s];
+	if (calls < 0) return h;
+	h = h*31 + top(calls,0)*17 + top(calls,1);
+	int fields = stateFields[s];
+	return h*31 + top(fields,0)*17 + top(fields,1);
+    }
+
+    private boolean same(int a, int b) {
+	if (stateNode[a] != stateNode[b]) return false;
+	int ca = stateCalls[a], cb = stateCalls[b];
+	if ((ca < 0) || (cb < 0)) return ca == cb;
+	if ((top(ca,0) != top(cb,0)) || (top(ca,1) != top(cb,1))) return false;
+	int fa = stateFields[a], fb = stateFields[b];
+	return (top(fa,0) == top(fb,0)) && (top(fa,1) == top(fb,1));
+    }
+
+    /* The label i cells below the top, -1 if the stack is shorter */
+    private long top(int stack, int i) {
+	for (; (stack >= 0) && (i > 0); i--) stack = cellNext[stack];
+	return (stack < 0) ? -1 : cellLabel[stack];
+    }
+
+    private static long mix(long h) {
+	h ^= (h >>> 33);
+	h *= 0xff51afd7ed558ccdL;
+	return h ^ (h >>> 33);
+    }
+
+    /* Print state s, indented by depth */
+    void printState(int s, int depth) {
+	System.out.println("---- Vertex id: "+nodeIds[stateNode[s]]+" ");
+	for (int i=0; i<depth; i++) System.out.print("  ");
+	System.out.print("---- The calls array: ");
+	printStack(stateCalls[s]);
+	System.out.println();
+	for (int i=0; i<depth; i++) System.out.print("  ");
+	System.out.print("---- The fields array: ");
+	printStack(stateFields[s]);
+	System.out.println();
+	for (int i=0; i<depth; i++) System.out.print("  ");
+	System.out.print("---- The edge info: ");
+	System.out.println((stateInfo[s] < 0) ? null : infos.get(stateInfo[s]));
+    }
+
+    private void printStack(int stack) {
+	if (stack < 0) return;
+	printStack(cellNext[stack]); // bottom first
+	System.out.print(cellLabel[stack]+"    ");
+    }
+
+    /* long -> int hash map, -1 for missing keys */
+    static class LongIntMap {
+	private long[] keys = new long[64];
+	private int[] values = new int[64];
+	private boolean[] used = new boolean[64];
+	private int size;
+
+	int get(long key) {
+	    int mask = keys.length-1;
+	    for (int i = (int) (mix(key) & mask); used[i]; i = (i+1) & mask)
+		if (keys[i] == key) return values[i];
+	    return -1;
+	}
+
+	void put(long key, int value) {
+	    if (size*2 >= keys.length) {
+		long[] oldKeys = keys; int[] oldValues = values; boolean[] oldUsed = used;
+		keys = new long[oldKeys.length*2];
+		values = new int[oldKeys.length*2];
+		used = new boolean[oldKeys.length*2];
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++)
+		    if (oldUsed[i]) put(oldKeys[i],oldValues[i]);
+	    }
+	    int mask = keys.length-1;
+	    int i = (int) (mix(key) & mask);
+	    while (used[i] && (keys[i] != key)) i = (i+1) & mask;
+	    if (!used[i]) { used[i] = true; keys[i] = key; size++; }
+	    values[i] = value;
+	}
+    }
+}
@@ -15,6 +15,7 @@ import soot.BodyTransformer;
 import soot.Local;
 import soot.PackManager;
 import soot.PatchingChain;
+import soot.PhaseOptions;
 import soot.RefType;
 import soot.Scene;
 import soot.SourceLocator;
@@ -86,6 +87,11 @@ public class SootInference {
 
         set(LEVEL_DEBUG);
 
+        if (System.getProperty(SFlowIFDSTransformer.OPTION_IFDS) != null) {
+            runIFDS(args, startTime);
+            return;
+        }
+
 
         InferenceTransformer reimTransformer = new ReimTransformer();
         InferenceTransformer sflowTransformer = new SFlowTransformer();
@@ -152,4 +158,28 @@ public class SootInference {
         long endTime   = System.currentTimeMillis();
         System.out.println("INFO: Total running time: " + ((float)(endTime - startTime) / 1000) + " sec");
 	}
+
+    /**
+     * Finds the SFlow flows with the IFDS solver instead of the constraints.
+     * The call graph starts from all methods of the app, as apps have no
+     * main method.
+     */
+    private static void runIFDS(String[] args, long startTime) {
+        Options.v().set_whole_program(true);
+        PhaseOptions.v().setPhaseOption("cg", "all-reachable:true");
+
+        SFlowIFDSTransformer ifdsTransformer = new SFlowIFDSTransformer(new SFlowTransformer());
+        PackManager.v().getPack("wjtp").add(new Transform("wjtp.sflowifds", ifdsTransformer));
+
+        soot.Main.main(args);
+
+        System.out.println();
+        for (SFlowTaintProblem.Leak l : ifdsTransformer.getLeaks())
+            System.out.println("INFO: found LEAK to " + l + "\n");
+        System.out.println("INFO: Finish solving SFlow IFDS problem. " + ifdsTransformer.getLeaks().size() 
+                + " leak(s) from " + ifdsTransformer.getSources().size() + " source(s)");
+
+        long endTime   = System.currentTimeMillis();
+        System.out.println("INFO: Total running time: " + ((float)(endTime - startTime) / 1000) + " sec");
+    }
 }
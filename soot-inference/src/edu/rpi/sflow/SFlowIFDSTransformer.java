@@ -0,0 +1,67 @@
+package edu.rpi.sflow;
+
+import java.util.*;
+
+import heros.InterproceduralCFG;
+
+import soot.Local;
+import soot.MethodOrMethodContext;
+import soot.Scene;
+import soot.SceneTransformer;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Unit;
+import soot.jimple.toolkits.ide.JimpleIFDSSolver;
+import soot.jimple.toolkits.ide.icfg.JimpleBasedInterproceduralCFG;
+
+import edu.rpi.sflow.SFlowTaintProblem.Leak;
+
+/**
+ * Finds the flows from SFlow sources to sinks with the IFDS solver of
+ * Heros instead of solving SFlow constraints. This needs a call graph,
+ * i.e., whole-program mode; see SootInference.
+ */
+public class SFlowIFDSTransformer extends SceneTransformer {
+
+    public static final String OPTION_IFDS = "sflowIFDS";
+
+    private final SFlowTransformer sflow;
+
+    private Set<Unit> sources = Collections.emptySet();
+
+    private Set<Leak> leaks = Collections.emptySet();
+
+    public SFlowIFDSTransformer(SFlowTransformer sflow) {
+        this.sflow = sflow;
+    }
+
+    @Override
+    protected void internalTransform(String phaseName, Map options) {
+        List<SootMethod> methods = new ArrayList<SootMethod>();
+        for (Iterator<MethodOrMethodContext> it = Scene.v().getReachableMethods().listener(); it.hasNext(); )
+            methods.add(it.next().method());
+
+        // solve again while tainted values are written to new fields
+        JimpleBasedInterproceduralCFG icfg = new JimpleBasedInterproceduralCFG();
+        Set<SootField> fields = new HashSet<SootField>();
+        SFlowTaintProblem problem;
+        do {
+            problem = new SFlowTaintProblem(icfg, sflow, methods, fields);
+            System.out.println("INFO: Solving SFlow IFDS problem from " + problem.getSources().size()
+                    + " source(s) in " + methods.size() + " reachable methods...");
+            JimpleIFDSSolver<Local, InterproceduralCFG<Unit, SootMethod>> solver =
+                new JimpleIFDSSolver<Local, InterproceduralCFG<Unit, SootMethod>>(problem);
+            solver.solve();
+        } while (fields.addAll(problem.getTaintedFields()));
+        sources = problem.getSources();
+        leaks = problem.getLeaks();
+    }
+
+    public Set<Unit> getSources() {
+        return sources;
+    }
+
+    public Set<Leak> getLeaks() {
+        return leaks;
+    }
+}
@@ -0,0 +1,390 @@
+package edu.rpi.sflow;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import heros.DefaultSeeds;
+import heros.FlowFunction;
+import heros.FlowFunctions;
+import heros.InterproceduralCFG;
+import heros.flowfunc.Identity;
+import heros.flowfunc.KillAll;
+
+import soot.Body;
+import soot.Local;
+import soot.NullType;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.jimple.*;
+import soot.jimple.internal.JimpleLocal;
+import soot.jimple.toolkits.ide.DefaultJimpleIFDSTabulationProblem;
+
+import edu.rpi.InferenceUtils;
+
+/**
+ * The SFlow sources and sinks as an IFDS problem over tainted locals:
+ * which locals are tainted by a library source, and which of them reach
+ * a library sink.
+ *
+ * The problem is seeded at the sources themselves, i.e., calls of methods
+ * with a @Tainted return, reads of tainted fields and the @Tainted
+ * parameters of app methods overriding library callbacks. Taints returning
+ * from a method are followed to all its callers, so only the code the
+ * tainted values reach is analyzed.
+ *
+ * Library methods are opaque, as with -DpolyLibrary: a tainted argument
+ * taints the result, and the receiver unless the method is @ReadonlyThis
+ * or @PolyreadThis.
+ *
+ * Fields are flow-insensitive, as in the SFlow constraints: a field is
+ * tainted in every object once a tainted value is written to it anywhere,
+ * and every read of it is a source. As a written field only becomes a
+ * source for the next problem, the problem is solved again with the fields
+ * found by the previous one until no field is added; see
+ * SFlowIFDSTransformer.
+ */
+public class SFlowTaintProblem extends DefaultJimpleIFDSTabulationProblem<Local, InterproceduralCFG<Unit, SootMethod>> {
+
+    /**
+     * A tainted value reaching a sink: the argument at the given index of
+     * a call, or its receiver if the index is -1.
+     */
+    public static class Leak {
+        private final SootMethod method;
+
+        private final Stmt stmt;
+
+        private final SootMethod sink;
+
+        private final int index;
+
+        public Leak(SootMethod method, Stmt stmt, SootMethod sink, int index) {
+            this.method = method;
+            this.stmt = stmt;
+            this.sink = sink;
+            this.index = index;
+        }
+
+        public SootMethod getMethod() {
+            return method;
+        }
+
+        public Stmt getStmt() {
+            return stmt;
+        }
+
+        public SootMethod getSink() {
+            return sink;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Leak))
+                return false;
+            Leak l = (Leak) o;
+            return stmt == l.stmt && sink == l.sink && index == l.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(stmt) * 31 + sink.hashCode() * 7 + index;
+        }
+
+        @Override
+        public String toString() {
+            return (index < 0 ? "this" : "parameter" + index) + " of " + sink
+                + " at " + "\n\t" + method + "\n\t" + stmt;
+        }
+    }
+
+    private final SFlowTransformer sflow;
+
+    /** The locals each source taints */
+    private final Map<Unit, Set<Local>> sources = new LinkedHashMap<Unit, Set<Local>>();
+
+    private final Set<Leak> leaks = Collections.newSetFromMap(new ConcurrentHashMap<Leak, Boolean>());
+
+    private final Set<SootField> taintedFields = Collections.newSetFromMap(new ConcurrentHashMap<SootField, Boolean>());
+
+    /**
+     * Finds the sources in the given methods, which should be all reachable
+     * methods of the app. Reads of the given fields are sources, too.
+     */
+    public SFlowTaintProblem(InterproceduralCFG<Unit, SootMethod> icfg,
+            SFlowTransformer sflow, Collection<SootMethod> methods, Set<SootField> fields) {
+        super(icfg);
+        this.sflow = sflow;
+        taintedFields.addAll(fields);
+        for (SootMethod sm : methods) {
+            if (sm.hasActiveBody() && !sflow.isLibraryMethod(sm))
+                findSources(sm, fields);
+        }
+    }
+
+    private void findSources(SootMethod sm, Set<SootField> fields) {
+        Body body = sm.getActiveBody();
+        // parameters of callbacks
+        if (!sm.getName().equals("<init>") && !sm.getName().equals("<clinit>")) {
+            for (SootMethod overridden : InferenceUtils.overriddenMethods(sm).values()) {
+                for (int i = 0; i < sm.getParameterCount(); i++) {
+                    if (sflow.isSourceParameter(overridden, i))
+                        addSource(parameterStmt(body, i), body.getParameterLocal(i));
+                }
+            }
+        }
+        for (Unit u : body.getUnits()) {
+            Stmt s = (Stmt) u;
+            if (!(s instanceof AssignStmt))
+                continue;
+            Value lhs = ((AssignStmt) s).getLeftOp();
+            if (!(lhs instanceof Local))
+                continue;
+            if (s.containsInvokeExpr()) {
+                if (sflow.isSourceReturn(s.getInvokeExpr().getMethod()))
+                    addSource(s, (Local) lhs);
+            } else if (((AssignStmt) s).getRightOp() instanceof FieldRef) {
+                SootField field = s.getFieldRef().getField();
+                if (fields.contains(field) || sflow.isSourceField(field))
+                    addSource(s, (Local) lhs);
+            }
+        }
+    }
+
+    private static Unit parameterStmt(Body body, int index) {
+        for (Unit u : body.getUnits()) {
+            if (u instanceof IdentityStmt) {
+                Value rhs = ((IdentityStmt) u).getRightOp();
+                if (rhs instanceof ParameterRef && ((ParameterRef) rhs).getIndex() == index)
+                    return u;
+            }
+        }
+        throw new RuntimeException("No identity statement for parameter " + index
+                + " in " + body.getMethod());
+    }
+
+    private void addSource(Unit u, Local l) {
+        Set<Local> set = sources.get(u);
+        if (set == null) {
+            set = new LinkedHashSet<Local>();
+            sources.put(u, set);
+        }
+        set.add(l);
+    }
+
+    public Set<Unit> getSources() {
+        return sources.keySet();
+    }
+
+    /**
+     * The leaks found by the solver so far.
+     */
+    public Set<Leak> getLeaks() {
+        return leaks;
+    }
+
+    /**
+     * The fields given to the constructor and those the solver has found
+     * tainted values written to so far.
+     */
+    public Set<SootField> getTaintedFields() {
+        return taintedFields;
+    }
+
+    @Override
+    public Map<Unit, Set<Local>> initialSeeds() {
+        return DefaultSeeds.make(sources.keySet(), zeroValue());
+    }
+
+    @Override
+    protected Local createZeroValue() {
+        return new JimpleLocal("<<zero>>", NullType.v());
+    }
+
+    /**
+     * The zero value only exists at the sources, where it generates the
+     * tainted locals; a taint leaving a method without a caller it came
+     * from is returned to all callers.
+     */
+    @Override
+    public boolean autoAddZero() {
+        return false;
+    }
+
+    @Override
+    public boolean followReturnsPastSeeds() {
+        return true;
+    }
+
+    @Override
+    public boolean computeValues() {
+        return false;
+    }
+
+    private Set<Local> generated(Unit u) {
+        Set<Local> set = sources.get(u);
+        return set == null ? Collections.<Local>emptySet() : set;
+    }
+
+    /**
+     * Library methods, and methods of classes not on the class path when
+     * running with -allow-phantom-refs, are not analyzed
+     */
+    private boolean isOpaque(SootMethod sm) {
+        return sflow.isLibraryMethod(sm) || sm.isPhantom();
+    }
+
+    private static boolean uses(Value v, Local l) {
+        if (v == l)
+            return true;
+        for (ValueBox vb : v.getUseBoxes())
+            if (vb.getValue() == l)
+                return true;
+        return false;
+    }
+
+    private static Local base(InvokeExpr ie) {
+        if (ie instanceof InstanceInvokeExpr)
+            return (Local) ((InstanceInvokeExpr) ie).getBase();
+        return null;
+    }
+
+    @Override
+    protected FlowFunctions<Unit, Local, SootMethod> createFlowFunctionsFactory() {
+        return new FlowFunctions<Unit, Local, SootMethod>() {
+
+            public FlowFunction<Local> getNormalFlowFunction(final Unit curr, Unit succ) {
+                if (!(curr instanceof DefinitionStmt))
+                    return new FlowFunction<Local>() {
+                        public Set<Local> computeTargets(Local source) {
+                            if (source == zeroValue())
+                                return Collections.emptySet();
+                            return Collections.singleton(source);
+                        }
+                    };
+                final Value lhs = ((DefinitionStmt) curr).getLeftOp();
+                final Value rhs = ((DefinitionStmt) curr).getRightOp();
+                return new FlowFunction<Local>() {
+                    public Set<Local> computeTargets(Local source) {
+                        if (source == zeroValue())
+                            return generated(curr);
+                        if (!uses(rhs, source))
+                            return source == lhs ? Collections.<Local>emptySet() : Collections.singleton(source);
+                        if (lhs instanceof Local) {
+                            Set<Local> res = new LinkedHashSet<Local>();
+                            res.add(source);
+                            res.add((Local) lhs);
+                            return res;
+                        }
+                        if (lhs instanceof FieldRef) {
+                            taintedFields.add(((FieldRef) lhs).getField());
+                            return Collections.singleton(source);
+                        }
+                        // the contents of an array taint the array
+                        Set<Local> res = new LinkedHashSet<Local>();
+                        res.add(source);
+                        res.add((Local) ((ArrayRef) lhs).getBase());
+                        return res;
+                    }
+                };
+            }
+
+            public FlowFunction<Local> getCallFlowFunction(Unit callStmt, final SootMethod destinationMethod) {
+                if (isOpaque(destinationMethod) || !destinationMethod.hasActiveBody())
+                    return KillAll.v();
+                final InvokeExpr ie = ((Stmt) callStmt).getInvokeExpr();
+                final Body body = destinationMethod.getActiveBody();
+                return new FlowFunction<Local>() {
+                    public Set<Local> computeTargets(Local source) {
+                        if (source == zeroValue())
+                            return Collections.emptySet();
+                        Set<Local> res = new LinkedHashSet<Local>();
+                        for (int i = 0; i < ie.getArgCount(); i++)
+                            if (ie.getArg(i) == source)
+                                res.add(body.getParameterLocal(i));
+                        if (base(ie) == source && !destinationMethod.isStatic())
+                            res.add(body.getThisLocal());
+                        return res;
+                    }
+                };
+            }
+
+            public FlowFunction<Local> getReturnFlowFunction(final Unit callSite, final SootMethod calleeMethod,
+                    final Unit exitStmt, Unit returnSite) {
+                // returning past a seed from a method without callers
+                if (callSite == null)
+                    return KillAll.v();
+                final InvokeExpr ie = ((Stmt) callSite).getInvokeExpr();
+                final Body body = calleeMethod.getActiveBody();
+                return new FlowFunction<Local>() {
+                    public Set<Local> computeTargets(Local source) {
+                        if (source == zeroValue())
+                            return Collections.emptySet();
+                        Set<Local> res = new LinkedHashSet<Local>();
+                        if (exitStmt instanceof ReturnStmt && callSite instanceof AssignStmt
+                                && ((ReturnStmt) exitStmt).getOp() == source)
+                            res.add((Local) ((AssignStmt) callSite).getLeftOp());
+                        // tainted contents of arrays and objects passed in
+                        for (int i = 0; i < ie.getArgCount(); i++)
+                            if (body.getParameterLocal(i) == source && ie.getArg(i) instanceof Local)
+                                res.add((Local) ie.getArg(i));
+                        if (!calleeMethod.isStatic() && base(ie) != null && body.getThisLocal() == source)
+                            res.add(base(ie));
+                        return res;
+                    }
+                };
+            }
+
+            public FlowFunction<Local> getCallToReturnFlowFunction(final Unit callSite, Unit returnSite) {
+                final Stmt stmt = (Stmt) callSite;
+                final InvokeExpr ie = stmt.getInvokeExpr();
+                final SootMethod callee = ie.getMethod();
+                final Local lhs = stmt instanceof AssignStmt ? (Local) ((AssignStmt) stmt).getLeftOp() : null;
+                if (!isOpaque(callee)) {
+                    if (lhs == null)
+                        return Identity.v();
+                    return new FlowFunction<Local>() {
+                        public Set<Local> computeTargets(Local source) {
+                            if (source == zeroValue() || source == lhs)
+                                return Collections.emptySet();
+                            return Collections.singleton(source);
+                        }
+                    };
+                }
+                return new FlowFunction<Local>() {
+                    public Set<Local> computeTargets(Local source) {
+                        if (source == zeroValue())
+                            return generated(callSite);
+                        Set<Local> res = new LinkedHashSet<Local>();
+                        if (source != lhs)
+                            res.add(source);
+                        Local base = base(ie);
+                        boolean isArg = false;
+                        for (int i = 0; i < ie.getArgCount(); i++) {
+                            if (ie.getArg(i) == source) {
+                                isArg = true;
+                                if (sflow.isSinkParameter(callee, i))
+                                    leaks.add(new Leak(interproceduralCFG().getMethodOf(stmt), stmt, callee, i));
+                            }
+                        }
+                        if (base == source && sflow.isSinkThis(callee))
+                            leaks.add(new Leak(interproceduralCFG().getMethodOf(stmt), stmt, callee, -1));
+                        if (isArg || base == source) {
+                            if (lhs != null)
+                                res.add(lhs);
+                            if (isArg && base != null && !sflow.isReadonlyThis(callee))
+                                res.add(base);
+                        }
+                        return res;
+                    }
+                };
+            }
+        };
+    }
+}
@@ -169,6 +169,50 @@ public class SFlowTransformer extends InferenceTransformer {
         return false;
     }
 
+    /**
+     * The queries below read the library annotations directly, without
+     * creating annotated values, so they can be used by SFlowIFDSTransformer
+     * without running the constraint generation.
+     */
+    public boolean isSourceReturn(SootMethod sm) {
+        sm = getDeclaringMethod(sm);
+        return isLibraryMethod(sm)
+            && getVisibilityTags(sm, Kind.RETURN).contains(TAINTED);
+    }
+
+    public boolean isSourceParameter(SootMethod sm, int index) {
+        sm = getDeclaringMethod(sm);
+        return isLibraryMethod(sm)
+            && getVisibilitParameterTags(sm, index).contains(TAINTED);
+    }
+
+    public boolean isSourceField(SootField field) {
+        field = getDeclaringField(field);
+        return field.getDeclaringClass().isLibraryClass()
+            && getVisibilityTags(field, Kind.FIELD).contains(TAINTED);
+    }
+
+    public boolean isSinkParameter(SootMethod sm, int index) {
+        sm = getDeclaringMethod(sm);
+        return isLibraryMethod(sm)
+            && getVisibilitParameterTags(sm, index).contains(SAFE);
+    }
+
+    public boolean isSinkThis(SootMethod sm) {
+        sm = getDeclaringMethod(sm);
+        return isLibraryMethod(sm) && !sm.isStatic()
+            && getVisibilityTags(sm, Kind.THIS).contains(SAFE);
+    }
+
+    /**
+     * Whether a library method leaves its receiver alone, so that
+     * its parameters do not flow to THIS.
+     */
+    public boolean isReadonlyThis(SootMethod sm) {
+        Set<Annotation> annos = getRawVisibilityTags(getDeclaringMethod(sm));
+        return annos.contains(READONLYTHIS) || annos.contains(POLYREADTHIS);
+    }
+
     @Override
     protected void handleMethodCall(InvokeExpr v, AnnotatedValue assignTo) {
         // Add default annotations/constraints for library methods
@@ -6,6 +6,7 @@ import soot.SootClass;
 import soot.SootMethod;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.lang.annotation.*;
 
 public class AnnotatedValue {
@@ -24,7 +25,7 @@ public class AnnotatedValue {
         FIELD_ADAPT
     }
 
-    private static int counter = 0;
+    private static final AtomicInteger counter = new AtomicInteger();
 
     private int id;
 
@@ -44,18 +45,22 @@ public class AnnotatedValue {
     
     private int restoreNum = 0;
 
-    protected Set<Annotation> annos;
+    /**
+     * Qualifiers as a bit mask, see AnnotationUtils.bitOf. Updates hold the
+     * lock of the value; volatile so that unlocked reads see whole masks.
+     */
+    protected volatile long annos;
 
     public static int maxId() {
-        return counter;
+        return counter.get();
     }
 
     public static void reset() {
-        counter = 0;
+        counter.set(0);
     }
 
     public AnnotatedValue(String identifier, Type type, Kind kind, Object v) {
-        init(identifier, type, kind, v, AnnotationUtils.createAnnotationSet());
+        init(identifier, type, kind, v, 0L);
     }
 
 //    public AnnotatedValue(String identifier, Type type, Kind kind, Object v, Annotation anno) {
@@ -65,13 +70,11 @@ public class AnnotatedValue {
 //    }
 
     public AnnotatedValue(String identifier, Type type, Kind kind, Object v, Set<Annotation> annos) {
-        Set<Annotation> set = AnnotationUtils.createAnnotationSet();
-        set.addAll(annos);
-        init(identifier, type, kind, v, set);
+        init(identifier, type, kind, v, AnnotationUtils.toMask(annos));
     }
 
-    private void init(String identifier, Type type, Kind kind, Object v, Set<Annotation> annos) {
-        this.id = counter++;
+    private void init(String identifier, Type type, Kind kind, Object v, long annos) {
+        this.id = counter.getAndIncrement();
         this.identifier = identifier;
         this.type = type;
         this.kind = kind;
@@ -134,43 +137,53 @@ public class AnnotatedValue {
         return id;
     }
 
-    public void clearAnnotations() {
-        annos.clear();
+    public synchronized void clearAnnotations() {
+        annos = 0L;
     }
 
     public Set<Annotation> getRawAnnotations() {
-        Set<Annotation> annos = AnnotationUtils.createAnnotationSet();
-        annos.addAll(this.annos);
-        return annos;
+        return AnnotationUtils.fromMask(annos);
     }
 
     public Set<Annotation> getAnnotations(InferenceTransformer t) {
-        Set<Annotation> annos = getRawAnnotations();
-        annos.retainAll(t.getSourceLevelQualifiers());
+        return AnnotationUtils.fromMask(getAnnotationMask(t));
+    }
+
+    public long getRawAnnotationMask() {
         return annos;
     }
 
-    public void setRawAnnotations(Set<Annotation> annos) {
-        this.annos.clear();
-        this.annos.addAll(annos);
+    public long getAnnotationMask(InferenceTransformer t) {
+        return annos & t.getQualifierUniverse().getSourceMask();
+    }
+
+    public synchronized void setRawAnnotations(Set<Annotation> annos) {
+        this.annos = AnnotationUtils.toMask(annos);
     }
 
     public void setAnnotations(Set<Annotation> annos, InferenceTransformer t) {
-        this.annos.removeAll(t.getSourceLevelQualifiers());
-        this.annos.addAll(annos);
+        setAnnotationMask(AnnotationUtils.toMask(annos), t);
+    }
+
+    /**
+     * Only the bits of t's qualifiers change. Values are shared by all
+     * transformers and bodies may be transformed concurrently, hence the lock.
+     */
+    public synchronized void setAnnotationMask(long mask, InferenceTransformer t) {
+        this.annos = (this.annos & ~t.getQualifierUniverse().getSourceMask()) | mask;
     }
 
-    public void addAnnotation(Annotation anno) {
-        this.annos.add(anno);
+    public synchronized void addAnnotation(Annotation anno) {
+        this.annos |= 1L << AnnotationUtils.bitOf(anno);
     }
 
     public boolean containsAnno(Annotation anno) {
-        return annos.contains(anno);
+        return (annos & (1L << AnnotationUtils.bitOf(anno))) != 0;
     }
 
     public String toString() {
         return "(" +id + ")" + identifier + ": " 
-            + annos.toString().replace('[', '{').replace(']', '}') 
+            + getRawAnnotations().toString().replace('[', '{').replace(']', '}') 
             + " [" + type.toString() + "]";
     }
 
@@ -234,8 +247,7 @@ public class AnnotatedValue {
         @Override
         public void setAnnotations(ViewpointAdapter va, Set<Annotation> annos) {
             // TODO
-            this.annos.clear();
-            this.annos.addAll(annos);
+            this.annos = AnnotationUtils.toMask(annos);
         }
     }
 
@@ -258,8 +270,7 @@ public class AnnotatedValue {
         @Override
         public void setAnnotations(ViewpointAdapter va, Set<Annotation> annos) {
             // TODO
-            this.annos.clear();
-            this.annos.addAll(annos);
+            this.annos = AnnotationUtils.toMask(annos);
         }
     }
 }
@@ -1,9 +1,9 @@
 package edu.rpi;
 
-import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 
-public class AnnotatedValueMap extends HashMap<String, AnnotatedValue> {
+public class AnnotatedValueMap extends ConcurrentHashMap<String, AnnotatedValue> {
 
     /**
 	 * 
@@ -20,12 +20,22 @@ public class AnnotatedValueMap extends HashMap<String, AnnotatedValue> {
 
     @Override
     public AnnotatedValue put(String key, AnnotatedValue value) {
+        printStats();
+        return super.put(key, value);
+    }
+
+    @Override
+    public AnnotatedValue putIfAbsent(String key, AnnotatedValue value) {
+        printStats();
+        return super.putIfAbsent(key, value);
+    }
+
+    private void printStats() {
         if (this.size() != 0 && this.size() % 10000 == 0) {
             System.out.println(String.format("%6s: %14d", "size", this.size()));
             System.out.println(String.format("%6s: %14f MB", "free", ((float) Runtime.getRuntime().freeMemory()) / (1024*1024)));
             System.out.println(String.format("%6s: %14f MB", "total", ((float) Runtime.getRuntime().totalMemory()) / (1024*1024)));
         }
-        return super.put(key, value);
     }
 
 }
@@ -2,6 +2,7 @@ package edu.rpi;
 
 import java.lang.annotation.*;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import soot.tagkit.*;
 
@@ -27,7 +28,23 @@ public class AnnotationUtils {
     private static final Map<String, Set<String>> supertypes 
         = new HashMap<String, Set<String>>();
 
-    public static Annotation fromName(String name) {
+    /** 
+     * Bit index of every qualifier seen so far, keyed by canonical name. 
+     * The index is global because one AnnotatedValue carries the qualifiers
+     * of several transformers (e.g. Reim and JCrypt share AnnotatedValueMap).
+     */
+    private static final Map<String, Integer> bitIndices 
+        = new HashMap<String, Integer>();
+
+    private static final List<Annotation> annotationsByBit 
+        = new CopyOnWriteArrayList<Annotation>();
+
+    /** Supertype masks indexed by bit, filled lazily */
+    private static long[] supertypeMasks = new long[0];
+
+    public static final int MAX_QUALIFIERS = 64;
+
+    public static synchronized Annotation fromName(String name) {
         if (annotationsFromNames.containsKey(name))
             return annotationsFromNames.get(name);
 
@@ -49,7 +66,13 @@ public class AnnotationUtils {
                     return (obj instanceof Annotation) 
                         && annotationType().equals(((Annotation) obj).annotationType());
                 }
+                @Override
+                public int hashCode() {
+                    return annotationType().hashCode();
+                }
             };
+            annotationsFromNames.put(name, ret);
+            bitOf(ret);
         } catch (Exception e) {
             error("Cannot find class: " + name);
         }
@@ -57,6 +80,64 @@ public class AnnotationUtils {
         return ret;
     }
 
+    /**
+     * Returns the bit index of the qualifier, assigning a new one the 
+     * first time the qualifier is seen.
+     */
+    public static synchronized int bitOf(Annotation anno) {
+        String name = anno.annotationType().getCanonicalName();
+        Integer bit = bitIndices.get(name);
+        if (bit == null) {
+            bit = annotationsByBit.size();
+            if (bit >= MAX_QUALIFIERS)
+                throw new RuntimeException("Too many qualifiers: " + name);
+            bitIndices.put(name, bit);
+            annotationsByBit.add(anno);
+        }
+        return bit;
+    }
+
+    public static Annotation fromBit(int bit) {
+        return annotationsByBit.get(bit);
+    }
+
+    public static long toMask(Set<Annotation> annos) {
+        long mask = 0L;
+        for (Annotation anno : annos) 
+            mask |= 1L << bitOf(anno);
+        return mask;
+    }
+
+    public static Set<Annotation> fromMask(long mask) {
+        Set<Annotation> annos = createAnnotationSet();
+        for (long m = mask; m != 0; m &= m - 1) 
+            annos.add(annotationsByBit.get(Long.numberOfTrailingZeros(m)));
+        return annos;
+    }
+
+    /**
+     * The mask of all qualifiers that {@code bit} is a subtype of, 
+     * with the same (non-transitive) semantics as {@link #isSubtype}.
+     */
+    public static synchronized long supertypeMask(int bit) {
+        if (bit >= supertypeMasks.length) 
+            supertypeMasks = Arrays.copyOf(supertypeMasks, MAX_QUALIFIERS);
+        long mask = supertypeMasks[bit];
+        if (mask == 0L) {
+            Annotation sub = annotationsByBit.get(bit);
+            mask = 1L << bit;
+            Class<? extends Annotation>[] superQualifiers 
+                = sub.annotationType().getAnnotation(SubtypeOf.class).value();
+            for (Class<? extends Annotation> c : superQualifiers) {
+                Annotation sup = fromClass(c);
+                if (sup != null)
+                    mask |= 1L << bitOf(sup);
+            }
+            supertypeMasks[bit] = mask;
+        }
+        return mask;
+    }
+
     public static Annotation fromAnnotationTag(AnnotationTag aTag) {
         String type = aTag.getType().substring(1);
         type = type.substring(0, type.length() - 1);
@@ -78,7 +159,7 @@ public class AnnotationUtils {
     public static boolean isSubtype(Annotation sub, Annotation sup) {
         String subStr = sub.annotationType().getCanonicalName();
         String supStr = sup.annotationType().getCanonicalName();
-        Set<String> sups = supertypes.get(sub); 
+        Set<String> sups = supertypes.get(subStr); 
         if (sups == null) {
             sups = new HashSet<String>();
             // add itself
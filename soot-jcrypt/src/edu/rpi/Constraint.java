@@ -2,6 +2,7 @@ package edu.rpi;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class Constraint {
 
@@ -15,10 +16,10 @@ public abstract class Constraint {
 
     private int kind;
 
-    private static int counter = 0; 
+    private static final AtomicInteger counter = new AtomicInteger(); 
 
     public Constraint(int kind) {
-        id = counter++;
+        id = counter.getAndIncrement();
         this.kind = kind;
     }
 
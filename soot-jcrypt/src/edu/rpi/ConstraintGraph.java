@@ -0,0 +1,306 @@
+package edu.rpi;
+
+import java.util.*;
+
+import edu.rpi.AnnotatedValue.AdaptValue;
+
+/**
+ * Constraints indexed by the values they refer to, in compressed sparse row
+ * form: the constraints of row r are at targets[offsets[r]] up to
+ * targets[offsets[r+1]-1], in the order of the constraint set. Values with
+ * the same identifier share a row, and an adapt value contributes its decl
+ * and context values.
+ */
+public class ConstraintGraph {
+
+    private final Constraint[] constraints;
+
+    /** AnnotatedValue id to row, -1 if the value is in no constraint */
+    private final int[] idToRow;
+
+    private final int[] offsets;
+
+    private final int[] targets;
+
+    /** Identifier to row */
+    private final Map<String, Integer> identifierRows = new HashMap<String, Integer>();
+
+    public ConstraintGraph(Collection<Constraint> cons) {
+        constraints = cons.toArray(new Constraint[cons.size()]);
+        idToRow = new int[AnnotatedValue.maxId()];
+        Arrays.fill(idToRow, -1);
+
+        int[] edgeRows = new int[constraints.length * 2];
+        int[] edgeCons = new int[constraints.length * 2];
+        int edges = 0;
+        // lastCons[row]: 1 + the last constraint added to row
+        int[] lastCons = new int[16];
+        for (int c = 0; c < constraints.length; c++) {
+            Constraint con = constraints[c];
+            AnnotatedValue[] refs = {con.getLeft(), con.getRight()};
+            for (AnnotatedValue ref : refs) {
+                if (ref == null)
+                    continue;
+                AnnotatedValue[] avs = (ref instanceof AdaptValue
+                        ? new AnnotatedValue[] {((AdaptValue) ref).getDeclValue(),
+                                ((AdaptValue) ref).getContextValue()}
+                        : new AnnotatedValue[] {ref});
+                for (AnnotatedValue av : avs) {
+                    int row = addRow(av);
+                    if (row == lastCons.length)
+                        lastCons = grow(lastCons);
+                    // a constraint is listed once per row
+                    if (lastCons[row] == c + 1)
+                        continue;
+                    lastCons[row] = c + 1;
+                    if (edges == edgeRows.length) {
+                        edgeRows = grow(edgeRows);
+                        edgeCons = grow(edgeCons);
+                    }
+                    edgeRows[edges] = row;
+                    edgeCons[edges] = c;
+                    edges++;
+                }
+            }
+        }
+
+        // counting sort by row, stable so rows keep the constraint order
+        offsets = new int[identifierRows.size() + 1];
+        for (int e = 0; e < edges; e++)
+            offsets[edgeRows[e] + 1]++;
+        for (int r = 0; r < identifierRows.size(); r++)
+            offsets[r + 1] += offsets[r];
+        targets = new int[edges];
+        int[] next = Arrays.copyOf(offsets, identifierRows.size());
+        for (int e = 0; e < edges; e++)
+            targets[next[edgeRows[e]]++] = edgeCons[e];
+    }
+
+    private int addRow(AnnotatedValue av) {
+        int id = av.getId();
+        if (id < idToRow.length && idToRow[id] >= 0)
+            return idToRow[id];
+        Integer row = identifierRows.get(av.getIdentifier());
+        if (row == null) {
+            row = identifierRows.size();
+            identifierRows.put(av.getIdentifier(), row);
+        }
+        if (id < idToRow.length)
+            idToRow[id] = row;
+        return row;
+    }
+
+    private static int[] grow(int[] a) {
+        return Arrays.copyOf(a, a.length * 2 + 1);
+    }
+
+    public int size() {
+        return constraints.length;
+    }
+
+    public Constraint get(int index) {
+        return constraints[index];
+    }
+
+    private int rowOf(AnnotatedValue av) {
+        int id = av.getId();
+        return (id < idToRow.length ? idToRow[id] : -1);
+    }
+
+    /**
+     * The row of the values with this identifier, -1 if they are in no
+     * constraint
+     */
+    public int rowOf(String identifier) {
+        Integer row = identifierRows.get(identifier);
+        return (row == null ? -1 : row);
+    }
+
+    /**
+     * The row of the first value constraint index refers to
+     */
+    public int firstRowOf(int index) {
+        Constraint c = constraints[index];
+        AnnotatedValue ref = (c.getLeft() != null ? c.getLeft() : c.getRight());
+        if (ref instanceof AdaptValue)
+            ref = ((AdaptValue) ref).getDeclValue();
+        return rowOf(ref);
+    }
+
+    private int rows() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Rank the constraints by the strongly connected components of the
+     * value graph, in topological order. A subtype constraint sub <: sup
+     * narrows sub from sup, so it is an edge sup -> sub (and also sub -> sup
+     * with strict subtyping); an equality is an edge in both directions.
+     * Constraints on adapt values add no edges. The rank of a constraint is
+     * the latest component of the values it refers to, so solving the lower
+     * ranks first settles the values a component reads before the
+     * component itself.
+     */
+    public int[] rankBySCC(boolean strict) {
+        int n = rows();
+        int[] degree = new int[n + 1];
+        int[] from = new int[constraints.length * 2];
+        int[] to = new int[constraints.length * 2];
+        int edges = 0;
+        for (Constraint c : constraints) {
+            AnnotatedValue left = c.getLeft(), right = c.getRight();
+            if (left == null || right == null
+                    || left instanceof AdaptValue || right instanceof AdaptValue
+                    || c instanceof Constraint.UnequalityConstraint)
+                continue;
+            int l = rowOf(left), r = rowOf(right);
+            if (l < 0 || r < 0 || l == r)
+                continue;
+            boolean equality = (c instanceof Constraint.EqualityConstraint);
+            if (edges + 2 > from.length) {
+                from = grow(from);
+                to = grow(to);
+            }
+            from[edges] = r;
+            to[edges] = l;
+            edges++;
+            if (equality || strict) {
+                from[edges] = l;
+                to[edges] = r;
+                edges++;
+            }
+        }
+        for (int e = 0; e < edges; e++)
+            degree[from[e] + 1]++;
+        for (int v = 0; v < n; v++)
+            degree[v + 1] += degree[v];
+        int[] succ = new int[edges];
+        int[] next = Arrays.copyOf(degree, n);
+        for (int e = 0; e < edges; e++)
+            succ[next[from[e]]++] = to[e];
+
+        // Tarjan, iteratively; components come out in reverse topological order
+        int[] component = new int[n];
+        int[] index = new int[n];
+        int[] lowlink = new int[n];
+        Arrays.fill(index, -1);
+        int[] stack = new int[n];
+        int sp = 0;
+        boolean[] onStack = new boolean[n];
+        int[] callStack = new int[n];
+        int[] edgePos = new int[n];
+        int counter = 0, components = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0)
+                continue;
+            int csp = 0;
+            callStack[csp++] = root;
+            index[root] = lowlink[root] = counter++;
+            stack[sp++] = root;
+            onStack[root] = true;
+            edgePos[root] = degree[root];
+            while (csp > 0) {
+                int v = callStack[csp - 1];
+                if (edgePos[v] < degree[v + 1]) {
+                    int w = succ[edgePos[v]++];
+                    if (index[w] < 0) {
+                        index[w] = lowlink[w] = counter++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        edgePos[w] = degree[w];
+                        callStack[csp++] = w;
+                    } else if (onStack[w] && index[w] < lowlink[v])
+                        lowlink[v] = index[w];
+                    continue;
+                }
+                csp--;
+                if (csp > 0) {
+                    int parent = callStack[csp - 1];
+                    if (lowlink[v] < lowlink[parent])
+                        lowlink[parent] = lowlink[v];
+                }
+                if (lowlink[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        onStack[w] = false;
+                        component[w] = components;
+                    } while (w != v);
+                    components++;
+                }
+            }
+        }
+
+        int[] ranks = new int[constraints.length];
+        for (int i = 0; i < constraints.length; i++) {
+            Constraint c = constraints[i];
+            int rank = 0;
+            AnnotatedValue[] refs = {c.getLeft(), c.getRight()};
+            for (AnnotatedValue ref : refs) {
+                if (ref == null)
+                    continue;
+                AnnotatedValue[] avs = (ref instanceof AdaptValue
+                        ? new AnnotatedValue[] {((AdaptValue) ref).getDeclValue(),
+                                ((AdaptValue) ref).getContextValue()}
+                        : new AnnotatedValue[] {ref});
+                for (AnnotatedValue av : avs) {
+                    int row = rowOf(av);
+                    if (row >= 0)
+                        rank = Math.max(rank, components - 1 - component[row]);
+                }
+            }
+            ranks[i] = rank;
+        }
+        return ranks;
+    }
+
+    /**
+     * The connected component of each row, where the values a constraint
+     * refers to (including the decl and context values of adapt values) are
+     * connected
+     */
+    public int[] connectedComponents() {
+        int n = rows();
+        int[] parent = new int[n];
+        for (int r = 0; r < n; r++)
+            parent[r] = r;
+        // the rows of constraint c are the rows listing c
+        int[] first = new int[constraints.length];
+        Arrays.fill(first, -1);
+        for (int r = 0; r < n; r++) {
+            for (int i = offsets[r]; i < offsets[r + 1]; i++) {
+                int c = targets[i];
+                if (first[c] < 0)
+                    first[c] = r;
+                else {
+                    int a = find(parent, first[c]), b = find(parent, r);
+                    if (a != b)
+                        parent[a] = b;
+                }
+            }
+        }
+        int[] component = new int[n];
+        for (int r = 0; r < n; r++)
+            component[r] = find(parent, r);
+        return component;
+    }
+
+    private static int find(int[] parent, int r) {
+        while (parent[r] != r) {
+            parent[r] = parent[parent[r]];
+            r = parent[r];
+        }
+        return r;
+    }
+
+    /**
+     * Add the constraints referring to av to the worklist
+     */
+    public void addRelated(AnnotatedValue av, ConstraintWorklist worklist) {
+        int row = rowOf(av);
+        if (row < 0)
+            return;
+        for (int i = offsets[row]; i < offsets[row + 1]; i++)
+            worklist.add(targets[i]);
+    }
+}
@@ -0,0 +1,87 @@
+package edu.rpi;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Worklist of constraint indices (see ConstraintGraph). Like a
+ * LinkedHashSet, adding an index that is already queued keeps its place.
+ * Indices may be given ranks: lower ranks are polled first, and indices of
+ * the same rank in FIFO order.
+ */
+public class ConstraintWorklist {
+
+    private final int[] ranks;
+
+    /** First and last queued index of each rank, -1 if none */
+    private final int[] heads;
+
+    private final int[] tails;
+
+    private final int[] next;
+
+    private final BitSet queued;
+
+    private int current = 0;
+
+    private int size = 0;
+
+    /**
+     * A plain FIFO worklist
+     */
+    public ConstraintWorklist(int capacity) {
+        this(new int[capacity]);
+    }
+
+    public ConstraintWorklist(int[] ranks) {
+        int max = 0;
+        for (int rank : ranks)
+            max = Math.max(max, rank);
+        this.ranks = ranks;
+        this.heads = new int[max + 1];
+        this.tails = new int[max + 1];
+        Arrays.fill(heads, -1);
+        Arrays.fill(tails, -1);
+        this.next = new int[ranks.length];
+        this.queued = new BitSet(ranks.length);
+    }
+
+    public boolean add(int index) {
+        if (queued.get(index))
+            return false;
+        queued.set(index);
+        int rank = ranks[index];
+        next[index] = -1;
+        if (tails[rank] < 0)
+            heads[rank] = index;
+        else
+            next[tails[rank]] = index;
+        tails[rank] = index;
+        if (rank < current)
+            current = rank;
+        size++;
+        return true;
+    }
+
+    public int poll() {
+        if (size == 0)
+            throw new IllegalStateException("Empty worklist");
+        while (heads[current] < 0)
+            current++;
+        int index = heads[current];
+        heads[current] = next[index];
+        if (heads[current] < 0)
+            tails[current] = -1;
+        size--;
+        queued.clear(index);
+        return index;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,346 @@
+package edu.rpi;
+
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.util.*;
+
+import soot.Body;
+import soot.Unit;
+
+import edu.rpi.AnnotatedValue.AdaptValue;
+import edu.rpi.AnnotatedValue.FieldAdaptValue;
+
+/**
+ * The constraints and solution of one transformer, saved after solving so the
+ * next run can start from them. The snapshot keeps, per method signature, a
+ * hash of the Jimple body and the constraints generated for it, and per value
+ * identifier the initial and the solved qualifiers.
+ *
+ * A later run compares its constraints and initial qualifiers with the
+ * snapshot. The values of changed methods, changed constraints and changed
+ * initial qualifiers are dirty, and so is every value connected to them by a
+ * constraint. The other values get their old solution back and only the
+ * constraints of dirty components are solved.
+ */
+public class InferenceSnapshot {
+
+    /** Directory of the snapshots, enables incremental solving */
+    public static final String OPTION_SNAPSHOT_DIR = "snapshotDir";
+
+    private static final int MAGIC = 0x52454931;
+
+    private static final String GLOBAL = "";
+
+    private final InferenceTransformer t;
+
+    private final File file;
+
+    /** Old run: method signature to body hash */
+    private Map<String, Long> oldHashes = new HashMap<String, Long>();
+
+    /** Old run: method signature to constraint keys */
+    private Map<String, Set<String>> oldConstraints = new HashMap<String, Set<String>>();
+
+    /** Old run: value identifier to {initial, solved} mask */
+    private Map<String, long[]> oldValues = new HashMap<String, long[]>();
+
+    /** Old run: keys of the conflicting constraints */
+    private Set<String> oldConflicts = new HashSet<String>();
+
+    private long coldMillis = -1;
+
+    private boolean loaded = false;
+
+    /** This run: value identifier to initial mask */
+    private Map<String, Long> initialMasks;
+
+    private int dirtyMethods = 0;
+
+    public static String getSnapshotDir() {
+        return System.getProperty(OPTION_SNAPSHOT_DIR);
+    }
+
+    public static boolean isEnabled() {
+        return getSnapshotDir() != null;
+    }
+
+    public InferenceSnapshot(InferenceTransformer t) {
+        this.t = t;
+        this.file = new File(getSnapshotDir(), t.getName() + ".snapshot");
+    }
+
+    /**
+     * A hash of the Jimple of b, stable across runs
+     */
+    public static long hash(Body b) {
+        long h = 0xcbf29ce484222325L;
+        for (Unit u : b.getUnits()) {
+            String s = u.toString();
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= '\n';
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    public boolean isWarm() {
+        return loaded;
+    }
+
+    public int getDirtyMethods() {
+        return dirtyMethods;
+    }
+
+    /**
+     * Solve time of the last run without a snapshot, -1 if unknown
+     */
+    public long getColdMillis() {
+        return coldMillis;
+    }
+
+    /**
+     * Restore the old solution of the clean values and return the indices of
+     * the constraints that need solving. Without an old snapshot all
+     * constraints are returned.
+     */
+    public BitSet prepare(ConstraintGraph graph) {
+        Collection<AnnotatedValue> values = t.getAnnotatedValues().values();
+        initialMasks = new HashMap<String, Long>();
+        for (AnnotatedValue av : values)
+            initialMasks.put(av.getIdentifier(), av.getAnnotationMask(t));
+
+        BitSet toSolve = new BitSet(graph.size());
+        try {
+            load();
+        } catch (IOException e) {
+            System.out.println("WARN: cannot read " + file + ", solving from scratch: " + e);
+            loaded = false;
+        }
+        if (!loaded) {
+            toSolve.set(0, graph.size());
+            return toSolve;
+        }
+
+        Set<String> seeds = new HashSet<String>();
+        Map<String, List<Constraint>> newConstraints = t.getMethodConstraints();
+        Map<String, Long> newHashes = t.getBodyHashes();
+        Set<String> methods = new HashSet<String>(newHashes.keySet());
+        methods.addAll(oldHashes.keySet());
+        methods.add(GLOBAL);
+        for (String sig : methods) {
+            Long oldHash = oldHashes.get(sig);
+            if (!sig.equals(GLOBAL) && oldHash != null && oldHash.equals(newHashes.get(sig)))
+                continue;
+            if (!sig.equals(GLOBAL))
+                dirtyMethods++;
+            Set<String> oldKeys = oldConstraints.get(sig);
+            if (oldKeys == null)
+                oldKeys = Collections.emptySet();
+            Set<String> newKeys = new HashSet<String>();
+            List<Constraint> cons = newConstraints.get(sig);
+            if (cons != null) {
+                for (Constraint c : cons) {
+                    String key = key(c);
+                    newKeys.add(key);
+                    if (!oldKeys.contains(key))
+                        addIdentifiers(c, seeds);
+                }
+            }
+            for (String key : oldKeys) {
+                if (!newKeys.contains(key))
+                    addIdentifiers(key, seeds);
+            }
+        }
+        for (AnnotatedValue av : values) {
+            long[] old = oldValues.get(av.getIdentifier());
+            if (old == null || old[0] != initialMasks.get(av.getIdentifier()))
+                seeds.add(av.getIdentifier());
+        }
+
+        // conflicts are reported again
+        for (String key : oldConflicts)
+            addIdentifiers(key, seeds);
+
+        int[] components = graph.connectedComponents();
+        BitSet dirty = new BitSet();
+        for (String id : seeds) {
+            int row = graph.rowOf(id);
+            if (row >= 0)
+                dirty.set(components[row]);
+        }
+        for (AnnotatedValue av : values) {
+            int row = graph.rowOf(av.getIdentifier());
+            if (row < 0 || dirty.get(components[row]))
+                continue;
+            av.setAnnotationMask(oldValues.get(av.getIdentifier())[1], t);
+        }
+        for (int i = 0; i < graph.size(); i++) {
+            if (dirty.get(components[graph.firstRowOf(i)]))
+                toSolve.set(i);
+        }
+        return toSolve;
+    }
+
+    private void addIdentifiers(Constraint c, Set<String> seeds) {
+        AnnotatedValue[] refs = {c.getLeft(), c.getRight()};
+        for (AnnotatedValue ref : refs) {
+            if (ref instanceof AdaptValue) {
+                seeds.add(((AdaptValue) ref).getContextValue().getIdentifier());
+                seeds.add(((AdaptValue) ref).getDeclValue().getIdentifier());
+            } else
+                seeds.add(ref.getIdentifier());
+        }
+    }
+
+    private void addIdentifiers(String key, Set<String> seeds) {
+        // see key(Constraint)
+        for (String ref : key.substring(2).split("\n")) {
+            if (ref.startsWith("f\t") || ref.startsWith("m\t")) {
+                String[] cd = ref.split("\t");
+                seeds.add(cd[1]);
+                seeds.add(cd[2]);
+            } else
+                seeds.add(ref.substring(2));
+        }
+    }
+
+    private static String key(Constraint c) {
+        return c.getKind() + "\n" + key(c.getLeft()) + "\n" + key(c.getRight());
+    }
+
+    private static String key(AnnotatedValue av) {
+        if (av instanceof AdaptValue) {
+            AdaptValue aav = (AdaptValue) av;
+            return (aav instanceof FieldAdaptValue ? "f\t" : "m\t")
+                + aav.getContextValue().getIdentifier() + "\t" + aav.getDeclValue().getIdentifier();
+        }
+        return "v\t" + av.getIdentifier();
+    }
+
+    /**
+     * Write the snapshot of this run
+     */
+    public void save(Set<Constraint> conflicts, long solveMillis) throws IOException {
+        QualifierUniverse u = t.getQualifierUniverse();
+        Map<String, List<Constraint>> methodConstraints = new HashMap<String, List<Constraint>>(t.getMethodConstraints());
+        Set<Constraint> owned = new HashSet<Constraint>();
+        for (List<Constraint> cons : methodConstraints.values())
+            owned.addAll(cons);
+        List<Constraint> global = new ArrayList<Constraint>();
+        for (Constraint c : t.getConstraints()) {
+            if (!owned.contains(c))
+                global.add(c);
+        }
+        methodConstraints.put(GLOBAL, global);
+
+        file.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeLong(loaded ? coldMillis : solveMillis);
+            Collection<AnnotatedValue> values = t.getAnnotatedValues().values();
+            long used = u.getSourceMask();
+            for (AnnotatedValue av : values)
+                used |= av.getAnnotationMask(t);
+            for (Long initial : initialMasks.values())
+                used |= initial;
+            out.writeInt(Long.bitCount(used));
+            for (long m = used; m != 0; m &= m - 1)
+                out.writeUTF(AnnotationUtils.fromBit(Long.numberOfTrailingZeros(m)).annotationType().getName());
+
+            out.writeInt(methodConstraints.size());
+            for (Map.Entry<String, List<Constraint>> e : methodConstraints.entrySet()) {
+                String sig = e.getKey();
+                Long hash = t.getBodyHashes().get(sig);
+                out.writeUTF(sig);
+                out.writeLong(hash == null ? 0L : hash);
+                out.writeInt(e.getValue().size());
+                for (Constraint c : e.getValue())
+                    TraceStore.writeString(out, key(c));
+            }
+
+            out.writeInt(values.size());
+            for (AnnotatedValue av : values) {
+                Long initial = initialMasks.get(av.getIdentifier());
+                TraceStore.writeString(out, av.getIdentifier());
+                out.writeLong(toPortable(initial == null ? av.getAnnotationMask(t) : initial, used));
+                out.writeLong(toPortable(av.getAnnotationMask(t), used));
+            }
+
+            out.writeInt(conflicts.size());
+            for (Constraint c : conflicts)
+                TraceStore.writeString(out, key(c));
+        } finally {
+            out.close();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.exists())
+            return;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC)
+                throw new IOException("not a snapshot");
+            coldMillis = in.readLong();
+            int n = in.readInt();
+            int[] bits = new int[n];
+            for (int i = 0; i < n; i++) {
+                Annotation anno = AnnotationUtils.fromName(in.readUTF());
+                bits[i] = (anno == null ? -1 : AnnotationUtils.bitOf(anno));
+            }
+
+            int methods = in.readInt();
+            for (int i = 0; i < methods; i++) {
+                String sig = in.readUTF();
+                oldHashes.put(sig, in.readLong());
+                int size = in.readInt();
+                Set<String> keys = new HashSet<String>();
+                for (int j = 0; j < size; j++)
+                    keys.add(TraceStore.readString(in));
+                oldConstraints.put(sig, keys);
+            }
+
+            int values = in.readInt();
+            for (int i = 0; i < values; i++) {
+                String id = TraceStore.readString(in);
+                long initial = fromPortable(in.readLong(), bits);
+                long solved = fromPortable(in.readLong(), bits);
+                oldValues.put(id, new long[] {initial, solved});
+            }
+
+            int conflicts = in.readInt();
+            for (int i = 0; i < conflicts; i++)
+                oldConflicts.add(TraceStore.readString(in));
+            loaded = true;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Masks are stored by the position of the qualifier among the used ones,
+     * since bits are assigned per run
+     */
+    private static long toPortable(long mask, long used) {
+        long ret = 0L;
+        int i = 0;
+        for (long m = used; m != 0; m &= m - 1, i++) {
+            if ((mask & Long.lowestOneBit(m)) != 0)
+                ret |= 1L << i;
+        }
+        return ret;
+    }
+
+    private static long fromPortable(long portable, int[] bits) {
+        long ret = 0L;
+        for (int i = 0; i < bits.length; i++) {
+            if ((portable & (1L << i)) != 0 && bits[i] >= 0)
+                ret |= 1L << bits[i];
+        }
+        return ret;
+    }
+}
@@ -1,6 +1,7 @@
 package edu.rpi;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.lang.annotation.*;
 import java.io.PrintStream;
@@ -17,10 +18,55 @@ import edu.rpi.ConstraintSolver.FailureStatus;
 
 public abstract class InferenceTransformer extends BodyTransformer {
 
-	private VisitorState visitorState = new VisitorState();
+	/**
+	 * Serialize constraint generation across all transformers, so that
+	 * value and constraint IDs are reproducible when bodies are processed
+	 * in a fixed order.
+	 */
+	public static final String OPTION_DETERMINISTIC = "deterministic";
+
+	private static final Object generationLock = new Object();
+
+	private final boolean deterministic = (System.getProperty(OPTION_DETERMINISTIC) != null);
 
+	private final ThreadLocal<VisitorState> visitorState = new ThreadLocal<VisitorState>() {
+		@Override
+		protected VisitorState initialValue() {
+			return new VisitorState();
+		}
+	};
+
+	/**
+	 * Constraints of each body are appended once the body is done
+	 */
 	private Set<Constraint> constraints = new LinkedHashSet<Constraint>();
 
+	/**
+	 * Every constraint generated so far, to drop duplicates without locking
+	 */
+	private Set<Constraint> seenConstraints = Collections
+			.newSetFromMap(new ConcurrentHashMap<Constraint, Boolean>());
+
+	/**
+	 * Body hash and constraints of each method, kept only for
+	 * InferenceSnapshot
+	 */
+	private final boolean keepSnapshot = InferenceSnapshot.isEnabled();
+
+	private Map<String, Long> bodyHashes = new ConcurrentHashMap<String, Long>();
+
+	private Map<String, List<Constraint>> methodConstraints = new ConcurrentHashMap<String, List<Constraint>>();
+
+	/**
+	 * Annotations of library methods and fields, opened on first use if
+	 * LibrarySummaryStore is enabled
+	 */
+	private final boolean useSummaries = LibrarySummaryStore.isEnabled();
+
+	private volatile boolean summariesOpened = false;
+
+	private LibrarySummaryStore summaries;
+
 	private Comparator<SootClass> comparator = new Comparator<SootClass>() {
 		public int compare(SootClass o1, SootClass o2) {
 			return o1.toString().compareTo(o2.toString());
@@ -29,13 +75,11 @@ public abstract class InferenceTransformer extends BodyTransformer {
 
 	private Comparator<Annotation> annoComparator;
 
-	private Set<SootClass> visitedClasses = new TreeSet<SootClass>(comparator);
+	private Set<SootClass> visitedClasses = Collections.synchronizedSet(new TreeSet<SootClass>(comparator));
 
 	private boolean needLocals = true;
 
-	private static Map<SootMethod, Map<String, AnnotatedValue>> locals = new HashMap<SootMethod, Map<String, AnnotatedValue>>();
-
-	private static Map<String, AnnotatedValue> adaptValues = new HashMap<String, AnnotatedValue>();
+	private static Map<SootMethod, Map<String, AnnotatedValue>> locals = new ConcurrentHashMap<SootMethod, Map<String, AnnotatedValue>>();
 
 	/**
 	 * This is actually static, because AnnotatedValueMap.v() always return the
@@ -45,14 +89,29 @@ public abstract class InferenceTransformer extends BodyTransformer {
 
 	private ViewpointAdapter vpa = getViewpointAdapter();
 
+	private QualifierUniverse universe;
+
 	public final static String CALLSITE_PREFIX = "callsite-";
 
 	public final static String FAKE_PREFIX = "fake-";
 
 	public final static String LIB_PREFIX = "lib-";
 
+	/**
+	 * The state of the body the current thread is transforming
+	 */
 	public VisitorState getVisitorState() {
-		return visitorState;
+		return visitorState.get();
+	}
+
+	/**
+	 * Identifier of the call site at the current unit. Call sites are keyed
+	 * by their position in the body, so that InferenceSnapshot finds the
+	 * same identifiers in the next run.
+	 */
+	protected String getCallSiteIdentifier() {
+		VisitorState state = getVisitorState();
+		return CALLSITE_PREFIX + state.getSootMethod().getSignature() + "<" + state.getUnitIndex() + ">";
 	}
 
 	protected abstract AnnotatedValue createFieldAdaptValue(AnnotatedValue context, AnnotatedValue decl,
@@ -80,9 +139,9 @@ public abstract class InferenceTransformer extends BodyTransformer {
 	// Author: Lindsey
 	// Threadfix variables
 
-	private HashMap<Integer, String> threadFixClassConnector = null;
+	private Map<Integer, String> threadFixClassConnector = new ConcurrentHashMap<>();
 
-	private HashMap<String, InvokeExpr> threadFixRunnables = null;
+	private Map<String, InvokeExpr> threadFixRunnables = new ConcurrentHashMap<>();
 
 	private String THREAD_CLASS = "java.lang.Thread";
 
@@ -104,11 +163,13 @@ public abstract class InferenceTransformer extends BodyTransformer {
 	protected AnnotatedValue getFieldAdaptValue(AnnotatedValue context, AnnotatedValue decl, AnnotatedValue assignTo) {
 		AnnotatedValue av = createFieldAdaptValue(context, decl, assignTo);
 		String identifier = av.getIdentifier();
+		VisitorState state = getVisitorState();
+		Map<String, AnnotatedValue> adaptValues = state.getAdaptValues();
 		AnnotatedValue ret = adaptValues.get(identifier);
 		if (ret == null) {
 			ret = av;
-			ret.setEnclosingClass(visitorState.getSootClass());
-			ret.setEnclosingMethod(visitorState.getSootMethod());
+			ret.setEnclosingClass(state.getSootClass());
+			ret.setEnclosingMethod(state.getSootMethod());
 			adaptValues.put(identifier, ret);
 		}
 		return ret;
@@ -118,47 +179,63 @@ public abstract class InferenceTransformer extends BodyTransformer {
 			AnnotatedValue assignTo) {
 		AnnotatedValue av = createMethodAdaptValue(receiver, decl, assignTo);
 		String identifier = av.getIdentifier();
+		VisitorState state = getVisitorState();
+		Map<String, AnnotatedValue> adaptValues = state.getAdaptValues();
 		AnnotatedValue ret = adaptValues.get(identifier);
 		if (ret == null) {
 			ret = av;
-			ret.setEnclosingClass(visitorState.getSootClass());
-			ret.setEnclosingMethod(visitorState.getSootMethod());
+			ret.setEnclosingClass(state.getSootClass());
+			ret.setEnclosingMethod(state.getSootMethod());
 			adaptValues.put(identifier, ret);
 		}
 		return ret;
 	}
 
+	/**
+	 * Publish av under identifier, unless another thread did so first, in
+	 * which case that value is returned
+	 */
+	private AnnotatedValue register(String identifier, AnnotatedValue av) {
+		AnnotatedValue prev = annotatedValues.putIfAbsent(identifier, av);
+		return (prev == null ? av : prev);
+	}
+
 	protected AnnotatedValue getAnnotatedValue(String identifier, Type type, Kind kind, Object v,
 			Set<Annotation> annos) {
 		AnnotatedValue ret;
+		VisitorState state = getVisitorState();
 		if (kind == Kind.LOCAL) {
-			SootMethod sm = visitorState.getSootMethod();
+			SootMethod sm = state.getSootMethod();
 			Map<String, AnnotatedValue> localMap = locals.get(sm);
 			if (localMap == null) {
 				localMap = new LinkedHashMap<String, AnnotatedValue>();
-				locals.put(sm, localMap);
+				Map<String, AnnotatedValue> prev = locals.putIfAbsent(sm, localMap);
+				if (prev != null)
+					localMap = prev;
 			}
-			ret = localMap.get(identifier);
-			if (ret == null) {
-				ret = annotatedValues.get(identifier);
+			synchronized (localMap) {
+				ret = localMap.get(identifier);
 				if (ret == null) {
-					ret = new AnnotatedValue(identifier, type, kind, v, annos);
-					ret.setEnclosingClass(visitorState.getSootClass());
-					ret.setEnclosingMethod(visitorState.getSootMethod());
-					if (kind != Kind.LITERAL)
-						annotatedValues.put(identifier, ret);
+					ret = annotatedValues.get(identifier);
+					if (ret == null) {
+						ret = new AnnotatedValue(identifier, type, kind, v, annos);
+						ret.setEnclosingClass(state.getSootClass());
+						ret.setEnclosingMethod(state.getSootMethod());
+						if (kind != Kind.LITERAL)
+							ret = register(identifier, ret);
+					}
+					if (v != null)
+						localMap.put(identifier, ret);
 				}
-				if (v != null)
-					localMap.put(identifier, ret);
 			}
 		} else {
 			ret = annotatedValues.get(identifier);
 			if (ret == null) {
 				ret = new AnnotatedValue(identifier, type, kind, v, annos);
-				ret.setEnclosingClass(visitorState.getSootClass());
-				ret.setEnclosingMethod(visitorState.getSootMethod());
+				ret.setEnclosingClass(state.getSootClass());
+				ret.setEnclosingMethod(state.getSootMethod());
 				if (kind != Kind.LITERAL)
-					annotatedValues.put(identifier, ret);
+					ret = register(identifier, ret);
 			}
 		}
 		if (!isAnnotated(ret)) {
@@ -180,14 +257,14 @@ public abstract class InferenceTransformer extends BodyTransformer {
 	}
 
 	protected AnnotatedValue getAnnotatedValue(Local local) {
-		SootMethod sm = visitorState.getSootMethod();
+		SootMethod sm = getVisitorState().getSootMethod();
 		String identifier = sm.getSignature() + "@" + local.toString();
 		AnnotatedValue ret = getAnnotatedValue(identifier, local.getType(), Kind.LOCAL, local);
 		return ret;
 	}
 
 	protected AnnotatedValue getAnnotatedValue(Constant c) {
-		SootClass sc = visitorState.getSootClass();
+		SootClass sc = getVisitorState().getSootClass();
 		String identifier = sc.getName() + "@" + c.toString();
 		AnnotatedValue ret = getAnnotatedValue(identifier, c.getType(), Kind.LITERAL, c);
 		return ret;
@@ -210,7 +287,7 @@ public abstract class InferenceTransformer extends BodyTransformer {
 			ret = new AnnotatedValue(identifier, field.getType(), Kind.FIELD, field);
 			ret.setEnclosingClass(field.getDeclaringClass());
 			ret.setEnclosingMethod(null);
-			annotatedValues.put(identifier, ret);
+			ret = register(identifier, ret);
 		}
 		if (!isAnnotated(ret)) {
 			ret.setAnnotations(getVisibilityTags(field, Kind.FIELD), this);
@@ -231,7 +308,7 @@ public abstract class InferenceTransformer extends BodyTransformer {
 			ret = new AnnotatedValue(identifier, sm.getParameterType(index), Kind.PARAMETER, sm);
 			ret.setEnclosingClass(sm.getDeclaringClass());
 			ret.setEnclosingMethod(sm);
-			annotatedValues.put(identifier, ret);
+			ret = register(identifier, ret);
 		}
 		if (!isAnnotated(ret)) {
 			ret.setAnnotations(getVisibilitParameterTags(sm, index), this);
@@ -248,7 +325,7 @@ public abstract class InferenceTransformer extends BodyTransformer {
 			ret = new AnnotatedValue(identifier, sm.getReturnType(), Kind.RETURN, sm);
 			ret.setEnclosingClass(sm.getDeclaringClass());
 			ret.setEnclosingMethod(sm);
-			annotatedValues.put(identifier, ret);
+			ret = register(identifier, ret);
 		}
 		if (!isAnnotated(ret)) {
 			ret.setAnnotations(getVisibilityTags(sm, Kind.RETURN), this);
@@ -266,7 +343,7 @@ public abstract class InferenceTransformer extends BodyTransformer {
 			// TODO: this can also be annotated
 			ret.setEnclosingClass(sm.getDeclaringClass());
 			ret.setEnclosingMethod(sm);
-			annotatedValues.put(identifier, ret);
+			ret = register(identifier, ret);
 		} // else ret.setKind(Kind.THIS);
 		if (!isAnnotated(ret)) {
 			ret.setAnnotations(getVisibilityTags(sm, Kind.THIS), this);
@@ -281,7 +358,7 @@ public abstract class InferenceTransformer extends BodyTransformer {
 		if (sub == sup)
 			return;
 		Constraint c = new SubtypeConstraint(sub, sup);
-		if (!constraints.add(c))
+		if (!addConstraint(c))
 			return;
 		addComponentConstraints(sub, sup);
 	}
@@ -290,11 +367,29 @@ public abstract class InferenceTransformer extends BodyTransformer {
 		if (sub.getKind() == Kind.LITERAL || sup.getKind() == Kind.LITERAL)
 			return;
 		Constraint c = new EqualityConstraint(sub, sup);
-		if (!constraints.add(c))
+		if (!addConstraint(c))
 			return;
 		addComponentConstraints(sub, sup);
 	}
 
+	/**
+	 * Return false if c is a duplicate. Inside a body c is buffered in the
+	 * visitor state and flushed to getConstraints() once the body is done.
+	 */
+	private boolean addConstraint(Constraint c) {
+		if (!seenConstraints.add(c))
+			return false;
+		List<Constraint> pending = getVisitorState().getPendingConstraints();
+		if (pending != null)
+			pending.add(c);
+		else {
+			synchronized (constraints) {
+				constraints.add(c);
+			}
+		}
+		return true;
+	}
+
 	private void addComponentConstraints(AnnotatedValue sub, AnnotatedValue sup) {
 		if (sub.getType() instanceof ArrayType && sup instanceof AdaptValue) {
 			sup = ((AdaptValue) sup).getDeclValue();
@@ -369,18 +464,12 @@ public abstract class InferenceTransformer extends BodyTransformer {
 	}
 
 	protected Set<Annotation> getVisibilitParameterTags(Host host, int index) {
-		Set<Annotation> annos = AnnotationUtils.createAnnotationSet();
-		VisibilityParameterAnnotationTag ptag = (VisibilityParameterAnnotationTag) host
-				.getTag("VisibilityParameterAnnotationTag");
-		VisibilityAnnotationTag vtag = null;
-		if (ptag != null && index < ptag.getVisibilityAnnotations().size()
-				&& (vtag = ptag.getVisibilityAnnotations().get(index)) != null && vtag.hasAnnotations()) {
-			for (AnnotationTag at : vtag.getAnnotations()) {
-				Annotation anno = AnnotationUtils.fromAnnotationTag(at);
-				if (anno != null)
-					annos.add(anno);
-			}
-		}
+		Set<Annotation> annos;
+		LibrarySummaryStore store = getLibrarySummaries(host);
+		if (store != null)
+			annos = store.getParameter((SootMethod) host, index);
+		else
+			annos = readVisibilityParameterTags(host, index);
 		Set<Annotation> srcAnnos = getSourceLevelQualifiers();
 		annos.retainAll(srcAnnos);
 		return annos;
@@ -410,6 +499,16 @@ public abstract class InferenceTransformer extends BodyTransformer {
 	 * Get all original annotations without filtering
 	 */
 	protected Set<Annotation> getRawVisibilityTags(Host host) {
+		LibrarySummaryStore store = getLibrarySummaries(host);
+		if (store != null)
+			return store.get(host);
+		return readVisibilityTags(host);
+	}
+
+	/**
+	 * The annotation tags of host, ignoring the library summaries
+	 */
+	static Set<Annotation> readVisibilityTags(Host host) {
 		Set<Annotation> annos = AnnotationUtils.createAnnotationSet();
 		VisibilityAnnotationTag vtag = (VisibilityAnnotationTag) host.getTag("VisibilityAnnotationTag");
 		if (vtag != null && vtag.hasAnnotations()) {
@@ -422,6 +521,63 @@ public abstract class InferenceTransformer extends BodyTransformer {
 		return annos;
 	}
 
+	/**
+	 * The annotation tags of a parameter of host, ignoring the library
+	 * summaries
+	 */
+	static Set<Annotation> readVisibilityParameterTags(Host host, int index) {
+		Set<Annotation> annos = AnnotationUtils.createAnnotationSet();
+		VisibilityParameterAnnotationTag ptag = (VisibilityParameterAnnotationTag) host
+				.getTag("VisibilityParameterAnnotationTag");
+		VisibilityAnnotationTag vtag = null;
+		if (ptag != null && index < ptag.getVisibilityAnnotations().size()
+				&& (vtag = ptag.getVisibilityAnnotations().get(index)) != null && vtag.hasAnnotations()) {
+			for (AnnotationTag at : vtag.getAnnotations()) {
+				Annotation anno = AnnotationUtils.fromAnnotationTag(at);
+				if (anno != null)
+					annos.add(anno);
+			}
+		}
+		return annos;
+	}
+
+	/**
+	 * The library summaries if they cover the class of host, otherwise null
+	 * and the annotations are read from the tags
+	 */
+	private LibrarySummaryStore getLibrarySummaries(Host host) {
+		if (!useSummaries)
+			return null;
+		SootClass sc;
+		if (host instanceof SootMethod)
+			sc = ((SootMethod) host).getDeclaringClass();
+		else if (host instanceof SootField)
+			sc = ((SootField) host).getDeclaringClass();
+		else
+			return null;
+		if (!sc.isLibraryClass())
+			return null;
+		if (!summariesOpened) {
+			synchronized (this) {
+				if (!summariesOpened) {
+					summaries = LibrarySummaryStore.open(getName());
+					summariesOpened = true;
+				}
+			}
+		}
+		if (summaries == null || !summaries.covers(sc.getName()))
+			return null;
+		return summaries;
+	}
+
+	/**
+	 * Qualifiers other than the source-level ones (and their This forms) that
+	 * are read from library annotations, kept by LibrarySummaryBuilder
+	 */
+	public Set<Annotation> getLibraryQualifiers() {
+		return Collections.emptySet();
+	}
+
 	public Set<Constraint> getConstraints() {
 		return constraints;
 	}
@@ -430,9 +586,28 @@ public abstract class InferenceTransformer extends BodyTransformer {
 		return annotatedValues;
 	}
 
+	/**
+	 * Method signature to the hash of its body, empty unless
+	 * InferenceSnapshot is enabled
+	 */
+	public Map<String, Long> getBodyHashes() {
+		return bodyHashes;
+	}
+
+	/**
+	 * Method signature to the constraints first generated in its body, empty
+	 * unless InferenceSnapshot is enabled
+	 */
+	public Map<String, List<Constraint>> getMethodConstraints() {
+		return methodConstraints;
+	}
+
 	public void clear() {
 		locals.clear();
 		constraints.clear();
+		seenConstraints.clear();
+		bodyHashes.clear();
+		methodConstraints.clear();
 		visitedClasses.clear();
 	}
 
@@ -490,6 +665,7 @@ public abstract class InferenceTransformer extends BodyTransformer {
 		}
 		// locals
 		if (needLocals) {
+			VisitorState visitorState = getVisitorState();
 			SootMethod prev = visitorState.getSootMethod();
 			visitorState.setSootMethod(sm);
 			try {
@@ -524,6 +700,15 @@ public abstract class InferenceTransformer extends BodyTransformer {
 		}
 	}
 
+	/**
+	 * The bit encoding of getSourceLevelQualifiers(), created on first use
+	 */
+	public QualifierUniverse getQualifierUniverse() {
+		if (universe == null)
+			universe = new QualifierUniverse(this);
+		return universe;
+	}
+
 	public Annotation adaptField(Annotation contextAnno, Annotation declAnno) {
 		// ViewpointAdapter vp = getViewpointAdapter();
 		return vpa.adaptField(contextAnno, declAnno);
@@ -641,9 +826,6 @@ public abstract class InferenceTransformer extends BodyTransformer {
 				&& !invokeMethod.getDeclaringClass().getName().equals(EXEC_SERVICE_CLASS)
 				&& !invokeMethod.getDeclaringClass().getName().equals(EXEC_CLASS)) {
 			// System.out.println("THREADFIX: got runnable a constructor!");
-			if (threadFixRunnables == null) {
-				threadFixRunnables = new HashMap<>();
-			}
 			threadFixRunnables.put(invokeMethod.getDeclaringClass().getName(), v);
 		}
 		// for Executor1
@@ -718,9 +900,6 @@ public abstract class InferenceTransformer extends BodyTransformer {
 					// decClass.hashCode());
 					// System.out.println("\t runnable class = " +
 					// arg.getType());
-					if (threadFixClassConnector == null) {
-						threadFixClassConnector = new HashMap<>();
-					}
 					// connect using hash code
 					threadFixClassConnector.put(decClass.hashCode(), arg.getType().toString());
 				}
@@ -737,27 +916,56 @@ public abstract class InferenceTransformer extends BodyTransformer {
 		}
 	}
 
+	/**
+	 * Bodies may be transformed concurrently: the visitor state is per
+	 * thread and the constraints of a body are appended to getConstraints()
+	 * in one go. With OPTION_DETERMINISTIC bodies are processed one at a
+	 * time.
+	 */
 	@Override
 	protected void internalTransform(final Body b, String phaseName, @SuppressWarnings("rawtypes") Map options) {
-		synchronized (this) {
-			SootMethod sm = b.getMethod();
-			SootClass sc = (sm == null ? null : sm.getDeclaringClass());
-			visitorState.setSootMethod(sm);
-			visitorState.setSootClass(sc);
+		if (deterministic) {
+			synchronized (generationLock) {
+				transformBody(b);
+			}
+		} else
+			transformBody(b);
+	}
+
+	private void transformBody(Body b) {
+		VisitorState visitorState = getVisitorState();
+		SootMethod sm = b.getMethod();
+		SootClass sc = (sm == null ? null : sm.getDeclaringClass());
+		visitorState.setSootMethod(sm);
+		visitorState.setSootClass(sc);
+		visitorState.setPendingConstraints(new ArrayList<Constraint>());
+		try {
 			visitedClasses.add(sc);
 			processMethod(sm);
 			InferenceVisitor visitor = getInferenceVisitor(this);
 
 			final PatchingChain<Unit> units = b.getUnits();
+			int index = 0;
 			for (Iterator<Unit> iter = units.snapshotIterator(); iter.hasNext();) {
 				final Unit u = iter.next();
 				visitorState.setUnit(u);
+				visitorState.setUnitIndex(index++);
 				u.apply(visitor);
 			}
+			synchronized (constraints) {
+				constraints.addAll(visitorState.getPendingConstraints());
+			}
+			if (keepSnapshot && sm != null) {
+				bodyHashes.put(sm.getSignature(), InferenceSnapshot.hash(b));
+				methodConstraints.put(sm.getSignature(), visitorState.getPendingConstraints());
+			}
+		} finally {
+			// the thread goes on with other bodies even if this one failed
+			visitorState.setPendingConstraints(null);
 			visitorState.setSootMethod(null);
 			visitorState.setSootClass(null);
 			visitorState.setUnit(null);
-			adaptValues.clear();
+			visitorState.getAdaptValues().clear();
 		}
 	}
 
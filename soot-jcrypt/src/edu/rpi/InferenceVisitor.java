@@ -31,8 +31,8 @@ public class InferenceVisitor extends AbstractStmtSwitch {
     @Override
     public void caseInvokeStmt(InvokeStmt stmt) {
     	// Edit by Yao: change Fake prefix to Callsite prefix
-        AnnotatedValue fakeLhs = t.getAnnotatedValue(InferenceTransformer.CALLSITE_PREFIX + t.getVisitorState().getSootMethod().getSignature()
-                + "<" + stmt.hashCode() + ">", VoidType.v(), Kind.LOCAL, stmt.getInvokeExpr());
+        AnnotatedValue fakeLhs = t.getAnnotatedValue(t.getCallSiteIdentifier(), VoidType.v(), Kind.LOCAL,
+                stmt.getInvokeExpr());
         stmt.getInvokeExpr().apply(new ValueVisitor(null, fakeLhs));
     }
 
@@ -0,0 +1,112 @@
+package edu.rpi;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.options.Options;
+
+import edu.rpi.jcrypt.JCryptTransformer;
+import edu.rpi.reim.ReimTransformer;
+import edu.rpi.sflow.SFlowTransformer;
+
+/**
+ * Builds the LibrarySummaryStore of Reim, SFlow and JCrypt from annotated
+ * library stubs, e.g. jdk/reim/jdk.jar:
+ *
+ *   java edu.rpi.LibrarySummaryBuilder OUTPUT_DIR STUBS.jar...
+ *
+ * Every class of the jars is covered. Only the annotations an analysis reads
+ * are kept: its source-level qualifiers, their This forms and its
+ * library qualifiers.
+ */
+public class LibrarySummaryBuilder {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: LibrarySummaryBuilder OUTPUT_DIR STUBS.jar...");
+            System.exit(1);
+        }
+        long startTime = System.currentTimeMillis();
+        File dir = new File(args[0]);
+        dir.mkdirs();
+
+        List<String> jars = Arrays.asList(args).subList(1, args.length);
+        StringBuilder cp = new StringBuilder();
+        for (String jar : jars)
+            cp.append(cp.length() == 0 ? "" : File.pathSeparator).append(jar);
+        Options.v().set_soot_classpath(cp.toString());
+        Options.v().set_allow_phantom_refs(true);
+
+        Set<String> classNames = new TreeSet<String>();
+        for (String jar : jars) {
+            ZipFile zip = new ZipFile(jar);
+            try {
+                for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                    String name = e.nextElement().getName();
+                    if (name.endsWith(".class"))
+                        classNames.add(name.substring(0, name.length() - 6).replace('/', '.'));
+                }
+            } finally {
+                zip.close();
+            }
+        }
+        List<SootClass> classes = new ArrayList<SootClass>();
+        for (String name : classNames) {
+            SootClass sc = Scene.v().forceResolve(name, SootClass.SIGNATURES);
+            if (!sc.isPhantom())
+                classes.add(sc);
+        }
+        System.out.println("INFO: Loaded " + classes.size() + " library classes in "
+                + (System.currentTimeMillis() - startTime) + " ms");
+
+        InferenceTransformer[] transformers = { new ReimTransformer(), new SFlowTransformer(),
+                new JCryptTransformer() };
+        for (InferenceTransformer t : transformers) {
+            Set<String> kept = new HashSet<String>();
+            Set<Annotation> quals = AnnotationUtils.createAnnotationSet();
+            quals.addAll(t.getSourceLevelQualifiers());
+            quals.addAll(t.getLibraryQualifiers());
+            for (Annotation anno : quals) {
+                kept.add(anno.annotationType().getCanonicalName());
+                kept.add(anno.annotationType().getCanonicalName() + "This");
+            }
+
+            List<String> covered = new ArrayList<String>();
+            Map<String, Set<Annotation>> records = new HashMap<String, Set<Annotation>>();
+            for (SootClass sc : classes) {
+                covered.add(sc.getName());
+                for (SootField field : sc.getFields())
+                    records.put(field.getSignature(), retain(InferenceTransformer.readVisibilityTags(field), kept));
+                for (SootMethod sm : sc.getMethods()) {
+                    String sig = sm.getSignature();
+                    records.put(sig, retain(InferenceTransformer.readVisibilityTags(sm), kept));
+                    for (int i = 0; i < sm.getParameterCount(); i++)
+                        records.put(sig + "@parameter" + i,
+                                retain(InferenceTransformer.readVisibilityParameterTags(sm, i), kept));
+                }
+            }
+            File file = LibrarySummaryStore.getFile(dir.getPath(), t.getName());
+            LibrarySummaryStore.write(file, t.getName(), covered, records);
+            System.out.println("INFO: Wrote library summaries of " + t.getName() + " to " + file + " ("
+                    + file.length() + " bytes)");
+        }
+        System.out.println("INFO: Built library summaries in " + (System.currentTimeMillis() - startTime)
+                + " ms");
+    }
+
+    private static Set<Annotation> retain(Set<Annotation> annos, Set<String> names) {
+        for (Iterator<Annotation> it = annos.iterator(); it.hasNext();) {
+            if (!names.contains(it.next().annotationType().getCanonicalName()))
+                it.remove();
+        }
+        return annos;
+    }
+}
@@ -0,0 +1,302 @@
+package edu.rpi;
+
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import soot.SootField;
+import soot.SootMethod;
+import soot.tagkit.Host;
+
+/**
+ * The qualifiers declared on library methods and fields for one analysis,
+ * extracted from the annotated stubs by LibrarySummaryBuilder, so that the
+ * library on the class path need not be annotated (e.g. a plain
+ * android.jar). With -DlibrarySummaries=DIR each transformer reads
+ * DIR/NAME.summaries instead of the annotation tags of the library classes
+ * the store covers. Classes the stubs do not have are not covered and get
+ * the defaults of unannotated library code, so results match a run on the
+ * stubs only where the class path agrees with them.
+ *
+ * The file is memory-mapped and read lazily: the header holds the names of
+ * the qualifiers and of the covered classes, followed by a sorted offset
+ * table and one record (key, qualifier mask) per annotated method, parameter
+ * or field. Keys are the Soot signature of the method or field, and
+ * METHOD@parameterN for parameters. A covered host without a record has no
+ * annotations. Masks index the qualifier names of the header, not
+ * AnnotationUtils bits, which differ between runs.
+ */
+public class LibrarySummaryStore {
+
+    /** Directory of the summaries, one file per analysis */
+    public static final String OPTION_SUMMARY_DIR = "librarySummaries";
+
+    public static final String SUFFIX = ".summaries";
+
+    private static final int MAGIC = 0x52454953;
+
+    private final File file;
+
+    private final Annotation[] qualifiers;
+
+    private final Set<String> classes;
+
+    private final MappedByteBuffer buffer;
+
+    /** Position of the offset table */
+    private final int index;
+
+    private final int size;
+
+    /**
+     * Decoded records of the hosts looked up so far: the annotations of a
+     * field, or of a method followed by those of its parameters
+     */
+    private final Map<Host, Annotation[][]> decoded = new ConcurrentHashMap<Host, Annotation[][]>();
+
+    public static String getSummaryDir() {
+        return System.getProperty(OPTION_SUMMARY_DIR);
+    }
+
+    public static boolean isEnabled() {
+        return getSummaryDir() != null;
+    }
+
+    public static File getFile(String dir, String analysis) {
+        return new File(dir, analysis + SUFFIX);
+    }
+
+    /**
+     * The store of the given analysis in the summary directory, or null if
+     * there is none
+     */
+    public static LibrarySummaryStore open(String analysis) {
+        File file = getFile(getSummaryDir(), analysis);
+        if (!file.isFile()) {
+            System.out.println("WARN: no library summaries at " + file + ", reading annotations");
+            return null;
+        }
+        try {
+            LibrarySummaryStore store = new LibrarySummaryStore(file, analysis);
+            System.out.println("INFO: Loaded library summaries of " + store.classes.size() + " classes ("
+                    + store.size + " annotated hosts) from " + file);
+            return store;
+        } catch (IOException e) {
+            System.out.println("WARN: cannot read " + file + ", reading annotations: " + e);
+            return null;
+        }
+    }
+
+    private LibrarySummaryStore(File file, String analysis) throws IOException {
+        this.file = file;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("not a library summary file");
+        String name = readString(buffer);
+        if (!name.equals(analysis))
+            throw new IOException("summaries of " + name + ", not " + analysis);
+        qualifiers = new Annotation[buffer.getInt()];
+        for (int i = 0; i < qualifiers.length; i++) {
+            String qual = readString(buffer);
+            if ((qualifiers[i] = AnnotationUtils.fromName(qual)) == null)
+                throw new IOException("unknown qualifier " + qual);
+        }
+        int classCount = buffer.getInt();
+        classes = new HashSet<String>(classCount * 2);
+        for (int i = 0; i < classCount; i++)
+            classes.add(readString(buffer));
+        size = buffer.getInt();
+        index = buffer.position();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Whether the store has the annotations of the members of the class
+     */
+    public boolean covers(String className) {
+        return classes.contains(className);
+    }
+
+    /**
+     * The annotations of a method or field, empty if there is no record
+     */
+    public Set<Annotation> get(Host host) {
+        return toSet(decode(host)[0]);
+    }
+
+    /**
+     * The annotations of a parameter of method, empty if there is no record
+     */
+    public Set<Annotation> getParameter(SootMethod method, int index) {
+        Annotation[][] annos = decode(method);
+        return toSet(index + 1 < annos.length ? annos[index + 1] : null);
+    }
+
+    private static Set<Annotation> toSet(Annotation[] annos) {
+        Set<Annotation> set = AnnotationUtils.createAnnotationSet();
+        if (annos != null)
+            Collections.addAll(set, annos);
+        return set;
+    }
+
+    /**
+     * Building signatures is not cheap, so all records of a method are looked
+     * up at once
+     */
+    private Annotation[][] decode(Host host) {
+        Annotation[][] ret = decoded.get(host);
+        if (ret != null)
+            return ret;
+        if (host instanceof SootMethod) {
+            SootMethod sm = (SootMethod) host;
+            String sig = sm.getSignature();
+            ret = new Annotation[sm.getParameterCount() + 1][];
+            ret[0] = lookup(sig);
+            for (int i = 0; i < sm.getParameterCount(); i++)
+                ret[i + 1] = lookup(sig + "@parameter" + i);
+        } else
+            ret = new Annotation[][] { lookup(((SootField) host).getSignature()) };
+        decoded.put(host, ret);
+        return ret;
+    }
+
+    /**
+     * Binary search for the record of key, null if there is none. Only the
+     * absolute getters of the buffer are used, so lookups from several
+     * threads do not interfere.
+     */
+    private Annotation[] lookup(String key) {
+        byte[] bytes = toBytes(key);
+        int lo = 0, hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int record = buffer.getInt(index + mid * 4);
+            int cmp = compare(record, bytes);
+            if (cmp < 0)
+                lo = mid + 1;
+            else if (cmp > 0)
+                hi = mid - 1;
+            else {
+                long mask = buffer.getLong(record + 4 + bytes.length);
+                Annotation[] annos = new Annotation[Long.bitCount(mask)];
+                int i = 0;
+                for (long m = mask; m != 0; m &= m - 1)
+                    annos[i++] = qualifiers[Long.numberOfTrailingZeros(m)];
+                return annos;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compare the key of the record at position with key, byte by byte
+     */
+    private int compare(int record, byte[] key) {
+        int len = buffer.getInt(record);
+        int n = Math.min(len, key.length);
+        for (int i = 0; i < n; i++) {
+            int c = (buffer.get(record + 4 + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0)
+                return c;
+        }
+        return len - key.length;
+    }
+
+    /**
+     * Write the summaries of analysis. Records with no annotations may be
+     * left out, as long as the class of their host is in classes.
+     */
+    public static void write(File file, String analysis, Collection<String> classes,
+            Map<String, Set<Annotation>> records) throws IOException {
+        List<String> names = new ArrayList<String>();
+        Map<String, Integer> bits = new HashMap<String, Integer>();
+        SortedMap<byte[], Long> sorted = new TreeMap<byte[], Long>(new Comparator<byte[]>() {
+            public int compare(byte[] a, byte[] b) {
+                int n = Math.min(a.length, b.length);
+                for (int i = 0; i < n; i++) {
+                    int c = (a[i] & 0xff) - (b[i] & 0xff);
+                    if (c != 0)
+                        return c;
+                }
+                return a.length - b.length;
+            }
+        });
+        for (Map.Entry<String, Set<Annotation>> entry : records.entrySet()) {
+            if (entry.getValue().isEmpty())
+                continue;
+            long mask = 0;
+            for (Annotation anno : entry.getValue()) {
+                String name = anno.annotationType().getCanonicalName();
+                Integer bit = bits.get(name);
+                if (bit == null) {
+                    if (names.size() == AnnotationUtils.MAX_QUALIFIERS)
+                        throw new IOException("more than " + AnnotationUtils.MAX_QUALIFIERS + " qualifiers");
+                    bit = names.size();
+                    bits.put(name, bit);
+                    names.add(name);
+                }
+                mask |= 1L << bit;
+            }
+            sorted.put(toBytes(entry.getKey()), mask);
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        TraceStore.writeString(out, analysis);
+        out.writeInt(names.size());
+        for (String name : names)
+            TraceStore.writeString(out, name);
+        out.writeInt(classes.size());
+        for (String c : classes)
+            TraceStore.writeString(out, c);
+        out.writeInt(sorted.size());
+        out.flush();
+
+        int offset = header.size() + sorted.size() * 4;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            header.writeTo(out);
+            for (byte[] key : sorted.keySet()) {
+                out.writeInt(offset);
+                offset += 4 + key.length + 8;
+            }
+            for (Map.Entry<byte[], Long> entry : sorted.entrySet()) {
+                out.writeInt(entry.getKey().length);
+                out.write(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String readString(ByteBuffer buf) throws IOException {
+        int len = buf.getInt();
+        byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
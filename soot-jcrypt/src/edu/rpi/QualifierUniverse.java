@@ -0,0 +1,168 @@
+package edu.rpi;
+
+import java.lang.annotation.*;
+import java.util.*;
+
+/**
+ * The source-level qualifiers of one InferenceTransformer encoded as bits.
+ * Annotation sets become {@code long} masks (see AnnotationUtils.bitOf), and
+ * subtyping and viewpoint adaptation become table lookups, so the solver
+ * hot path does not allocate or compare TreeSets.
+ */
+public class QualifierUniverse {
+
+    private static final int UNKNOWN = -2;
+
+    private static final int NONE = -1;
+
+    private final InferenceTransformer t;
+
+    private final long sourceMask;
+
+    /** supertypeMasks[i]: qualifiers that qualifier i is a subtype of */
+    private final long[] supertypeMasks = new long[AnnotationUtils.MAX_QUALIFIERS];
+
+    /** adapted[context][decl]: bit of the adapted qualifier, NONE or UNKNOWN */
+    private final int[][] fieldAdapted;
+
+    private final int[][] methodAdapted;
+
+    public QualifierUniverse(InferenceTransformer t) {
+        this.t = t;
+        this.sourceMask = AnnotationUtils.toMask(t.getSourceLevelQualifiers());
+        for (long m = sourceMask; m != 0; m &= m - 1)
+            supertypes(Long.numberOfTrailingZeros(m));
+        fieldAdapted = newAdaptTable();
+        methodAdapted = newAdaptTable();
+    }
+
+    private static int[][] newAdaptTable() {
+        int[][] table = new int[AnnotationUtils.MAX_QUALIFIERS][AnnotationUtils.MAX_QUALIFIERS];
+        for (int[] row : table)
+            Arrays.fill(row, UNKNOWN);
+        return table;
+    }
+
+    public long getSourceMask() {
+        return sourceMask;
+    }
+
+    public long toMask(Set<Annotation> annos) {
+        return AnnotationUtils.toMask(annos) & sourceMask;
+    }
+
+    public Set<Annotation> toSet(long mask) {
+        return AnnotationUtils.fromMask(mask);
+    }
+
+    private long supertypes(int bit) {
+        long mask = supertypeMasks[bit];
+        if (mask == 0L) {
+            mask = AnnotationUtils.supertypeMask(bit);
+            supertypeMasks[bit] = mask;
+        }
+        return mask;
+    }
+
+    /**
+     * Keep the qualifiers in sub that are subtype of some qualifier in sup
+     */
+    public long feasibleSubtypes(long sub, long sup) {
+        long ret = 0L;
+        for (long m = sub; m != 0; m &= m - 1) {
+            int i = Long.numberOfTrailingZeros(m);
+            if ((supertypes(i) & sup) != 0)
+                ret |= 1L << i;
+        }
+        return ret;
+    }
+
+    /**
+     * Keep the qualifiers in sup that are supertype of some qualifier in sub
+     */
+    public long feasibleSupertypes(long sub, long sup) {
+        long sups = 0L;
+        for (long m = sub; m != 0; m &= m - 1)
+            sups |= supertypes(Long.numberOfTrailingZeros(m));
+        return sup & sups;
+    }
+
+    public int adaptField(int context, int decl) {
+        return adapt(fieldAdapted, context, decl, true);
+    }
+
+    public int adaptMethod(int context, int decl) {
+        return adapt(methodAdapted, context, decl, false);
+    }
+
+    private int adapt(int[][] table, int context, int decl, boolean isField) {
+        int ret = table[context][decl];
+        if (ret == UNKNOWN) {
+            Annotation c = AnnotationUtils.fromBit(context);
+            Annotation d = AnnotationUtils.fromBit(decl);
+            Annotation out = (isField ? t.adaptField(c, d) : t.adaptMethod(c, d));
+            ret = (out == null ? NONE : AnnotationUtils.bitOf(out));
+            table[context][decl] = ret;
+        }
+        return ret;
+    }
+
+    public long adaptFieldMask(long context, long decl) {
+        return adaptMask(fieldAdapted, context, decl, true);
+    }
+
+    public long adaptMethodMask(long context, long decl) {
+        return adaptMask(methodAdapted, context, decl, false);
+    }
+
+    private long adaptMask(int[][] table, long context, long decl, boolean isField) {
+        long ret = 0L;
+        for (long d = decl; d != 0; d &= d - 1) {
+            int j = Long.numberOfTrailingZeros(d);
+            for (long c = context; c != 0; c &= c - 1) {
+                int out = adapt(table, Long.numberOfTrailingZeros(c), j, isField);
+                if (out >= 0)
+                    ret |= 1L << out;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Keep the context qualifiers that adapt some decl qualifier into out
+     */
+    public long feasibleContexts(long context, long decl, long out, boolean isField) {
+        int[][] table = (isField ? fieldAdapted : methodAdapted);
+        long ret = 0L;
+        for (long c = context; c != 0; c &= c - 1) {
+            int i = Long.numberOfTrailingZeros(c);
+            for (long d = decl; d != 0; d &= d - 1) {
+                int adapted = adapt(table, i, Long.numberOfTrailingZeros(d), isField);
+                if (adapted >= 0 && (out & (1L << adapted)) != 0) {
+                    ret |= 1L << i;
+                    break;
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Keep the decl qualifiers that some context qualifier adapts into out
+     */
+    public long feasibleDecls(long context, long decl, long out, boolean isField) {
+        int[][] table = (isField ? fieldAdapted : methodAdapted);
+        long ret = 0L;
+        for (long d = decl; d != 0; d &= d - 1) {
+            int j = Long.numberOfTrailingZeros(d);
+            for (long c = context; c != 0; c &= c - 1) {
+                int adapted = adapt(table, Long.numberOfTrailingZeros(c), j, isField);
+                if (adapted >= 0 && (out & (1L << adapted)) != 0) {
+                    ret |= 1L << j;
+                    break;
+                }
+            }
+        }
+        return ret;
+    }
+}
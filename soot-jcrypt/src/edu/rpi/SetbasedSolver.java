@@ -13,9 +13,18 @@ import edu.rpi.AnnotatedValue.*;
 
 public class SetbasedSolver extends AbstractConstraintSolver {
 
-    private Set<Constraint> worklist = new LinkedHashSet<Constraint>();
+    /**
+     * Solve the constraints in plain FIFO order instead of component by
+     * component (see ConstraintGraph.rankBySCC)
+     */
+    public static final String OPTION_NO_SCC = "noSCC";
 
-	private Map<String, Set<Constraint>> refToConstraints = new HashMap<String, Set<Constraint>>(); 
+    private boolean useSCC = (System.getProperty(OPTION_NO_SCC) == null);
+
+    /** Constraints by the ids of the values they refer to */
+    private ConstraintGraph graph;
+
+    private ConstraintWorklist worklist;
 
     public SetbasedSolver(InferenceTransformer t) {
         super(t);
@@ -25,71 +34,43 @@ public class SetbasedSolver extends AbstractConstraintSolver {
         super(t, b);
     }
 
-	private void buildRefToConstraintMapping(Constraint c) {
-        AnnotatedValue left = null, right = null; 
-        if (c instanceof SubtypeConstraint
-                || c instanceof EqualityConstraint
-                || c instanceof UnequalityConstraint) {
-            left = c.getLeft();
-            right = c.getRight();
-        }
-        if (left != null && right != null) {
-            AnnotatedValue[] refs = {left, right};
-            for (AnnotatedValue ref : refs) {
-                List<AnnotatedValue> avs = new ArrayList<AnnotatedValue>(2);
-                if (ref instanceof AdaptValue) {
-                    AnnotatedValue decl = ((AdaptValue) ref).getDeclValue();
-                    AnnotatedValue context = ((AdaptValue) ref).getContextValue();
-                    avs.add(decl);
-                    avs.add(context);
-                } else
-                    avs.add(ref);
-                for (AnnotatedValue av : avs) {
-                    Set<Constraint> set = refToConstraints.get(av.getIdentifier());
-                    if (set == null) {
-                        set = new LinkedHashSet<Constraint>();
-                        refToConstraints.put(av.getIdentifier(), set);
-                    }
-                    set.add(c);
-                }
-            }
-        }
-    }
-	
-	private void buildRefToConstraintMapping(Set<Constraint> cons) {
-		for (Constraint c : cons) {
-            buildRefToConstraintMapping(c);
-		}
-	}
-
-	protected boolean setAnnotations(AnnotatedValue av, Set<Annotation> annos) 
+	@Override
+	protected boolean setAnnotationMask(AnnotatedValue av, long annos) 
 			throws SolverException {
-        Set<Annotation> oldAnnos = av.getAnnotations(t);
 		if (av instanceof AdaptValue)
-			return setAnnotations((AdaptValue) av, annos);
-		if (oldAnnos.equals(annos))
+			return setAnnotationMask((AdaptValue) av, annos);
+		if (av.getAnnotationMask(t) == annos)
 			return false;
 
-        Set<Constraint> relatedConstraints = refToConstraints.get(av.getIdentifier());
-        if (relatedConstraints != null) {
-            worklist.addAll(relatedConstraints);
-        }
+        graph.addRelated(av, worklist);
 
-        return super.setAnnotations(av, annos);
+        return super.setAnnotationMask(av, annos);
     }
 
     @Override
     protected Set<Constraint> solveImpl() {
+        long start = System.currentTimeMillis();
         Set<Constraint> constraints = t.getConstraints();
         info(this.getClass().getSimpleName(), "Solving Reim constraints:  " + constraints.size() + " in total...");
 		Set<Constraint> warnConstraints = new HashSet<Constraint>();
-        buildRefToConstraintMapping(constraints);
-        worklist.addAll(constraints);
+        graph = new ConstraintGraph(constraints);
+        if (useSCC)
+            worklist = new ConstraintWorklist(graph.rankBySCC(t.isStrictSubtyping()));
+        else
+            worklist = new ConstraintWorklist(graph.size());
+        InferenceSnapshot snapshot = null;
+        BitSet toSolve = null;
+        if (InferenceSnapshot.isEnabled()) {
+            snapshot = new InferenceSnapshot(t);
+            toSolve = snapshot.prepare(graph);
+        }
+        for (int i = 0; i < graph.size(); i++) {
+            if (toSolve == null || toSolve.get(i))
+                worklist.add(i);
+        }
         Set<Constraint> conflictConstraints = new LinkedHashSet<Constraint>();
         while(!worklist.isEmpty()) {
-            Iterator<Constraint> it = worklist.iterator();
-            Constraint c = it.next();
-            it.remove();
+            Constraint c = graph.get(worklist.poll());
             try {
                 handleConstraint(c);
             } catch (SolverException e) {
@@ -104,9 +85,25 @@ public class SetbasedSolver extends AbstractConstraintSolver {
                 }
             }
         }
-        refToConstraints.clear();
+        graph = null;
+        worklist = null;
         info(this.getClass().getSimpleName(), "Finish solving Reim constraints. " + conflictConstraints.size() + " error(s)");
 
+        if (snapshot != null) {
+            long millis = System.currentTimeMillis() - start;
+            if (snapshot.isWarm())
+                System.out.println("INFO: warm solve " + millis + " ms vs cold " + snapshot.getColdMillis()
+                        + " ms; " + toSolve.cardinality() + " of " + constraints.size()
+                        + " constraints re-solved, " + snapshot.getDirtyMethods() + " dirty methods");
+            else
+                System.out.println("INFO: cold solve " + millis + " ms, no snapshot yet");
+            try {
+                snapshot.save(conflictConstraints, millis);
+            } catch (java.io.IOException e) {
+                System.out.println("WARN: cannot write the snapshot: " + e);
+            }
+        }
+
         return conflictConstraints;
     }
 }
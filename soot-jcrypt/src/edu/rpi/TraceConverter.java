@@ -0,0 +1,276 @@
+package edu.rpi;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Offline reader for the files of TraceStore.
+ *
+ * <pre>
+ * TraceConverter PREFIX            writes PREFIX-traces.sql
+ * TraceConverter PREFIX -db        also loads it into PREFIX-traces.sqlite
+ * TraceConverter PREFIX -value ID  prints the updates of value ID
+ * </pre>
+ *
+ * PREFIX is the output directory plus the transformer name, e.g.
+ * sootOutput/reim. The script is the one the solvers used to write while
+ * solving.
+ */
+public class TraceConverter {
+
+    private static final String VALUE_TABLE_NAME = "avalues";
+
+    private static final String CONSTRAINT_TABLE_NAME = "constraints";
+
+    private static final String TRACE_TABLE_NAME = "traces";
+
+    private static final String CREATE_VALUE_TABLE = "create table " + VALUE_TABLE_NAME + "("
+        + "id integer, "
+        + "identifier string, "
+        + "annos string, "
+        + "type string, "
+        + "kind string, "
+        + "value string, "
+        + "class string, "
+        + "name string, "
+        + "method string" + ");\n"
+        + "create index " + VALUE_TABLE_NAME + "_idx "
+        + "on " + VALUE_TABLE_NAME + "(id);";
+
+    /**
+     * kind = 0: subkind
+     * kind = 1: equality
+     * kind = 2: inequality
+     */
+    private static final String CREATE_CONSTRAINT_TABLE = "create table " + CONSTRAINT_TABLE_NAME + "("
+        + "id integer, "
+        + "str string, "
+        + "left_id integer, "
+        + "right_id integer, "
+        + "cause_1 integer, "
+        + "cause_2 integer, "
+        + "cause_3 integer, "
+        + "kind integer" + ");\n"
+        + "create index " + CONSTRAINT_TABLE_NAME + "_idx "
+        + "on " + CONSTRAINT_TABLE_NAME + "(id);";
+
+    private static final String CREATE_TRACE_TABLE = "create table " + TRACE_TABLE_NAME + "("
+        + "value_id integer,"
+        + "old string,"
+        + "new string,"
+        + "constraint_id integer" + ");\n"
+        + "create index " + TRACE_TABLE_NAME + "_idx "
+        + "on " + TRACE_TABLE_NAME + "(value_id);";
+
+    private final String prefix;
+
+    private final Map<Integer, String> qualifiers = new HashMap<Integer, String>();
+
+    private final Map<Long, String> maskStrings = new HashMap<Long, String>();
+
+    public TraceConverter(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: TraceConverter PREFIX [-db | -value ID]");
+            return;
+        }
+        TraceConverter tc = new TraceConverter(args[0]);
+        if (args.length > 2 && args[1].equals("-value")) {
+            tc.printValue(Integer.parseInt(args[2]), System.out);
+            return;
+        }
+        String script = args[0] + "-traces.sql";
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(script)));
+        try {
+            tc.writeScript(out);
+        } finally {
+            out.close();
+        }
+        System.out.println("INFO: wrote " + script);
+        if (args.length > 1 && args[1].equals("-db")) {
+            String db = args[0] + "-traces.sqlite";
+            new File(db).delete();
+            Process p;
+            try {
+                p = new ProcessBuilder("sqlite3", db)
+                    .redirectInput(new File(script))
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot run sqlite3, load " + script + " manually", e);
+            }
+            if (p.waitFor() != 0)
+                throw new RuntimeException("sqlite3 failed on " + script);
+            System.out.println("INFO: wrote " + db);
+        }
+    }
+
+    /**
+     * Write the sql script: the tables, the traces in the order they
+     * happened, then the values and constraints
+     */
+    public void writeScript(final PrintStream out) throws IOException {
+        out.println(CREATE_VALUE_TABLE);
+        out.println(CREATE_CONSTRAINT_TABLE);
+        out.println(CREATE_TRACE_TABLE);
+
+        readQualifiers();
+        DataInputStream traces = openTraces();
+        try {
+            ByteBuffer record = ByteBuffer.allocate(TraceStore.RECORD_SIZE);
+            while (readRecord(traces, record)) {
+                int avId = record.getInt();
+                String oldAnnos = toString(record.getLong());
+                String newAnnos = toString(record.getLong());
+                int causeId = record.getInt();
+                out.println("delete from " + TRACE_TABLE_NAME + " where value_id = " + avId
+                        + " and old = \"" + oldAnnos + "\";");
+                out.println("insert into " + TRACE_TABLE_NAME + " values (" + avId + ",\""
+                        + oldAnnos + "\",\"" + newAnnos + "\"," + causeId + ");");
+            }
+        } finally {
+            traces.close();
+        }
+
+        DataInputStream in = openMeta();
+        try {
+            while (true) {
+                int tag = in.read();
+                if (tag < 0)
+                    break;
+                if (tag == TraceStore.QUALIFIER) {
+                    in.readInt();
+                    in.readUTF();
+                } else if (tag == TraceStore.VALUE)
+                    out.println(valueStatement(in));
+                else if (tag == TraceStore.CONSTRAINT)
+                    out.println(constraintStatement(in));
+                else
+                    throw new IOException("Corrupt trace meta data: tag " + tag);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Print the updates of one value, oldest first
+     */
+    public void printValue(int id, PrintStream out) throws IOException {
+        readQualifiers();
+        DataInputStream traces = openTraces();
+        try {
+            ByteBuffer record = ByteBuffer.allocate(TraceStore.RECORD_SIZE);
+            while (readRecord(traces, record)) {
+                int avId = record.getInt();
+                long oldMask = record.getLong();
+                long newMask = record.getLong();
+                int causeId = record.getInt();
+                if (avId == id)
+                    out.println(toString(oldMask) + " -> " + toString(newMask) + " by constraint " + causeId);
+            }
+        } finally {
+            traces.close();
+        }
+    }
+
+    private String valueStatement(DataInputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("insert into ").append(VALUE_TABLE_NAME)
+            .append(" values (");
+        sb.append(in.readInt()).append(",\"");
+        sb.append(TraceStore.readString(in).replace('\"', '_')).append("\",\"");
+        sb.append(TraceStore.readString(in)).append("\",\"");
+        sb.append(TraceStore.readString(in)).append("\",\"");
+        sb.append(TraceStore.readString(in)).append("\",\"");
+        String value = TraceStore.readString(in);
+        if (value != null)
+            sb.append(value.replace('\"', '_')).append("\",\"");
+        else
+            sb.append("null\", \"");
+        sb.append(TraceStore.readString(in)).append("\",\"");
+        sb.append(TraceStore.readString(in).replace('\"', '_')).append("\",\"");
+        sb.append(TraceStore.readString(in)).append("\");");
+        return sb.toString();
+    }
+
+    private String constraintStatement(DataInputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append("insert into ").append(CONSTRAINT_TABLE_NAME)
+            .append(" values (");
+        sb.append(in.readInt()).append(",\"");
+        sb.append(TraceStore.readString(in).replace('\"', '_')).append("\",");
+        sb.append(in.readInt()).append(",");
+        sb.append(in.readInt()).append(",");
+        for (int i = 0; i < 3; i++)
+            sb.append(in.readInt()).append(",");
+        sb.append(in.readInt()).append(");");
+        return sb.toString();
+    }
+
+    private void readQualifiers() throws IOException {
+        DataInputStream in = openMeta();
+        try {
+            while (true) {
+                int tag = in.read();
+                if (tag != TraceStore.QUALIFIER)
+                    break;
+                int bit = in.readInt();
+                qualifiers.put(bit, in.readUTF());
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * The same string as AnnotationUtils.fromMask(mask).toString()
+     */
+    private String toString(long mask) {
+        String s = maskStrings.get(mask);
+        if (s == null) {
+            Set<String> names = new TreeSet<String>();
+            for (long m = mask; m != 0; m &= m - 1) {
+                String name = qualifiers.get(Long.numberOfTrailingZeros(m));
+                if (name == null)
+                    throw new RuntimeException("Unknown qualifier bit " + Long.numberOfTrailingZeros(m));
+                names.add(name);
+            }
+            s = names.toString();
+            maskStrings.put(mask, s);
+        }
+        return s;
+    }
+
+    private DataInputStream openMeta() throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+                new FileInputStream(prefix + TraceStore.META_SUFFIX)));
+    }
+
+    /**
+     * The traces are read once, front to back, so they are streamed rather
+     * than mapped: a single mapping cannot cover files over 2 GB
+     */
+    private DataInputStream openTraces() throws IOException {
+        return new DataInputStream(new BufferedInputStream(
+                new FileInputStream(prefix + TraceStore.TRACE_SUFFIX), 1 << 16));
+    }
+
+    /**
+     * Read the next record into record and rewind it. Returns false at the
+     * end of the file; an incomplete last record is ignored.
+     */
+    private static boolean readRecord(DataInputStream in, ByteBuffer record) throws IOException {
+        try {
+            in.readFully(record.array());
+        } catch (EOFException e) {
+            return false;
+        }
+        record.clear();
+        return true;
+    }
+}
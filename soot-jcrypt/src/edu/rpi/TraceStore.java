@@ -0,0 +1,209 @@
+package edu.rpi;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import soot.SootClass;
+import soot.SootMethod;
+
+/**
+ * Binary store for solver traces. Each annotation update is a fixed-width
+ * record (value id, old mask, new mask, cause constraint id) put on a
+ * single-producer ring buffer and appended to PREFIX-traces.bin by a writer
+ * thread. Qualifier names, values and constraints go to PREFIX-traces.meta
+ * when the solver finishes. TraceConverter turns both into the sqlite
+ * script/database.
+ */
+public class TraceStore implements Closeable {
+
+    public static final String TRACE_SUFFIX = "-traces.bin";
+
+    public static final String META_SUFFIX = "-traces.meta";
+
+    /** int value id, long old mask, long new mask, int constraint id */
+    public static final int RECORD_SIZE = 24;
+
+    public static final byte QUALIFIER = 'Q';
+
+    public static final byte VALUE = 'V';
+
+    public static final byte CONSTRAINT = 'C';
+
+    private static final int CAPACITY = 1 << 16;
+
+    private final int[] valueIds = new int[CAPACITY];
+
+    private final long[] oldMasks = new long[CAPACITY];
+
+    private final long[] newMasks = new long[CAPACITY];
+
+    private final int[] causeIds = new int[CAPACITY];
+
+    /** Next record to write out, owned by the writer thread */
+    private final AtomicLong head = new AtomicLong();
+
+    /** Next free slot, owned by the solver thread */
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(RECORD_SIZE * 4096);
+
+    private final DataOutputStream meta;
+
+    private final Thread writer;
+
+    private IOException failure;
+
+    public TraceStore(String prefix) throws IOException {
+        channel = new FileOutputStream(prefix + TRACE_SUFFIX).getChannel();
+        meta = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(prefix + META_SUFFIX)));
+        writer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, "trace-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Called by the solver thread only
+     */
+    public void append(int valueId, long oldMask, long newMask, int causeId) {
+        long t = tail.get();
+        while (t - head.get() >= CAPACITY)
+            Thread.yield();
+        int i = (int) (t & (CAPACITY - 1));
+        valueIds[i] = valueId;
+        oldMasks[i] = oldMask;
+        newMasks[i] = newMask;
+        causeIds[i] = causeId;
+        tail.lazySet(t + 1);
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                long h = head.get();
+                long t = tail.get();
+                if (h == t) {
+                    flush();
+                    if (closed && t == tail.get())
+                        return;
+                    LockSupport.parkNanos(100000);
+                    continue;
+                }
+                for (; h < t; h++) {
+                    int i = (int) (h & (CAPACITY - 1));
+                    buffer.putInt(valueIds[i]);
+                    buffer.putLong(oldMasks[i]);
+                    buffer.putLong(newMasks[i]);
+                    buffer.putInt(causeIds[i]);
+                    if (!buffer.hasRemaining())
+                        flush();
+                }
+                head.lazySet(t);
+            }
+        } catch (IOException e) {
+            failure = e;
+            // keep consuming so the solver never blocks on a full ring
+            head.set(Long.MAX_VALUE / 2);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Record the names of the qualifiers in mask, for decoding the traces
+     */
+    public void writeQualifiers(long mask) throws IOException {
+        for (long m = mask; m != 0; m &= m - 1) {
+            int bit = Long.numberOfTrailingZeros(m);
+            meta.writeByte(QUALIFIER);
+            meta.writeInt(bit);
+            meta.writeUTF(AnnotationUtils.fromBit(bit).toString());
+        }
+    }
+
+    public void writeValue(AnnotatedValue av, String annos) throws IOException {
+        meta.writeByte(VALUE);
+        meta.writeInt(av.getId());
+        writeString(av.getIdentifier());
+        writeString(annos);
+        writeString(av.getType().toString());
+        writeString(av.getKind().toString());
+        writeString(av.getValue() != null ? av.getValue().toString() : null);
+        SootClass sc = av.getEnclosingClass();
+        writeString(sc != null ? sc.getName() : "");
+        writeString(av.getName());
+        SootMethod sm = av.getEnclosingMethod();
+        writeString(sm != null ? sm.getSubSignature() : "");
+    }
+
+    public void writeConstraint(Constraint c) throws IOException {
+        meta.writeByte(CONSTRAINT);
+        meta.writeInt(c.getId());
+        writeString(c.toString());
+        meta.writeInt(c.getLeft().getId());
+        meta.writeInt(c.getRight().getId());
+        List<Constraint> causes = c.getCauses();
+        for (int i = 0; i < 3; i++)
+            meta.writeInt(i < causes.size() ? causes.get(i).getId() : -1);
+        meta.writeInt(c.getKind());
+    }
+
+    /**
+     * Strings may exceed the 64K limit of writeUTF, so write the UTF-8 bytes
+     * with a length; -1 stands for null
+     */
+    private void writeString(String s) throws IOException {
+        writeString(meta, s);
+    }
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0)
+            return null;
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Wait for the writer thread and close both files
+     */
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        meta.close();
+        channel.close();
+        if (failure != null)
+            throw failure;
+    }
+}
@@ -1,9 +1,15 @@
 package edu.rpi;
 
+import java.util.*;
+
 import soot.SootClass;
 import soot.SootMethod;
 import soot.Unit;
 
+/**
+ * The state of the body being transformed. Each thread has its own,
+ * see InferenceTransformer.getVisitorState().
+ */
 public class VisitorState {
 
     private SootClass sc; 
@@ -12,6 +18,12 @@ public class VisitorState {
 
     private Unit unit; 
 
+    private int unitIndex;
+
+    private Map<String, AnnotatedValue> adaptValues = new HashMap<String, AnnotatedValue>();
+
+    private List<Constraint> pendingConstraints;
+
     public void setSootClass(SootClass sc) {
         this.sc = sc;
     }
@@ -35,4 +47,34 @@ public class VisitorState {
     public Unit getUnit() {
         return this.unit;
     }
+
+    public void setUnitIndex(int index) {
+        this.unitIndex = index;
+    }
+
+    /**
+     * Position of the current unit in its body, stable across runs unlike
+     * the identity hash of the unit
+     */
+    public int getUnitIndex() {
+        return this.unitIndex;
+    }
+
+    /**
+     * Adapt values created for the current body
+     */
+    public Map<String, AnnotatedValue> getAdaptValues() {
+        return this.adaptValues;
+    }
+
+    /**
+     * Constraints generated for the current body, or null outside a body
+     */
+    public List<Constraint> getPendingConstraints() {
+        return this.pendingConstraints;
+    }
+
+    public void setPendingConstraints(List<Constraint> list) {
+        this.pendingConstraints = list;
+    }
 }
@@ -46,11 +46,7 @@ public class JCryptConstraintSolver extends AbstractConstraintSolver {
 	private BitSet updated = new BitSet(AnnotatedValue.maxId());
 	// private BitSet restored = new BitSet(AnnotatedValue.maxId());
 
-	private byte[] initAnnos = new byte[AnnotatedValue.maxId()];
-
-	private final byte SENSITIVE_MASK = 0x01;
-	private final byte POLY_MASK = 0x02;
-	private final byte CLEAR_MASK = 0x04;
+	private long[] initAnnos = new long[AnnotatedValue.maxId()];
 	// private Set<String> clearLibMethods;
 
 	public JCryptConstraintSolver(InferenceTransformer t) {
@@ -70,38 +66,13 @@ public class JCryptConstraintSolver extends AbstractConstraintSolver {
 		}
 	}
 
-	private byte toBits(Set<Annotation> annos) {
-		byte b = 0;
-		for (Annotation anno : annos) {
-			if (anno.equals(st.SENSITIVE))
-				b |= SENSITIVE_MASK;
-			else if (anno.equals(st.POLY))
-				b |= POLY_MASK;
-			else if (anno.equals(st.CLEAR))
-				b |= CLEAR_MASK;
-		}
-		return b;
-	}
-
-	private Set<Annotation> fromBits(byte b) {
-		Set<Annotation> annos = AnnotationUtils.createAnnotationSet();
-		if ((b & SENSITIVE_MASK) > 0)
-			annos.add(st.SENSITIVE);
-		if ((b & POLY_MASK) > 0)
-			annos.add(st.POLY);
-		if ((b & CLEAR_MASK) > 0)
-			annos.add(st.CLEAR);
-		return annos;
-	}
-
 	private void setInitAnnos(AnnotatedValue av) {
 		int id = av.getId();
-		initAnnos[id] = toBits(av.getAnnotations(st));
+		initAnnos[id] = av.getAnnotationMask(st);
 	}
 
-	private Set<Annotation> getInitAnnos(int id) {
-		byte b = initAnnos[id];
-		return fromBits(b);
+	private long getInitAnnos(int id) {
+		return initAnnos[id];
 	}
 
 	private boolean containsReadonly(AnnotatedValue av) {
@@ -445,11 +416,11 @@ public class JCryptConstraintSolver extends AbstractConstraintSolver {
 			if (beenUpdated) {
 				// only restore values that have been updated before
 				if (updated.get(id) && av.getRestoreNum() < 3) {
-					Set<Annotation> initAnnos = getInitAnnos(id);
+					long initAnnos = getInitAnnos(id);
 					// System.out.println("Restoring " + av + " to " +
 					// initAnnos);
 					// restore
-					av.setAnnotations(initAnnos, st);
+					av.setAnnotationMask(initAnnos, st);
 					needSolve = true;
 					restoreCounter++;
 					av.setRestored();
@@ -462,8 +433,8 @@ public class JCryptConstraintSolver extends AbstractConstraintSolver {
 				// here we need to restore all constraints?
 				for (AnnotatedValue v : AnnotatedValueMap.v().values()) {
 					if (updated.get(id)) {
-						Set<Annotation> initAnnos = getInitAnnos(id);
-						v.setAnnotations(initAnnos, st);
+						long initAnnos = getInitAnnos(id);
+						v.setAnnotationMask(initAnnos, st);
 						updated.flip(id);
 					}
 				}
@@ -508,11 +479,11 @@ public class JCryptConstraintSolver extends AbstractConstraintSolver {
 	}
 
 	@Override
-	protected boolean setAnnotations(AnnotatedValue av, Set<Annotation> annos) throws SolverException {
-		Set<Annotation> oldAnnos = av.getAnnotations(st);
+	protected boolean setAnnotationMask(AnnotatedValue av, long annos) throws SolverException {
+		long oldAnnos = av.getAnnotationMask(st);
 		if (av instanceof AdaptValue)
-			return setAnnotations((AdaptValue) av, annos);
-		if (oldAnnos.equals(annos))
+			return setAnnotationMask((AdaptValue) av, annos);
+		if (oldAnnos == annos)
 			return false;
 		if (av.getKind() == Kind.CONSTANT || av.getIdentifier().startsWith(InferenceTransformer.CALLSITE_PREFIX)
 				|| av.getIdentifier().startsWith(InferenceTransformer.FAKE_PREFIX))
@@ -527,7 +498,7 @@ public class JCryptConstraintSolver extends AbstractConstraintSolver {
 		// Add related constraints to worklist
 		addToWorklist(av);
 
-		return super.setAnnotations(av, annos);
+		return super.setAnnotationMask(av, annos);
 	}
 
 	@Override
@@ -1,6 +1,7 @@
 package edu.rpi.jcrypt;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.PrintStream;
 import java.lang.annotation.*;
 import soot.VoidType;
@@ -46,9 +47,9 @@ public class JCryptTransformer extends InferenceTransformer {
 	private final Annotation CLEARTHIS;
 
 	private Set<String> clearLibMethods;
-	public static Set<SootMethod> entryPoints = new HashSet<>();
-	public static Map<String, String[]> mapreduceClasses = new HashMap<>();
-	private Map<String, Job> jobs = new HashMap<>();
+	public static Set<SootMethod> entryPoints = Collections.synchronizedSet(new HashSet<SootMethod>());
+	public static Map<String, String[]> mapreduceClasses = new ConcurrentHashMap<>();
+	private Map<String, Job> jobs = new ConcurrentHashMap<>();
 
 	public JCryptTransformer() {
 		// isPolyLibrary = (System.getProperty(OPTION_POLY_LIBRARY) != null);
@@ -212,9 +213,14 @@ public class JCryptTransformer extends InferenceTransformer {
 	private void addClass(VirtualInvokeExpr expr, String type) {
 		String className = ((ClassConstant) expr.getArg(0)).getValue().replace('/', '.');
 		String jobId = expr.getBase().toString();
-		String[] info = mapreduceClasses.getOrDefault(className, new String[] {jobId, type});
-		info[1] += type;
-		mapreduceClasses.put(className, info);
+		String[] fresh = new String[] {jobId, type};
+		String[] info = mapreduceClasses.putIfAbsent(className, fresh);
+		if (info == null)
+			info = fresh;
+		// bodies calling setMapperClass etc. may be transformed at once
+		synchronized (info) {
+			info[1] += type;
+		}
 	}
 	
 	@Override
@@ -240,8 +246,7 @@ public class JCryptTransformer extends InferenceTransformer {
 	@Override
 	protected AnnotatedValue createMethodAdaptValue(AnnotatedValue receiver, AnnotatedValue decl,
 			AnnotatedValue assignTo) {
-		String callSiteIdentifier = CALLSITE_PREFIX + getVisitorState().getSootMethod().getSignature() + "<"
-				+ getVisitorState().getUnit().hashCode() + ">";
+		String callSiteIdentifier = getCallSiteIdentifier();
 		AnnotatedValue callSite = getAnnotatedValue(callSiteIdentifier, VoidType.v(), Kind.LOCAL, callSiteIdentifier);
 		return new MethodAdaptValue(callSite, decl);
 	}
@@ -390,6 +395,14 @@ public class JCryptTransformer extends InferenceTransformer {
 		return true;
 	}
 
+	@Override
+	public Set<Annotation> getLibraryQualifiers() {
+		Set<Annotation> set = AnnotationUtils.createAnnotationSet();
+		set.add(READONLYTHIS);
+		set.add(POLYREADTHIS);
+		return set;
+	}
+
 	@Override
 	public String getName() {
 		return "jcrypt";
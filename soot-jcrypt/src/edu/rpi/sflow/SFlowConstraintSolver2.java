@@ -69,12 +69,7 @@ public class SFlowConstraintSolver2 extends AbstractConstraintSolver {
 
     private BitSet updated = new BitSet(AnnotatedValue.maxId());
 
-    private byte[] initAnnos = new byte[AnnotatedValue.maxId()];
-
-    private final byte TAINTED_MASK = 0x01;
-    private final byte POLY_MASK = 0x02;
-    private final byte SAFE_MASK = 0x04;
-    private final byte BOTTOM_MASK = 0x08;
+    private long[] initAnnos = new long[AnnotatedValue.maxId()];
 
     public SFlowConstraintSolver2(InferenceTransformer t) {
         super(t);
@@ -92,42 +87,13 @@ public class SFlowConstraintSolver2 extends AbstractConstraintSolver {
     }
 
 
-    private byte toBits(Set<Annotation> annos) {
-        byte b = 0;
-        for (Annotation anno : annos) {
-            if (anno.equals(st.TAINTED))
-                b |= TAINTED_MASK;
-            else if (anno.equals(st.POLY))
-                b |= POLY_MASK;
-            else if (anno.equals(st.SAFE))
-                b |= SAFE_MASK;
-            else if (anno.equals(st.BOTTOM))
-                b |= BOTTOM_MASK;
-        }
-        return b;
-    }
-
-    private Set<Annotation> fromBits(byte b) {
-        Set<Annotation> annos = AnnotationUtils.createAnnotationSet();
-        if ((b & TAINTED_MASK) > 0)
-            annos.add(st.TAINTED);
-        if ((b & POLY_MASK) > 0)
-            annos.add(st.POLY);
-        if ((b & SAFE_MASK) > 0)
-            annos.add(st.SAFE);
-        if ((b & BOTTOM_MASK) > 0)
-            annos.add(st.BOTTOM);
-        return annos;
-    }
-
     private void setInitAnnos(AnnotatedValue av) {
         int id = av.getId();
-        initAnnos[id] = toBits(av.getAnnotations(st));
+        initAnnos[id] = av.getAnnotationMask(st);
     }
 
-    private Set<Annotation> getInitAnnos(int id) {
-        byte b = initAnnos[id];
-        return fromBits(b);
+    private long getInitAnnos(int id) {
+        return initAnnos[id];
     }
 
     private boolean containsReadonly(AnnotatedValue av) {
@@ -470,10 +436,10 @@ public class SFlowConstraintSolver2 extends AbstractConstraintSolver {
             if (beenUpdated) {
                 // only restore values that have been updated before
                 if (updated.get(id)) {
-                    Set<Annotation> initAnnos = getInitAnnos(id);
+                    long initAnnos = getInitAnnos(id);
 //                    System.out.println("Restoring " + av + " to " + initAnnos);
                     // restore
-                    av.setAnnotations(initAnnos, st);
+                    av.setAnnotationMask(initAnnos, st);
                     needSolve = true;
                     restoreCounter++;
                 }
@@ -486,8 +452,8 @@ public class SFlowConstraintSolver2 extends AbstractConstraintSolver {
                 for (AnnotatedValue v : AnnotatedValueMap.v().values()) {
                     int vid = v.getId();
                     if (updated.get(id)) {
-                        Set<Annotation> initAnnos = getInitAnnos(id);
-                        v.setAnnotations(initAnnos, st);
+                        long initAnnos = getInitAnnos(id);
+                        v.setAnnotationMask(initAnnos, st);
                         updated.flip(id);
                     }
                 }
@@ -508,12 +474,12 @@ public class SFlowConstraintSolver2 extends AbstractConstraintSolver {
     }
 
     @Override
-	protected boolean setAnnotations(AnnotatedValue av, Set<Annotation> annos) 
+	protected boolean setAnnotationMask(AnnotatedValue av, long annos) 
 			throws SolverException {
-        Set<Annotation> oldAnnos = av.getAnnotations(st);
+        long oldAnnos = av.getAnnotationMask(st);
 		if (av instanceof AdaptValue)
-			return setAnnotations((AdaptValue) av, annos);
-		if (oldAnnos.equals(annos))
+			return setAnnotationMask((AdaptValue) av, annos);
+		if (oldAnnos == annos)
 			return false;
         if (av.getKind() == Kind.CONSTANT 
                 || av.getIdentifier().startsWith(InferenceTransformer.CALLSITE_PREFIX)
@@ -531,7 +497,7 @@ public class SFlowConstraintSolver2 extends AbstractConstraintSolver {
             setInitAnnos(av);
         }
 
-        return super.setAnnotations(av, annos);
+        return super.setAnnotationMask(av, annos);
     }
 
     @Override
@@ -1,6 +1,7 @@
 package edu.rpi.sflow;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.lang.annotation.*;
 import java.io.PrintStream;
 import soot.VoidType;
@@ -55,9 +56,9 @@ public class SFlowTransformer extends InferenceTransformer {
     private final Annotation POLYTHIS;
     private final Annotation SAFETHIS;
 
-    private int sourceNum; 
+    private AtomicInteger sourceNum = new AtomicInteger(); 
 
-    private int sinkNum; 
+    private AtomicInteger sinkNum = new AtomicInteger(); 
 
     public SFlowTransformer() {
         isPolyLibrary = (System.getProperty(OPTION_POLY_LIBRARY) != null);
@@ -90,9 +91,6 @@ public class SFlowTransformer extends InferenceTransformer {
         androidClasses.add("android.app.Activity");
         androidClasses.add("android.app.Service");
         androidClasses.add("android.location.LocationListener");
-
-        sourceNum = 0;
-        sinkNum = 0;
     }
 
     public boolean isPolyLibrary() {
@@ -200,12 +198,12 @@ public class SFlowTransformer extends InferenceTransformer {
                     System.out.println("INFO: found SOURCE " + l + " at " 
                             + "\n\t" + getVisitorState().getSootMethod()
                             + "\n\t" + getVisitorState().getUnit());
-                    sourceNum++;
+                    sourceNum.incrementAndGet();
                 } else if (isSink(l)) {
                     System.out.println("INFO: found SINK " + l + " at " 
                             + "\n\t" + getVisitorState().getSootMethod()
                             + "\n\t" + getVisitorState().getUnit());
-                    sinkNum++;
+                    sinkNum.incrementAndGet();
                 }
             }
         }
@@ -225,11 +223,11 @@ public class SFlowTransformer extends InferenceTransformer {
     }
 
     public int getSourceNum() {
-        return sourceNum;
+        return sourceNum.get();
     }
 
     public int getSinkNum() {
-        return sinkNum;
+        return sinkNum.get();
     }
 
     @Override
@@ -243,8 +241,7 @@ public class SFlowTransformer extends InferenceTransformer {
     @Override
     protected AnnotatedValue createMethodAdaptValue(AnnotatedValue receiver, 
             AnnotatedValue decl, AnnotatedValue assignTo) {
-        String callSiteIdentifier = CALLSITE_PREFIX + getVisitorState().getSootMethod().getSignature()
-            + "<" + getVisitorState().getUnit().hashCode() + ">";
+        String callSiteIdentifier = getCallSiteIdentifier();
         AnnotatedValue callSite = getAnnotatedValue(callSiteIdentifier, VoidType.v(), Kind.LOCAL, callSiteIdentifier);
         return new MethodAdaptValue(callSite, decl);
     }
@@ -326,7 +323,7 @@ public class SFlowTransformer extends InferenceTransformer {
             System.out.println("INFO: found SOURCE " + aField + " at " 
                     + "\n\t" + getVisitorState().getSootMethod()
                     + "\n\t" + getVisitorState().getUnit());
-            sourceNum++;
+            sourceNum.incrementAndGet();
         }
     }
 
@@ -352,7 +349,7 @@ public class SFlowTransformer extends InferenceTransformer {
 					System.out.println("INFO: found SOURCE " + overriddenParam + " at "
 							+ "\n\t" + getVisitorState().getSootMethod()
 							+ "\n\t" + getVisitorState().getUnit());
-					sourceNum++;
+					sourceNum.incrementAndGet();
                 }
             }
         }
@@ -420,6 +417,14 @@ public class SFlowTransformer extends InferenceTransformer {
         }
     }
     
+    @Override
+    public Set<Annotation> getLibraryQualifiers() {
+        Set<Annotation> set = AnnotationUtils.createAnnotationSet();
+        set.add(READONLYTHIS);
+        set.add(POLYREADTHIS);
+        return set;
+    }
+
     @Override
     public String getName() {
         return "sflow";
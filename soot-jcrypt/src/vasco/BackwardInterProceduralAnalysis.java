@@ -277,10 +277,7 @@ public abstract class BackwardInterProceduralAnalysis<M,N,A> extends InterProced
 		context.setEntryValue(topValue());
 
 		// Add this new context to the given method's mapping.
-		if (!contexts.containsKey(method)) {
-			contexts.put(method, new LinkedList<Context<M,N,A>>());
-		}
-		contexts.get(method).add(context);
+		addContext(method, context);
 		
 		// Add this context to the global work-list
 		worklist.add(context);
@@ -54,6 +54,16 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	/** A mapping from methods to a list of contexts for quick lookups. */
 	protected final Map<M,List<Context<M,N,A>>> contexts;
 
+	/**
+	 * A mapping from methods to their contexts keyed by the entry value (forward
+	 * flow) or exit value (backward flow), used by {@link #getContext(Object, Object)}.
+	 * 
+	 * <p>These values are copies made when the context is created and are
+	 * never changed afterwards (nor released when the context is freed), so the
+	 * hash computed when a context is indexed stays valid.</p>
+	 */
+	protected final Map<M,Map<A,Context<M,N,A>>> contextIndex;
+
 	/**
 	 * A record of transitions from calling context and call-site to 
 	 * called method and called context.
@@ -110,6 +120,7 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 
 		// Initialise map of methods to contexts.
 		contexts = new HashMap<M,List<Context<M,N,A>>>();
+		contextIndex = new HashMap<M,Map<A,Context<M,N,A>>>();
 
 		// Initialise context transition table
 		contextTransitions = new ContextTransitionTable<M,N,A>();
@@ -186,30 +197,35 @@ public abstract class InterProceduralAnalysis<M,N,A> {
 	 */
 	public Context<M,N,A> getContext(M method, A value) {
 		// If this method does not have any contexts, then we'll have to return nothing.
-		// Yao: move this check out
-		if (!contexts.containsKey(method)) {
+		Map<A,Context<M,N,A>> index = contextIndex.get(method);
+		if (index == null) {
 			return null;
 		}
-		// Otherwise, look for a context in this method's list with the given value.
-		if (reverse) {
-			// Backward flow, so check for EXIT FLOWS
-			for (Context<M,N,A> context : contexts.get(method)) {
-				if (value.equals(context.getExitValue())) {
-					return context;
-				}
-			}
-		} else {
-			// Forward flow, so check for ENTRY FLOWS
-			
-			// Yao: for context-insensitive
-			for (Context<M,N,A> context : contexts.get(method)) {
-				if (value.equals(context.getEntryValue())) {
-					return context;
-				}
-			}
+		// Otherwise, look up the context with the given EXIT FLOW (backward)
+		// or ENTRY FLOW (forward), or null if there is none.
+		return index.get(value);
+	}
+
+	/**
+	 * Adds a newly created context to its method's list of contexts and to the
+	 * index used by {@link #getContext(Object, Object)}. The entry value (forward
+	 * flow) or exit value (backward flow) of the context must already be set.
+	 * 
+	 * @param method the method of the context
+	 * @param context the new context
+	 */
+	protected void addContext(M method, Context<M,N,A> context) {
+		if (!contexts.containsKey(method)) {
+			contexts.put(method, new LinkedList<Context<M,N,A>>());
+			contextIndex.put(method, new HashMap<A,Context<M,N,A>>());
+		}
+		contexts.get(method).add(context);
+		A value = reverse ? context.getExitValue() : context.getEntryValue();
+		Map<A,Context<M,N,A>> index = contextIndex.get(method);
+		// Like the list, the index returns the oldest context with a value
+		if (!index.containsKey(value)) {
+			index.put(value, context);
 		}
-		// If nothing found return null.
-		return null;
 	}
 
 	/**
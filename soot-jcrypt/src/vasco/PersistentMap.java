@@ -0,0 +1,527 @@
+package vasco;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map for data flow values whose copies share structure.
+ *
+ * <p>The entries are kept in an immutable hash array mapped trie. A
+ * <tt>PersistentMap</tt> only holds a reference to the root of a trie, so
+ * {@link #copy()} is constant time, and a <tt>put</tt> or <tt>remove</tt>
+ * replaces the path from the root to the changed entry, leaving every other
+ * copy untouched. Analyses can therefore keep using the mutable {@link Map}
+ * interface in their flow functions while copying values freely.</p>
+ *
+ * <p>Each node of the trie caches the size and the {@link Map#hashCode()}
+ * of its entries, so <tt>hashCode</tt> and <tt>size</tt> are constant time.
+ * {@link #equals(Object)} and {@link #merge(PersistentMap, PersistentMap, Merger)}
+ * skip shared sub-tries, so comparing or meeting a value with a modified copy
+ * of itself costs time proportional to the modified entries.</p>
+ *
+ * <p>Null keys are not supported.</p>
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class PersistentMap<K,V> extends AbstractMap<K,V> {
+
+	/**
+	 * Combines the values of a key present in both operands of
+	 * {@link PersistentMap#merge(PersistentMap, PersistentMap, Merger)}.
+	 */
+	public interface Merger<V> {
+		V merge(V v1, V v2);
+	}
+
+	private static final int BITS = 5;
+
+	private static final int MASK = (1 << BITS) - 1;
+
+	/** The root of the trie, <tt>null</tt> if empty. */
+	private Object root;
+
+	/** Creates an empty map. */
+	public PersistentMap() {
+	}
+
+	/** Creates a map with the entries of <tt>m</tt>. */
+	public PersistentMap(Map<? extends K, ? extends V> m) {
+		if (m instanceof PersistentMap) {
+			root = ((PersistentMap<?,?>) m).root;
+		} else {
+			putAll(m);
+		}
+	}
+
+	private PersistentMap(Object root) {
+		this.root = root;
+	}
+
+	/**
+	 * Returns a copy of this map in constant time.
+	 *
+	 * @return a map with the same entries, independent of later changes to this one
+	 */
+	public PersistentMap<K,V> copy() {
+		return new PersistentMap<K,V>(root);
+	}
+
+	/**
+	 * Returns a map with the keys of both operands. The value of a key in only
+	 * one operand is kept as is; the values of a key in both are combined by
+	 * <tt>merger</tt>. Sub-tries shared by both operands are reused without
+	 * being visited, so <tt>merger(v, v)</tt> must be <tt>v</tt>.
+	 */
+	public static <K,V> PersistentMap<K,V> merge(PersistentMap<K,V> m1, PersistentMap<K,V> m2, Merger<V> merger) {
+		return new PersistentMap<K,V>(mergeNodes(m1.root, m2.root, 0, merger));
+	}
+
+	@Override
+	public int size() {
+		return sizeOf(root);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashOf(root);
+	}
+
+	@Override
+	public V get(Object key) {
+		Leaf<K,V> leaf = find(key);
+		return leaf == null ? null : leaf.value;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return find(key) != null;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		if (key == null) {
+			throw new NullPointerException();
+		}
+		Leaf<K,V> old = find(key);
+		root = insert(root, new Leaf<K,V>(key, value, spread(key.hashCode()), null), 0);
+		return old == null ? null : old.value;
+	}
+
+	@Override
+	public V remove(Object key) {
+		Leaf<K,V> old = find(key);
+		if (old != null) {
+			root = delete(root, key, old.hash, 0);
+		}
+		return old == null ? null : old.value;
+	}
+
+	@Override
+	public void clear() {
+		root = null;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {
+			return true;
+		}
+		if (o instanceof PersistentMap) {
+			Object other = ((PersistentMap<?,?>) o).root;
+			return sizeOf(root) == sizeOf(other) && hashOf(root) == hashOf(other)
+					&& equalNodes(root, other, 0);
+		}
+		return super.equals(o);
+	}
+
+	@Override
+	public Set<Map.Entry<K,V>> entrySet() {
+		return new AbstractSet<Map.Entry<K,V>>() {
+			@Override
+			public Iterator<Map.Entry<K,V>> iterator() {
+				return new EntryIterator<K,V>(PersistentMap.this, root);
+			}
+			@Override
+			public int size() {
+				return PersistentMap.this.size();
+			}
+		};
+	}
+
+	/** An entry; entries with the same full hash are chained. */
+	private static final class Leaf<K,V> implements Map.Entry<K,V> {
+		final K key;
+		final V value;
+		final int hash;
+		final Leaf<K,V> next;
+		final int size;
+		final int entryHash;
+
+		Leaf(K key, V value, int hash, Leaf<K,V> next) {
+			this.key = key;
+			this.value = value;
+			this.hash = hash;
+			this.next = next;
+			this.size = 1 + (next == null ? 0 : next.size);
+			this.entryHash = (key.hashCode() ^ (value == null ? 0 : value.hashCode()))
+					+ (next == null ? 0 : next.entryHash);
+		}
+
+		public K getKey() {
+			return key;
+		}
+
+		public V getValue() {
+			return value;
+		}
+
+		public V setValue(V value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+			return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+		}
+
+		@Override
+		public int hashCode() {
+			return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+		}
+
+		@Override
+		public String toString() {
+			return key + "=" + value;
+		}
+
+		Leaf<K,V> find(Object key) {
+			for (Leaf<K,V> l = this; l != null; l = l.next) {
+				if (l.key.equals(key)) {
+					return l;
+				}
+			}
+			return null;
+		}
+
+		/** This chain without <tt>key</tt>, <tt>null</tt> if empty. */
+		Leaf<K,V> without(Object key) {
+			if (this.key.equals(key)) {
+				return next;
+			}
+			if (next == null) {
+				return this;
+			}
+			Leaf<K,V> rest = next.without(key);
+			return rest == next ? this : new Leaf<K,V>(this.key, value, hash, rest);
+		}
+	}
+
+	/** An inner node; slot i of the bitmap is at index bitCount(bitmap & (bit i - 1)). */
+	private static final class Node {
+		final int bitmap;
+		final Object[] children;
+		final int size;
+		final int hash;
+
+		Node(int bitmap, Object[] children) {
+			this.bitmap = bitmap;
+			this.children = children;
+			int size = 0, hash = 0;
+			for (Object child : children) {
+				size += sizeOf(child);
+				hash += hashOf(child);
+			}
+			this.size = size;
+			this.hash = hash;
+		}
+
+		int index(int bit) {
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	private static int sizeOf(Object node) {
+		if (node == null) {
+			return 0;
+		}
+		return node instanceof Node ? ((Node) node).size : ((Leaf<?,?>) node).size;
+	}
+
+	private static int hashOf(Object node) {
+		if (node == null) {
+			return 0;
+		}
+		return node instanceof Node ? ((Node) node).hash : ((Leaf<?,?>) node).entryHash;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Leaf<K,V> find(Object key) {
+		if (key == null) {
+			return null;
+		}
+		int hash = spread(key.hashCode());
+		Object node = root;
+		for (int shift = 0; node instanceof Node; shift += BITS) {
+			Node n = (Node) node;
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((n.bitmap & bit) == 0) {
+				return null;
+			}
+			node = n.children[n.index(bit)];
+		}
+		Leaf<K,V> leaf = (Leaf<K,V>) node;
+		return (leaf == null || leaf.hash != hash) ? null : leaf.find(key);
+	}
+
+	/** Returns <tt>node</tt> with the entries of chain <tt>leaf</tt> added or replaced. */
+	@SuppressWarnings("unchecked")
+	private static <K,V> Object insert(Object node, Leaf<K,V> leaf, int shift) {
+		if (node == null) {
+			return leaf;
+		}
+		if (node instanceof Leaf) {
+			Leaf<K,V> old = (Leaf<K,V>) node;
+			if (old.hash == leaf.hash) {
+				// Same full hash: replace or prepend within the chain
+				Leaf<K,V> result = old;
+				for (Leaf<K,V> l = leaf; l != null; l = l.next) {
+					Leaf<K,V> existing = result.find(l.key);
+					if (existing != null && existing.value == l.value) {
+						continue;
+					}
+					Leaf<K,V> rest = (existing == null) ? result : result.without(l.key);
+					result = new Leaf<K,V>(l.key, l.value, l.hash, rest);
+				}
+				return result;
+			}
+			// Different hashes: push the old chain one level down
+			node = new Node(1 << ((old.hash >>> shift) & MASK), new Object[] { old });
+		}
+		Node n = (Node) node;
+		int bit = 1 << ((leaf.hash >>> shift) & MASK);
+		int i = n.index(bit);
+		if ((n.bitmap & bit) == 0) {
+			Object[] children = new Object[n.children.length + 1];
+			System.arraycopy(n.children, 0, children, 0, i);
+			children[i] = leaf;
+			System.arraycopy(n.children, i, children, i + 1, n.children.length - i);
+			return new Node(n.bitmap | bit, children);
+		}
+		Object child = insert(n.children[i], leaf, shift + BITS);
+		if (child == n.children[i]) {
+			return n;
+		}
+		Object[] children = n.children.clone();
+		children[i] = child;
+		return new Node(n.bitmap, children);
+	}
+
+	/** Returns <tt>node</tt> without <tt>key</tt>; a node left with one chain collapses into it. */
+	@SuppressWarnings("unchecked")
+	private static Object delete(Object node, Object key, int hash, int shift) {
+		if (node instanceof Leaf) {
+			Leaf<Object,Object> leaf = (Leaf<Object,Object>) node;
+			return leaf.hash == hash ? leaf.without(key) : leaf;
+		}
+		Node n = (Node) node;
+		int bit = 1 << ((hash >>> shift) & MASK);
+		if ((n.bitmap & bit) == 0) {
+			return n;
+		}
+		int i = n.index(bit);
+		Object child = delete(n.children[i], key, hash, shift + BITS);
+		if (child == n.children[i]) {
+			return n;
+		}
+		if (child == null) {
+			if (n.children.length == 1) {
+				return null;
+			}
+			Object[] children = new Object[n.children.length - 1];
+			System.arraycopy(n.children, 0, children, 0, i);
+			System.arraycopy(n.children, i + 1, children, i, children.length - i);
+			if (children.length == 1 && children[0] instanceof Leaf) {
+				return children[0];
+			}
+			return new Node(n.bitmap & ~bit, children);
+		}
+		if (n.children.length == 1 && child instanceof Leaf) {
+			return child;
+		}
+		Object[] children = n.children.clone();
+		children[i] = child;
+		return new Node(n.bitmap, children);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K,V> Object mergeNodes(Object x, Object y, int shift, Merger<V> merger) {
+		if (x == y || y == null) {
+			return x;
+		}
+		if (x == null) {
+			return y;
+		}
+		if (x instanceof Node && y instanceof Node) {
+			Node nx = (Node) x, ny = (Node) y;
+			int bitmap = nx.bitmap | ny.bitmap;
+			Object[] children = new Object[Integer.bitCount(bitmap)];
+			boolean sameAsX = (bitmap == nx.bitmap), sameAsY = (bitmap == ny.bitmap);
+			for (int i = 0, rest = bitmap; rest != 0; i++, rest &= rest - 1) {
+				int bit = Integer.lowestOneBit(rest);
+				Object cx = (nx.bitmap & bit) == 0 ? null : nx.children[nx.index(bit)];
+				Object cy = (ny.bitmap & bit) == 0 ? null : ny.children[ny.index(bit)];
+				children[i] = mergeNodes(cx, cy, shift + BITS, merger);
+				sameAsX &= (children[i] == cx);
+				sameAsY &= (children[i] == cy);
+			}
+			if (sameAsX) {
+				return x;
+			}
+			if (sameAsY) {
+				return y;
+			}
+			return new Node(bitmap, children);
+		}
+		// At least one side is a chain of entries with a common hash; merge
+		// them one by one into the other side.
+		if (x instanceof Leaf) {
+			Object result = y;
+			for (Leaf<K,V> l = (Leaf<K,V>) x; l != null; l = l.next) {
+				result = insert(result, merged(l, findIn(result, l.key, l.hash, shift), true, merger), shift);
+			}
+			return result;
+		} else {
+			Object result = x;
+			for (Leaf<K,V> l = (Leaf<K,V>) y; l != null; l = l.next) {
+				result = insert(result, merged(l, findIn(result, l.key, l.hash, shift), false, merger), shift);
+			}
+			return result;
+		}
+	}
+
+	/** The entry <tt>l</tt> combined with <tt>other</tt> (if any) of the other operand. */
+	private static <K,V> Leaf<K,V> merged(Leaf<K,V> l, Leaf<K,V> other, boolean lFirst, Merger<V> merger) {
+		if (other == null) {
+			return l.next == null ? l : new Leaf<K,V>(l.key, l.value, l.hash, null);
+		}
+		V value = lFirst ? merger.merge(l.value, other.value) : merger.merge(other.value, l.value);
+		return new Leaf<K,V>(l.key, value, l.hash, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K,V> Leaf<K,V> findIn(Object node, Object key, int hash, int shift) {
+		for (; node instanceof Node; shift += BITS) {
+			Node n = (Node) node;
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((n.bitmap & bit) == 0) {
+				return null;
+			}
+			node = n.children[n.index(bit)];
+		}
+		Leaf<K,V> leaf = (Leaf<K,V>) node;
+		return (leaf == null || leaf.hash != hash) ? null : leaf.find(key);
+	}
+
+	/** Compares two tries of equal size and hash, skipping shared sub-tries. */
+	@SuppressWarnings("unchecked")
+	private static boolean equalNodes(Object x, Object y, int shift) {
+		if (x == y) {
+			return true;
+		}
+		if (sizeOf(x) != sizeOf(y) || hashOf(x) != hashOf(y)) {
+			return false;
+		}
+		if (x instanceof Node && y instanceof Node && ((Node) x).bitmap == ((Node) y).bitmap) {
+			Object[] cx = ((Node) x).children, cy = ((Node) y).children;
+			for (int i = 0; i < cx.length; i++) {
+				if (!equalNodes(cx[i], cy[i], shift + BITS)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		// Different shapes: look up each entry of x in y
+		Iterator<Map.Entry<Object,Object>> it = new EntryIterator<Object,Object>(null, x);
+		while (it.hasNext()) {
+			Leaf<Object,Object> e = (Leaf<Object,Object>) it.next();
+			Leaf<Object,Object> l = findIn(y, e.key, e.hash, shift);
+			if (l == null || !(l.value == null ? e.value == null : l.value.equals(e.value))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class EntryIterator<K,V> implements Iterator<Map.Entry<K,V>> {
+		private final PersistentMap<K,V> map;
+		private final Deque<Object> stack = new ArrayDeque<Object>();
+		private Leaf<K,V> next;
+		private Leaf<K,V> last;
+
+		EntryIterator(PersistentMap<K,V> map, Object root) {
+			this.map = map;
+			if (root != null) {
+				stack.push(root);
+			}
+			advance();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			if (next != null && next.next != null) {
+				next = next.next;
+				return;
+			}
+			next = null;
+			while (!stack.isEmpty()) {
+				Object node = stack.pop();
+				if (node instanceof Leaf) {
+					next = (Leaf<K,V>) node;
+					return;
+				}
+				Object[] children = ((Node) node).children;
+				for (int i = children.length - 1; i >= 0; i--) {
+					stack.push(children[i]);
+				}
+			}
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public Map.Entry<K,V> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			last = next;
+			advance();
+			return last;
+		}
+
+		public void remove() {
+			if (last == null || map == null) {
+				throw new IllegalStateException();
+			}
+			// The iterator walks the trie it started on, so removing from the
+			// map's current trie does not disturb it
+			map.remove(last.key);
+			last = null;
+		}
+	}
+}
@@ -17,7 +17,6 @@
  */
 package vasco.soot.examples;
 
-import java.util.HashMap;
 import java.util.Map;
 
 import soot.Local;
@@ -36,6 +35,7 @@ import soot.jimple.Stmt;
 import soot.jimple.internal.JimpleLocal;
 import vasco.Context;
 import vasco.ForwardInterProceduralAnalysis;
+import vasco.PersistentMap;
 import vasco.ProgramRepresentation;
 import vasco.soot.DefaultJimpleRepresentation;
 
@@ -200,30 +200,35 @@ public class AEAnalysis extends ForwardInterProceduralAnalysis<SootMethod, Unit,
 		return value;
 	}
 
+	/** Common keys meet to the types available in both operands */
+	private static final PersistentMap.Merger<Byte> AND = new PersistentMap.Merger<Byte>() {
+		public Byte merge(Byte c1, Byte c2) {
+			return (byte) (c1 & c2);
+		}
+	};
+
+	/**
+	 * Returns a copy sharing the entries of <tt>src</tt>, in constant time.
+	 */
 	@Override
 	public Map<Object, Byte> copy(Map<Object, Byte> src) {
-		return new HashMap<>(src);
+		return persistent(src).copy();
 	}
 
+	/**
+	 * Returns the union of both operands, bottoming out the common keys with
+	 * different values. Entries shared by the operands are not visited.
+	 */
 	@Override
 	public Map<Object, Byte> meet(Map<Object, Byte> op1, Map<Object, Byte> op2) {
-		Map<Object, Byte> result;
-		// First add everything in the first operand
-		result = new HashMap<Object, Byte>(op1);
-		// Then add everything in the second operand, bottoming out the common
-		// keys with different values
-		for (Object x : op2.keySet()) {
-			if (op1.containsKey(x)) {
-				// Check the values in both operands
-				byte c1 = op1.get(x);
-				byte c2 = op2.get(x);
-				result.put(x, (byte) (c1 & c2));
-			} else {
-				// Only in second operand, so add as-is
-				result.put(x, op2.get(x));
-			}
+		return PersistentMap.merge(persistent(op1), persistent(op2), AND);
+	}
+
+	private static PersistentMap<Object, Byte> persistent(Map<Object, Byte> value) {
+		if (value instanceof PersistentMap) {
+			return (PersistentMap<Object, Byte>) value;
 		}
-		return result;
+		return new PersistentMap<Object, Byte>(value);
 	}
 
 	/**
@@ -231,7 +236,7 @@ public class AEAnalysis extends ForwardInterProceduralAnalysis<SootMethod, Unit,
 	 */
 	@Override
 	public Map<Object, Byte> topValue() {
-		return new HashMap<Object, Byte>();
+		return new PersistentMap<Object, Byte>();
 	}
 
 	/**
@@ -0,0 +1,142 @@
+package edu.rpi;
+
+import java.io.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+
+/*
+ * Runs SootInference with -DsnapshotDir three times, each in its own JVM so
+ * that identity hashes differ between runs as they do in practice: cold,
+ * warm on the same classes, and warm after editing one method. Run from the
+ * soot-jcrypt directory with Soot, these classes and junit on the class
+ * path; -Djdk=... points to another annotated JDK.
+ */
+public class InferenceSnapshotTest extends TestCase {
+
+    private static final String SOURCE =
+          "public class Snap {\n"
+        + "    static Object f(Object x) { h(x); Object y = h(x); return y; }\n"
+        + "    static Object g(Object a) { k(a); Object b = k(a); return b; }\n"
+        + "    static Object h(Object p) { Object q = p; return q; }\n"
+        + "    static Object k(Object s) { Object t = s; return t; }\n"
+        + "    Object i(Object u) { f(u); return f(u); }\n"
+        + "}\n";
+
+    private static final String EDITED = SOURCE.replace("Object b = k(a); return b;",
+            "Object b = k(a); Object c = b; return c;");
+
+    private static final Pattern WARM = Pattern.compile("warm solve .*; (\\d+) of (\\d+) constraints re-solved, (\\d+) dirty methods");
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws IOException {
+        dir = File.createTempFile("snapshot", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() {
+        delete(dir);
+    }
+
+    public void testOnlyEditedComponentsAreResolved() throws Exception {
+        String out = run(SOURCE);
+        assertTrue(out, out.contains("cold solve"));
+
+        Matcher m = warm(run(SOURCE));
+        assertEquals("re-solved constraints", 0, Integer.parseInt(m.group(1)));
+        assertEquals("dirty methods", 0, Integer.parseInt(m.group(3)));
+
+        m = warm(run(EDITED));
+        assertEquals("dirty methods", 1, Integer.parseInt(m.group(3)));
+        // g and k form a component of their own; f, h, i and the call sites
+        // in f and i must keep their old solution
+        assertEquals("re-solved constraints", countConstraints(" g(", " k("), Integer.parseInt(m.group(1)));
+    }
+
+    private Matcher warm(String out) {
+        Matcher m = WARM.matcher(out);
+        assertTrue(out, m.find());
+        return m;
+    }
+
+    /**
+     * Compile source and run SootInference on it in a new JVM
+     */
+    private String run(String source) throws Exception {
+        File src = new File(dir, "src");
+        File classes = new File(dir, "classes");
+        delete(src);
+        delete(classes);
+        src.mkdirs();
+        classes.mkdirs();
+        File file = new File(src, "Snap.java");
+        Writer w = new FileWriter(file);
+        w.write(source);
+        w.close();
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, javac.run(null, null, null, "-d", classes.getPath(), file.getPath()));
+
+        String jdk = System.getProperty("jdk", "jdk/reim/jdk.jar");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "-D" + InferenceSnapshot.OPTION_SNAPSHOT_DIR + "=" + new File(dir, "snapshots").getPath(),
+                SootInference.class.getName(), "-allow-phantom-refs",
+                "-cp", classes.getPath() + File.pathSeparator + jdk, "-process-dir", classes.getPath(),
+                "-f", "none", "-d", new File(dir, "out").getPath());
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream in = p.getInputStream();
+        byte[] buf = new byte[8192];
+        for (int n; (n = in.read(buf)) > 0;)
+            bytes.write(buf, 0, n);
+        p.waitFor();
+        return bytes.toString();
+    }
+
+    /**
+     * Constraints of the last run whose values all belong to the given
+     * methods
+     */
+    private int countConstraints(String... methods) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(new File(dir, "out/reim-constraints.log")));
+        int count = 0;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.matches("[A-Z]+-\\d+: *"))
+                    continue;
+                boolean owned = true;
+                for (int i = 0; i < 2; i++) {
+                    String value = in.readLine();
+                    boolean found = false;
+                    for (String method : methods)
+                        found |= value.contains(method);
+                    owned &= found;
+                }
+                if (owned)
+                    count++;
+            }
+        } finally {
+            in.close();
+        }
+        return count;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children)
+                delete(c);
+        }
+        f.delete();
+    }
+}
@@ -0,0 +1,202 @@
+package edu.rpi;
+
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import junit.framework.TestCase;
+import soot.*;
+import soot.tagkit.AnnotationConstants;
+import soot.tagkit.AnnotationTag;
+import soot.tagkit.VisibilityAnnotationTag;
+
+import checkers.inference.reim.quals.Mutable;
+import checkers.inference.reim.quals.Polyread;
+import checkers.inference.reim.quals.Readonly;
+import checkers.inference.reim.quals.ReadonlyThis;
+import edu.rpi.reim.ReimTransformer;
+
+/*
+ * Builds the library summaries of an annotated stub with
+ * LibrarySummaryBuilder in a new JVM, then reads them back for unannotated
+ * Soot classes of the same name, as a run on a plain library jar does. Run
+ * from the soot-jcrypt directory with Soot, these classes and junit on the
+ * class path.
+ */
+public class LibrarySummaryStoreTest extends TestCase {
+
+    private static final String STUB =
+          "package lib;\n"
+        + "import checkers.inference.reim.quals.*;\n"
+        + "public class Covered {\n"
+        + "    @Readonly public Object f;\n"
+        + "    public Object g;\n"
+        + "    @Polyread @ReadonlyThis public Object get(@Readonly Object key, int i) { return null; }\n"
+        + "    public void clear() {}\n"
+        + "}\n";
+
+    private static final Annotation READONLY = AnnotationUtils.fromClass(Readonly.class);
+    private static final Annotation POLYREAD = AnnotationUtils.fromClass(Polyread.class);
+    private static final Annotation MUTABLE = AnnotationUtils.fromClass(Mutable.class);
+    private static final Annotation READONLY_THIS = AnnotationUtils.fromClass(ReadonlyThis.class);
+
+    private File dir;
+
+    private SootClass covered;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("summaries", "");
+        dir.delete();
+        dir.mkdirs();
+        build();
+        System.setProperty(LibrarySummaryStore.OPTION_SUMMARY_DIR, dir.getPath());
+
+        G.reset();
+        covered = libraryClass("lib.Covered");
+        covered.addField(new SootField("f", RefType.v("java.lang.Object")));
+        covered.addField(new SootField("g", RefType.v("java.lang.Object")));
+        covered.addMethod(new SootMethod("get", Arrays.<Type>asList(RefType.v("java.lang.Object"), IntType.v()),
+                RefType.v("java.lang.Object")));
+        covered.addMethod(new SootMethod("clear", Collections.<Type>emptyList(), VoidType.v()));
+        // members the stub does not have
+        covered.addMethod(new SootMethod("size", Collections.<Type>emptyList(), IntType.v()));
+    }
+
+    @Override
+    protected void tearDown() {
+        System.clearProperty(LibrarySummaryStore.OPTION_SUMMARY_DIR);
+        G.reset();
+        delete(dir);
+    }
+
+    public void testRoundTrip() {
+        LibrarySummaryStore store = LibrarySummaryStore.open("reim");
+        assertNotNull(store);
+        assertTrue(store.covers("lib.Covered"));
+        assertFalse(store.covers("lib.Uncovered"));
+
+        assertEquals(set(READONLY), store.get(covered.getFieldByName("f")));
+        SootMethod get = covered.getMethodByName("get");
+        assertEquals(set(POLYREAD, READONLY_THIS), store.get(get));
+        assertEquals(set(READONLY), store.getParameter(get, 0));
+        // looked up again from the decoded records
+        assertEquals(set(READONLY), store.getParameter(get, 0));
+
+        // annotations the analysis does not read are left out; SFlow only
+        // reads the Reim qualifiers of receivers
+        LibrarySummaryStore sflow = LibrarySummaryStore.open("sflow");
+        assertNotNull(sflow);
+        assertTrue(sflow.covers("lib.Covered"));
+        assertEquals(set(READONLY_THIS), sflow.get(get));
+        assertEquals(set(), sflow.get(covered.getFieldByName("f")));
+    }
+
+    public void testNoRecord() {
+        LibrarySummaryStore store = LibrarySummaryStore.open("reim");
+        assertEquals(set(), store.get(covered.getFieldByName("g")));
+        assertEquals(set(), store.get(covered.getMethodByName("clear")));
+        assertEquals(set(), store.getParameter(covered.getMethodByName("get"), 1));
+        assertEquals(set(), store.get(covered.getMethodByName("size")));
+    }
+
+    public void testTransformer() {
+        // the store answers for covered classes, whatever their tags say
+        SootMethod get = covered.getMethodByName("get");
+        tag(get, MUTABLE);
+        SootClass uncovered = libraryClass("lib.Uncovered");
+        SootMethod put = new SootMethod("put", Collections.<Type>emptyList(), VoidType.v());
+        uncovered.addMethod(put);
+        tag(put, MUTABLE);
+
+        InferenceTransformer reim = new ReimTransformer();
+        assertEquals(set(POLYREAD, READONLY_THIS), reim.getRawVisibilityTags(get));
+        assertEquals(set(READONLY), reim.getVisibilitParameterTags(get, 0));
+        assertEquals(set(MUTABLE), reim.getRawVisibilityTags(put));
+    }
+
+    public void testAnalysisMismatch() throws IOException {
+        File reim = LibrarySummaryStore.getFile(dir.getPath(), "reim");
+        File jcrypt = LibrarySummaryStore.getFile(dir.getPath(), "jcrypt");
+        assertTrue(jcrypt.delete());
+        assertTrue(reim.renameTo(jcrypt));
+        assertNull(LibrarySummaryStore.open("jcrypt"));
+        // a missing file
+        assertNull(LibrarySummaryStore.open("reim"));
+
+        // the transformer then falls back to the tags
+        SootMethod get = covered.getMethodByName("get");
+        tag(get, MUTABLE);
+        assertEquals(set(MUTABLE), new ReimTransformer().getRawVisibilityTags(get));
+    }
+
+    private static SootClass libraryClass(String name) {
+        SootClass sc = new SootClass(name);
+        Scene.v().addClass(sc);
+        sc.setLibraryClass();
+        return sc;
+    }
+
+    private static void tag(SootMethod sm, Annotation anno) {
+        VisibilityAnnotationTag tag = new VisibilityAnnotationTag(AnnotationConstants.RUNTIME_VISIBLE);
+        tag.addAnnotation(new AnnotationTag("L" + anno.annotationType().getName().replace('.', '/') + ";"));
+        sm.addTag(tag);
+    }
+
+    private static Set<Annotation> set(Annotation... annos) {
+        Set<Annotation> set = AnnotationUtils.createAnnotationSet();
+        Collections.addAll(set, annos);
+        return set;
+    }
+
+    /**
+     * Compile the stub into a jar and run LibrarySummaryBuilder on it in a
+     * new JVM
+     */
+    private void build() throws Exception {
+        File src = new File(dir, "Covered.java");
+        File classes = new File(dir, "classes");
+        classes.mkdirs();
+        Writer w = new FileWriter(src);
+        w.write(STUB);
+        w.close();
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, javac.run(null, null, null, "-cp", System.getProperty("java.class.path"), "-d",
+                classes.getPath(), src.getPath()));
+
+        File jar = new File(dir, "stubs.jar");
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        out.putNextEntry(new JarEntry("lib/Covered.class"));
+        InputStream in = new FileInputStream(new File(classes, "lib/Covered.class"));
+        byte[] buf = new byte[8192];
+        for (int n; (n = in.read(buf)) > 0;)
+            out.write(buf, 0, n);
+        in.close();
+        out.close();
+
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                LibrarySummaryBuilder.class.getName(), dir.getPath(), jar.getPath());
+        pb.redirectErrorStream(true);
+        Process p = pb.start();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        in = p.getInputStream();
+        for (int n; (n = in.read(buf)) > 0;)
+            bytes.write(buf, 0, n);
+        assertEquals(bytes.toString(), 0, p.waitFor());
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children)
+                delete(c);
+        }
+        f.delete();
+    }
+}